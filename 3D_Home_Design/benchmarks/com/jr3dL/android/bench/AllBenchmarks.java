@@ -0,0 +1,30 @@
+package com.jr3dL.android.bench;
+
+/**
+ * Runs every benchmark in this folder in one JVM and writes one JSON file,
+ * for tracking the CPU side of a frame from release to release. Nothing
+ * needs a GPU or a device.
+ *
+ *     javac -d bin/bench -cp android.jar $(find src benchmarks -name "*.java")
+ *     java -cp bin/bench com.jr3dL.android.bench.AllBenchmarks [results.json [include]]
+ *
+ * Include is a regular expression; only benchmarks whose names match it
+ * run, such as "frame|scene" for {@link FrameBenchmark} alone.
+ */
+public class AllBenchmarks {
+    public static void main(String[] args) throws Exception {
+        final BenchmarkRunner runner = new BenchmarkRunner();
+        if (args.length > 1) {
+            runner.setInclude(args[1]);
+        }
+        FrameBenchmark.run(runner);
+        ResourceBenchmark.run(runner);
+        MatrixBenchmark.run(runner);
+        BvhBenchmark.run(runner);
+        PickBenchmark.run(runner);
+        PortalBenchmark.run(runner);
+        SnapshotBenchmark.run(runner);
+        MetricsBenchmark.run(runner);
+        runner.finish(args);
+    }
+}
@@ -0,0 +1,30 @@
+package com.jr3dL.android.bench;
+
+import java.io.IOException;
+
+/**
+ * Runs every correctness check in this folder, the ones that gate a change
+ * rather than measure it. Nothing needs a GPU or a device. Checks that read
+ * the app's shaders or scene find res/raw from the working directory up,
+ * or take -Dbench.res, and temporary files go to java.io.tmpdir. The first
+ * failure throws, so the JVM exits non-zero.
+ *
+ *     javac -d bin/bench -cp android.jar $(find src benchmarks -name "*.java")
+ *     java -cp bin/bench com.jr3dL.android.bench.AllChecks
+ */
+public class AllChecks {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        MatrixCheck.run();
+        FrameSchedulerCheck.run();
+        StaticBatchCheck.run();
+        SceneParserCheck.run();
+        BvhCheck.run();
+        PortalCheck.run();
+        TripleBufferCheck.run();
+        TextureCacheCheck.run();
+        ProgramCacheCheck.run();
+        ShaderVariantsCheck.run();
+        PickCheck.run();
+        System.out.println("all checks passed");
+    }
+}
@@ -0,0 +1,189 @@
+package com.jr3dL.android.bench;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * A small JMH-style harness for the benchmarks in this source folder, which
+ * run on a plain JVM against the app's pure-Java classes.
+ *
+ * Every benchmark gets a number of timed warmup iterations that are thrown
+ * away, then timed measurement iterations. An iteration calls the operation
+ * in a loop until its time is up and records the average time per call.
+ * Operations return a value that is folded into a sink so the JIT can't
+ * drop the work. Results print as a table and can be written as JSON in the
+ * shape JMH uses for -rf json, so the same tooling can track both.
+ */
+public class BenchmarkRunner {
+    /** One measured operation. */
+    public interface Operation {
+        /** Runs the operation once and returns something derived from its result. */
+        long run();
+    }
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final long iterationNanos;
+
+    private final List<String> names = new ArrayList<String>();
+    private final List<String> params = new ArrayList<String>();
+    private final List<double[]> scores = new ArrayList<double[]>();
+
+    private Pattern include;
+    private long sink;
+
+    public BenchmarkRunner() {
+        this(5, 5, 200);
+    }
+
+    public BenchmarkRunner(int warmupIterations, int measurementIterations, int iterationMillis) {
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.iterationNanos = iterationMillis * NANOS_PER_MILLI;
+    }
+
+    /**
+     * Warms up and measures an operation. Params is a comma separated list of
+     * name=value pairs describing the case, such as "objects=1000".
+     */
+    public void run(String name, String param, Operation operation) {
+        if (include != null && !include.matcher(name).find()) {
+            return;
+        }
+        for (int i = 0; i < warmupIterations; i++) {
+            iteration(operation);
+        }
+        final double[] iterationScores = new double[measurementIterations];
+        for (int i = 0; i < measurementIterations; i++) {
+            iterationScores[i] = iteration(operation);
+        }
+        names.add(name);
+        params.add(param);
+        scores.add(iterationScores);
+        System.out.println(String.format(Locale.US, "%-32s %-36s %14.1f +- %10.1f ns/op",
+            name, param, mean(iterationScores), error(iterationScores)));
+    }
+
+    /**
+     * Only runs benchmarks whose name contains a match for the regular
+     * expression, like JMH's include patterns; null runs everything.
+     */
+    public void setInclude(String regex) {
+        include = regex != null ? Pattern.compile(regex) : null;
+    }
+
+    /**
+     * Writes every result so far as a JMH-compatible JSON array, with the
+     * JVM that produced it so runs on different machines can be told apart.
+     */
+    public void writeJson(Writer out) throws IOException {
+        out.write("[\n");
+        for (int i = 0; i < names.size(); i++) {
+            final double[] iterationScores = scores.get(i);
+            out.write("  {\n");
+            out.write("    \"benchmark\" : \"" + names.get(i) + "\",\n");
+            out.write("    \"mode\" : \"avgt\",\n");
+            out.write("    \"threads\" : 1,\n");
+            out.write("    \"forks\" : 0,\n");
+            out.write("    \"jdkVersion\" : \"" + property("java.version") + "\",\n");
+            out.write("    \"vmName\" : \"" + property("java.vm.name") + "\",\n");
+            out.write("    \"vmVersion\" : \"" + property("java.vm.version") + "\",\n");
+            out.write("    \"warmupIterations\" : " + warmupIterations + ",\n");
+            out.write("    \"measurementIterations\" : " + measurementIterations + ",\n");
+            out.write("    \"params\" : {");
+            final String param = params.get(i);
+            if (param.length() > 0) {
+                final String[] pairs = param.split(",");
+                for (int p = 0; p < pairs.length; p++) {
+                    final String[] pair = pairs[p].split("=", 2);
+                    out.write((p > 0 ? ", " : " ") + "\"" + pair[0].trim() + "\" : \""
+                        + (pair.length > 1 ? pair[1].trim() : "") + "\"");
+                }
+                out.write(" ");
+            }
+            out.write("},\n");
+            out.write("    \"primaryMetric\" : {\n");
+            out.write(String.format(Locale.US, "      \"score\" : %.3f,\n",
+                mean(iterationScores)));
+            out.write(String.format(Locale.US, "      \"scoreError\" : %.3f,\n",
+                error(iterationScores)));
+            out.write("      \"scoreUnit\" : \"ns/op\",\n");
+            out.write("      \"rawData\" : [ [");
+            for (int s = 0; s < iterationScores.length; s++) {
+                out.write(String.format(Locale.US, "%s%.3f", s > 0 ? ", " : " ",
+                    iterationScores[s]));
+            }
+            out.write(" ] ]\n");
+            out.write("    }\n");
+            out.write(i + 1 < names.size() ? "  },\n" : "  }\n");
+        }
+        out.write("]\n");
+    }
+
+    /**
+     * Writes the JSON results to the path given as the first argument, if
+     * there is one.
+     */
+    public void finish(String[] args) throws IOException {
+        if (args.length > 0) {
+            final Writer out = new FileWriter(args[0]);
+            try {
+                writeJson(out);
+            } finally {
+                out.close();
+            }
+        }
+        // Keep the sink observable so the measured work stays live.
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    /** A system property, escaped for a JSON string. */
+    private static String property(String name) {
+        return System.getProperty(name, "").replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private double iteration(Operation operation) {
+        long calls = 0;
+        long result = 0;
+        final long start = System.nanoTime();
+        long elapsed;
+        do {
+            result += operation.run();
+            calls++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < iterationNanos);
+        sink += result;
+        return (double) elapsed / calls;
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+
+    /** Half width of a rough 99.9% interval, as JMH reports it. */
+    private static double error(double[] values) {
+        if (values.length < 2) {
+            return Double.NaN;
+        }
+        final double mean = mean(values);
+        double squares = 0;
+        for (double value : values) {
+            squares += (value - mean) * (value - mean);
+        }
+        final double deviation = Math.sqrt(squares / (values.length - 1));
+        return 3.29 * deviation / Math.sqrt(values.length);
+    }
+}
@@ -0,0 +1,271 @@
+package com.jr3dL.android.bench;
+
+import java.util.Random;
+
+import com.jr3dL.android.data.MeshData;
+import com.jr3dL.android.scene.Bvh;
+import com.jr3dL.android.scene.FrustumCuller;
+import com.jr3dL.android.scene.Scene;
+import com.jr3dL.android.scene.TransformCache;
+
+/**
+ * Compares the {@link Bvh} against testing every object, at 1k, 10k and
+ * 100k randomly placed boxes spread over a house-sized floor plan: frustum
+ * culling, box queries, nearest-hit raycasts, and keeping the index up to
+ * date when 1% of the objects move each frame.
+ *
+ * Run from the project directory after compiling src and benchmarks into
+ * one class folder:
+ *
+ *     javac -d bin/bench -cp android.jar $(find src benchmarks -name "*.java")
+ *     java -cp bin/bench com.jr3dL.android.bench.BvhBenchmark [results.json]
+ */
+public class BvhBenchmark {
+    private static final int[] OBJECT_COUNTS = {1000, 10000, 100000};
+    private static final float HALF_WIDTH = 100.0f;
+    private static final float HEIGHT = 10.0f;
+    private static final int QUERY_COUNT = 64;
+
+    private final int objectCount;
+    private final Random random = new Random(42);
+    private final Scene scene;
+    private final float[] world;
+    private final int[] nodes;
+    private final float[] bounds;
+    private final FrustumCuller culler;
+    private final Bvh bvh = new Bvh();
+    private final int[] out;
+
+    private final float[] queryBoxes = new float[QUERY_COUNT * Bvh.BOUNDS_SIZE];
+    private final float[] rays = new float[QUERY_COUNT * 3];
+    private int query;
+
+    private BvhBenchmark(int objectCount) {
+        this.objectCount = objectCount;
+        scene = new Scene(objectCount);
+        final int mesh = scene.addMesh("cube");
+        final int material = scene.addMaterial("plain", null);
+        world = new float[objectCount * TransformCache.MATRIX_SIZE];
+        nodes = new int[objectCount];
+        bounds = new float[objectCount * Bvh.BOUNDS_SIZE];
+        out = new int[objectCount];
+        for (int i = 0; i < objectCount; i++) {
+            final float x = (random.nextFloat() * 2.0f - 1.0f) * HALF_WIDTH;
+            final float y = random.nextFloat() * HEIGHT;
+            final float z = (random.nextFloat() * 2.0f - 1.0f) * HALF_WIDTH;
+            final float size = 0.2f + random.nextFloat() * 1.5f;
+            nodes[i] = scene.addNode(mesh, material, x, y, z, size, size, size,
+                0.0f, 0.0f, 1.0f, 0.0f, Scene.FLAG_STATIC);
+            setWorld(i, x, y, z, size);
+        }
+
+        culler = new FrustumCuller(scene);
+        culler.setMeshBounds(mesh, unitCube());
+        culler.updateBounds(world, nodes, objectCount);
+        culler.setViewProjection(viewProjection());
+        for (int i = 0; i < objectCount; i++) {
+            culler.getBounds(i, bounds, i * Bvh.BOUNDS_SIZE);
+        }
+        bvh.build(bounds, objectCount);
+
+        for (int q = 0; q < QUERY_COUNT; q++) {
+            final int b = q * Bvh.BOUNDS_SIZE;
+            final float x = (random.nextFloat() * 2.0f - 1.0f) * HALF_WIDTH;
+            final float z = (random.nextFloat() * 2.0f - 1.0f) * HALF_WIDTH;
+            queryBoxes[b] = x - 5.0f;
+            queryBoxes[b + 1] = 0.0f;
+            queryBoxes[b + 2] = z - 5.0f;
+            queryBoxes[b + 3] = x + 5.0f;
+            queryBoxes[b + 4] = HEIGHT;
+            queryBoxes[b + 5] = z + 5.0f;
+            final double angle = random.nextDouble() * Math.PI * 2.0;
+            rays[q * 3] = (float) Math.cos(angle);
+            rays[q * 3 + 1] = -0.05f;
+            rays[q * 3 + 2] = (float) Math.sin(angle);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        final BenchmarkRunner runner = new BenchmarkRunner();
+        run(runner);
+        runner.finish(args);
+    }
+
+    static void run(BenchmarkRunner runner) {
+        for (int objectCount : OBJECT_COUNTS) {
+            final BvhBenchmark b = new BvhBenchmark(objectCount);
+            final String param = "objects=" + objectCount;
+            runner.run("frustumCull.bruteForce", param, new BenchmarkRunner.Operation() {
+                @Override
+                public long run() {
+                    b.culler.cull();
+                    return b.culler.getVisibleCount();
+                }
+            });
+            runner.run("frustumCull.bvh", param, new BenchmarkRunner.Operation() {
+                @Override
+                public long run() {
+                    return b.bvh.queryFrustum(b.culler, b.out);
+                }
+            });
+            runner.run("boxQuery.bruteForce", param, new BenchmarkRunner.Operation() {
+                @Override
+                public long run() {
+                    return b.bruteForceBoxQuery();
+                }
+            });
+            runner.run("boxQuery.bvh", param, new BenchmarkRunner.Operation() {
+                @Override
+                public long run() {
+                    final float[] q = b.queryBoxes;
+                    final int o = b.nextQuery() * Bvh.BOUNDS_SIZE;
+                    return b.bvh.queryBox(q[o], q[o + 1], q[o + 2], q[o + 3], q[o + 4], q[o + 5],
+                        b.out);
+                }
+            });
+            runner.run("raycast.bruteForce", param, new BenchmarkRunner.Operation() {
+                @Override
+                public long run() {
+                    return b.bruteForceRaycast();
+                }
+            });
+            runner.run("raycast.bvh", param, new BenchmarkRunner.Operation() {
+                @Override
+                public long run() {
+                    final int r = b.nextQuery() * 3;
+                    return b.bvh.raycast(0.0f, 1.5f, 0.0f, b.rays[r], b.rays[r + 1], b.rays[r + 2],
+                        Float.POSITIVE_INFINITY, null);
+                }
+            });
+            runner.run("moveOnePercent.rebuild", param, new BenchmarkRunner.Operation() {
+                @Override
+                public long run() {
+                    b.moveObjects(false);
+                    return b.bvh.getNodeCount();
+                }
+            });
+            runner.run("moveOnePercent.refit", param, new BenchmarkRunner.Operation() {
+                @Override
+                public long run() {
+                    b.moveObjects(true);
+                    return b.bvh.getNodeCount();
+                }
+            });
+        }
+    }
+
+    private int nextQuery() {
+        query = (query + 1) & (QUERY_COUNT - 1);
+        return query;
+    }
+
+    private int bruteForceBoxQuery() {
+        final int o = nextQuery() * Bvh.BOUNDS_SIZE;
+        final float[] q = queryBoxes;
+        int count = 0;
+        for (int i = 0; i < objectCount; i++) {
+            final int b = i * Bvh.BOUNDS_SIZE;
+            if (bounds[b] <= q[o + 3] && bounds[b + 3] >= q[o]
+                && bounds[b + 1] <= q[o + 4] && bounds[b + 4] >= q[o + 1]
+                && bounds[b + 2] <= q[o + 5] && bounds[b + 5] >= q[o + 2]) {
+                out[count++] = i;
+            }
+        }
+        return count;
+    }
+
+    private int bruteForceRaycast() {
+        final int r = nextQuery() * 3;
+        final float inverseX = 1.0f / rays[r];
+        final float inverseY = 1.0f / rays[r + 1];
+        final float inverseZ = 1.0f / rays[r + 2];
+        float nearest = Float.POSITIVE_INFINITY;
+        int hit = -1;
+        for (int i = 0; i < objectCount; i++) {
+            final int b = i * Bvh.BOUNDS_SIZE;
+            final float x0 = (bounds[b] - 0.0f) * inverseX;
+            final float x1 = (bounds[b + 3] - 0.0f) * inverseX;
+            final float y0 = (bounds[b + 1] - 1.5f) * inverseY;
+            final float y1 = (bounds[b + 4] - 1.5f) * inverseY;
+            final float z0 = (bounds[b + 2] - 0.0f) * inverseZ;
+            final float z1 = (bounds[b + 5] - 0.0f) * inverseZ;
+            final float enter = Math.max(Math.max(Math.min(x0, x1), Math.min(y0, y1)),
+                Math.max(Math.min(z0, z1), 0.0f));
+            final float exit = Math.min(Math.min(Math.max(x0, x1), Math.max(y0, y1)),
+                Math.min(Math.max(z0, z1), nearest));
+            if (enter <= exit && enter < nearest) {
+                nearest = enter;
+                hit = i;
+            }
+        }
+        return hit;
+    }
+
+    /**
+     * Nudges 1% of the objects and brings the index up to date, by refitting
+     * or by rebuilding it.
+     */
+    private void moveObjects(boolean refit) {
+        final int moved = Math.max(1, objectCount / 100);
+        for (int m = 0; m < moved; m++) {
+            final int object = random.nextInt(objectCount);
+            final int b = object * Bvh.BOUNDS_SIZE;
+            final float dx = (random.nextFloat() - 0.5f) * 0.1f;
+            final float dz = (random.nextFloat() - 0.5f) * 0.1f;
+            bounds[b] += dx;
+            bounds[b + 3] += dx;
+            bounds[b + 2] += dz;
+            bounds[b + 5] += dz;
+            if (refit) {
+                bvh.setObjectBounds(object, bounds[b], bounds[b + 1], bounds[b + 2],
+                    bounds[b + 3], bounds[b + 4], bounds[b + 5]);
+            }
+        }
+        if (!refit) {
+            bvh.build(bounds, objectCount);
+        }
+    }
+
+    private void setWorld(int node, float x, float y, float z, float size) {
+        final int m = node * TransformCache.MATRIX_SIZE;
+        world[m] = size;
+        world[m + 5] = size;
+        world[m + 10] = size;
+        world[m + 12] = x;
+        world[m + 13] = y;
+        world[m + 14] = z;
+        world[m + 15] = 1.0f;
+    }
+
+    private static MeshData unitCube() {
+        final float[] vertices = new float[2 * MeshData.STRIDE];
+        vertices[0] = -0.5f;
+        vertices[1] = -0.5f;
+        vertices[2] = -0.5f;
+        vertices[MeshData.STRIDE] = 0.5f;
+        vertices[MeshData.STRIDE + 1] = 0.5f;
+        vertices[MeshData.STRIDE + 2] = 0.5f;
+        return new MeshData(vertices, new short[0]);
+    }
+
+    /**
+     * A 60 degree perspective from eye height in the middle of the plan,
+     * looking down -z, out to 100 units. Built by hand so the benchmark
+     * doesn't need android.opengl.Matrix.
+     */
+    private static float[] viewProjection() {
+        final float near = 0.5f;
+        final float far = 100.0f;
+        final float aspect = 1.5f;
+        final float f = (float) (1.0 / Math.tan(Math.toRadians(30.0)));
+        final float[] m = new float[16];
+        m[0] = f / aspect;
+        m[5] = f;
+        m[10] = (far + near) / (near - far);
+        m[11] = -1.0f;
+        m[14] = 2.0f * far * near / (near - far);
+        // View translation by (0, -1.5, 0) folded into the last column.
+        m[13] = -1.5f * f;
+        return m;
+    }
+}
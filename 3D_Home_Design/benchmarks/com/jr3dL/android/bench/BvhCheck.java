@@ -0,0 +1,169 @@
+package com.jr3dL.android.bench;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import com.jr3dL.android.data.MeshData;
+import com.jr3dL.android.math.Matrix4;
+import com.jr3dL.android.scene.Bvh;
+import com.jr3dL.android.scene.FrustumCuller;
+import com.jr3dL.android.scene.Scene;
+import com.jr3dL.android.scene.TransformCache;
+
+/**
+ * Checks {@link Bvh#queryFrustum} finds exactly the nodes
+ * {@link FrustumCuller#cull} marks visible, each once, for cameras looking
+ * every way across a scene of turned and unevenly scaled boxes. The check
+ * runs on a freshly built tree, then again after moving a tenth of the
+ * nodes to new places and refitting the tree with
+ * {@link Bvh#setObjectBounds} instead of rebuilding it. Exits non-zero at
+ * the first disagreement.
+ *
+ *     java -cp bin/bench com.jr3dL.android.bench.BvhCheck
+ */
+public class BvhCheck {
+    private static final int OBJECT_COUNT = 2000;
+    private static final int VIEW_COUNT = 64;
+    private static final int MOVE_ROUNDS = 4;
+    private static final float HALF_WIDTH = 50.0f;
+    private static final float HEIGHT = 10.0f;
+
+    private final Random random = new Random(10);
+    private final Scene scene = new Scene(OBJECT_COUNT);
+    private final float[] world = new float[OBJECT_COUNT * TransformCache.MATRIX_SIZE];
+    private final float[] bounds = new float[OBJECT_COUNT * Bvh.BOUNDS_SIZE];
+    private final int[] nodes = new int[OBJECT_COUNT];
+    private final int[] out = new int[OBJECT_COUNT];
+    private final boolean[] found = new boolean[OBJECT_COUNT];
+    private final float[] viewProjection = new float[16];
+    private final FrustumCuller culler = new FrustumCuller(scene);
+    private final Bvh bvh = new Bvh();
+
+    private BvhCheck() {
+        final int mesh = scene.addMesh("cube");
+        final int material = scene.addMaterial("plain", null);
+        for (int i = 0; i < OBJECT_COUNT; i++) {
+            nodes[i] = scene.addNode(mesh, material, 0.0f, 0.0f, 0.0f, 1.0f, 1.0f, 1.0f,
+                0.0f, 0.0f, 1.0f, 0.0f, Scene.FLAG_STATIC);
+            place(i);
+        }
+        culler.setMeshBounds(mesh, unitCube());
+        culler.updateBounds(world, nodes, OBJECT_COUNT);
+        for (int i = 0; i < OBJECT_COUNT; i++) {
+            culler.getBounds(i, bounds, i * Bvh.BOUNDS_SIZE);
+        }
+        bvh.build(bounds, OBJECT_COUNT);
+    }
+
+    public static void main(String[] args) {
+        run();
+    }
+
+    static void run() {
+        final BvhCheck c = new BvhCheck();
+        int visible = c.checkViews("fresh build");
+        final int moved = OBJECT_COUNT / 10;
+        for (int round = 0; round < MOVE_ROUNDS; round++) {
+            c.moveNodes(moved);
+            visible += c.checkViews("refit after moving " + moved + " nodes, round " + round);
+        }
+        final int views = VIEW_COUNT * (MOVE_ROUNDS + 1);
+        System.out.println("bvh: frustum queries match culling every node over " + views
+            + " views, before and after refits, " + visible / views + " of " + OBJECT_COUNT
+            + " visible on average");
+    }
+
+    /**
+     * Compares the tree against culling every node from a run of random
+     * cameras. Returns the visible nodes summed over the views.
+     */
+    private int checkViews(String when) {
+        final float[] view = new float[16];
+        final float[] projection = new float[16];
+        Matrix4.frustum(projection, 0, -0.6f, 0.6f, -0.4f, 0.4f, 0.5f, 60.0f);
+        int visible = 0;
+        for (int v = 0; v < VIEW_COUNT; v++) {
+            final float eyeX = (random.nextFloat() * 2.0f - 1.0f) * HALF_WIDTH;
+            final float eyeY = random.nextFloat() * HEIGHT;
+            final float eyeZ = (random.nextFloat() * 2.0f - 1.0f) * HALF_WIDTH;
+            final double angle = random.nextDouble() * Math.PI * 2.0;
+            Matrix4.setLookAt(view, 0, eyeX, eyeY, eyeZ, eyeX + (float) Math.cos(angle),
+                eyeY + random.nextFloat() - 0.5f, eyeZ + (float) Math.sin(angle),
+                0.0f, 1.0f, 0.0f);
+            Matrix4.multiply(viewProjection, 0, projection, 0, view, 0);
+            culler.setViewProjection(viewProjection);
+            culler.cull();
+            visible += compare(when + ", view " + v);
+        }
+        if (visible == 0) {
+            throw new RuntimeException(when + ": no view saw anything");
+        }
+        return visible;
+    }
+
+    private int compare(String where) {
+        final int count = bvh.queryFrustum(culler, out);
+        Arrays.fill(found, false);
+        for (int i = 0; i < count; i++) {
+            final int node = out[i];
+            if (found[node]) {
+                throw new RuntimeException(where + ": node " + node + " found twice");
+            }
+            if (!culler.isVisible(node)) {
+                throw new RuntimeException(where + ": node " + node
+                    + " found by the tree but culled");
+            }
+            found[node] = true;
+        }
+        if (count != culler.getVisibleCount()) {
+            for (int node = 0; node < OBJECT_COUNT; node++) {
+                if (culler.isVisible(node) && !found[node]) {
+                    throw new RuntimeException(where + ": node " + node
+                        + " visible but missed by the tree");
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Moves nodes anywhere on the plan, far enough to leave their old
+     * subtrees, and refits the tree over their new bounds.
+     */
+    private void moveNodes(int count) {
+        final int[] moved = new int[count];
+        for (int m = 0; m < count; m++) {
+            moved[m] = random.nextInt(OBJECT_COUNT);
+            place(moved[m]);
+        }
+        culler.updateBounds(world, moved, count);
+        for (int m = 0; m < count; m++) {
+            final int node = moved[m];
+            final int b = node * Bvh.BOUNDS_SIZE;
+            culler.getBounds(node, bounds, b);
+            bvh.setObjectBounds(node, bounds[b], bounds[b + 1], bounds[b + 2],
+                bounds[b + 3], bounds[b + 4], bounds[b + 5]);
+        }
+    }
+
+    /** Gives a node a random place, turn and uneven scale. */
+    private void place(int node) {
+        Matrix4.setTranslateScaleRotate(world, node * TransformCache.MATRIX_SIZE,
+            (random.nextFloat() * 2.0f - 1.0f) * HALF_WIDTH, random.nextFloat() * HEIGHT,
+            (random.nextFloat() * 2.0f - 1.0f) * HALF_WIDTH,
+            0.2f + random.nextFloat() * 2.0f, 0.2f + random.nextFloat() * 2.0f,
+            0.2f + random.nextFloat() * 2.0f, random.nextFloat() * 360.0f,
+            random.nextFloat() - 0.5f, random.nextFloat() - 0.5f, random.nextFloat() - 0.5f);
+    }
+
+    private static MeshData unitCube() {
+        final float[] vertices = new float[2 * MeshData.STRIDE];
+        vertices[0] = -0.5f;
+        vertices[1] = -0.5f;
+        vertices[2] = -0.5f;
+        vertices[MeshData.STRIDE] = 0.5f;
+        vertices[MeshData.STRIDE + 1] = 0.5f;
+        vertices[MeshData.STRIDE + 2] = 0.5f;
+        return new MeshData(vertices, new short[0]);
+    }
+}
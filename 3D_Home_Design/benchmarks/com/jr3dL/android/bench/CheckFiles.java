@@ -0,0 +1,85 @@
+package com.jr3dL.android.bench;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import com.jr3dL.android.programs.ShaderPreprocessor;
+import com.jr3dL.android.util.TextReader;
+
+/**
+ * Files the checks read and write: the app's res/raw folder, found from
+ * wherever the JVM was started, and temporary directories.
+ */
+final class CheckFiles {
+    private static final String RAW = "res" + File.separator + "raw";
+    private static final String PROJECT = "3D_Home_Design";
+    /** A file every res/raw folder of this app has. */
+    private static final String MARKER = "house_scene.txt";
+
+    private CheckFiles() {
+    }
+
+    /**
+     * The res/raw folder: -Dbench.res if set, otherwise the first one found
+     * from the working directory up, in it or in the project folder.
+     */
+    static File rawDirectory() {
+        final String property = System.getProperty("bench.res");
+        if (property != null) {
+            return new File(property);
+        }
+        for (File dir = new File("").getAbsoluteFile(); dir != null; dir = dir.getParentFile()) {
+            final File[] candidates = {new File(dir, RAW), new File(new File(dir, PROJECT), RAW)};
+            for (File candidate : candidates) {
+                if (new File(candidate, MARKER).isFile()) {
+                    return candidate;
+                }
+            }
+        }
+        throw new RuntimeException("No res/raw folder above " + new File("").getAbsolutePath()
+            + "; set -Dbench.res");
+    }
+
+    /** Reads a file of res/raw as text. */
+    static String readRaw(String name) {
+        try {
+            return TextReader.readText(new FileInputStream(new File(rawDirectory(), name)));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** A preprocessor including files from res/raw, as the renderer does. */
+    static ShaderPreprocessor newPreprocessor() {
+        return new ShaderPreprocessor(new ShaderPreprocessor.Includer() {
+            @Override
+            public String read(String name) {
+                return readRaw(name);
+            }
+        });
+    }
+
+    /** Creates an empty temporary directory; delete it with {@link #deleteRecursively}. */
+    static File createTempDirectory(String prefix) {
+        try {
+            final File directory = File.createTempFile(prefix, "");
+            if (!directory.delete() || !directory.mkdir()) {
+                throw new IOException("Could not create " + directory);
+            }
+            return directory;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static void deleteRecursively(File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
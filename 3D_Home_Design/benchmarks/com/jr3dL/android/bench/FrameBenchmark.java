@@ -0,0 +1,100 @@
+package com.jr3dL.android.bench;
+
+import com.jr3dL.android.math.Matrix4;
+import com.jr3dL.android.scene.Scene;
+import com.jr3dL.android.scene.TransformCache;
+
+/**
+ * Times the CPU side of loading and animating a scene, on synthetic scenes
+ * of 100 to 100k objects from {@link SyntheticScene}:
+ *
+ * <ul>
+ * <li>parsing the scene file, as the renderer's constructor does;</li>
+ * <li>the first frame, when every node's matrices are built;</li>
+ * <li>a steady frame as onDrawFrame runs it: the spinning tenth of the
+ * nodes get a new angle and only their matrices are rebuilt;</li>
+ * <li>a frame where the camera moved, so every model-view and
+ * model-view-projection matrix is rebuilt.</li>
+ * </ul>
+ *
+ *     java -cp bin/bench com.jr3dL.android.bench.FrameBenchmark [results.json]
+ */
+public class FrameBenchmark {
+    private static final int[] OBJECT_COUNTS = {100, 1000, 10000, 100000};
+
+    private final byte[] sceneBytes;
+    private final Scene scene;
+    private final TransformCache transforms;
+    private final float[] view = new float[16];
+    private final float[] projection = new float[16];
+    private int frame;
+
+    private FrameBenchmark(int objectCount) {
+        sceneBytes = SyntheticScene.bytes(objectCount, 42);
+        scene = SyntheticScene.create(objectCount, 42);
+        transforms = new TransformCache(scene);
+        // The renderer's camera and projection, for a 3:2 portrait screen.
+        Matrix4.setLookAt(view, 0, 0.0f, 1.6f, 0.0f, 0.0f, 0.0f, -20.0f, 0.0f, 1.0f, 0.0f);
+        Matrix4.frustum(projection, 0, -1.0f, 1.0f, -1.5f, 1.5f, 1.0f, 20.0f);
+        transforms.update(view, projection);
+    }
+
+    public static void main(String[] args) throws Exception {
+        final BenchmarkRunner runner = new BenchmarkRunner();
+        run(runner);
+        runner.finish(args);
+    }
+
+    static void run(BenchmarkRunner runner) {
+        for (int objectCount : OBJECT_COUNTS) {
+            final FrameBenchmark b = new FrameBenchmark(objectCount);
+            final String param = "objects=" + objectCount;
+            runner.run("scene.parse", param, new BenchmarkRunner.Operation() {
+                @Override
+                public long run() {
+                    return SyntheticScene.parse(b.sceneBytes).getNodeCount();
+                }
+            });
+            runner.run("frame.firstFrameMatrices", param, new BenchmarkRunner.Operation() {
+                @Override
+                public long run() {
+                    final int nodeCount = b.scene.getNodeCount();
+                    for (int node = 0; node < nodeCount; node++) {
+                        b.transforms.markDirty(node);
+                    }
+                    b.transforms.update(b.view, b.projection);
+                    return b.transforms.getRecomputedCount();
+                }
+            });
+            runner.run("frame.spinMatrices", param, new BenchmarkRunner.Operation() {
+                @Override
+                public long run() {
+                    return b.spinFrame();
+                }
+            });
+            runner.run("frame.cameraMovedMatrices", param, new BenchmarkRunner.Operation() {
+                @Override
+                public long run() {
+                    b.transforms.markViewChanged();
+                    b.transforms.update(b.view, b.projection);
+                    return b.transforms.getRecomputedCount();
+                }
+            });
+        }
+    }
+
+    /** What onDrawFrame does before culling, with the clock replaced by a counter. */
+    private long spinFrame() {
+        frame++;
+        final float angleInDegrees = (frame % 360) + 0.5f;
+        final int nodeCount = scene.getNodeCount();
+        final int[] flags = scene.getFlags();
+        for (int node = 0; node < nodeCount; node++) {
+            if ((flags[node] & Scene.FLAG_SPIN) != 0) {
+                transforms.setRotationAngle(node, angleInDegrees);
+            }
+        }
+        transforms.update(view, projection);
+        return transforms.getRecomputedCount();
+    }
+}
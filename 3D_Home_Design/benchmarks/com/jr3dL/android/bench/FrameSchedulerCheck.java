@@ -0,0 +1,195 @@
+package com.jr3dL.android.bench;
+
+import com.jr3dL.android.render.FrameScheduler;
+
+/**
+ * Drives a {@link FrameScheduler} with a fake clock through the states a
+ * session goes through: idle, a dirty change, a change marked during the
+ * frame that handles another, a touch and its hold running out, and frames
+ * drawn only for animation at a capped rate. Checks the delay of every
+ * frame request, and that an idle scheduler requests none.
+ *
+ * Then it runs frames the way the update thread does, whenever the
+ * scheduler asks, each taking a millisecond, with every frame marking the
+ * scene dirty again as texture streaming does, and checks one touch gets
+ * no more frames than its hold has room for at full rate. Exits non-zero
+ * at the first failure.
+ *
+ *     java -cp bin/bench com.jr3dL.android.bench.FrameSchedulerCheck
+ */
+public class FrameSchedulerCheck {
+    private static final long HOLD_MILLIS = 1000;
+    private static final long MIN_FRAME_INTERVAL_MILLIS = 16;
+    private static final long FRAME_MILLIS = 1;
+    /** Frames after which a simulation counts as spinning. */
+    private static final int SPIN_FRAMES = 100000;
+
+    /** A clock that only moves when told to. */
+    static final class FakeClock implements FrameScheduler.Clock {
+        long now = 10000;
+
+        @Override
+        public long uptimeMillis() {
+            return now;
+        }
+    }
+
+    /** Remembers the requests it gets. */
+    static final class RecordingTarget implements FrameScheduler.Target {
+        int requestCount;
+        long lastDelay = FrameScheduler.IDLE;
+
+        @Override
+        public void requestFrame(long delayMillis) {
+            requestCount++;
+            lastDelay = delayMillis;
+        }
+    }
+
+    private final FakeClock clock = new FakeClock();
+    private final RecordingTarget target = new RecordingTarget();
+    private final FrameScheduler scheduler = new FrameScheduler(clock);
+
+    public static void main(String[] args) {
+        run();
+    }
+
+    static void run() {
+        final FrameSchedulerCheck c = new FrameSchedulerCheck();
+        c.scheduler.setTarget(c.target);
+        c.scheduler.setInteractionHoldMillis(HOLD_MILLIS);
+        c.scheduler.setMinFrameIntervalMillis(MIN_FRAME_INTERVAL_MILLIS);
+        c.checkDirty();
+        c.checkInteraction();
+        c.checkAnimation();
+        final int frames = c.checkPacing();
+        System.out.println("frame scheduler: idle, dirty, interaction hold and animation "
+            + "requests as expected; one touch ran " + frames + " frames");
+    }
+
+    private void checkDirty() {
+        expectDelay("idle at start", FrameScheduler.IDLE);
+        expectRequests("idle at start", 0);
+
+        scheduler.invalidate(FrameScheduler.DIRTY_SCENE);
+        expectRequest("scene change", 1, 0);
+        expect("flags of the frame", FrameScheduler.DIRTY_SCENE, scheduler.beginFrame());
+        scheduler.invalidate(FrameScheduler.DIRTY_CAMERA);
+        expectRequests("change during a frame", 1);
+        scheduler.endFrame();
+        expectRequest("change left by a frame", 2, MIN_FRAME_INTERVAL_MILLIS);
+        clock.now += MIN_FRAME_INTERVAL_MILLIS;
+        expect("flags of the next frame", FrameScheduler.DIRTY_CAMERA, scheduler.beginFrame());
+        scheduler.endFrame();
+        expectRequests("clean frame", 2);
+        expectDelay("idle after the changes", FrameScheduler.IDLE);
+    }
+
+    private void checkInteraction() {
+        final int requests = target.requestCount;
+        clock.now += 5000;
+        final long touched = clock.now;
+        scheduler.onInteraction();
+        expectRequest("touch", requests + 1, 0);
+        frame();
+        expectRequest("frame during the hold", requests + 2, MIN_FRAME_INTERVAL_MILLIS);
+        clock.now += MIN_FRAME_INTERVAL_MILLIS / 2;
+        expectDelay("between frames during the hold", MIN_FRAME_INTERVAL_MILLIS / 2);
+
+        clock.now = touched + HOLD_MILLIS / 2;
+        frame();
+        expectRequest("frame halfway through the hold", requests + 3,
+            MIN_FRAME_INTERVAL_MILLIS);
+
+        clock.now = touched + HOLD_MILLIS;
+        expectDelay("hold over", FrameScheduler.IDLE);
+        frame();
+        expectRequests("frame after the hold", requests + 3);
+    }
+
+    private void checkAnimation() {
+        clock.now += 5000;
+        frame();
+        scheduler.setAnimationFrameRate(10);
+        final int requests = target.requestCount;
+        scheduler.setAnimating(true);
+        expectRequest("animation started right after a frame", requests + 1, 100);
+
+        clock.now += 100;
+        frame();
+        expectRequest("animation frame", requests + 2, 100);
+        clock.now += 40;
+        expectDelay("between animation frames", 60);
+        clock.now += 200;
+        expectDelay("animation frame overdue", 0);
+
+        frame();
+        scheduler.setAnimationFrameRate(0);
+        expectRequest("cap lifted", requests + 4, MIN_FRAME_INTERVAL_MILLIS);
+        clock.now += MIN_FRAME_INTERVAL_MILLIS;
+        frame();
+        expectRequest("uncapped animation", requests + 5, MIN_FRAME_INTERVAL_MILLIS);
+
+        scheduler.setAnimating(false);
+        expectDelay("animation stopped", FrameScheduler.IDLE);
+        frame();
+        expectRequests("frame after animation", requests + 5);
+    }
+
+    /**
+     * Touches once and runs frames as they are requested until the
+     * scheduler goes idle. Returns how many ran.
+     */
+    private int checkPacing() {
+        clock.now += 5000;
+        final long touched = clock.now;
+        final int requests = target.requestCount;
+        scheduler.onInteraction();
+        int frames = 0;
+        int handled = requests;
+        while (target.requestCount > handled) {
+            handled = target.requestCount;
+            clock.now += target.lastDelay;
+            scheduler.beginFrame();
+            clock.now += FRAME_MILLIS;
+            if (clock.now - touched < HOLD_MILLIS / 2) {
+                scheduler.invalidate(FrameScheduler.DIRTY_SCENE);
+            }
+            scheduler.endFrame();
+            if (++frames == SPIN_FRAMES) {
+                throw new RuntimeException("Frames ran back to back after a touch: "
+                    + frames + " in " + (clock.now - touched) + " ms");
+            }
+        }
+        final long most = HOLD_MILLIS / MIN_FRAME_INTERVAL_MILLIS + 2;
+        if (frames > most) {
+            throw new RuntimeException("One touch ran " + frames + " frames, more than "
+                + most);
+        }
+        return frames;
+    }
+
+    private void frame() {
+        scheduler.beginFrame();
+        scheduler.endFrame();
+    }
+
+    private void expectRequest(String what, int count, long delay) {
+        expectRequests(what, count);
+        expect(what + ": delay", delay, target.lastDelay);
+    }
+
+    private void expectRequests(String what, int count) {
+        expect(what + ": requests", count, target.requestCount);
+    }
+
+    private void expectDelay(String what, long delay) {
+        expect(what + ": delay", delay, scheduler.getDelayMillis());
+    }
+
+    private static void expect(String what, long expected, long actual) {
+        if (expected != actual) {
+            throw new RuntimeException(what + " is " + actual + " instead of " + expected);
+        }
+    }
+}
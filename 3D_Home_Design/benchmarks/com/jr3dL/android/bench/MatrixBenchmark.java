@@ -0,0 +1,211 @@
+package com.jr3dL.android.bench;
+
+import java.util.Random;
+
+import com.jr3dL.android.math.Matrix4;
+import com.jr3dL.android.math.MatrixStack;
+
+/**
+ * Times rebuilding node matrices with {@link Matrix4} against
+ * {@link ReferenceMatrix}, the android.opengl.Matrix call sequence the
+ * transform cache used to make, at 100, 1k and 10k nodes: identity,
+ * translate, scale and rotate for the model matrix, then model-view and
+ * model-view-projection. A second pair walks a two-level parent/child
+ * hierarchy, with a {@link MatrixStack} against copying each parent into a
+ * new array.
+ *
+ * That both sides compute the same bits is {@link MatrixCheck}'s job.
+ *
+ *     java -cp bin/bench com.jr3dL.android.bench.MatrixBenchmark [results.json]
+ */
+public class MatrixBenchmark {
+    private static final int[] NODE_COUNTS = {100, 1000, 10000};
+    private static final int CHILDREN_PER_PARENT = 8;
+
+    private final int nodeCount;
+    private final float[] transforms;
+    private final float[] world;
+    private final float[] mv;
+    private final float[] mvp;
+    private final float[] view = new float[16];
+    private final float[] projection = new float[16];
+    private final MatrixStack stack = new MatrixStack(4);
+
+    private MatrixBenchmark(int nodeCount) {
+        this.nodeCount = nodeCount;
+        final Random random = new Random(42);
+        transforms = new float[nodeCount * 10];
+        for (int i = 0; i < nodeCount; i++) {
+            randomTransform(random, transforms, i * 10);
+        }
+        world = new float[nodeCount * 16];
+        mv = new float[nodeCount * 16];
+        mvp = new float[nodeCount * 16];
+        Matrix4.setLookAt(view, 0, 0.0f, 1.6f, 0.0f, 0.0f, 0.0f, -20.0f, 0.0f, 1.0f, 0.0f);
+        Matrix4.frustum(projection, 0, -1.0f, 1.0f, -0.6f, 0.6f, 1.0f, 20.0f);
+    }
+
+    public static void main(String[] args) throws Exception {
+        final BenchmarkRunner runner = new BenchmarkRunner();
+        run(runner);
+        runner.finish(args);
+    }
+
+    static void run(BenchmarkRunner runner) {
+        for (int nodeCount : NODE_COUNTS) {
+            final MatrixBenchmark b = new MatrixBenchmark(nodeCount);
+            final String param = "nodes=" + nodeCount;
+            runner.run("nodeMatrices.reference", param, new BenchmarkRunner.Operation() {
+                @Override
+                public long run() {
+                    return b.updateReference();
+                }
+            });
+            runner.run("nodeMatrices.matrix4", param, new BenchmarkRunner.Operation() {
+                @Override
+                public long run() {
+                    return b.updateMatrix4();
+                }
+            });
+            runner.run("nodeMatrices.fastPath", param, new BenchmarkRunner.Operation() {
+                @Override
+                public long run() {
+                    return b.updateFastPath();
+                }
+            });
+            runner.run("hierarchy.reference", param, new BenchmarkRunner.Operation() {
+                @Override
+                public long run() {
+                    return b.hierarchyReference();
+                }
+            });
+            runner.run("hierarchy.stack", param, new BenchmarkRunner.Operation() {
+                @Override
+                public long run() {
+                    return b.hierarchyStack();
+                }
+            });
+        }
+    }
+
+    private long updateReference() {
+        final float[] t = transforms;
+        for (int i = 0; i < nodeCount; i++) {
+            final int m = i * 16;
+            final int p = i * 10;
+            ReferenceMatrix.setIdentityM(world, m);
+            ReferenceMatrix.translateM(world, m, t[p], t[p + 1], t[p + 2]);
+            ReferenceMatrix.scaleM(world, m, t[p + 3], t[p + 4], t[p + 5]);
+            ReferenceMatrix.rotateM(world, m, t[p + 6], t[p + 7], t[p + 8], t[p + 9]);
+            ReferenceMatrix.multiplyMM(mv, m, view, 0, world, m);
+            ReferenceMatrix.multiplyMM(mvp, m, projection, 0, mv, m);
+        }
+        return Float.floatToRawIntBits(mvp[mvp.length - 4]);
+    }
+
+    private long updateMatrix4() {
+        final float[] t = transforms;
+        for (int i = 0; i < nodeCount; i++) {
+            final int m = i * 16;
+            final int p = i * 10;
+            Matrix4.setIdentity(world, m);
+            Matrix4.translate(world, m, t[p], t[p + 1], t[p + 2]);
+            Matrix4.scale(world, m, t[p + 3], t[p + 4], t[p + 5]);
+            Matrix4.rotate(world, m, t[p + 6], t[p + 7], t[p + 8], t[p + 9]);
+            Matrix4.multiply(mv, m, view, 0, world, m);
+            Matrix4.multiply(mvp, m, projection, 0, mv, m);
+        }
+        return Float.floatToRawIntBits(mvp[mvp.length - 4]);
+    }
+
+    private long updateFastPath() {
+        final float[] t = transforms;
+        for (int i = 0; i < nodeCount; i++) {
+            final int m = i * 16;
+            final int p = i * 10;
+            Matrix4.setTranslateScaleRotate(world, m, t[p], t[p + 1], t[p + 2],
+                t[p + 3], t[p + 4], t[p + 5], t[p + 6], t[p + 7], t[p + 8], t[p + 9]);
+            Matrix4.multiply(mv, m, view, 0, world, m);
+            Matrix4.multiply(mvp, m, projection, 0, mv, m);
+        }
+        return Float.floatToRawIntBits(mvp[mvp.length - 4]);
+    }
+
+    /**
+     * Every group of nodes hangs under a parent placed by the group's first
+     * transform; each child's own translate, scale and rotate apply under it.
+     */
+    private long hierarchyReference() {
+        final float[] t = transforms;
+        final float[] root = new float[16];
+        ReferenceMatrix.setIdentityM(root, 0);
+        for (int first = 0; first < nodeCount; first += CHILDREN_PER_PARENT) {
+            final float[] parent = root.clone();
+            final int q = first * 10;
+            ReferenceMatrix.translateM(parent, 0, t[q], t[q + 1], t[q + 2]);
+            ReferenceMatrix.rotateM(parent, 0, t[q + 6], t[q + 7], t[q + 8], t[q + 9]);
+            final int end = Math.min(first + CHILDREN_PER_PARENT, nodeCount);
+            for (int i = first; i < end; i++) {
+                final float[] child = parent.clone();
+                final int p = i * 10;
+                ReferenceMatrix.translateM(child, 0, t[p], t[p + 1], t[p + 2]);
+                ReferenceMatrix.scaleM(child, 0, t[p + 3], t[p + 4], t[p + 5]);
+                ReferenceMatrix.rotateM(child, 0, t[p + 6], t[p + 7], t[p + 8], t[p + 9]);
+                System.arraycopy(child, 0, world, i * 16, 16);
+            }
+        }
+        return Float.floatToRawIntBits(world[world.length - 4]);
+    }
+
+    private long hierarchyStack() {
+        final float[] t = transforms;
+        final MatrixStack s = stack;
+        s.reset();
+        for (int first = 0; first < nodeCount; first += CHILDREN_PER_PARENT) {
+            s.push();
+            final int q = first * 10;
+            s.translate(t[q], t[q + 1], t[q + 2]);
+            s.rotate(t[q + 6], t[q + 7], t[q + 8], t[q + 9]);
+            final int end = Math.min(first + CHILDREN_PER_PARENT, nodeCount);
+            for (int i = first; i < end; i++) {
+                s.push();
+                final int p = i * 10;
+                s.translate(t[p], t[p + 1], t[p + 2]);
+                s.scale(t[p + 3], t[p + 4], t[p + 5]);
+                s.rotate(t[p + 6], t[p + 7], t[p + 8], t[p + 9]);
+                s.get(world, i * 16);
+                s.pop();
+            }
+            s.pop();
+        }
+        return Float.floatToRawIntBits(world[world.length - 4]);
+    }
+
+    /**
+     * Translation, scale, then angle and axis. A third of the rotations are
+     * about a coordinate axis, which Android special-cases, and some
+     * components are zero or negative so signed zeros get exercised.
+     */
+    static void randomTransform(Random random, float[] t, int offset) {
+        for (int i = 0; i < 3; i++) {
+            t[offset + i] = random.nextInt(8) == 0 ? (random.nextBoolean() ? 0.0f : -0.0f)
+                : (random.nextFloat() - 0.5f) * 100.0f;
+        }
+        for (int i = 3; i < 6; i++) {
+            final float scale = 0.1f + random.nextFloat() * 4.0f;
+            t[offset + i] = random.nextInt(8) == 0 ? -scale : scale;
+        }
+        t[offset + 6] = random.nextInt(8) == 0 ? 90.0f * random.nextInt(4)
+            : random.nextFloat() * 360.0f;
+        if (random.nextInt(3) == 0) {
+            final int axis = random.nextInt(3);
+            t[offset + 7] = axis == 0 ? 1.0f : 0.0f;
+            t[offset + 8] = axis == 1 ? 1.0f : 0.0f;
+            t[offset + 9] = axis == 2 ? 1.0f : 0.0f;
+        } else {
+            t[offset + 7] = random.nextFloat() - 0.5f;
+            t[offset + 8] = random.nextFloat() - 0.5f;
+            t[offset + 9] = random.nextFloat() - 0.5f;
+        }
+    }
+}
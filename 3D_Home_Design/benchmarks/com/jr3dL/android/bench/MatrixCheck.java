@@ -0,0 +1,107 @@
+package com.jr3dL.android.bench;
+
+import java.util.Random;
+
+import com.jr3dL.android.math.Matrix4;
+import com.jr3dL.android.math.MatrixStack;
+
+/**
+ * Checks, over random and axis-aligned inputs, that every {@link Matrix4}
+ * operation, the translate-scale-rotate fast path and the
+ * {@link MatrixStack} give bit-identical results to {@link ReferenceMatrix},
+ * the android.opengl.Matrix code they replaced. Needs no files or
+ * properties; exits non-zero at the first difference.
+ *
+ *     java -cp bin/bench com.jr3dL.android.bench.MatrixCheck
+ */
+public class MatrixCheck {
+    private static final int CHECK_COUNT = 200000;
+
+    public static void main(String[] args) {
+        run();
+    }
+
+    /** Compares every operation with the reference; throws on the first difference. */
+    static void run() {
+        final Random random = new Random(7);
+        final float[] t = new float[10];
+        final float[] expected = new float[32];
+        final float[] actual = new float[32];
+        final float[] a = new float[16];
+        final float[] b = new float[16];
+        final MatrixStack stack = new MatrixStack(2);
+        for (int n = 0; n < CHECK_COUNT; n++) {
+            MatrixBenchmark.randomTransform(random, t, 0);
+
+            ReferenceMatrix.setIdentityM(expected, 0);
+            ReferenceMatrix.translateM(expected, 0, t[0], t[1], t[2]);
+            ReferenceMatrix.scaleM(expected, 0, t[3], t[4], t[5]);
+            ReferenceMatrix.rotateM(expected, 0, t[6], t[7], t[8], t[9]);
+            Matrix4.setTranslateScaleRotate(actual, 0, t[0], t[1], t[2], t[3], t[4], t[5],
+                t[6], t[7], t[8], t[9]);
+            compare("setTranslateScaleRotate", expected, actual, 16);
+
+            Matrix4.setIdentity(actual, 0);
+            Matrix4.translate(actual, 0, t[0], t[1], t[2]);
+            Matrix4.scale(actual, 0, t[3], t[4], t[5]);
+            Matrix4.rotate(actual, 0, t[6], t[7], t[8], t[9]);
+            compare("translate, scale, rotate", expected, actual, 16);
+
+            stack.reset();
+            stack.translate(t[0], t[1], t[2]);
+            stack.push();
+            stack.scale(t[3], t[4], t[5]);
+            stack.rotate(t[6], t[7], t[8], t[9]);
+            stack.get(actual, 0);
+            compare("MatrixStack", expected, actual, 16);
+
+            for (int i = 0; i < 16; i++) {
+                a[i] = randomEntry(random);
+                b[i] = randomEntry(random);
+            }
+            ReferenceMatrix.multiplyMM(expected, 0, a, 0, b, 0);
+            Matrix4.multiply(actual, 0, a, 0, b, 0);
+            compare("multiply", expected, actual, 16);
+            System.arraycopy(a, 0, actual, 16, 16);
+            Matrix4.multiply(actual, 16, actual, 16, b, 0);
+            System.arraycopy(actual, 16, actual, 0, 16);
+            compare("multiply in place", expected, actual, 16);
+            stack.load(a, 0);
+            stack.multiply(b, 0);
+            stack.get(actual, 0);
+            compare("MatrixStack.multiply", expected, actual, 16);
+
+            ReferenceMatrix.multiplyMV(expected, 0, a, 0, b, 0);
+            Matrix4.multiplyVector(actual, 0, a, 0, b, 0);
+            compare("multiplyVector", expected, actual, 4);
+
+            ReferenceMatrix.setLookAtM(expected, 0, t[0], t[1], t[2], b[0], b[1], b[2],
+                t[7], t[8], t[9]);
+            Matrix4.setLookAt(actual, 0, t[0], t[1], t[2], b[0], b[1], b[2], t[7], t[8], t[9]);
+            compare("setLookAt", expected, actual, 16);
+
+            final float near = 0.1f + random.nextFloat();
+            final float far = near + 1.0f + random.nextFloat() * 100.0f;
+            ReferenceMatrix.frustumM(expected, 0, -a[0] - 1.0f, a[1] + 1.0f, -a[2] - 1.0f,
+                a[3] + 1.0f, near, far);
+            Matrix4.frustum(actual, 0, -a[0] - 1.0f, a[1] + 1.0f, -a[2] - 1.0f, a[3] + 1.0f,
+                near, far);
+            compare("frustum", expected, actual, 16);
+        }
+        System.out.println("Matrix4 matches the reference bit for bit over "
+            + CHECK_COUNT + " inputs per operation");
+    }
+
+    private static void compare(String operation, float[] expected, float[] actual, int count) {
+        for (int i = 0; i < count; i++) {
+            if (Float.floatToRawIntBits(expected[i]) != Float.floatToRawIntBits(actual[i])) {
+                throw new RuntimeException(operation + " differs at entry " + i + ": "
+                    + actual[i] + " instead of " + expected[i]);
+            }
+        }
+    }
+
+    private static float randomEntry(Random random) {
+        return random.nextInt(8) == 0 ? 0.0f : (random.nextFloat() - 0.5f) * 10.0f;
+    }
+}
@@ -0,0 +1,129 @@
+package com.jr3dL.android.bench;
+
+import java.util.Random;
+
+import com.jr3dL.android.data.MeshData;
+import com.jr3dL.android.scene.Bvh;
+import com.jr3dL.android.scene.FrustumCuller;
+import com.jr3dL.android.scene.Picker;
+import com.jr3dL.android.scene.Scene;
+import com.jr3dL.android.scene.TransformCache;
+
+/**
+ * Measures tap picking in a 20k object house: randomly placed, rotated and
+ * scaled boxes seen through a perspective camera, picked at random screen
+ * points. The budget is 1 ms per pick.
+ *
+ *     java -cp bin/bench com.jr3dL.android.bench.PickBenchmark [results.json]
+ */
+public class PickBenchmark {
+    private static final int OBJECT_COUNT = 20000;
+    private static final float HALF_WIDTH = 100.0f;
+    private static final float HEIGHT = 10.0f;
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT_PIXELS = 720;
+    private static final int TAP_COUNT = 256;
+
+    private final float[] world = new float[OBJECT_COUNT * TransformCache.MATRIX_SIZE];
+    private final Bvh bvh = new Bvh();
+    private final Picker picker;
+    private final float[] taps = new float[TAP_COUNT * 2];
+    private int tap;
+
+    private PickBenchmark() {
+        final Random random = new Random(42);
+        final Scene scene = new Scene(OBJECT_COUNT);
+        final int mesh = scene.addMesh("cube");
+        final int material = scene.addMaterial("plain", null);
+        final int[] nodes = new int[OBJECT_COUNT];
+        for (int i = 0; i < OBJECT_COUNT; i++) {
+            final float x = (random.nextFloat() * 2.0f - 1.0f) * HALF_WIDTH;
+            final float y = random.nextFloat() * HEIGHT;
+            final float z = (random.nextFloat() * 2.0f - 1.0f) * HALF_WIDTH;
+            final float angle = random.nextFloat() * 360.0f;
+            nodes[i] = scene.addNode(mesh, material, x, y, z, 1.0f, 1.0f, 1.0f,
+                angle, 0.0f, 1.0f, 0.0f, Scene.FLAG_STATIC);
+            setWorld(i, x, y, z, 0.3f + random.nextFloat() * 2.0f, 0.3f + random.nextFloat(),
+                (float) Math.toRadians(angle));
+        }
+        final MeshData cube = unitCube();
+        final FrustumCuller culler = new FrustumCuller(scene);
+        culler.setMeshBounds(mesh, cube);
+        culler.updateBounds(world, nodes, OBJECT_COUNT);
+        final float[] bounds = new float[OBJECT_COUNT * Bvh.BOUNDS_SIZE];
+        for (int i = 0; i < OBJECT_COUNT; i++) {
+            culler.getBounds(i, bounds, i * Bvh.BOUNDS_SIZE);
+        }
+        bvh.build(bounds, OBJECT_COUNT);
+
+        picker = new Picker(scene, bvh);
+        picker.setMeshBounds(mesh, cube);
+        picker.setViewProjection(viewProjection());
+        for (int i = 0; i < TAP_COUNT; i++) {
+            taps[i * 2] = random.nextFloat() * WIDTH;
+            taps[i * 2 + 1] = random.nextFloat() * HEIGHT_PIXELS;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        final BenchmarkRunner runner = new BenchmarkRunner();
+        run(runner);
+        runner.finish(args);
+    }
+
+    static void run(BenchmarkRunner runner) {
+        final PickBenchmark b = new PickBenchmark();
+        runner.run("pick", "objects=" + OBJECT_COUNT, new BenchmarkRunner.Operation() {
+            @Override
+            public long run() {
+                b.tap = (b.tap + 1) & (TAP_COUNT - 1);
+                return b.picker.pick(b.world, b.taps[b.tap * 2], b.taps[b.tap * 2 + 1],
+                    WIDTH, HEIGHT_PIXELS);
+            }
+        });
+    }
+
+    /** A box scaled by (width, height, width) and turned about y, then moved. */
+    private void setWorld(int node, float x, float y, float z, float width, float height,
+        float angle) {
+        final int m = node * TransformCache.MATRIX_SIZE;
+        final float cos = (float) Math.cos(angle);
+        final float sin = (float) Math.sin(angle);
+        world[m] = cos * width;
+        world[m + 2] = -sin * width;
+        world[m + 5] = height;
+        world[m + 8] = sin * width;
+        world[m + 10] = cos * width;
+        world[m + 12] = x;
+        world[m + 13] = y;
+        world[m + 14] = z;
+        world[m + 15] = 1.0f;
+    }
+
+    private static MeshData unitCube() {
+        final float[] vertices = new float[2 * MeshData.STRIDE];
+        vertices[0] = -0.5f;
+        vertices[1] = -0.5f;
+        vertices[2] = -0.5f;
+        vertices[MeshData.STRIDE] = 0.5f;
+        vertices[MeshData.STRIDE + 1] = 0.5f;
+        vertices[MeshData.STRIDE + 2] = 0.5f;
+        return new MeshData(vertices, new short[0]);
+    }
+
+    /** A 60 degree perspective from eye height in the middle of the plan, down -z. */
+    private static float[] viewProjection() {
+        final float near = 0.5f;
+        final float far = 200.0f;
+        final float aspect = (float) WIDTH / HEIGHT_PIXELS;
+        final float f = (float) (1.0 / Math.tan(Math.toRadians(30.0)));
+        final float[] m = new float[16];
+        m[0] = f / aspect;
+        m[5] = f;
+        m[10] = (far + near) / (near - far);
+        m[11] = -1.0f;
+        m[14] = 2.0f * far * near / (near - far);
+        m[13] = -1.5f * f;
+        return m;
+    }
+}
@@ -0,0 +1,199 @@
+package com.jr3dL.android.bench;
+
+import java.util.Random;
+
+import com.jr3dL.android.data.MeshData;
+import com.jr3dL.android.math.Matrix4;
+import com.jr3dL.android.scene.Bvh;
+import com.jr3dL.android.scene.FrustumCuller;
+import com.jr3dL.android.scene.Picker;
+import com.jr3dL.android.scene.Scene;
+import com.jr3dL.android.scene.TransformCache;
+
+/**
+ * Checks {@link Picker#pickNdc} against testing the pick's ray with
+ * {@link Picker#intersect} on every node, without the BVH: the picked node
+ * has to be hit at the nearest distance there is, and a ray that hits
+ * nothing has to pick nothing.
+ *
+ * Two scenes are picked. A hand-made one has a box overlapping a bigger
+ * one behind it, so the nearer must win where both are hit, a third box
+ * off to the side and an empty corner that must miss. A random one has
+ * hundreds of boxes turned about arbitrary axes and scaled differently
+ * along each, picked at thousands of random points. Exits non-zero at the
+ * first disagreement.
+ *
+ *     java -cp bin/bench com.jr3dL.android.bench.PickCheck
+ */
+public class PickCheck {
+    private static final int RANDOM_OBJECT_COUNT = 500;
+    private static final int RANDOM_PICK_COUNT = 4000;
+    /** Translation, scale, then angle and axis, per node. */
+    private static final int TRANSFORM_SIZE = 10;
+
+    private static final int FAR_BOX = 0;
+    private static final int NEAR_BOX = 1;
+    private static final int SIDE_BOX = 2;
+    private static final float[] HAND_MADE = {
+        0.0f, 0.0f, -9.0f, 3.0f, 3.0f, 3.0f, 20.0f, 0.0f, 1.0f, 0.0f,
+        0.2f, 0.0f, -7.0f, 1.5f, 0.8f, 3.0f, 35.0f, 1.0f, 1.0f, 0.0f,
+        3.0f, 2.0f, -6.0f, 0.5f, 2.0f, 0.5f, 60.0f, 0.0f, 0.0f, 1.0f,
+    };
+
+    private final int count;
+    private final float[] world;
+    private final float[] viewProjection = new float[16];
+    private final Picker picker;
+    private final float[] ray = new float[6];
+
+    private PickCheck(float[] transforms) {
+        count = transforms.length / TRANSFORM_SIZE;
+        world = new float[count * TransformCache.MATRIX_SIZE];
+        final Scene scene = new Scene(count);
+        final int mesh = scene.addMesh("cube");
+        final int material = scene.addMaterial("plain", null);
+        final int[] nodes = new int[count];
+        for (int i = 0; i < count; i++) {
+            final int t = i * TRANSFORM_SIZE;
+            nodes[i] = scene.addNode(mesh, material, transforms[t], transforms[t + 1],
+                transforms[t + 2], transforms[t + 3], transforms[t + 4], transforms[t + 5],
+                transforms[t + 6], transforms[t + 7], transforms[t + 8], transforms[t + 9],
+                Scene.FLAG_STATIC);
+            Matrix4.setTranslateScaleRotate(world, i * TransformCache.MATRIX_SIZE,
+                transforms[t], transforms[t + 1], transforms[t + 2],
+                transforms[t + 3], transforms[t + 4], transforms[t + 5],
+                transforms[t + 6], transforms[t + 7], transforms[t + 8], transforms[t + 9]);
+        }
+        final MeshData cube = unitCube();
+        final FrustumCuller culler = new FrustumCuller(scene);
+        culler.setMeshBounds(mesh, cube);
+        culler.updateBounds(world, nodes, count);
+        final float[] bounds = new float[count * Bvh.BOUNDS_SIZE];
+        for (int i = 0; i < count; i++) {
+            culler.getBounds(i, bounds, i * Bvh.BOUNDS_SIZE);
+        }
+        final Bvh bvh = new Bvh();
+        bvh.build(bounds, count);
+
+        // From the origin down -z, with a 4:3 view.
+        final float[] view = new float[16];
+        final float[] projection = new float[16];
+        Matrix4.setLookAt(view, 0, 0.0f, 0.0f, 0.0f, 0.0f, 0.0f, -1.0f, 0.0f, 1.0f, 0.0f);
+        Matrix4.frustum(projection, 0, -0.4f, 0.4f, -0.3f, 0.3f, 0.5f, 50.0f);
+        Matrix4.multiply(viewProjection, 0, projection, 0, view, 0);
+        picker = new Picker(scene, bvh);
+        picker.setMeshBounds(mesh, cube);
+        picker.setViewProjection(viewProjection);
+    }
+
+    public static void main(String[] args) {
+        run();
+    }
+
+    static void run() {
+        final PickCheck handMade = new PickCheck(HAND_MADE);
+        final float[] ndc = new float[2];
+        handMade.project(NEAR_BOX, ndc);
+        expect("overlapping boxes", NEAR_BOX, handMade.pick(ndc[0], ndc[1]));
+        if (handMade.distance(FAR_BOX) == Float.POSITIVE_INFINITY) {
+            throw new RuntimeException("The ray through the near box misses the far one; "
+                + "the boxes don't overlap on screen");
+        }
+        handMade.project(FAR_BOX, ndc);
+        handMade.pick(ndc[0], ndc[1]);
+        handMade.project(SIDE_BOX, ndc);
+        expect("side box", SIDE_BOX, handMade.pick(ndc[0], ndc[1]));
+        expect("empty corner", -1, handMade.pick(-0.9f, 0.9f));
+
+        final Random random = new Random(11);
+        final float[] transforms = new float[RANDOM_OBJECT_COUNT * TRANSFORM_SIZE];
+        for (int t = 0; t < transforms.length; t += TRANSFORM_SIZE) {
+            transforms[t] = (random.nextFloat() * 2.0f - 1.0f) * 12.0f;
+            transforms[t + 1] = (random.nextFloat() * 2.0f - 1.0f) * 8.0f;
+            transforms[t + 2] = -2.0f - random.nextFloat() * 40.0f;
+            for (int i = 3; i < 6; i++) {
+                transforms[t + i] = 0.1f + random.nextFloat() * 2.0f;
+            }
+            transforms[t + 6] = random.nextFloat() * 360.0f;
+            transforms[t + 7] = random.nextFloat() - 0.5f;
+            transforms[t + 8] = random.nextFloat() - 0.5f;
+            transforms[t + 9] = random.nextFloat() - 0.5f;
+        }
+        final PickCheck scattered = new PickCheck(transforms);
+        int hits = 0;
+        for (int i = 0; i < RANDOM_PICK_COUNT; i++) {
+            if (scattered.pick(random.nextFloat() * 2.0f - 1.0f,
+                random.nextFloat() * 2.0f - 1.0f) >= 0) {
+                hits++;
+            }
+        }
+        if (hits == 0 || hits == RANDOM_PICK_COUNT) {
+            throw new RuntimeException(hits + " of " + RANDOM_PICK_COUNT
+                + " random picks hit; expected some hits and some misses");
+        }
+        System.out.println("picking: matches testing every node, " + hits + " of "
+            + RANDOM_PICK_COUNT + " random picks hit, nearer of overlapping boxes wins");
+    }
+
+    /**
+     * Picks through the BVH and checks the result against every node.
+     * Returns the picked node.
+     */
+    private int pick(float ndcX, float ndcY) {
+        final int picked = picker.pickNdc(world, ndcX, ndcY);
+        picker.getRay(ray, 0);
+        int nearest = -1;
+        float nearestDistance = Float.POSITIVE_INFINITY;
+        for (int node = 0; node < count; node++) {
+            final float distance = distance(node);
+            if (distance < nearestDistance) {
+                nearest = node;
+                nearestDistance = distance;
+            }
+        }
+        final String where = "pick at (" + ndcX + ", " + ndcY + ")";
+        if (nearest < 0) {
+            expect(where, -1, picked);
+        } else if (picked < 0 || distance(picked) != nearestDistance) {
+            throw new RuntimeException(where + " found " + picked + " instead of " + nearest
+                + " at distance " + nearestDistance);
+        } else if (picker.getHitDistance() != nearestDistance) {
+            throw new RuntimeException(where + " hit at " + picker.getHitDistance()
+                + " instead of " + nearestDistance);
+        }
+        return picked;
+    }
+
+    /** Where the last pick's ray enters the node's box, or infinity. */
+    private float distance(int node) {
+        return picker.intersect(world, node, ray[0], ray[1], ray[2], ray[3], ray[4], ray[5],
+            1.0f);
+    }
+
+    /** The node's center in normalized device coordinates. */
+    private void project(int node, float[] ndc) {
+        final int m = node * TransformCache.MATRIX_SIZE;
+        final float[] center = {world[m + 12], world[m + 13], world[m + 14], 1.0f};
+        final float[] clip = new float[4];
+        Matrix4.multiplyVector(clip, 0, viewProjection, 0, center, 0);
+        ndc[0] = clip[0] / clip[3];
+        ndc[1] = clip[1] / clip[3];
+    }
+
+    private static void expect(String what, int expected, int actual) {
+        if (expected != actual) {
+            throw new RuntimeException(what + " picked " + actual + " instead of " + expected);
+        }
+    }
+
+    private static MeshData unitCube() {
+        final float[] vertices = new float[2 * MeshData.STRIDE];
+        vertices[0] = -0.5f;
+        vertices[1] = -0.5f;
+        vertices[2] = -0.5f;
+        vertices[MeshData.STRIDE] = 0.5f;
+        vertices[MeshData.STRIDE + 1] = 0.5f;
+        vertices[MeshData.STRIDE + 2] = 0.5f;
+        return new MeshData(vertices, new short[0]);
+    }
+}
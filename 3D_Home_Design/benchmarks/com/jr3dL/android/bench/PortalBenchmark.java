@@ -0,0 +1,206 @@
+package com.jr3dL.android.bench;
+
+import java.util.Random;
+
+import com.jr3dL.android.data.MeshData;
+import com.jr3dL.android.scene.Bvh;
+import com.jr3dL.android.scene.CellGraph;
+import com.jr3dL.android.scene.FrustumCuller;
+import com.jr3dL.android.scene.PortalCuller;
+import com.jr3dL.android.scene.Scene;
+import com.jr3dL.android.scene.TransformCache;
+
+/**
+ * Runs portal culling headlessly over a multi-room layout: a grid of 6 m
+ * rooms with a 1 m door in the middle of every inner wall and furniture
+ * scattered through each room. For a camera standing in one room it prints
+ * how many objects the view frustum alone keeps and how many survive the
+ * portal test as well, then times the portal traversal.
+ *
+ *     java -cp bin/bench com.jr3dL.android.bench.PortalBenchmark [results.json]
+ */
+public class PortalBenchmark {
+    private static final int[] GRID_SIZES = {4, 8, 16};
+    private static final int OBJECTS_PER_ROOM = 40;
+    private static final float ROOM_SIZE = 6.0f;
+    private static final float ROOM_HEIGHT = 2.5f;
+    private static final float DOOR_HALF_WIDTH = 0.5f;
+    private static final float DOOR_HEIGHT = 2.0f;
+
+    private final FrustumCuller culler;
+    private final PortalCuller portals;
+    private final Bvh bvh = new Bvh();
+    private final int[] visible;
+    private final float eyeX;
+    private final float eyeY;
+    private final float eyeZ;
+
+    private PortalBenchmark(int gridSize) {
+        final Random random = new Random(42);
+        final int objectCount = gridSize * gridSize * OBJECTS_PER_ROOM;
+        final Scene scene = new Scene(objectCount);
+        final int mesh = scene.addMesh("cube");
+        final int material = scene.addMaterial("plain", null);
+        final CellGraph cells = scene.getCells();
+        final float[] world = new float[objectCount * TransformCache.MATRIX_SIZE];
+        final int[] nodes = new int[objectCount];
+
+        for (int row = 0; row < gridSize; row++) {
+            for (int column = 0; column < gridSize; column++) {
+                final float x0 = column * ROOM_SIZE;
+                final float z0 = -row * ROOM_SIZE;
+                cells.addCell("room" + row + "_" + column, x0, 0.0f, z0 - ROOM_SIZE,
+                    x0 + ROOM_SIZE, ROOM_HEIGHT, z0);
+                for (int i = 0; i < OBJECTS_PER_ROOM; i++) {
+                    final int node = scene.getNodeCount();
+                    final float size = 0.2f + random.nextFloat() * 0.6f;
+                    final float x = x0 + size + random.nextFloat() * (ROOM_SIZE - 2.0f * size);
+                    final float y = size + random.nextFloat() * (ROOM_HEIGHT - 2.0f * size);
+                    final float z = z0 - size - random.nextFloat() * (ROOM_SIZE - 2.0f * size);
+                    nodes[node] = scene.addNode(mesh, material, x, y, z, size, size, size,
+                        0.0f, 0.0f, 1.0f, 0.0f, Scene.FLAG_STATIC);
+                    final int m = node * TransformCache.MATRIX_SIZE;
+                    world[m] = size;
+                    world[m + 5] = size;
+                    world[m + 10] = size;
+                    world[m + 12] = x;
+                    world[m + 13] = y;
+                    world[m + 14] = z;
+                    world[m + 15] = 1.0f;
+                }
+            }
+        }
+        final float[] door = new float[CellGraph.PORTAL_SIZE];
+        for (int row = 0; row < gridSize; row++) {
+            for (int column = 0; column < gridSize; column++) {
+                final int cell = row * gridSize + column;
+                final float x0 = column * ROOM_SIZE;
+                final float z0 = -row * ROOM_SIZE;
+                if (column + 1 < gridSize) {
+                    // Door in the wall at x0 + ROOM_SIZE.
+                    final float cz = z0 - ROOM_SIZE * 0.5f;
+                    setDoor(door, x0 + ROOM_SIZE, cz - DOOR_HALF_WIDTH, x0 + ROOM_SIZE,
+                        cz + DOOR_HALF_WIDTH);
+                    cells.addPortal(cell, cell + 1, door, 0);
+                }
+                if (row + 1 < gridSize) {
+                    // Door in the wall at z0 - ROOM_SIZE.
+                    final float cx = x0 + ROOM_SIZE * 0.5f;
+                    setDoor(door, cx - DOOR_HALF_WIDTH, z0 - ROOM_SIZE, cx + DOOR_HALF_WIDTH,
+                        z0 - ROOM_SIZE);
+                    cells.addPortal(cell, cell + gridSize, door, 0);
+                }
+            }
+        }
+
+        final MeshData cube = unitCube();
+        culler = new FrustumCuller(scene);
+        culler.setMeshBounds(mesh, cube);
+        culler.updateBounds(world, nodes, objectCount);
+        final float[] bounds = new float[objectCount * Bvh.BOUNDS_SIZE];
+        for (int i = 0; i < objectCount; i++) {
+            culler.getBounds(i, bounds, i * Bvh.BOUNDS_SIZE);
+        }
+        bvh.build(bounds, objectCount);
+        portals = new PortalCuller(scene);
+        portals.updateNodes(culler, nodes, objectCount);
+        visible = new int[objectCount];
+
+        // Stand near the back of the middle room of the front row, looking
+        // down -z through its door into the rest of the house.
+        eyeX = (gridSize / 2) * ROOM_SIZE + ROOM_SIZE * 0.3f;
+        eyeY = 1.6f;
+        eyeZ = -0.5f;
+        culler.setViewProjection(viewProjection(eyeX, eyeY, eyeZ, 100.0f));
+    }
+
+    public static void main(String[] args) throws Exception {
+        final BenchmarkRunner runner = new BenchmarkRunner();
+        run(runner);
+        runner.finish(args);
+    }
+
+    static void run(BenchmarkRunner runner) {
+        for (int gridSize : GRID_SIZES) {
+            final PortalBenchmark b = new PortalBenchmark(gridSize);
+            final String param = "rooms=" + gridSize * gridSize;
+            final int inFrustum = b.bvh.queryFrustum(b.culler, b.visible);
+            b.portals.update(b.culler, b.eyeX, b.eyeY, b.eyeZ);
+            int inRooms = 0;
+            for (int i = 0; i < inFrustum; i++) {
+                if (b.portals.isNodeVisible(b.visible[i])) {
+                    inRooms++;
+                }
+            }
+            System.out.println(param + ": " + inFrustum + " objects in the frustum, "
+                + inRooms + " in " + b.portals.getVisibleCellCount() + " visible rooms");
+
+            runner.run("portalCull.frustumOnly", param, new BenchmarkRunner.Operation() {
+                @Override
+                public long run() {
+                    return b.bvh.queryFrustum(b.culler, b.visible);
+                }
+            });
+            runner.run("portalCull.frustumAndPortals", param, new BenchmarkRunner.Operation() {
+                @Override
+                public long run() {
+                    final int count = b.bvh.queryFrustum(b.culler, b.visible);
+                    b.portals.update(b.culler, b.eyeX, b.eyeY, b.eyeZ);
+                    int kept = 0;
+                    for (int i = 0; i < count; i++) {
+                        if (b.portals.isNodeVisible(b.visible[i])) {
+                            kept++;
+                        }
+                    }
+                    return kept;
+                }
+            });
+        }
+    }
+
+    /** A door from the floor up, between two points on the floor. */
+    private static void setDoor(float[] door, float x0, float z0, float x1, float z1) {
+        door[0] = x0;
+        door[1] = 0.0f;
+        door[2] = z0;
+        door[3] = x1;
+        door[4] = 0.0f;
+        door[5] = z1;
+        door[6] = x1;
+        door[7] = DOOR_HEIGHT;
+        door[8] = z1;
+        door[9] = x0;
+        door[10] = DOOR_HEIGHT;
+        door[11] = z0;
+    }
+
+    private static MeshData unitCube() {
+        final float[] vertices = new float[2 * MeshData.STRIDE];
+        vertices[0] = -0.5f;
+        vertices[1] = -0.5f;
+        vertices[2] = -0.5f;
+        vertices[MeshData.STRIDE] = 0.5f;
+        vertices[MeshData.STRIDE + 1] = 0.5f;
+        vertices[MeshData.STRIDE + 2] = 0.5f;
+        return new MeshData(vertices, new short[0]);
+    }
+
+    /** A 60 degree perspective at the eye, looking down -z. */
+    private static float[] viewProjection(float eyeX, float eyeY, float eyeZ, float far) {
+        final float near = 0.1f;
+        final float aspect = 1.5f;
+        final float f = (float) (1.0 / Math.tan(Math.toRadians(30.0)));
+        final float[] m = new float[16];
+        m[0] = f / aspect;
+        m[5] = f;
+        m[10] = (far + near) / (near - far);
+        m[11] = -1.0f;
+        m[14] = 2.0f * far * near / (near - far);
+        // Projection times a translation by minus the eye.
+        m[12] = -eyeX * m[0];
+        m[13] = -eyeY * m[5];
+        m[14] += -eyeZ * m[10];
+        m[15] = eyeZ;
+        return m;
+    }
+}
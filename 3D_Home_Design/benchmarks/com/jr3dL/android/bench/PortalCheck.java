@@ -0,0 +1,140 @@
+package com.jr3dL.android.bench;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import com.jr3dL.android.data.CubeMesh;
+import com.jr3dL.android.math.Matrix4;
+import com.jr3dL.android.scene.CellGraph;
+import com.jr3dL.android.scene.FrustumCuller;
+import com.jr3dL.android.scene.PortalCuller;
+import com.jr3dL.android.scene.Scene;
+import com.jr3dL.android.scene.SceneParser;
+import com.jr3dL.android.scene.TransformCache;
+
+/**
+ * Runs {@link PortalCuller} over the app's house_scene.txt, a hall opening
+ * into a bedroom through one door, and checks three things: the room the
+ * camera stands in is visible whichever way it looks, the bedroom is
+ * culled when the camera in the hall turns its back on the door, and the
+ * bedroom and the bed in it are kept when the camera looks through the
+ * door. Exits non-zero at the first failure.
+ *
+ *     java -cp bin/bench com.jr3dL.android.bench.PortalCheck
+ */
+public class PortalCheck {
+    private static final int RANDOM_VIEW_COUNT = 1000;
+    /** The first bed in house_scene.txt. */
+    private static final int BED = 6;
+
+    private final Scene scene;
+    private final CellGraph cells;
+    private final FrustumCuller culler;
+    private final PortalCuller portals;
+    private final float[] view = new float[16];
+    private final float[] projection = new float[16];
+    private final float[] viewProjection = new float[16];
+
+    private PortalCheck() throws IOException {
+        scene = SceneParser.parse(new FileInputStream(
+            new File(CheckFiles.rawDirectory(), "house_scene.txt")));
+        cells = scene.getCells();
+        Matrix4.setIdentity(view, 0);
+        Matrix4.frustum(projection, 0, -0.4f, 0.4f, -0.3f, 0.3f, 0.5f, 50.0f);
+        final TransformCache transforms = new TransformCache(scene);
+        transforms.update(view, projection);
+        culler = new FrustumCuller(scene);
+        culler.setMeshBounds(scene.findMesh("cube"), CubeMesh.create());
+        culler.updateBounds(transforms.getWorldMatrices(), transforms.getChangedNodes(),
+            transforms.getChangedCount());
+        portals = new PortalCuller(scene);
+        portals.updateNodes(culler, transforms.getChangedNodes(), transforms.getChangedCount());
+    }
+
+    public static void main(String[] args) throws IOException {
+        run();
+    }
+
+    static void run() throws IOException {
+        final PortalCheck c = new PortalCheck();
+        final int hall = c.cell("hall");
+        final int bedroom = c.cell("bedroom");
+        if (c.portals.getNodeCell(BED) != bedroom) {
+            throw new RuntimeException("The bed is in cell " + c.portals.getNodeCell(BED)
+                + " instead of the bedroom");
+        }
+
+        // Wherever the camera stands and looks, its own room stays.
+        final Random random = new Random(12);
+        final float[] bounds = c.cells.getCellBounds();
+        for (int i = 0; i < RANDOM_VIEW_COUNT; i++) {
+            final int cell = random.nextInt(c.cells.getCellCount());
+            final int b = cell * CellGraph.BOUNDS_SIZE;
+            final float x = inside(random, bounds[b], bounds[b + 3]);
+            final float y = inside(random, bounds[b + 1], bounds[b + 4]);
+            final float z = inside(random, bounds[b + 2], bounds[b + 5]);
+            c.look(x, y, z, random.nextFloat() - 0.5f, random.nextFloat() - 0.5f,
+                random.nextFloat() - 0.5f);
+            if (c.portals.getCameraCell() != cell) {
+                throw new RuntimeException("Camera at (" + x + ", " + y + ", " + z
+                    + ") found in cell " + c.portals.getCameraCell() + " instead of " + cell);
+            }
+            c.expectCell("own room, view " + i, cell, true);
+        }
+
+        // In the hall facing away from the door, the bedroom is only behind
+        // a portal outside the frustum.
+        c.look(0.0f, 0.5f, 0.0f, 0.0f, 0.0f, 1.0f);
+        c.expectCell("back to the door", hall, true);
+        c.expectCell("back to the door", bedroom, false);
+        if (c.portals.isNodeVisible(BED)) {
+            throw new RuntimeException("The bed is kept with the camera's back to the door");
+        }
+
+        // Looking through the door, the bedroom and its bed are kept.
+        c.look(0.0f, 0.5f, 0.0f, 0.0f, 0.0f, -1.0f);
+        c.expectCell("through the door", hall, true);
+        c.expectCell("through the door", bedroom, true);
+        if (!c.portals.isNodeVisible(BED)) {
+            throw new RuntimeException("The bed is culled looking through the door");
+        }
+        System.out.println("portals: own room visible over " + RANDOM_VIEW_COUNT
+            + " random views, bedroom culled behind the camera, kept through the door");
+    }
+
+    /** Puts the camera at the eye looking along the direction and culls. */
+    private void look(float eyeX, float eyeY, float eyeZ,
+        float directionX, float directionY, float directionZ) {
+        // Keep the up vector off the view direction.
+        final boolean vertical = Math.abs(directionY) > 0.9f * Matrix4.length(directionX,
+            directionY, directionZ);
+        Matrix4.setLookAt(view, 0, eyeX, eyeY, eyeZ,
+            eyeX + directionX, eyeY + directionY, eyeZ + directionZ,
+            vertical ? 1.0f : 0.0f, vertical ? 0.0f : 1.0f, 0.0f);
+        Matrix4.multiply(viewProjection, 0, projection, 0, view, 0);
+        culler.setViewProjection(viewProjection);
+        portals.update(culler, eyeX, eyeY, eyeZ);
+    }
+
+    private void expectCell(String what, int cell, boolean visible) {
+        if (portals.isCellVisible(cell) != visible) {
+            throw new RuntimeException(what + ": " + cells.getCellName(cell) + " is "
+                + (visible ? "culled" : "visible"));
+        }
+    }
+
+    private int cell(String name) {
+        final int cell = cells.findCell(name);
+        if (cell < 0) {
+            throw new RuntimeException("house_scene.txt has no cell " + name);
+        }
+        return cell;
+    }
+
+    /** A random point between min and max, kept off the walls. */
+    private static float inside(Random random, float min, float max) {
+        return min + (0.05f + random.nextFloat() * 0.9f) * (max - min);
+    }
+}
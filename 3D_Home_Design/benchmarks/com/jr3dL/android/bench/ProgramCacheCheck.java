@@ -0,0 +1,131 @@
+package com.jr3dL.android.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.jr3dL.android.gl.Gl;
+import com.jr3dL.android.gl.RecordingGl;
+import com.jr3dL.android.programs.ProgramCache;
+import com.jr3dL.android.programs.ShaderPreprocessor;
+
+/**
+ * Checks the {@link ProgramCache} over a {@link RecordingGl}, in a
+ * temporary directory, with the simple program's lit, textured variant:
+ * a stored binary loads back with the same interface, one the driver
+ * rejects is compiled and stored again, and a file claiming a bad binary
+ * length is compiled over rather than thrown. Exits non-zero at the first
+ * failure.
+ *
+ *     java -cp bin/bench com.jr3dL.android.bench.ProgramCacheCheck
+ */
+public class ProgramCacheCheck {
+    public static void main(String[] args) throws IOException {
+        run();
+    }
+
+    static void run() throws IOException {
+        final ShaderPreprocessor preprocessor = CheckFiles.newPreprocessor();
+        final Map<String, String> defines = new HashMap<String, String>();
+        defines.put("TEXTURED", "");
+        defines.put("LIT", "");
+        defines.put("LIGHT_COUNT", "1");
+        final String vertexShaderSource = preprocessor.process(
+            CheckFiles.readRaw("simple_vertex_shader.glsl"), defines);
+        final String fragmentShaderSource = preprocessor.process(
+            CheckFiles.readRaw("simple_fragment_shader.glsl"), defines);
+
+        final File cacheDirectory = CheckFiles.createTempDirectory("programs");
+        try {
+            final RecordingGl gl = new RecordingGl();
+            final ProgramCache cache = new ProgramCache(gl, cacheDirectory, "check");
+            cache.setCompiler(QuietCompiler.INSTANCE);
+            check(gl, cache, vertexShaderSource, fragmentShaderSource, cacheDirectory);
+        } finally {
+            CheckFiles.deleteRecursively(cacheDirectory);
+        }
+    }
+
+    /**
+     * Stores a binary, loads it back with the same interface, then has the
+     * driver reject it and checks the cache compiles and stores it again.
+     * Last, it writes bad lengths into the stored file and checks each is
+     * compiled over rather than thrown.
+     */
+    private static void check(RecordingGl gl, ProgramCache cache,
+        String vertexShaderSource, String fragmentShaderSource, File cacheDirectory)
+        throws IOException {
+        final int compiled = cache.build(vertexShaderSource, fragmentShaderSource);
+        final int loaded = cache.build(vertexShaderSource, fragmentShaderSource);
+        if (cache.getMissCount() != 1 || cache.getHitCount() != 1) {
+            throw new RuntimeException("Expected one compile and one load, got "
+                + cache.getMissCount() + " and " + cache.getHitCount());
+        }
+        final int[] compiledCount = new int[1];
+        final int[] loadedCount = new int[1];
+        gl.glGetProgramiv(compiled, Gl.GL_ACTIVE_UNIFORMS, compiledCount, 0);
+        gl.glGetProgramiv(loaded, Gl.GL_ACTIVE_UNIFORMS, loadedCount, 0);
+        if (compiledCount[0] == 0 || compiledCount[0] != loadedCount[0]) {
+            throw new RuntimeException("Loaded program has " + loadedCount[0]
+                + " uniforms, compiled one " + compiledCount[0]);
+        }
+
+        gl.setRejectProgramBinaries(true);
+        final int fallback = cache.build(vertexShaderSource, fragmentShaderSource);
+        gl.setRejectProgramBinaries(false);
+        final int reloaded = cache.build(vertexShaderSource, fragmentShaderSource);
+        if (fallback == 0 || cache.getRejectedCount() != 1 || cache.getMissCount() != 2
+            || reloaded == 0 || cache.getHitCount() != 2) {
+            throw new RuntimeException("Rejected binary not replaced: " + cache.getRejectedCount()
+                + " rejected, " + cache.getMissCount() + " compiled, " + cache.getHitCount()
+                + " loaded");
+        }
+        for (int program : new int[] {compiled, loaded, fallback, reloaded}) {
+            gl.glDeleteProgram(program);
+        }
+
+        final File stored = findBinary(cacheDirectory);
+        if (stored == null) {
+            throw new RuntimeException("No program binary stored in " + cacheDirectory);
+        }
+        for (int length : new int[] {-1, 0, Integer.MAX_VALUE, (int) stored.length()}) {
+            final RandomAccessFile file = new RandomAccessFile(stored, "rw");
+            try {
+                file.seek(8);
+                file.writeInt(length);
+            } finally {
+                file.close();
+            }
+            final int misses = cache.getMissCount();
+            final int program = cache.build(vertexShaderSource, fragmentShaderSource);
+            if (program == 0 || cache.getMissCount() != misses + 1) {
+                throw new RuntimeException("Stored length " + length + " not compiled over");
+            }
+            gl.glDeleteProgram(program);
+        }
+        final StringBuilder summary = new StringBuilder();
+        cache.formatSummary(summary);
+        System.out.println("program cache: " + summary + "; rejected binary and bad "
+            + "lengths recompiled");
+    }
+
+    /** The first stored program binary under the directory, or null. */
+    private static File findBinary(File directory) {
+        final File[] children = directory.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    final File found = findBinary(child);
+                    if (found != null) {
+                        return found;
+                    }
+                } else if (child.getName().endsWith(".bin")) {
+                    return child;
+                }
+            }
+        }
+        return null;
+    }
+}
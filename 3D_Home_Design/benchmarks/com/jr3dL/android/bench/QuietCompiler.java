@@ -0,0 +1,31 @@
+package com.jr3dL.android.bench;
+
+import com.jr3dL.android.gl.Gl;
+import com.jr3dL.android.programs.ProgramCache;
+
+/** What ShaderHelper.buildProgram does, without its logging, which needs a device. */
+final class QuietCompiler implements ProgramCache.Compiler {
+    static final QuietCompiler INSTANCE = new QuietCompiler();
+
+    private QuietCompiler() {
+    }
+
+    @Override
+    public int compile(Gl gl, String vertexShaderSource, String fragmentShaderSource) {
+        final int vertexShader = gl.glCreateShader(Gl.GL_VERTEX_SHADER);
+        gl.glShaderSource(vertexShader, vertexShaderSource);
+        gl.glCompileShader(vertexShader);
+        final int fragmentShader = gl.glCreateShader(Gl.GL_FRAGMENT_SHADER);
+        gl.glShaderSource(fragmentShader, fragmentShaderSource);
+        gl.glCompileShader(fragmentShader);
+        final int program = gl.glCreateProgram();
+        gl.glAttachShader(program, vertexShader);
+        gl.glAttachShader(program, fragmentShader);
+        gl.glLinkProgram(program);
+        gl.glDeleteShader(vertexShader);
+        gl.glDeleteShader(fragmentShader);
+        final int[] linkStatus = new int[1];
+        gl.glGetProgramiv(program, Gl.GL_LINK_STATUS, linkStatus, 0);
+        return linkStatus[0] != 0 ? program : 0;
+    }
+}
@@ -0,0 +1,221 @@
+package com.jr3dL.android.bench;
+
+/**
+ * A straight port of the android.opengl.Matrix calls the renderer made
+ * before it moved to {@link com.jr3dL.android.math.Matrix4}, operation
+ * order and all: multiplyMM and multiplyMV as the framework's native code
+ * does them, and rotateM building the rotation in a new temporary array as
+ * many Android versions do. It is the baseline {@link MatrixBenchmark} times
+ * against and {@link MatrixCheck} compares the new code with bit for bit.
+ */
+final class ReferenceMatrix {
+    private ReferenceMatrix() {
+    }
+
+    static void setIdentityM(float[] sm, int smOffset) {
+        for (int i = 0; i < 16; i++) {
+            sm[smOffset + i] = 0;
+        }
+        for (int i = 0; i < 16; i += 5) {
+            sm[smOffset + i] = 1.0f;
+        }
+    }
+
+    static void translateM(float[] m, int mOffset, float x, float y, float z) {
+        for (int i = 0; i < 4; i++) {
+            final int mi = mOffset + i;
+            m[12 + mi] += m[mi] * x + m[4 + mi] * y + m[8 + mi] * z;
+        }
+    }
+
+    static void scaleM(float[] m, int mOffset, float x, float y, float z) {
+        for (int i = 0; i < 4; i++) {
+            final int mi = mOffset + i;
+            m[mi] *= x;
+            m[4 + mi] *= y;
+            m[8 + mi] *= z;
+        }
+    }
+
+    static void rotateM(float[] m, int mOffset, float a, float x, float y, float z) {
+        final float[] r = new float[16];
+        setRotateM(r, 0, a, x, y, z);
+        final float[] temp = new float[16];
+        multiplyMM(temp, 0, m, mOffset, r, 0);
+        System.arraycopy(temp, 0, m, mOffset, 16);
+    }
+
+    static void setRotateM(float[] rm, int rmOffset, float a, float x, float y, float z) {
+        rm[rmOffset + 3] = 0;
+        rm[rmOffset + 7] = 0;
+        rm[rmOffset + 11] = 0;
+        rm[rmOffset + 12] = 0;
+        rm[rmOffset + 13] = 0;
+        rm[rmOffset + 14] = 0;
+        rm[rmOffset + 15] = 1;
+        a *= (float) (Math.PI / 180.0f);
+        final float s = (float) Math.sin(a);
+        final float c = (float) Math.cos(a);
+        if (1.0f == x && 0.0f == y && 0.0f == z) {
+            rm[rmOffset + 5] = c;
+            rm[rmOffset + 10] = c;
+            rm[rmOffset + 6] = s;
+            rm[rmOffset + 9] = -s;
+            rm[rmOffset + 1] = 0;
+            rm[rmOffset + 2] = 0;
+            rm[rmOffset + 4] = 0;
+            rm[rmOffset + 8] = 0;
+            rm[rmOffset] = 1;
+        } else if (0.0f == x && 1.0f == y && 0.0f == z) {
+            rm[rmOffset] = c;
+            rm[rmOffset + 10] = c;
+            rm[rmOffset + 8] = s;
+            rm[rmOffset + 2] = -s;
+            rm[rmOffset + 1] = 0;
+            rm[rmOffset + 4] = 0;
+            rm[rmOffset + 6] = 0;
+            rm[rmOffset + 9] = 0;
+            rm[rmOffset + 5] = 1;
+        } else if (0.0f == x && 0.0f == y && 1.0f == z) {
+            rm[rmOffset] = c;
+            rm[rmOffset + 5] = c;
+            rm[rmOffset + 1] = s;
+            rm[rmOffset + 4] = -s;
+            rm[rmOffset + 2] = 0;
+            rm[rmOffset + 6] = 0;
+            rm[rmOffset + 8] = 0;
+            rm[rmOffset + 9] = 0;
+            rm[rmOffset + 10] = 1;
+        } else {
+            final float len = length(x, y, z);
+            if (1.0f != len) {
+                final float recipLen = 1.0f / len;
+                x *= recipLen;
+                y *= recipLen;
+                z *= recipLen;
+            }
+            final float nc = 1.0f - c;
+            final float xy = x * y;
+            final float yz = y * z;
+            final float zx = z * x;
+            final float xs = x * s;
+            final float ys = y * s;
+            final float zs = z * s;
+            rm[rmOffset] = x * x * nc + c;
+            rm[rmOffset + 4] = xy * nc - zs;
+            rm[rmOffset + 8] = zx * nc + ys;
+            rm[rmOffset + 1] = xy * nc + zs;
+            rm[rmOffset + 5] = y * y * nc + c;
+            rm[rmOffset + 9] = yz * nc - xs;
+            rm[rmOffset + 2] = zx * nc - ys;
+            rm[rmOffset + 6] = yz * nc + xs;
+            rm[rmOffset + 10] = z * z * nc + c;
+        }
+    }
+
+    /** Column by column, each entry summing its products left to right. */
+    static void multiplyMM(float[] r, int rOffset, float[] lhs, int lhsOffset,
+        float[] rhs, int rhsOffset) {
+        for (int i = 0; i < 4; i++) {
+            final float rhsI0 = rhs[rhsOffset + 4 * i];
+            float ri0 = lhs[lhsOffset] * rhsI0;
+            float ri1 = lhs[lhsOffset + 1] * rhsI0;
+            float ri2 = lhs[lhsOffset + 2] * rhsI0;
+            float ri3 = lhs[lhsOffset + 3] * rhsI0;
+            for (int j = 1; j < 4; j++) {
+                final float rhsIj = rhs[rhsOffset + 4 * i + j];
+                ri0 += lhs[lhsOffset + 4 * j] * rhsIj;
+                ri1 += lhs[lhsOffset + 4 * j + 1] * rhsIj;
+                ri2 += lhs[lhsOffset + 4 * j + 2] * rhsIj;
+                ri3 += lhs[lhsOffset + 4 * j + 3] * rhsIj;
+            }
+            r[rOffset + 4 * i] = ri0;
+            r[rOffset + 4 * i + 1] = ri1;
+            r[rOffset + 4 * i + 2] = ri2;
+            r[rOffset + 4 * i + 3] = ri3;
+        }
+    }
+
+    static void multiplyMV(float[] r, int rOffset, float[] lhs, int lhsOffset,
+        float[] rhs, int rhsOffset) {
+        final float x = rhs[rhsOffset];
+        final float y = rhs[rhsOffset + 1];
+        final float z = rhs[rhsOffset + 2];
+        final float w = rhs[rhsOffset + 3];
+        for (int k = 0; k < 4; k++) {
+            r[rOffset + k] = lhs[lhsOffset + k] * x + lhs[lhsOffset + 4 + k] * y
+                + lhs[lhsOffset + 8 + k] * z + lhs[lhsOffset + 12 + k] * w;
+        }
+    }
+
+    static void setLookAtM(float[] rm, int rmOffset, float eyeX, float eyeY, float eyeZ,
+        float centerX, float centerY, float centerZ, float upX, float upY, float upZ) {
+        float fx = centerX - eyeX;
+        float fy = centerY - eyeY;
+        float fz = centerZ - eyeZ;
+        final float rlf = 1.0f / length(fx, fy, fz);
+        fx *= rlf;
+        fy *= rlf;
+        fz *= rlf;
+        float sx = fy * upZ - fz * upY;
+        float sy = fz * upX - fx * upZ;
+        float sz = fx * upY - fy * upX;
+        final float rls = 1.0f / length(sx, sy, sz);
+        sx *= rls;
+        sy *= rls;
+        sz *= rls;
+        final float ux = sy * fz - sz * fy;
+        final float uy = sz * fx - sx * fz;
+        final float uz = sx * fy - sy * fx;
+        rm[rmOffset] = sx;
+        rm[rmOffset + 1] = ux;
+        rm[rmOffset + 2] = -fx;
+        rm[rmOffset + 3] = 0.0f;
+        rm[rmOffset + 4] = sy;
+        rm[rmOffset + 5] = uy;
+        rm[rmOffset + 6] = -fy;
+        rm[rmOffset + 7] = 0.0f;
+        rm[rmOffset + 8] = sz;
+        rm[rmOffset + 9] = uz;
+        rm[rmOffset + 10] = -fz;
+        rm[rmOffset + 11] = 0.0f;
+        rm[rmOffset + 12] = 0.0f;
+        rm[rmOffset + 13] = 0.0f;
+        rm[rmOffset + 14] = 0.0f;
+        rm[rmOffset + 15] = 1.0f;
+        translateM(rm, rmOffset, -eyeX, -eyeY, -eyeZ);
+    }
+
+    static void frustumM(float[] m, int offset, float left, float right,
+        float bottom, float top, float near, float far) {
+        final float rWidth = 1.0f / (right - left);
+        final float rHeight = 1.0f / (top - bottom);
+        final float rDepth = 1.0f / (near - far);
+        final float x = 2.0f * (near * rWidth);
+        final float y = 2.0f * (near * rHeight);
+        final float a = (right + left) * rWidth;
+        final float b = (top + bottom) * rHeight;
+        final float c = (far + near) * rDepth;
+        final float d = 2.0f * (far * near * rDepth);
+        m[offset] = x;
+        m[offset + 5] = y;
+        m[offset + 8] = a;
+        m[offset + 9] = b;
+        m[offset + 10] = c;
+        m[offset + 14] = d;
+        m[offset + 11] = -1.0f;
+        m[offset + 1] = 0.0f;
+        m[offset + 2] = 0.0f;
+        m[offset + 3] = 0.0f;
+        m[offset + 4] = 0.0f;
+        m[offset + 6] = 0.0f;
+        m[offset + 7] = 0.0f;
+        m[offset + 12] = 0.0f;
+        m[offset + 13] = 0.0f;
+        m[offset + 15] = 0.0f;
+    }
+
+    static float length(float x, float y, float z) {
+        return (float) Math.sqrt(x * x + y * y + z * z);
+    }
+}
@@ -0,0 +1,160 @@
+package com.jr3dL.android.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+
+import com.jr3dL.android.data.CubeMesh;
+import com.jr3dL.android.data.MeshData;
+import com.jr3dL.android.gl.RecordingGl;
+import com.jr3dL.android.programs.ProgramCache;
+import com.jr3dL.android.programs.ShaderPreprocessor;
+import com.jr3dL.android.util.BufferHelper;
+import com.jr3dL.android.util.TextReader;
+
+/**
+ * Times the resource work done when the renderer and its GL context are
+ * created: copying vertex data into direct FloatBuffers, for the cube and
+ * for static batches of 100 to 10k cubes, and reading the shader sources
+ * through TextReader, which TextResourceReader uses. Shader files are read
+ * from res/raw once and timed from memory, so the disk doesn't skew the
+ * result. The folder is found as the checks find it, from the working
+ * directory up, or taken from -Dbench.res.
+ *
+ * Also preprocesses the simple program's lit, textured variant, then builds
+ * it over a {@link RecordingGl}, from source and through a
+ * {@link ProgramCache} in a temporary directory. Off device
+ * compiling costs next to nothing, so this times the cache's own overhead,
+ * hashing the sources and reading the binary, not the compile it saves.
+ * That the cache and the variants build the right programs is checked by
+ * {@link ProgramCacheCheck} and {@link ShaderVariantsCheck}.
+ *
+ *     java -cp bin/bench com.jr3dL.android.bench.ResourceBenchmark [results.json]
+ */
+public class ResourceBenchmark {
+    private static final int[] BATCH_OBJECT_COUNTS = {100, 1000, 10000};
+    private static final String[] SHADERS = {
+        "simple_vertex_shader.glsl", "simple_fragment_shader.glsl",
+        "point_vertex_shader.glsl", "point_fragment_shader.glsl"
+    };
+
+    public static void main(String[] args) throws Exception {
+        final BenchmarkRunner runner = new BenchmarkRunner();
+        run(runner);
+        runner.finish(args);
+    }
+
+    static void run(BenchmarkRunner runner) throws IOException {
+        final MeshData cube = CubeMesh.create();
+        final float[] cubeVertices = cube.getVertices();
+        runner.run("floatBuffer.cube", "floats=" + cubeVertices.length,
+            new BenchmarkRunner.Operation() {
+                @Override
+                public long run() {
+                    return BufferHelper.newFloatBuffer(cubeVertices).capacity();
+                }
+            });
+        for (int objectCount : BATCH_OBJECT_COUNTS) {
+            // A static batch holds every index of every object as a vertex.
+            final float[] batch = new float[objectCount * cube.getIndexCount() * MeshData.STRIDE];
+            runner.run("floatBuffer.staticBatch", "objects=" + objectCount,
+                new BenchmarkRunner.Operation() {
+                    @Override
+                    public long run() {
+                        return BufferHelper.newFloatBuffer(batch).capacity();
+                    }
+                });
+        }
+
+        final File directory = CheckFiles.rawDirectory();
+        for (String shader : SHADERS) {
+            final byte[] source = readFile(new File(directory, shader));
+            runner.run("shaderText.read", "shader=" + shader, new BenchmarkRunner.Operation() {
+                @Override
+                public long run() {
+                    try {
+                        return TextReader.readText(new ByteArrayInputStream(source))
+                            .length();
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        }
+
+        final ShaderPreprocessor preprocessor = CheckFiles.newPreprocessor();
+        final String vertexTemplate = TextReader.readText(
+            new FileInputStream(new File(directory, SHADERS[0])));
+        final String fragmentTemplate = TextReader.readText(
+            new FileInputStream(new File(directory, SHADERS[1])));
+        final HashMap<String, String> defines = new HashMap<String, String>();
+        defines.put("TEXTURED", "");
+        defines.put("LIT", "");
+        defines.put("LIGHT_COUNT", "1");
+        runner.run("shaderVariant.preprocess", "variant=textured,lit",
+            new BenchmarkRunner.Operation() {
+                @Override
+                public long run() {
+                    return preprocessor.process(vertexTemplate, defines).length()
+                        + preprocessor.process(fragmentTemplate, defines).length();
+                }
+            });
+        final String vertexShaderSource = preprocessor.process(vertexTemplate, defines);
+        final String fragmentShaderSource = preprocessor.process(fragmentTemplate, defines);
+
+        final File cacheDirectory = CheckFiles.createTempDirectory("programs");
+        try {
+            runProgramBuilds(runner, vertexShaderSource, fragmentShaderSource, cacheDirectory);
+        } finally {
+            CheckFiles.deleteRecursively(cacheDirectory);
+        }
+    }
+
+    private static void runProgramBuilds(BenchmarkRunner runner,
+        final String vertexShaderSource, final String fragmentShaderSource,
+        File cacheDirectory) {
+        final RecordingGl gl = new RecordingGl();
+        final ProgramCache cache = new ProgramCache(gl, cacheDirectory, "bench");
+        cache.setCompiler(QuietCompiler.INSTANCE);
+
+        runner.run("programBuild.source", "shader=simple", new BenchmarkRunner.Operation() {
+            @Override
+            public long run() {
+                gl.reset();
+                final int program = QuietCompiler.INSTANCE.compile(gl, vertexShaderSource,
+                    fragmentShaderSource);
+                gl.glDeleteProgram(program);
+                return program;
+            }
+        });
+        runner.run("programBuild.binary", "shader=simple", new BenchmarkRunner.Operation() {
+            @Override
+            public long run() {
+                gl.reset();
+                final int program = cache.build(vertexShaderSource, fragmentShaderSource);
+                gl.glDeleteProgram(program);
+                return program;
+            }
+        });
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        final FileInputStream in = new FileInputStream(file);
+        try {
+            final byte[] bytes = new byte[(int) file.length()];
+            int read = 0;
+            while (read < bytes.length) {
+                final int count = in.read(bytes, read, bytes.length - read);
+                if (count < 0) {
+                    throw new IOException("Unexpected end of " + file);
+                }
+                read += count;
+            }
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+}
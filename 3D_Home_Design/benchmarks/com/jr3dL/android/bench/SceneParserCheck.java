@@ -0,0 +1,98 @@
+package com.jr3dL.android.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+
+import com.jr3dL.android.scene.Scene;
+import com.jr3dL.android.scene.SceneParser;
+
+/**
+ * Parses the app's house_scene.txt with {@link SceneParser} and checks it
+ * has the nodes, cells and portals it declares. Then it parses small scenes
+ * with the numbers written every way the format allows, and with one bad
+ * line each, which has to fail with that line's number and what is wrong
+ * with it: an unknown mesh or material, a wrong field count, a bad float.
+ * Exits non-zero at the first failure.
+ *
+ *     java -cp bin/bench com.jr3dL.android.bench.SceneParserCheck
+ */
+public class SceneParserCheck {
+    private static final int HOUSE_NODES = 20;
+    private static final int HOUSE_CELLS = 2;
+    private static final int HOUSE_PORTALS = 1;
+
+    /** Declarations every small scene starts with; the line after is line 5. */
+    private static final String HEADER = "mesh cube\n"
+        + "material plain -\n"
+        + "\n"
+        + "# the line under test follows\n";
+    private static final int TESTED_LINE = 5;
+
+    private static final String[][] BAD_LINES = {
+        {"node sphere plain  0 0 0  1 1 1  0 0 1 0", "Undeclared mesh sphere"},
+        {"node cube glass  0 0 0  1 1 1  0 0 1 0", "Undeclared material glass"},
+        {"node cube plain  0 0 0  1 1 1  0 0 1", "Expected mesh, material"},
+        {"node cube plain  0 0 0  1 1 1  0 0 1 0 0", "Unknown node flag 0"},
+        {"cell hall  0 0 0  1 1", "Expected 8 tokens but found 7"},
+        {"node cube plain  0 0 0  1 1.5.2 1  0 0 1 0", "Malformed number 1.5.2"},
+        {"node cube plain  0 0 0  1 x 1  0 0 1 0", "Malformed number x"},
+        {"node cube plain  0 0 0  1 1 1  0 0 1e 0", "Malformed number 1e"},
+        {"portal hall kitchen  0 0 0  1 0 0  1 1 0  0 1 0", "Undeclared cell hall"},
+    };
+
+    public static void main(String[] args) throws IOException {
+        run();
+    }
+
+    static void run() throws IOException {
+        final Scene house = SceneParser.parse(new FileInputStream(
+            new File(CheckFiles.rawDirectory(), "house_scene.txt")));
+        expect("house nodes", HOUSE_NODES, house.getNodeCount());
+        expect("house cells", HOUSE_CELLS, house.getCells().getCellCount());
+        expect("house portals", HOUSE_PORTALS, house.getCells().getPortalCount());
+
+        final Scene numbers = parse(HEADER
+            + "node cube plain  -4 .5 1.5f  2e-3 +3 -0.25E1  90 0 1 0  static # comment\n");
+        expectFloats("translation", new float[] {-4.0f, 0.5f, 1.5f}, numbers.getTranslations());
+        expectFloats("scale", new float[] {2e-3f, 3.0f, -2.5f}, numbers.getScales());
+
+        for (String[] bad : BAD_LINES) {
+            final String wanted = "Scene line " + TESTED_LINE + ": " + bad[1];
+            try {
+                parse(HEADER + bad[0] + "\n");
+            } catch (RuntimeException e) {
+                if (e.getMessage() == null || !e.getMessage().startsWith(wanted)) {
+                    throw new RuntimeException("\"" + bad[0] + "\" failed with \""
+                        + e.getMessage() + "\" instead of \"" + wanted + "\"", e);
+                }
+                continue;
+            }
+            throw new RuntimeException("\"" + bad[0] + "\" parsed without an error");
+        }
+        System.out.println("scene parser: house_scene.txt has " + HOUSE_NODES + " nodes, "
+            + HOUSE_CELLS + " cells and " + HOUSE_PORTALS + " portal; " + BAD_LINES.length
+            + " bad lines rejected with their line number");
+    }
+
+    private static Scene parse(String text) throws UnsupportedEncodingException {
+        return SceneParser.parse(new ByteArrayInputStream(text.getBytes("UTF-8")));
+    }
+
+    private static void expectFloats(String what, float[] expected, float[] actual) {
+        for (int i = 0; i < expected.length; i++) {
+            if (actual[i] != expected[i]) {
+                throw new RuntimeException(what + " " + i + " parsed as " + actual[i]
+                    + " instead of " + expected[i]);
+            }
+        }
+    }
+
+    private static void expect(String what, int expected, int actual) {
+        if (expected != actual) {
+            throw new RuntimeException(what + " is " + actual + " instead of " + expected);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.jr3dL.android.bench;
+
+import java.io.File;
+
+import com.jr3dL.android.gl.GlStateCache;
+import com.jr3dL.android.gl.RecordingGl;
+import com.jr3dL.android.programs.ProgramCache;
+import com.jr3dL.android.programs.ShaderVariants;
+import com.jr3dL.android.programs.SimpleShaderProgram;
+
+/**
+ * Builds every {@link ShaderVariants} key of the simple program from the
+ * shaders in res/raw over a {@link RecordingGl}, with the program cache in
+ * a temporary directory. Checks each variant has the texture and light
+ * uniforms and attributes exactly when its key asks for them, and that all
+ * but the one prewarmed variant were built lazily. Exits non-zero at the
+ * first failure.
+ *
+ *     java -cp bin/bench com.jr3dL.android.bench.ShaderVariantsCheck
+ */
+public class ShaderVariantsCheck {
+    public static void main(String[] args) {
+        run();
+    }
+
+    static void run() {
+        final File cacheDirectory = CheckFiles.createTempDirectory("variants");
+        try {
+            check(cacheDirectory);
+        } finally {
+            CheckFiles.deleteRecursively(cacheDirectory);
+        }
+    }
+
+    /**
+     * Prewarms one variant, builds every other one lazily, and checks each
+     * has the texture and light uniforms exactly when its key asks for them.
+     */
+    private static void check(File cacheDirectory) {
+        final RecordingGl gl = new RecordingGl();
+        final ProgramCache cache = new ProgramCache(gl, cacheDirectory, "check");
+        cache.setCompiler(QuietCompiler.INSTANCE);
+        final ShaderVariants variants = new ShaderVariants(new GlStateCache(gl), cache,
+            CheckFiles.newPreprocessor(), CheckFiles.readRaw("simple_vertex_shader.glsl"),
+            CheckFiles.readRaw("simple_fragment_shader.glsl"));
+        final int prewarmed = ShaderVariants.key(true, 1);
+        variants.prewarm(new int[] {prewarmed});
+        for (int key = 0; key < ShaderVariants.KEY_COUNT; key++) {
+            final SimpleShaderProgram program = variants.get(key);
+            final boolean textured = program.uTexture != SimpleShaderProgram.NOT_FOUND
+                && program.aTexCoordinate != SimpleShaderProgram.NOT_FOUND;
+            final boolean lit = program.uLightPos != SimpleShaderProgram.NOT_FOUND
+                && program.aNormal != SimpleShaderProgram.NOT_FOUND;
+            if (textured != ShaderVariants.isTextured(key)
+                || lit != (ShaderVariants.getLightCount(key) > 0)) {
+                throw new RuntimeException(ShaderVariants.getName(key) + " variant has"
+                    + (textured ? "" : " no") + " texture and" + (lit ? "" : " no") + " light");
+            }
+        }
+        if (variants.getBuiltCount() != ShaderVariants.KEY_COUNT
+            || variants.getLazyBuildCount() != ShaderVariants.KEY_COUNT - 1) {
+            throw new RuntimeException("Expected " + ShaderVariants.KEY_COUNT + " variants, "
+                + "all but one lazily, got " + variants.getBuiltCount() + " and "
+                + variants.getLazyBuildCount());
+        }
+        System.out.println("shader variants: " + variants.getBuiltCount() + " built, "
+            + variants.getLazyBuildCount() + " lazily; uniforms match their features");
+    }
+}
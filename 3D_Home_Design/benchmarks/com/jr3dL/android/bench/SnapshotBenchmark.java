@@ -0,0 +1,64 @@
+package com.jr3dL.android.bench;
+
+import com.jr3dL.android.FrameSnapshot;
+import com.jr3dL.android.SceneUpdater;
+import com.jr3dL.android.data.CubeMesh;
+import com.jr3dL.android.render.TripleBuffer;
+import com.jr3dL.android.scene.Scene;
+
+/**
+ * Times the hand-off from the update thread to the GL thread, and a whole
+ * update at 1k and 10k objects. {@link TripleBufferCheck} checks the
+ * hand-off never tears or rewrites a frame being read.
+ *
+ *     java -cp bin/bench com.jr3dL.android.bench.SnapshotBenchmark [results.json]
+ */
+public class SnapshotBenchmark {
+    private static final int[] OBJECT_COUNTS = {1000, 10000};
+
+    public static void main(String[] args) throws Exception {
+        final BenchmarkRunner runner = new BenchmarkRunner();
+        run(runner);
+        runner.finish(args);
+    }
+
+    static void run(BenchmarkRunner runner) {
+        final TripleBuffer<long[]> buffer = new TripleBuffer<long[]>(new long[1], new long[1],
+            new long[1]);
+        runner.run("snapshot.handoff", "threads=1", new BenchmarkRunner.Operation() {
+            @Override
+            public long run() {
+                buffer.getBack()[0]++;
+                buffer.publish();
+                buffer.acquire();
+                return buffer.getFront()[0];
+            }
+        });
+
+        for (int objectCount : OBJECT_COUNTS) {
+            final SceneUpdater updater = newUpdater(SyntheticScene.create(objectCount, 42));
+            final FrameSnapshot snapshot = newSnapshot(updater);
+            runner.run("snapshot.update", "objects=" + objectCount,
+                new BenchmarkRunner.Operation() {
+                    private long time;
+
+                    @Override
+                    public long run() {
+                        time += 16;
+                        updater.update(snapshot, time);
+                        return snapshot.getQueue().getCount();
+                    }
+                });
+        }
+    }
+
+    static SceneUpdater newUpdater(Scene scene) {
+        final SceneUpdater updater = new SceneUpdater(scene, CubeMesh.create());
+        updater.setViewport(1080, 1920);
+        return updater;
+    }
+
+    static FrameSnapshot newSnapshot(SceneUpdater updater) {
+        return new FrameSnapshot(updater.getScene().getNodeCount(), updater.getQueueCapacity());
+    }
+}
@@ -0,0 +1,93 @@
+package com.jr3dL.android.bench;
+
+import java.nio.FloatBuffer;
+
+import com.jr3dL.android.FrameSnapshot;
+import com.jr3dL.android.SceneUpdater;
+import com.jr3dL.android.data.CubeMesh;
+import com.jr3dL.android.data.MeshData;
+import com.jr3dL.android.scene.Scene;
+import com.jr3dL.android.scene.StaticBatch;
+
+/**
+ * Moves one batched node of a synthetic scene through a
+ * {@link SceneUpdater} and checks the next update rewrites only that
+ * node's slot of the {@link StaticBatch}, shifted by the move, and that an
+ * update after it changes nothing. Exits non-zero at the first failure.
+ *
+ *     java -cp bin/bench com.jr3dL.android.bench.StaticBatchCheck
+ */
+public class StaticBatchCheck {
+    private static final float MOVE = 1.0f;
+
+    public static void main(String[] args) {
+        run();
+    }
+
+    static void run() {
+        final MeshData cube = CubeMesh.create();
+        final SceneUpdater updater = new SceneUpdater(SyntheticScene.create(200, 42), cube);
+        updater.setViewport(1080, 1920);
+        final FrameSnapshot snapshot = new FrameSnapshot(updater.getScene().getNodeCount(),
+            updater.getQueueCapacity());
+        updater.update(snapshot, 16);
+
+        final Scene scene = updater.getScene();
+        final StaticBatch batch = updater.getStaticBatch();
+        int node = scene.getNodeCount() / 2;
+        while (!batch.contains(node)) {
+            node++;
+        }
+        final float[] before = copy(batch.getVertexBuffer());
+        final float[] translations = scene.getTranslations();
+        final int t = node * Scene.TRANSLATION_SIZE;
+        updater.moveNode(node, translations[t] + MOVE, translations[t + 1], translations[t + 2]);
+        updater.update(snapshot, 16);
+        final float[] after = copy(batch.getVertexBuffer());
+
+        // The floats that changed have to be exactly one slot, moved along x.
+        final int slotFloats = cube.getIndexCount() * StaticBatch.STRIDE;
+        int first = -1;
+        int last = -1;
+        for (int i = 0; i < before.length; i++) {
+            if (Float.floatToRawIntBits(before[i]) != Float.floatToRawIntBits(after[i])) {
+                first = first < 0 ? i : first;
+                last = i;
+            }
+        }
+        if (first < 0) {
+            throw new RuntimeException("Moving batched node " + node + " changed nothing");
+        }
+        final int slotStart = first - first % StaticBatch.STRIDE;
+        if (slotStart % slotFloats != 0 || last >= slotStart + slotFloats) {
+            throw new RuntimeException("Moving node " + node + " rewrote floats " + first
+                + " to " + last + ", not one slot of " + slotFloats);
+        }
+        for (int i = slotStart; i < slotStart + slotFloats; i += StaticBatch.STRIDE) {
+            final float shift = after[i] - before[i];
+            if (Math.abs(shift - MOVE) > 1e-4f || after[i + 1] != before[i + 1]
+                || after[i + 2] != before[i + 2]) {
+                throw new RuntimeException("Vertex " + (i / StaticBatch.STRIDE) + " of node "
+                    + node + " moved by " + shift + " instead of " + MOVE);
+            }
+        }
+
+        updater.update(snapshot, 16);
+        final float[] settled = copy(batch.getVertexBuffer());
+        for (int i = 0; i < after.length; i++) {
+            if (Float.floatToRawIntBits(after[i]) != Float.floatToRawIntBits(settled[i])) {
+                throw new RuntimeException("Update without moves rewrote float " + i);
+            }
+        }
+        System.out.println("static batch: moving node " + node + " rewrote only its slot of "
+            + slotFloats + " floats out of " + after.length);
+    }
+
+    private static float[] copy(FloatBuffer buffer) {
+        final float[] floats = new float[buffer.capacity()];
+        buffer.position(0);
+        buffer.get(floats);
+        buffer.position(0);
+        return floats;
+    }
+}
@@ -0,0 +1,70 @@
+package com.jr3dL.android.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Locale;
+import java.util.Random;
+
+import com.jr3dL.android.scene.Scene;
+import com.jr3dL.android.scene.SceneParser;
+
+/**
+ * Generates scenes of any size in the house_scene.txt format, for
+ * benchmarks that need more objects than the real house has.
+ *
+ * Objects are cubes scattered over a square floor plan that grows with
+ * the object count, so density stays about the same. Like the house, most
+ * are static, a tenth spin and a tenth are small static detail objects.
+ * The same count and seed always give the same scene.
+ */
+final class SyntheticScene {
+    /** Floor area per object, in square units. */
+    private static final float AREA_PER_OBJECT = 4.0f;
+    private static final float HEIGHT = 3.0f;
+
+    private SyntheticScene() {
+    }
+
+    /** The scene as text, ready for {@link SceneParser}. */
+    static String text(int objectCount, long seed) {
+        final Random random = new Random(seed);
+        final float halfWidth = (float) Math.sqrt(objectCount * AREA_PER_OBJECT) * 0.5f;
+        final StringBuilder text = new StringBuilder(objectCount * 80);
+        text.append("# ").append(objectCount).append(" synthetic objects\n");
+        text.append("mesh cube\n");
+        text.append("material fouga fouga\n");
+        for (int i = 0; i < objectCount; i++) {
+            final int kind = random.nextInt(10);
+            final float size = kind == 0 ? 0.05f + random.nextFloat() * 0.1f
+                : 0.2f + random.nextFloat() * 1.5f;
+            text.append(String.format(Locale.US,
+                "node cube fouga %.3f %.3f %.3f  %.3f %.3f %.3f  %.1f 0 1 0  %s\n",
+                (random.nextFloat() * 2.0f - 1.0f) * halfWidth,
+                random.nextFloat() * HEIGHT,
+                (random.nextFloat() * 2.0f - 1.0f) * halfWidth,
+                size, size * (0.5f + random.nextFloat()), size,
+                random.nextFloat() * 360.0f,
+                kind == 0 ? "detail" : kind == 1 ? "spin" : "static"));
+        }
+        return text.toString();
+    }
+
+    /** The scene as UTF-8 bytes. */
+    static byte[] bytes(int objectCount, long seed) {
+        try {
+            return text(objectCount, seed).getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Generates and parses a scene. */
+    static Scene create(int objectCount, long seed) {
+        return parse(bytes(objectCount, seed));
+    }
+
+    /** Parses scene text from memory, as the renderer loads its own. */
+    static Scene parse(byte[] bytes) {
+        return SceneParser.parse(new ByteArrayInputStream(bytes));
+    }
+}
@@ -0,0 +1,181 @@
+package com.jr3dL.android.bench;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.jr3dL.android.gl.Gl;
+import com.jr3dL.android.gl.GlStateCache;
+import com.jr3dL.android.gl.GpuResourceRegistry;
+import com.jr3dL.android.gl.RecordingGl;
+import com.jr3dL.android.texture.TextureCache;
+import com.jr3dL.android.texture.TextureImage;
+import com.jr3dL.android.texture.TextureStreamer;
+
+/**
+ * Drives a {@link TextureCache} over a {@link RecordingGl} with images
+ * decoded on the spot and a budget of a few of them, frame by frame, and
+ * checks its hit, miss and eviction counters and resident bytes after
+ * every step: references are counted, the same source and sampling is one
+ * texture, textures over the budget go least recently bound first, one
+ * bound in the last frame never goes, and binding an evicted texture loads
+ * it again. Exits non-zero at the first failure.
+ *
+ *     java -cp bin/bench com.jr3dL.android.bench.TextureCacheCheck
+ */
+public class TextureCacheCheck {
+    private static final int SIZE = 16;
+    private static final int IMAGE_BYTES = SIZE * SIZE * 4;
+    private static final long DECODE_TIMEOUT_SECONDS = 10;
+
+    /** Makes a blank image right away, whichever thread asks. */
+    private static final TextureStreamer.Decoder DECODER = new TextureStreamer.Decoder() {
+        @Override
+        public TextureImage decode() {
+            return new TextureImage(SIZE, SIZE, ByteBuffer.allocateDirect(IMAGE_BYTES));
+        }
+    };
+
+    private final RecordingGl gl = new RecordingGl();
+    private final TextureStreamer streamer;
+    private final TextureCache cache;
+    private final Semaphore decoded = new Semaphore(0);
+    /** Loads started and not yet waited for. */
+    private long waitedMisses;
+
+    private TextureCacheCheck() {
+        final GlStateCache state = new GlStateCache(gl);
+        streamer = new TextureStreamer(state, 1);
+        streamer.setBudget(Integer.MAX_VALUE, Long.MAX_VALUE);
+        streamer.setOnDecoded(new Runnable() {
+            @Override
+            public void run() {
+                decoded.release();
+            }
+        });
+        cache = new TextureCache(state, streamer, new GpuResourceRegistry());
+        cache.setBudget(3 * IMAGE_BYTES);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        run();
+    }
+
+    static void run() throws InterruptedException {
+        final TextureCacheCheck c = new TextureCacheCheck();
+        try {
+            c.check();
+        } finally {
+            c.streamer.release();
+        }
+        System.out.println("texture cache: refcounts, sharing, LRU eviction, last frame kept "
+            + "and reload on bind as expected");
+    }
+
+    private void check() throws InterruptedException {
+        // Sharing: the same source and sampling is one texture, other
+        // sampling of the same source another.
+        final int wood = acquire("wood", Gl.GL_LINEAR);
+        expect("wood acquired twice", wood, acquire("wood", Gl.GL_LINEAR));
+        final int nearWood = acquire("wood", Gl.GL_NEAREST);
+        final int stone = acquire("stone", Gl.GL_LINEAR);
+        if (nearWood == wood || stone == wood || stone == nearWood) {
+            throw new RuntimeException("Different textures share handles " + wood + ", "
+                + nearWood + ", " + stone);
+        }
+        expectCounters("three textures acquired", 1, 3, 0);
+        expect("resident before uploading", 0, cache.getResidentBytes());
+        frame();
+        expectCounters("three textures uploaded", 1, 3, 0);
+        expect("resident after uploading", 3 * IMAGE_BYTES, cache.getResidentBytes());
+
+        // Refcounting: released down to nothing, a loaded texture stays and
+        // acquiring it again is a hit; releasing once too often throws.
+        cache.release(wood);
+        cache.release(wood);
+        try {
+            cache.release(wood);
+            throw new RuntimeException("Releasing an unreferenced texture didn't throw");
+        } catch (IllegalArgumentException expected) {
+            // As it should.
+        }
+        expect("resident after releasing", 3 * IMAGE_BYTES, cache.getResidentBytes());
+        expect("wood acquired again", wood, acquire("wood", Gl.GL_LINEAR));
+        expectCounters("released texture acquired again", 2, 3, 0);
+
+        // LRU: wood is bound longest ago, so the fourth texture pushes it out.
+        cache.bind(wood);
+        frame();
+        cache.bind(nearWood);
+        cache.bind(stone);
+        frame();
+        final int brick = acquire("brick", Gl.GL_LINEAR);
+        cache.bind(nearWood);
+        cache.bind(stone);
+        cache.bind(brick);
+        frame();
+        expectCounters("fourth texture over budget", 2, 4, 1);
+        expect("resident after eviction", 3 * IMAGE_BYTES, cache.getResidentBytes());
+        expect("textures deleted", 1, gl.getCount(RecordingGl.OP_DELETE_TEXTURES));
+
+        // Textures bound in the last frame stay however far over budget.
+        cache.setBudget(IMAGE_BYTES);
+        cache.bind(nearWood);
+        cache.bind(stone);
+        cache.bind(brick);
+        frame();
+        expectCounters("over budget, all bound", 2, 4, 1);
+        expect("resident over budget, all bound", 3 * IMAGE_BYTES, cache.getResidentBytes());
+        cache.bind(brick);
+        frame();
+        expectCounters("over budget, one bound", 2, 4, 3);
+        expect("resident over budget, one bound", IMAGE_BYTES, cache.getResidentBytes());
+
+        // Binding an evicted texture loads it again, with a new name.
+        cache.setBudget(2 * IMAGE_BYTES);
+        final int generated = gl.getCount(RecordingGl.OP_GEN_TEXTURES);
+        cache.bind(wood);
+        expect("names made by reloading", generated + 1,
+            gl.getCount(RecordingGl.OP_GEN_TEXTURES));
+        expectCounters("evicted texture bound", 2, 5, 3);
+        expect("resident while reloading", IMAGE_BYTES, cache.getResidentBytes());
+        cache.bind(brick);
+        frame();
+        expectCounters("evicted texture reloaded", 2, 5, 3);
+        expect("resident after reloading", 2 * IMAGE_BYTES, cache.getResidentBytes());
+        expect("textures deleted", 3, gl.getCount(RecordingGl.OP_DELETE_TEXTURES));
+    }
+
+    private int acquire(String source, int filter) {
+        return cache.acquire(source, filter, filter, Gl.GL_REPEAT, Gl.GL_REPEAT, DECODER);
+    }
+
+    /**
+     * Waits for every load started so far to decode, then runs the cache's
+     * once-per-frame update, which uploads them all.
+     */
+    private void frame() throws InterruptedException {
+        final int loads = (int) (cache.getMissCount() - waitedMisses);
+        if (!decoded.tryAcquire(loads, DECODE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new RuntimeException(loads + " images not decoded after "
+                + DECODE_TIMEOUT_SECONDS + " s");
+        }
+        waitedMisses = cache.getMissCount();
+        cache.update();
+        if (streamer.getPendingCount() != 0) {
+            throw new RuntimeException(streamer.getPendingCount() + " textures left loading");
+        }
+    }
+
+    private void expectCounters(String what, long hits, long misses, long evictions) {
+        expect(what + ": hits", hits, cache.getHitCount());
+        expect(what + ": misses", misses, cache.getMissCount());
+        expect(what + ": evictions", evictions, cache.getEvictionCount());
+    }
+
+    private static void expect(String what, long expected, long actual) {
+        if (expected != actual) {
+            throw new RuntimeException(what + " is " + actual + " instead of " + expected);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.jr3dL.android.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import com.jr3dL.android.FrameSnapshot;
+import com.jr3dL.android.SceneUpdater;
+import com.jr3dL.android.render.TripleBuffer;
+import com.jr3dL.android.scene.Scene;
+
+/**
+ * Stress tests the {@link TripleBuffer} hand-off from the update thread to
+ * the GL thread, each with a producer and a consumer thread going flat out
+ * for a second:
+ *
+ * <ul>
+ * <li>tearing: the producer stamps every element of a large array with the
+ * frame number; the consumer must only ever see arrays with one stamp,
+ * newer than the last one it saw, and still unchanged after reading;</li>
+ * <li>snapshots: the producer runs {@link SceneUpdater#update} on a
+ * synthetic scene; the consumer walks each snapshot's draw queue
+ * and checks the snapshot wasn't rewritten meanwhile.</li>
+ * </ul>
+ *
+ * Where the JVM can count per-thread allocation, the second test also
+ * checks that neither side allocates once warmed up. Exits non-zero at the
+ * first failure.
+ *
+ *     java -cp bin/bench com.jr3dL.android.bench.TripleBufferCheck
+ */
+public class TripleBufferCheck {
+    private static final long STRESS_MILLIS = 1000;
+    private static final int STAMP_LENGTH = 4096;
+
+    public static void main(String[] args) throws InterruptedException {
+        run();
+    }
+
+    static void run() throws InterruptedException {
+        checkTearing();
+        checkSnapshots(SyntheticScene.create(1000, 42));
+    }
+
+    private static void checkTearing() throws InterruptedException {
+        final TripleBuffer<long[]> buffer = new TripleBuffer<long[]>(new long[STAMP_LENGTH],
+            new long[STAMP_LENGTH], new long[STAMP_LENGTH]);
+        final Producer producer = new Producer() {
+            private long stamp;
+
+            @Override
+            void produce() {
+                final long[] frame = buffer.getBack();
+                stamp++;
+                for (int i = 0; i < frame.length; i++) {
+                    frame[i] = stamp;
+                }
+                buffer.publish();
+            }
+        };
+        producer.start();
+        final long end = System.currentTimeMillis() + STRESS_MILLIS;
+        long last = 0;
+        long acquired = 0;
+        while (System.currentTimeMillis() < end) {
+            if (!buffer.acquire()) {
+                continue;
+            }
+            final long[] frame = buffer.getFront();
+            final long stamp = frame[0];
+            if (stamp <= last) {
+                throw new RuntimeException("Frame " + stamp + " acquired after " + last);
+            }
+            for (int i = 1; i < frame.length; i++) {
+                if (frame[i] != stamp) {
+                    throw new RuntimeException("Torn frame: " + frame[i] + " in frame " + stamp);
+                }
+            }
+            if (frame[0] != stamp) {
+                throw new RuntimeException("Frame " + stamp + " rewritten while read");
+            }
+            last = stamp;
+            acquired++;
+        }
+        producer.finish();
+        System.out.println("tearing: " + producer.count + " frames published, " + acquired
+            + " acquired, none torn");
+    }
+
+    private static void checkSnapshots(Scene scene) throws InterruptedException {
+        final SceneUpdater updater = SnapshotBenchmark.newUpdater(scene);
+        final TripleBuffer<FrameSnapshot> buffer = new TripleBuffer<FrameSnapshot>(
+            SnapshotBenchmark.newSnapshot(updater), SnapshotBenchmark.newSnapshot(updater),
+            SnapshotBenchmark.newSnapshot(updater));
+        final Producer producer = new Producer() {
+            private long time;
+
+            @Override
+            void produce() {
+                time += 16;
+                updater.update(buffer.getBack(), time);
+                buffer.publish();
+            }
+        };
+        producer.start();
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        final long end = System.currentTimeMillis() + STRESS_MILLIS;
+        // The second half of the run counts as warmed up.
+        final long warm = end - STRESS_MILLIS / 2;
+        long last = 0;
+        long acquired = 0;
+        long checksum = 0;
+        long consumerBytes = -1;
+        while (System.currentTimeMillis() < end) {
+            if (consumerBytes < 0 && System.currentTimeMillis() >= warm) {
+                consumerBytes = allocatedBytes(threads, Thread.currentThread().getId());
+                producer.markWarm(allocatedBytes(threads, producer.getId()));
+            }
+            if (!buffer.acquire()) {
+                continue;
+            }
+            final FrameSnapshot frame = buffer.getFront();
+            final long sequence = frame.getSequence();
+            if (sequence <= last) {
+                throw new RuntimeException("Snapshot " + sequence + " acquired after " + last);
+            }
+            checksum += walk(frame);
+            if (frame.getSequence() != sequence) {
+                throw new RuntimeException("Snapshot " + sequence + " rewritten while read");
+            }
+            last = sequence;
+            acquired++;
+        }
+        final long consumerAllocated = consumerBytes < 0 ? -1
+            : allocatedBytes(threads, Thread.currentThread().getId()) - consumerBytes;
+        final long producerAllocated = producer.warmBytes < 0 ? -1
+            : allocatedBytes(threads, producer.getId()) - producer.warmBytes;
+        producer.finish();
+        System.out.println("snapshots: " + producer.count + " updates published, " + acquired
+            + " acquired, none rewritten (" + checksum + ")");
+        if (producerAllocated < 0 || consumerAllocated < 0) {
+            System.out.println("snapshots: allocation not measurable on this JVM");
+            return;
+        }
+        System.out.println("snapshots: " + producerAllocated + " bytes allocated by the update"
+            + " thread and " + consumerAllocated + " by the consumer once warm");
+        if (producerAllocated > 0 || consumerAllocated > 0) {
+            throw new RuntimeException("Steady-state hand-off allocated memory");
+        }
+    }
+
+    /** Reads what the GL thread would: every packet and the matrices of its node. */
+    private static long walk(FrameSnapshot frame) {
+        long sum = 0;
+        for (int i = 0; i < frame.getQueue().getCount(); i++) {
+            sum += frame.getQueue().getItem(i) + frame.getQueue().getMesh(i);
+        }
+        return sum + frame.getTriangleCount();
+    }
+
+    /**
+     * Bytes the thread allocated so far, or -1 where the JVM can't say.
+     * Measuring allocates nothing on HotSpot.
+     */
+    private static long allocatedBytes(ThreadMXBean threads, long threadId) {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(threadId);
+        }
+        return -1;
+    }
+
+    /** Calls produce() as fast as it can until finished. */
+    private abstract static class Producer extends Thread {
+        private volatile boolean finished;
+        volatile long count;
+        volatile long warmBytes = -1;
+
+        abstract void produce();
+
+        void markWarm(long bytes) {
+            warmBytes = bytes;
+        }
+
+        @Override
+        public void run() {
+            while (!finished) {
+                produce();
+                count++;
+            }
+        }
+
+        void finish() throws InterruptedException {
+            finished = true;
+            join();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+// Point lights in eye space, LIGHT_COUNT of them, for shaders compiled
+// with LIT defined.
+uniform vec3 u_LightPos[LIGHT_COUNT];
+
+// Diffuse light at a point, attenuated with distance and never below 0.9
+// of the attenuated light, so faces turned away from a light stay visible.
+float diffuseLight(vec3 position, vec3 normal)
+{
+    float diffuse = 0.0;
+    for (int i = 0; i < LIGHT_COUNT; i++) {
+        float distance = length(u_LightPos[i] - position);
+        vec3 lightVector = normalize(u_LightPos[i] - position);
+        diffuse += max(dot(normal, lightVector), 0.9) / (1.0 + (0.25 * distance * distance));
+    }
+    return diffuse;
+}
@@ -1,29 +1,32 @@
-precision mediump float;       
-                               
-uniform vec3 u_LightPos;       
+// The vertex color, times the texture if TEXTURED and times the diffuse
+// light of LIGHT_COUNT point lights if LIT.
+precision mediump float;
 
+varying vec4 v_Color;
+
+#ifdef TEXTURED
 uniform sampler2D u_Texture;    // The input texture.
 varying vec2 v_TexCoordinate;   // Interpolated texture coordinate per fragment.
+#endif
+
+#ifdef LIT
+#include "lighting.glsl"
 
- 
-varying vec3 v_Position;       
-varying vec4 v_Color;          
-                               
-varying vec3 v_Normal;         
- 
+varying vec3 v_Position;
+varying vec3 v_Normal;
+#endif
 
 void main()
 {
-   
-    float distance = length(u_LightPos - v_Position);
- 
-    vec3 lightVector = normalize(u_LightPos - v_Position);
-    
-    float diffuse = max(dot(v_Normal, lightVector), 0.9);
-  
-    diffuse = diffuse * (1.0 / (1.0 + (0.25 * distance * distance)));
- 
-    gl_FragColor = v_Color * diffuse;
-    
-    
-}
\ No newline at end of file
+    vec4 color = v_Color;
+
+#ifdef TEXTURED
+    color *= texture2D(u_Texture, v_TexCoordinate);
+#endif
+
+#ifdef LIT
+    color *= diffuseLight(v_Position, v_Normal);
+#endif
+
+    gl_FragColor = color;
+}
@@ -1,23 +1,38 @@
-uniform mat4 u_Matrix;      
-uniform mat4 u_MVMatrix;       
- 
-attribute vec4 a_Position;     
-attribute vec4 a_Color;       
-attribute vec3 a_Normal;       
- 
-varying vec3 v_Position;       
-varying vec4 v_Color;          
-varying vec3 v_Normal;         
- 
+// Built by ShaderVariants with TEXTURED, LIT and LIGHT_COUNT defined as the
+// material needs; see simple_fragment_shader.glsl.
+uniform mat4 u_Matrix;
+
+attribute vec4 a_Position;
+attribute vec4 a_Color;
+
+varying vec4 v_Color;
+
+#ifdef TEXTURED
+uniform vec4 u_TexRegion;      // Offset and size of the texture region the mesh maps onto.
+attribute vec2 a_TexCoordinate;
+varying vec2 v_TexCoordinate;
+#endif
+
+#ifdef LIT
+uniform mat4 u_MVMatrix;
+attribute vec3 a_Normal;
+varying vec3 v_Position;
+varying vec3 v_Normal;
+#endif
 
 void main()
 {
-    
-    v_Position = vec3(u_MVMatrix * a_Position);
-    
     v_Color = a_Color;
- 
+
+#ifdef TEXTURED
+    v_TexCoordinate = u_TexRegion.xy + a_TexCoordinate * u_TexRegion.zw;
+#endif
+
+#ifdef LIT
+    v_Position = vec3(u_MVMatrix * a_Position);
+
     v_Normal = vec3(u_MVMatrix * vec4(a_Normal, 0.0));
- 
+#endif
+
     gl_Position = u_Matrix * a_Position;
-}
\ No newline at end of file
+}
@@ -0,0 +1,96 @@
+package com.jr3dL.android;
+
+import java.nio.FloatBuffer;
+
+import com.jr3dL.android.render.RenderQueue;
+import com.jr3dL.android.scene.Scene;
+import com.jr3dL.android.scene.TransformCache;
+
+/**
+ * Everything the GL thread needs to draw one frame, written by the
+ * {@link SceneUpdater} on the update thread: the sorted draw queue, the
+ * matrices of the nodes in it, the camera and light, and a copy of the
+ * static batch geometry.
+ *
+ * Three of these circulate through a
+ * {@link com.jr3dL.android.render.TripleBuffer}, so one is always free for
+ * the update thread while the GL thread draws another. Everything is
+ * allocated up front except the batch copy, which is allocated once when
+ * the batch is first built.
+ */
+public class FrameSnapshot {
+    // Program ids in render queue keys. Surfaces are drawn with the simple
+    // program's variant for their material's shading, PROGRAM_SIMPLE + shading.
+    static final int PROGRAM_SIMPLE = 0;
+    static final int PROGRAM_POINT = PROGRAM_SIMPLE + Scene.SHADING_COUNT;
+
+    // Mesh ids in render queue keys, 0 being "none". The GL thread maps
+    // them to the buffer objects of its context.
+    static final int MESH_BATCH = 1;
+    static final int MESH_CUBE = 2;
+    /** LOD level n is drawn with mesh id MESH_FIRST_LEVEL + n. */
+    static final int MESH_FIRST_LEVEL = 3;
+
+    // Render queue items: a kind in the top byte, an index below it.
+    static final int ITEM_NODE = 0;
+    static final int ITEM_BATCH_RANGE = 1 << 24;
+    static final int ITEM_LIGHT = 2 << 24;
+    static final int ITEM_KIND_MASK = 0xFF << 24;
+    static final int ITEM_INDEX_MASK = (1 << 24) - 1;
+
+    /** This frame's draws, sorted to minimize program, texture and mesh switches. */
+    final RenderQueue queue;
+    /**
+     * Model-view and MVP matrices indexed by node like {@link TransformCache}'s.
+     * Only the nodes in the queue are up to date.
+     */
+    final float[] mvMatrices;
+    final float[] mvpMatrices;
+
+    final float[] viewMatrix = new float[16];
+    /** projection * view, the MVP of the pre-transformed static batch. */
+    final float[] viewProjectionMatrix = new float[16];
+    final float[] lightMvpMatrix = new float[16];
+    final float[] lightPosInEyeSpace = new float[4];
+
+    /** Static batch vertices as of batchVersion, and the ranges drawn from them. */
+    FloatBuffer batchVertices;
+    int batchVertexCount;
+    int[] rangeFirstVertices;
+    int[] rangeVertexCounts;
+    /** Version of the batch contents; 0 until the batch is built. */
+    int batchVersion;
+    /**
+     * Version the last change started from, and the floats it rewrote, so a
+     * GL buffer holding batchBaseVersion only needs that range.
+     */
+    int batchBaseVersion;
+    int batchDirtyStart;
+    int batchDirtyEnd;
+
+    long sequence;
+    int triangleCount;
+    long updateNanos;
+    long cullNanos;
+    long sortNanos;
+
+    public FrameSnapshot(int nodeCount, int queueCapacity) {
+        queue = new RenderQueue(queueCapacity);
+        mvMatrices = new float[nodeCount * TransformCache.MATRIX_SIZE];
+        mvpMatrices = new float[nodeCount * TransformCache.MATRIX_SIZE];
+    }
+
+    /** Number of the update that wrote this snapshot, from 1; 0 if none has yet. */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public RenderQueue getQueue() {
+        return queue;
+    }
+
+    /** Triangles in the queue, batch ranges and nodes together. */
+    public int getTriangleCount() {
+        return triangleCount;
+    }
+}
@@ -8,434 +8,411 @@
 ***/
 package com.jr3dL.android;
 
-import static android.opengl.GLES20.GL_COLOR_BUFFER_BIT;
-import static android.opengl.GLES20.glClear;
-import static android.opengl.GLES20.glClearColor;
-import static android.opengl.GLES20.glGetAttribLocation;
-import static android.opengl.GLES20.glGetUniformLocation;
-import static android.opengl.GLES20.glUniformMatrix4fv;
-import static android.opengl.GLES20.glUseProgram;
-import static android.opengl.GLES20.glViewport;
-import static android.opengl.Matrix.multiplyMM;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
+import java.io.File;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
 import android.content.Context;
-import android.opengl.GLES20;
-import android.opengl.Matrix;
 import android.opengl.GLSurfaceView.Renderer;
+import android.os.Build;
 import android.os.SystemClock;
+import android.util.Log;
 
 import com.jakaria.android.R;
+import com.jr3dL.android.data.CubeMesh;
+import com.jr3dL.android.data.MeshData;
+import com.jr3dL.android.data.MeshRegistry;
+import com.jr3dL.android.gl.AndroidGl;
+import com.jr3dL.android.gl.Gl;
+import com.jr3dL.android.gl.GlStateCache;
+import com.jr3dL.android.gl.GpuResourceRegistry;
+import com.jr3dL.android.metrics.FrameMetrics;
+import com.jr3dL.android.programs.PointShaderProgram;
+import com.jr3dL.android.programs.ProgramCache;
+import com.jr3dL.android.programs.ShaderPreprocessor;
+import com.jr3dL.android.programs.ShaderVariants;
+import com.jr3dL.android.programs.SimpleShaderProgram;
+import com.jr3dL.android.render.FrameScheduler;
+import com.jr3dL.android.render.RenderQueue;
+import com.jr3dL.android.render.TripleBuffer;
+import com.jr3dL.android.scene.Scene;
+import com.jr3dL.android.scene.SceneParser;
+import com.jr3dL.android.scene.TransformCache;
+import com.jr3dL.android.texture.TextureAtlas;
+import com.jr3dL.android.texture.TextureCache;
+import com.jr3dL.android.texture.TextureImage;
+import com.jr3dL.android.texture.TextureStreamer;
 import com.jr3dL.android.util.LoggerConfig;
-import com.jr3dL.android.util.ShaderHelper;
 import com.jr3dL.android.util.TextResourceReader;
 import com.jr3dL.android.util.TextureHelper;
 
+/**
+ * Draws the house. The scene itself is brought up to date by a
+ * {@link SceneUpdater} on an {@link UpdateThread}, which hands finished
+ * frames over as {@link FrameSnapshot}s; the GL thread only uploads what
+ * changed and submits the snapshot's draw queue.
+ */
 public class Jr3DLRenderer implements Renderer {                       
-    private static final String U_MATRIX = "u_Matrix";
+    private static final String TAG = "Jr3DLRenderer";
+    private static final int TEXTURE_DECODER_THREADS = 2;
+    /** Time per frame spent bringing back textures no draw has asked for since a context loss. */
+    private static final long RESTORE_BUDGET_NANOS = 1000000L;
+    /** The region of a batch range; its texture coordinates are already mapped. */
+    private static final float[] WHOLE_PAGE = {0.0f, 0.0f, 1.0f, 1.0f};
+    /** Lights lit materials take: the scene has the one orbiting light. */
+    private static final int LIGHT_COUNT = 1;
     
-    private static final String A_POSITION = "a_Position";
-    private static final String A_COLOR = "a_Color";
-    
-    private static final int BYTES_PER_FLOAT = 4;  
-    
-    private final FloatBuffer mCubePositions;
-    private final FloatBuffer mCubeColors;
-    private final FloatBuffer mCubeNormals;
     private final Context context;
     
-    private float[] ViewMatrix = new float[16];
-    private final float[] projectionMatrix = new float[16];
-    private final float[] mvMatrix = new float[16];
-    private final float[] FprojectionMatrix = new float[16];
+    /** The GL every call goes through; the driver on device, a recorder in tests. */
+    private final Gl gl;
+    /** Shadow of the GL state, so redundant state changes never reach the driver. */
+    private final GlStateCache glState;
+    
+    /** CPU copy of the indexed cube every node is drawn with. */
+    private final MeshData cubeMeshData;
+    /** Vertex and index buffer objects, recreated with the context. */
+    private MeshRegistry meshes;
+    private int cubeMesh;
+    private int staticBatchMesh = -1;
+    /** Version of the static batch in staticBatchMesh, 0 for none. */
+    private int uploadedBatchVersion;
     
-    private final float[] modelMatrix = new float[16];
-    private float[] mLightModelMatrix = new float[16];
+    /** The house layout, loaded from res/raw/house_scene.txt. */
+    private final Scene scene;
+    /** Animation, culling and draw queue, run on the update thread. */
+    private final SceneUpdater updater;
+    private final UpdateThread updateThread;
+    /** Frames from the update thread; the GL thread draws the front one. */
+    private final TripleBuffer<FrameSnapshot> snapshots;
+    /** Registry mesh of every LOD level, recreated with the context. */
+    private final int[] lodMeshes;
+    /** Phase times and counters of recent frames, recorded while enabled. */
+    private final FrameMetrics metrics = new FrameMetrics();
+    /** Decides when the next frame is drawn, for a surface that renders on request. */
+    private final FrameScheduler scheduler;
 
-    private int program;
-    private int pointProgram;
-    private int uMatrixLocation;
-    private int mPositionHandle;
-    private int mMVMatrixHandle;
+    /** The simple program's variant in use while submitting. */
+    private SimpleShaderProgram program;
+    private PointShaderProgram pointProgram;
+    /** The simple program's variants, built as materials need them. */
+    private final ShaderVariants variants;
+    /** The variant drawing each material shading. */
+    private final int[] shadingVariants = new int[Scene.SHADING_COUNT];
+    /** The variants the scene's materials use, built with every context. */
+    private final int[] sceneVariants;
+    /** Shader sources, read once so a lost context only has to compile them. */
+    private final String simpleVertexSource;
+    private final String simpleFragmentSource;
+    private final String pointVertexSource;
+    private final String pointFragmentSource;
+    /** Linked program binaries kept between starts, so programs rarely need compiling. */
+    private final ProgramCache programCache;
+    
+    /** Every program, buffer and texture, and how to make it again in a new context. */
+    private final GpuResourceRegistry resources = new GpuResourceRegistry();
 	
     
     //.........TexturePurpose........//
-    private final FloatBuffer mCubeTextureCoordinates;
-    
-    /** This is a handle to our texture data. */
-    private int mTextureDataHandle;
+    /** Atlas pages the drawables are packed into, or null to give each its own texture. */
+    private final TextureAtlas atlas;
+    /**
+     * What fills each texture page: the drawable name of a page of its own,
+     * or null for an atlas page. Null too for atlas pages no material uses.
+     */
+    private final String[] pageDrawables;
+    private final boolean[] pageUsed;
+    /** Texture cache handles, one per texture page. */
+    private final int[] mPageTextureHandles;
+    /** Decodes the material textures in the background and uploads them a few per frame. */
+    private final TextureStreamer textures;
+    /** Shares the page textures and evicts the least recently drawn past its budget. */
+    private final TextureCache textureCache;
+    /** Whether the pages have been acquired; the cache reloads them on a new context. */
+    private boolean texturesAcquired;
     
-    /** This will be used to pass in the texture. */
-    private int mTextureUniformHandle;
-    /** This will be used to pass in model texture coordinate information. */
-    private int mTextureCoordinateHandle;
-    /** Size of the texture coordinate data in elements. */
-    private final int mTextureCoordinateDataSize = 2;
     //...........TextureEnd........//
-    
-	/** This will be used to pass in model color information. */
-	private int mColorHandle;
-	
-	/** This will be used to pass in the light position. */
-	private int mLightPosHandle;
-	
-	   /** This will be used to pass in model normal information. */
-    private int mNormalHandle;
-	
-	/** Size of the position data in elements. */
-	private final int mPositionDataSize = 3;	
-	
-	/** Size of the color data in elements. */
-	private final int mColorDataSize = 4;	
-	
-	/** Size of the normal data in elements. */
-	private final int mNormalDataSize = 3;
-	
-    private final float[] mLightPosInModelSpace = new float[] {2.50f, 0.0f, 0.0f, 1.0f};
-	
-	/** Used to hold the current position of the light in world space (after transformation via model matrix). */
-	private final float[] mLightPosInWorldSpace = new float[4];
-	
-	/** Used to hold the transformed position of the light in eye space (after transformation via modelview matrix) */
-	private final float[] mLightPosInEyeSpace = new float[4];
 
 
     public Jr3DLRenderer(Context context) {
+        this(context, new AndroidGl());
+    }
+
+    /**
+     * Creates a renderer that issues its calls to the given GL, such as a
+     * {@link com.jr3dL.android.gl.RecordingGl} off device.
+     */
+    public Jr3DLRenderer(Context context, Gl gl) {
         this.context = context;
-     
-        
-        final float[] cubePositionData =
-    		{
-    				// In OpenGL counter-clockwise winding is default. This means that when we look at a triangle, 
-    				// if the points are counter-clockwise we are looking at the "front". If not we are looking at
-    				// the back. OpenGL has an optimization where all back-facing triangles are culled, since they
-    				// usually represent the backside of an object and aren't visible anyways.
-    				
-    				// Front face
-    				-1.0f, 1.0f, 1.0f,				
-    				-1.0f, -1.0f, 1.0f,
-    				1.0f, 1.0f, 1.0f, 
-    				-1.0f, -1.0f, 1.0f, 				
-    				1.0f, -1.0f, 1.0f,
-    				1.0f, 1.0f, 1.0f,
-    				
-    				// Right face
-    				1.0f, 1.0f, 1.0f,				
-    				1.0f, -1.0f, 1.0f,
-    				1.0f, 1.0f, -1.0f,
-    				1.0f, -1.0f, 1.0f,				
-    				1.0f, -1.0f, -1.0f,
-    				1.0f, 1.0f, -1.0f,
-    				
-    				// Back face
-    				1.0f, 1.0f, -1.0f,				
-    				1.0f, -1.0f, -1.0f,
-    				-1.0f, 1.0f, -1.0f,
-    				1.0f, -1.0f, -1.0f,				
-    				-1.0f, -1.0f, -1.0f,
-    				-1.0f, 1.0f, -1.0f,
-    				
-    				// Left face
-    				-1.0f, 1.0f, -1.0f,				
-    				-1.0f, -1.0f, -1.0f,
-    				-1.0f, 1.0f, 1.0f, 
-    				-1.0f, -1.0f, -1.0f,				
-    				-1.0f, -1.0f, 1.0f, 
-    				-1.0f, 1.0f, 1.0f, 
-    				
-    				// Top face
-    				-1.0f, 1.0f, -1.0f,				
-    				-1.0f, 1.0f, 1.0f, 
-    				1.0f, 1.0f, -1.0f, 
-    				-1.0f, 1.0f, 1.0f, 				
-    				1.0f, 1.0f, 1.0f, 
-    				1.0f, 1.0f, -1.0f,
-    				
-    				// Bottom face
-    				1.0f, -1.0f, -1.0f,				
-    				1.0f, -1.0f, 1.0f, 
-    				-1.0f, -1.0f, -1.0f,
-    				1.0f, -1.0f, 1.0f, 				
-    				-1.0f, -1.0f, 1.0f,
-    				-1.0f, -1.0f, -1.0f,
-    		};	
-    		
-    		// R, G, B, A
-    		final float[] cubeColorData =
-    		{				
-    		 // Front face (red)
-                1.0f, 0.0f, 0.0f, 1.0f,             
-                1.0f, 0.0f, 0.0f, 1.0f,
-                1.0f, 0.0f, 0.0f, 1.0f,
-                1.0f, 0.0f, 0.0f, 1.0f,             
-                1.0f, 0.0f, 0.0f, 1.0f,
-                1.0f, 0.0f, 0.0f, 1.0f,
-                
-                // Right face (green)
-                0.0f, 1.0f, 0.0f, 1.0f,             
-                0.0f, 1.0f, 0.0f, 1.0f,
-                0.0f, 1.0f, 0.0f, 1.0f,
-                0.0f, 1.0f, 0.0f, 1.0f,             
-                0.0f, 1.0f, 0.0f, 1.0f,
-                0.0f, 1.0f, 0.0f, 1.0f,
-                
-                // Back face (blue)
-                0.0f, 0.0f, 1.0f, 1.0f,             
-                0.0f, 0.0f, 1.0f, 1.0f,
-                0.0f, 0.0f, 1.0f, 1.0f,
-                0.0f, 0.0f, 1.0f, 1.0f,             
-                0.0f, 0.0f, 1.0f, 1.0f,
-                0.0f, 0.0f, 1.0f, 1.0f,
-                
-                // Left face (yellow)
-                1.0f, 1.0f, 0.0f, 1.0f,             
-                1.0f, 1.0f, 0.0f, 1.0f,
-                1.0f, 1.0f, 0.0f, 1.0f,
-                1.0f, 1.0f, 0.0f, 1.0f,             
-                1.0f, 1.0f, 0.0f, 1.0f,
-                1.0f, 1.0f, 0.0f, 1.0f,
-                
-             // Bottom face (grayish white)
-                0.8f, 1.0f, 1.0f, 0.0f,             
-                0.8f, 1.0f, 1.0f, 0.0f,
-                0.8f, 1.0f, 1.0f, 0.0f,
-                0.8f, 1.0f, 1.0f, 0.0f,             
-                0.8f, 1.0f, 1.0f, 0.0f,
-                0.8f, 1.0f, 1.0f, 0.0f,
-                
-                // Bottom face (grayish white)
-                0.8f, 1.0f, 1.0f, 0.0f,             
-                0.8f, 1.0f, 1.0f, 0.0f,
-                0.8f, 1.0f, 1.0f, 0.0f,
-                0.8f, 1.0f, 1.0f, 0.0f,             
-                0.8f, 1.0f, 1.0f, 0.0f,
-                0.8f, 1.0f, 1.0f, 0.0f
-    		};
-    		
-    		// X, Y, Z
-    		// The normal is used in light calculations and is a vector which points
-    		// orthogonal to the plane of the surface. For a cube model, the normals
-    		// should be orthogonal to the points of each face.
-    		final float[] cubeNormalData =
-    		{												
-    				// Front face
-    				0.0f, 0.0f, 1.0f,				
-    				0.0f, 0.0f, 1.0f,
-    				0.0f, 0.0f, 1.0f,
-    				0.0f, 0.0f, 1.0f,				
-    				0.0f, 0.0f, 1.0f,
-    				0.0f, 0.0f, 1.0f,
-    				
-    				// Right face 
-    				1.0f, 0.0f, 0.0f,				
-    				1.0f, 0.0f, 0.0f,
-    				1.0f, 0.0f, 0.0f,
-    				1.0f, 0.0f, 0.0f,				
-    				1.0f, 0.0f, 0.0f,
-    				1.0f, 0.0f, 0.0f,
-    				
-    				// Back face 
-    				0.0f, 0.0f, -1.0f,				
-    				0.0f, 0.0f, -1.0f,
-    				0.0f, 0.0f, -1.0f,
-    				0.0f, 0.0f, -1.0f,				
-    				0.0f, 0.0f, -1.0f,
-    				0.0f, 0.0f, -1.0f,
-    				
-    				// Left face 
-    				-1.0f, 0.0f, 0.0f,				
-    				-1.0f, 0.0f, 0.0f,
-    				-1.0f, 0.0f, 0.0f,
-    				-1.0f, 0.0f, 0.0f,				
-    				-1.0f, 0.0f, 0.0f,
-    				-1.0f, 0.0f, 0.0f,
-    				
-    				// Top face 
-    				0.0f, 1.0f, 0.0f,			
-    				0.0f, 1.0f, 0.0f,
-    				0.0f, 1.0f, 0.0f,
-    				0.0f, 1.0f, 0.0f,				
-    				0.0f, 1.0f, 0.0f,
-    				0.0f, 1.0f, 0.0f,
-    				
-    				// Bottom face 
-    				0.0f, -1.0f, 0.0f,			
-    				0.0f, -1.0f, 0.0f,
-    				0.0f, -1.0f, 0.0f,
-    				0.0f, -1.0f, 0.0f,				
-    				0.0f, -1.0f, 0.0f,
-    				0.0f, -1.0f, 0.0f
-    		};
-    		
-    		//Texture Purpose//
-    		final float[] cubeTextureCoordinateData =
-            {                                               
-                    // Front face
-                    0.0f, 0.0f,                 
-                    0.0f, 1.0f,
-                    1.0f, 0.0f,
-                    0.0f, 1.0f,
-                    1.0f, 1.0f,
-                    1.0f, 0.0f,             
-                    
-                    // Right face 
-                    0.0f, 0.0f,                 
-                    0.0f, 1.0f,
-                    1.0f, 0.0f,
-                    0.0f, 1.0f,
-                    1.0f, 1.0f,
-                    1.0f, 0.0f, 
-                    
-                    // Back face 
-                    0.0f, 0.0f,                 
-                    0.0f, 1.0f,
-                    1.0f, 0.0f,
-                    0.0f, 1.0f,
-                    1.0f, 1.0f,
-                    1.0f, 0.0f, 
-                    
-                    // Left face 
-                    0.0f, 0.0f,                 
-                    0.0f, 1.0f,
-                    1.0f, 0.0f,
-                    0.0f, 1.0f,
-                    1.0f, 1.0f,
-                    1.0f, 0.0f, 
-                    
-                    // Top face 
-                    0.0f, 0.0f,                 
-                    0.0f, 1.0f,
-                    1.0f, 0.0f,
-                    0.0f, 1.0f,
-                    1.0f, 1.0f,
-                    1.0f, 0.0f, 
-                    
-                    // Bottom face 
-                    0.0f, 0.0f,                 
-                    0.0f, 1.0f,
-                    1.0f, 0.0f,
-                    0.0f, 1.0f,
-                    1.0f, 1.0f,
-                    1.0f, 0.0f
-            };
-    		//TexturePurpose..............//
-    		
-    		// Initialize the buffers.
-    		mCubePositions = ByteBuffer.allocateDirect(cubePositionData.length * BYTES_PER_FLOAT)
-            .order(ByteOrder.nativeOrder()).asFloatBuffer();							
-    		mCubePositions.put(cubePositionData).position(0);		
-    		
-    		mCubeColors = ByteBuffer.allocateDirect(cubeColorData.length * BYTES_PER_FLOAT)
-            .order(ByteOrder.nativeOrder()).asFloatBuffer();							
-    		mCubeColors.put(cubeColorData).position(0);
-    		
-    		mCubeNormals = ByteBuffer.allocateDirect(cubeNormalData.length * BYTES_PER_FLOAT)
-            .order(ByteOrder.nativeOrder()).asFloatBuffer();							
-    		mCubeNormals.put(cubeNormalData).position(0);
-    		
-    		//TexturePurpose.........//
-    		mCubeTextureCoordinates = ByteBuffer.allocateDirect(cubeTextureCoordinateData.length * BYTES_PER_FLOAT)
-                .order(ByteOrder.nativeOrder()).asFloatBuffer();
-            mCubeTextureCoordinates.put(cubeTextureCoordinateData).position(0);
-            //Texture........//
+        this.gl = gl;
+        this.glState = new GlStateCache(gl);
+        
+        scene = SceneParser.parse(context.getResources().openRawResource(R.raw.house_scene));
+        atlas = TextureHelper.readAtlas(context);
+        final int pageCount = assignTexturePages();
+        pageDrawables = new String[pageCount];
+        pageUsed = new boolean[pageCount];
+        for (int i = 0; i < scene.getMaterialCount(); i++) {
+            if (scene.getMaterialTexture(i) == null) {
+                continue;
+            }
+            final int page = scene.getMaterialPages()[i];
+            pageUsed[page] = true;
+            if (atlas == null || page >= atlas.getPageCount()) {
+                pageDrawables[page] = scene.getMaterialTexture(i);
+            }
+        }
+        mPageTextureHandles = new int[pageCount];
+        
+        // The cube's geometry is uploaded once per context into buffer objects;
+        // the CPU copy stays around for batching.
+        cubeMeshData = CubeMesh.create();
+        updater = new SceneUpdater(scene, cubeMeshData);
+        lodMeshes = new int[updater.getLevelCount()];
+        snapshots = new TripleBuffer<FrameSnapshot>(
+            new FrameSnapshot(scene.getNodeCount(), updater.getQueueCapacity()),
+            new FrameSnapshot(scene.getNodeCount(), updater.getQueueCapacity()),
+            new FrameSnapshot(scene.getNodeCount(), updater.getQueueCapacity()));
+        
+        final FrameScheduler.Clock clock = new FrameScheduler.Clock() {
+            @Override
+            public long uptimeMillis() {
+                return SystemClock.uptimeMillis();
+            }
+        };
+        scheduler = new FrameScheduler(clock);
+        updateThread = new UpdateThread(updater, snapshots, scheduler, clock);
+        scheduler.setTarget(updateThread);
+        // The light always orbits, whether or not the scene has spinning nodes.
+        scheduler.setAnimating(true);
+        scheduler.invalidate(FrameScheduler.DIRTY_SCENE | FrameScheduler.DIRTY_CAMERA);
+        updateThread.start();
+        
+        textures = new TextureStreamer(glState, TEXTURE_DECODER_THREADS);
+        // A decoded texture needs a frame to be uploaded in.
+        textures.setOnDecoded(new Runnable() {
+            @Override
+            public void run() {
+                scheduler.invalidate(FrameScheduler.DIRTY_SCENE);
+            }
+        });
+        textureCache = new TextureCache(glState, textures, resources);
+        programCache = new ProgramCache(gl, new File(context.getCacheDir(), "programs"),
+            Build.FINGERPRINT);
+        
+        simpleVertexSource = TextResourceReader.readTextFileFromResource(context,
+            SimpleShaderProgram.VERTEX_SHADER);
+        simpleFragmentSource = TextResourceReader.readTextFileFromResource(context,
+            SimpleShaderProgram.FRAGMENT_SHADER);
+        pointVertexSource = TextResourceReader.readTextFileFromResource(context,
+            PointShaderProgram.VERTEX_SHADER);
+        pointFragmentSource = TextResourceReader.readTextFileFromResource(context,
+            PointShaderProgram.FRAGMENT_SHADER);
+        variants = new ShaderVariants(glState, programCache, new ShaderPreprocessor(
+            new ShaderPreprocessor.Includer() {
+                @Override
+                public String read(String name) {
+                    return readShaderInclude(name);
+                }
+            }), simpleVertexSource, simpleFragmentSource);
+        sceneVariants = assignShadingVariants();
+        registerResources();
+    }
+    
+    /**
+     * Registers what every frame needs, the programs and the cube's
+     * buffers, to be made in each new context before anything draws.
+     */
+    private void registerResources() {
+        resources.register(GpuResourceRegistry.KIND_PROGRAM, false,
+            new GpuResourceRegistry.Restorer() {
+                @Override
+                public void restore() {
+                    // Programs look up their attribute and uniform locations
+                    // once, right after linking. Variants no material uses
+                    // yet are built if one ever does.
+                    pointProgram = new PointShaderProgram(glState, programCache,
+                        pointVertexSource, pointFragmentSource);
+                    variants.reset();
+                    variants.prewarm(sceneVariants);
+                }
+            });
+        final int meshResource = resources.register(GpuResourceRegistry.KIND_BUFFER, false,
+            new GpuResourceRegistry.Restorer() {
+                @Override
+                public void restore() {
+                    // The static batch follows with the first snapshot that has it.
+                    meshes = new MeshRegistry(glState);
+                    cubeMesh = meshes.add(cubeMeshData);
+                    lodMeshes[updater.getCubeLevel()] = cubeMesh;
+                    staticBatchMesh = -1;
+                    uploadedBatchVersion = 0;
+                }
+            });
+        resources.setBytes(meshResource,
+            cubeMeshData.getVertices().length * MeshData.BYTES_PER_FLOAT
+                + cubeMeshData.getIndices().length * MeshData.BYTES_PER_SHORT);
+    }
+
+    /**
+     * Picks the cheapest variant for every shading and returns those the
+     * scene's materials use.
+     */
+    private int[] assignShadingVariants() {
+        final boolean[] used = new boolean[ShaderVariants.KEY_COUNT];
+        int usedCount = 0;
+        for (int shading = 0; shading < Scene.SHADING_COUNT; shading++) {
+            shadingVariants[shading] = ShaderVariants.key(
+                (shading & Scene.SHADING_TEXTURED) != 0,
+                (shading & Scene.SHADING_LIT) != 0 ? LIGHT_COUNT : 0);
+        }
+        for (int i = 0; i < scene.getMaterialCount(); i++) {
+            final int key = shadingVariants[scene.getMaterialShadings()[i]];
+            if (!used[key]) {
+                used[key] = true;
+                usedCount++;
+            }
+        }
+        final int[] keys = new int[usedCount];
+        int count = 0;
+        for (int key = 0; key < used.length; key++) {
+            if (used[key]) {
+                keys[count++] = key;
+            }
+        }
+        return keys;
+    }
+
+    /** Reads a shader's include, a raw resource named like the file without extension. */
+    private String readShaderInclude(String name) {
+        final int dot = name.lastIndexOf('.');
+        final int resourceId = context.getResources().getIdentifier(
+            dot < 0 ? name : name.substring(0, dot), "raw", context.getPackageName());
+        if (resourceId == 0) {
+            throw new RuntimeException("Shader include not found: " + name);
+        }
+        return TextResourceReader.readTextFileFromResource(context, resourceId);
     }
 
     @Override
     public void onSurfaceCreated(GL10 glUnused, EGLConfig config) {
-        glClearColor(0.0f, 0.0f, 0.0f, 0.0f);
+        // A new context starts from default state, whatever the shadow says.
+        glState.invalidate();
+        
+        glState.clearColor(0.0f, 0.0f, 0.0f, 0.0f);
         
         // Use culling to remove back faces.
-        GLES20.glEnable(GLES20.GL_CULL_FACE);
+        glState.enable(Gl.GL_CULL_FACE);
 		
 		// Enable depth testing
-		GLES20.glEnable(GLES20.GL_DEPTH_TEST);
-		
-		
-		// Position the eye in front of the origin.
-				final float eyeX = 0.0f;
-				final float eyeY = 0.0f;
-				final float eyeZ = -.2f;
-
-				// We are looking toward the distance
-				final float lookX = 0.0f;
-				final float lookY = 0.0f;
-				final float lookZ = -20f;
-
-				// Set our up vector. This is where our head would be pointing were we holding the camera.
-				final float upX = 0.0f;
-				final float upY = 1.0f;
-				final float upZ = 0.0f;
-
-				// Set the view matrix. This matrix can be said to represent the camera position.
-				// NOTE: In OpenGL 1, a ModelView matrix is used, which is a combination of a model and
-				// view matrix. In OpenGL 2, we can keep track of these matrices separately if we choose.
-				Matrix.setLookAtM(ViewMatrix, 0, eyeX, eyeY, eyeZ, lookX, lookY, lookZ, upX, upY, upZ);
-				//Matrix.rotateM(ViewMatrix, 0, -45, 0.0f, 1.0f, 0.0f); 
-
-///////////////////////////////pointProgram/////////////////////////////////	
-				
-				String vertexShaderSource1 = TextResourceReader
-		            .readTextFileFromResource(context, R.raw.point_vertex_shader);
-		        String fragmentShaderSource1 = TextResourceReader
-		            .readTextFileFromResource(context, R.raw.point_fragment_shader);
-
-		        int vertexShader1 = ShaderHelper.compileVertexShader(vertexShaderSource1);
-		        int fragmentShader1 = ShaderHelper
-		            .compileFragmentShader(fragmentShaderSource1);
-
-		        pointProgram = ShaderHelper.linkProgram(vertexShader1, fragmentShader1);
-
-		        if (LoggerConfig.ON) {
-		            ShaderHelper.validateProgram(pointProgram);
-		        }
-
-				
-///////////////////////////////////////////////// program////////////				
-        String vertexShaderSource = TextResourceReader
-            .readTextFileFromResource(context, R.raw.simple_vertex_shader);
-        String fragmentShaderSource = TextResourceReader
-            .readTextFileFromResource(context, R.raw.simple_fragment_shader);
-
-        int vertexShader = ShaderHelper.compileVertexShader(vertexShaderSource);
-        int fragmentShader = ShaderHelper
-            .compileFragmentShader(fragmentShaderSource);
-
-        program = ShaderHelper.linkProgram(vertexShader, fragmentShader);
+		glState.enable(Gl.GL_DEPTH_TEST);
 
+        // Build the programs and upload the geometry. After a context loss
+        // the textures come back as they are drawn, and the rest a few per
+        // frame, so the first frame only waits for what every frame needs.
+        textureCache.reset();
+        final boolean restored = resources.onContextCreated();
+        if (restored && LoggerConfig.ON) {
+            Log.i(TAG, "Context recreated: essentials restored in "
+                + resources.getRestoreNanos() / 1000 + " us, "
+                + resources.getPendingCount() + " textures to follow");
+        }
         if (LoggerConfig.ON) {
-            ShaderHelper.validateProgram(program);
+            final StringBuilder summary = new StringBuilder();
+            programCache.formatSummary(summary);
+            summary.append(", ").append(sceneVariants.length).append(" variants prewarmed");
+            Log.i(TAG, summary.toString());
         }
-
-        glUseProgram(program);
         
-        uMatrixLocation = glGetUniformLocation(program, U_MATRIX);
-        
-        // Load the texture
-        mTextureDataHandle = TextureHelper.loadTexture(context, R.drawable.fouga);
+        // Load one texture per page in use. Each shows a placeholder until
+        // its image is decoded, so the first frame doesn't wait.
+        if (!texturesAcquired) {
+            acquireTexturePages();
+            texturesAcquired = true;
+        }
 
     }
 
+    private void acquireTexturePages() {
+        final boolean etc1Supported = TextureHelper.isEtc1Supported(gl);
+        for (int i = 0; i < mPageTextureHandles.length; i++) {
+            if (!pageUsed[i]) {
+                continue;
+            }
+            final int page = i;
+            if (pageDrawables[page] == null) {
+                // Clamped, so regions on the page's edges don't wrap round.
+                mPageTextureHandles[page] = textureCache.acquire(atlas.getPageName(page),
+                    Gl.GL_LINEAR_MIPMAP_NEAREST, Gl.GL_NEAREST, Gl.GL_CLAMP_TO_EDGE,
+                    Gl.GL_CLAMP_TO_EDGE, new TextureStreamer.Decoder() {
+                        @Override
+                        public TextureImage decode() {
+                            return TextureHelper.decodeAtlasPage(context, atlas, page,
+                                etc1Supported);
+                        }
+                    });
+                continue;
+            }
+            final int resourceId = context.getResources().getIdentifier(
+                pageDrawables[page], "drawable", context.getPackageName());
+            if (resourceId == 0) {
+                throw new RuntimeException("Texture not found: " + pageDrawables[page]);
+            }
+            mPageTextureHandles[page] = textureCache.acquire(pageDrawables[page],
+                Gl.GL_LINEAR_MIPMAP_NEAREST, Gl.GL_NEAREST, Gl.GL_REPEAT, Gl.GL_REPEAT,
+                new TextureStreamer.Decoder() {
+                    @Override
+                    public TextureImage decode() {
+                        return TextureHelper.decodeTexture(context, resourceId, etc1Supported);
+                    }
+                });
+        }
+    }
+
+
+    /**
+     * Puts every material whose drawable is in the atlas on its atlas page,
+     * and gives every other drawable a page of its own after those.
+     * Untextured materials go on page 0, which they never bind. Returns the
+     * number of pages.
+     */
+    private int assignTexturePages() {
+        int pageCount = atlas != null ? atlas.getPageCount() : 0;
+        for (int i = 0; i < scene.getMaterialCount(); i++) {
+            final String texture = scene.getMaterialTexture(i);
+            if (texture == null) {
+                scene.setMaterialRegion(i, 0, 0.0f, 0.0f, 1.0f, 1.0f);
+                continue;
+            }
+            final int entry = atlas != null ? atlas.find(texture) : -1;
+            if (entry >= 0) {
+                final float[] region = atlas.getRegion(entry);
+                scene.setMaterialRegion(i, atlas.getPage(entry), region[0], region[1],
+                    region[2], region[3]);
+                continue;
+            }
+            // Materials sharing a drawable share its page.
+            int page = pageCount;
+            for (int other = 0; other < i; other++) {
+                if (texture.equals(scene.getMaterialTexture(other))) {
+                    page = scene.getMaterialPages()[other];
+                }
+            }
+            if (page == pageCount) {
+                pageCount++;
+            }
+            scene.setMaterialRegion(i, page, 0.0f, 0.0f, 1.0f, 1.0f);
+        }
+        return pageCount;
+    }
 
     @Override
     public void onSurfaceChanged(GL10 glUnused, int width, int height) {
         // Set the OpenGL viewport to fill the entire surface.
-        glViewport(0, 0, width, height);
-        
-        final float ratio = (float) height/ width;
-		final float left = -ratio;
-		final float right = ratio;
-		final float bottom = -1.0f;
-		final float top = 1.0f;
-		final float near = 1.0f;
-		final float far = 20.0f;
-		
-		Matrix.frustumM(projectionMatrix, 0, bottom, top, left, right, near, far);
-        
+        gl.glViewport(0, 0, width, height);
+        updater.setViewport(width, height);
+        scheduler.invalidate(FrameScheduler.DIRTY_VIEWPORT);
     }
 
     /**
@@ -444,366 +421,273 @@ public class Jr3DLRenderer implements Renderer {
      */
     @Override
     public void onDrawFrame(GL10 glUnused) {
-        // Clear the rendering surface.
-        glClear(GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
-        
-        long time = SystemClock.uptimeMillis() % 10000L;        
-        float angleInDegrees = (2000.0f / 100000.0f) * ((int) time);
-        
-        glUseProgram(program);
-                        
-        // Assign the matrix
-        
-        mMVMatrixHandle = GLES20.glGetUniformLocation(program, "u_MVMatrix"); 
-        mLightPosHandle = GLES20.glGetUniformLocation(program, "u_LightPos");
-        mNormalHandle = GLES20.glGetAttribLocation(program, "a_Normal");
-        
-        
-        //...........TexturePurpose..........//
-        mTextureUniformHandle = GLES20.glGetUniformLocation(program, "u_Texture");
-        
-        mTextureCoordinateHandle = GLES20.glGetAttribLocation(program, "a_TexCoordinate");
-        
-        // Set the active texture unit to texture unit 0.
-        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-        
-        // Bind the texture to this unit.
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextureDataHandle);
-        
-        // Tell the texture uniform sampler to use this texture in the shader by binding to texture unit 0.
-        GLES20.glUniform1i(mTextureUniformHandle, 0); 
-        
-        //..................TexturePurpose...............//
-        
-        
-        // Calculate position of the light. Rotate and then push into the distance.
-        Matrix.setIdentityM(mLightModelMatrix, 0);
-        Matrix.translateM(mLightModelMatrix, 0, 1.0f, 1.0f, -5.0f);      
-        Matrix.rotateM(mLightModelMatrix, 0, angleInDegrees, 0.0f, 1.0f, 0.0f);
-        Matrix.translateM(mLightModelMatrix, 0, 0.0f, 0.0f, 2.0f);
-         
-        
-        Matrix.multiplyMV(mLightPosInWorldSpace, 0, mLightModelMatrix, 0, mLightPosInModelSpace, 0);
-        Matrix.multiplyMV(mLightPosInEyeSpace, 0, ViewMatrix, 0, mLightPosInWorldSpace, 0);  
-        
-        
-       
-        
-     
-        
-         //Left wall              
-        Matrix.setIdentityM(modelMatrix, 0);
-        Matrix.translateM(modelMatrix, 0, -4.0f, 0.0f, -7.0f);     
-        Matrix.scaleM(modelMatrix, 0, 0.5f, 2.0f, 2.0f);
-        Matrix.rotateM(modelMatrix, 0, 90, 0.0f, 0.0f, 1.0f);
-        drawCube();
-        
-        //fan
-       Matrix.setIdentityM(modelMatrix, 0);
-       Matrix.translateM(modelMatrix, 0, 0.3f, 1.5f, -7.0f);
-       Matrix.scaleM(modelMatrix, 0, 0.5f, 0.2f, 0.5f);
-       Matrix.rotateM(modelMatrix, 0, angleInDegrees, 0.0f, 1.0f, 0.0f);  
-       drawCube();
-       
-       
-        //Right wall
-        Matrix.setIdentityM(modelMatrix, 0);
-        Matrix.translateM(modelMatrix, 0, 4.0f, 0.0f, -7.0f);
-        Matrix.scaleM(modelMatrix, 0, 0.5f, 2.0f, 2.0f);
-        Matrix.rotateM(modelMatrix, 0, 90, 0.0f, 0.0f, 1.0f);
-        drawCube();
-        
-        //Back wall
-        Matrix.setIdentityM(modelMatrix, 0);
-        Matrix.translateM(modelMatrix, 0, 0.0f, 0.0f, -9.0f);
-        Matrix.scaleM(modelMatrix, 0, 4.0f, 2.0f, 0.5f);
-        Matrix.rotateM(modelMatrix, 0, 90, 1.0f, 0.0f, 0.0f);
-        drawCube();
-        
-        //floor
-        Matrix.setIdentityM(modelMatrix, 0);
-        Matrix.translateM(modelMatrix, 0, 0.0f, -2f, -7.0f);
-        Matrix.scaleM(modelMatrix, 0, 4f, 0.2f, 1.5f);
-        Matrix.rotateM(modelMatrix, 0, 90, 0.0f, 1.0f, 0.0f);  
-        drawCube();
+        metrics.beginFrame();
+        final int stateChanges = glState.getIssuedCount();
+        final long uploadedBytes = meshes.getUploadedBytes() + textures.getUploadedBytes();
+        
+        if (snapshots.acquire()) {
+            // The update thread's phases count toward the frame that first draws them.
+            final FrameSnapshot frame = snapshots.getFront();
+            metrics.add(FrameMetrics.PHASE_UPDATE, frame.updateNanos);
+            metrics.add(FrameMetrics.PHASE_CULL, frame.cullNanos);
+            metrics.add(FrameMetrics.PHASE_SORT, frame.sortNanos);
+        }
+        final FrameSnapshot frame = snapshots.getFront();
         
-        //top
-        Matrix.setIdentityM(modelMatrix, 0);
-        Matrix.translateM(modelMatrix, 0, 0.0f, 2.1f, -7.0f);
-        Matrix.scaleM(modelMatrix, 0, 4f, 0.2f, 2.5f);
-        Matrix.rotateM(modelMatrix, 0, 90, 0.0f, 1.0f, 0.0f);  
-        drawCube();
+        // Clear the rendering surface.
+        gl.glClear(Gl.GL_COLOR_BUFFER_BIT | Gl.GL_DEPTH_BUFFER_BIT);
         
+        metrics.begin(FrameMetrics.PHASE_SUBMIT);
+        if (textureCache.update()) {
+            // Over budget; the rest goes in the next frames.
+            scheduler.invalidate(FrameScheduler.DIRTY_SCENE);
+        }
+        metrics.end(FrameMetrics.PHASE_SUBMIT);
+        
+        if (frame.getSequence() != 0) {
+            metrics.begin(FrameMetrics.PHASE_SUBMIT);
+            uploadStaticBatch(frame);
+            submitQueue(frame);
+            metrics.end(FrameMetrics.PHASE_SUBMIT);
+            
+            // Every queued packet is one draw call.
+            metrics.count(FrameMetrics.COUNTER_DRAW_CALLS, frame.queue.getCount());
+            metrics.count(FrameMetrics.COUNTER_TRIANGLES, frame.triangleCount);
+        }
         
-        //bed 1
-       Matrix.setIdentityM(modelMatrix, 0);
-       Matrix.translateM(modelMatrix, 0, 2.9f, -1.5f, -8.0f);
-       Matrix.scaleM(modelMatrix, 0, 2f, 0.2f, 2.5f);
-       Matrix.rotateM(modelMatrix, 0, 90, 1.0f, 0.0f, 0.0f);
-       drawCube();
-       
-       //bed 2
-       Matrix.setIdentityM(modelMatrix, 0);
-       Matrix.translateM(modelMatrix, 0, 2.9f, 0.25f, -8.0f);
-       Matrix.scaleM(modelMatrix, 0, 2f, 0.2f, 2.5f);
-       Matrix.rotateM(modelMatrix, 0, 90, 1.0f, 0.0f, 0.0f);
-       drawCube();
-       
-     //Stair
-       Matrix.setIdentityM(modelMatrix, 0);
-       Matrix.translateM(modelMatrix, 0, 0.7f, -0.9f, -10.0f);
-       Matrix.scaleM(modelMatrix, 0, 0.1f, 1.4f, 2.5f);
-       Matrix.rotateM(modelMatrix, 0, 180, 0.0f, 0.0f, 1.0f);
-       drawCube();
-       
-      //Locker
-       Matrix.setIdentityM(modelMatrix, 0);
-       Matrix.translateM(modelMatrix, 0, -3.0f, 1.5f, -10.0f);
-       Matrix.scaleM(modelMatrix, 0, 1.0f, 2.f, 2.5f);
-       Matrix.rotateM(modelMatrix, 0, 90, 1.0f, 0.0f, 0.0f);
-       drawCube();
-       
-       //balish
-      Matrix.setIdentityM(modelMatrix, 0);
-     Matrix.translateM(modelMatrix, 0, 2.1f, -1.3f, -8.0f);
-     Matrix.scaleM(modelMatrix, 0, 0.5f, 0.2f, .5f);
-     Matrix.rotateM(modelMatrix, 0, 90, 0.0f, 1.0f, 0.0f);
-     drawCube();
-     
-   
-     
-     
-     //table-leg1
-     Matrix.setIdentityM(modelMatrix, 0);
-     Matrix.translateM(modelMatrix, 0, -2.0f, -1.5f, -8.0f);
-     Matrix.scaleM(modelMatrix, 0, .02f, 0.5f, .1f);
-     Matrix.rotateM(modelMatrix, 0, 180, 1.0f, 0.0f, 0.0f);
-     drawCube();
-      //table-leg2
-     Matrix.setIdentityM(modelMatrix, 0);
-     Matrix.translateM(modelMatrix, 0, 0.3f, -1.5f, -8.0f);
-     Matrix.scaleM(modelMatrix, 0, .02f, 0.5f, .1f); 
-     Matrix.rotateM(modelMatrix, 0, 180, 1.0f, 0.0f, 0.0f);
-     drawCube();
-     
-     //table-top
-     Matrix.setIdentityM(modelMatrix, 0);
-     Matrix.translateM(modelMatrix, 0, -0.7f, -.9f, -8.0f);
-     Matrix.scaleM(modelMatrix, 0, 1f, 0.03f, 1.5f);
-     Matrix.rotateM(modelMatrix, 0, 90, 1.00f, 0.0f, 0.0f);
-     drawCube();
-     
-     //computer
-     Matrix.setIdentityM(modelMatrix, 0);
-     Matrix.translateM(modelMatrix, 0, -0.5f, -.7f, -8.0f);
-     Matrix.scaleM(modelMatrix, 0, .4f, 0.3f, .01f);
-     Matrix.rotateM(modelMatrix, 0, 90, 0.0f, 1.0f, 0.0f); 
-     drawCube();
-     
-     //keyboard
-     Matrix.setIdentityM(modelMatrix, 0);
-     Matrix.translateM(modelMatrix, 0, -0.5f, -.8f, -6.5f);
-     Matrix.scaleM(modelMatrix, 0, .4f, 0.035f, .25f);
-     Matrix.rotateM(modelMatrix, 0, 270, 0f, 1.0f, 0.0f); 
-     drawCube();
-     //cpu
-     Matrix.setIdentityM(modelMatrix, 0);
-     Matrix.translateM(modelMatrix, 0, -1f, -1.6f, -8.0f);
-     Matrix.scaleM(modelMatrix, 0, .1f, 0.3f, .5f);
-     Matrix.rotateM(modelMatrix, 0, 270, 0f, 0.0f, 1.0f);
-     drawCube();
-     
-     
-     //chair
-     Matrix.setIdentityM(modelMatrix, 0);
-     Matrix.translateM(modelMatrix, 0, -.1f, -.8f, -4.0f);
-     Matrix.scaleM(modelMatrix, 0, .1f, 0.02f, .3f);
-     Matrix.rotateM(modelMatrix, 0, 180, 0f, 1.0f, 0.0f);
-     drawCube();
-     
-     //chair-leg1
-     Matrix.setIdentityM(modelMatrix, 0);
-     Matrix.translateM(modelMatrix, 0, -0.1f, -1.5f, -6.0f);
-     Matrix.scaleM(modelMatrix, 0, .02f, 0.3f, .1f);
-     Matrix.rotateM(modelMatrix, 0, 90, 0f, 0.0f, 1.0f);
-     drawCube();
-     
-     //chair-leg2
-     Matrix.setIdentityM(modelMatrix, 0);
-     Matrix.translateM(modelMatrix, 0, -.2f, -1.5f, -6.0f);
-     Matrix.scaleM(modelMatrix, 0, .02f, 0.3f, .1f);
-     Matrix.rotateM(modelMatrix, 0, 90, 0f, 0.0f, 1.0f);
-     drawCube();
-     
-     /*
-     //small cube1
-     Matrix.setIdentityM(modelMatrix, 0);
-     Matrix.translateM(modelMatrix, 0, .6f, -.3f, -4.0f);
-     Matrix.scaleM(modelMatrix, 0, .04f, 0.02f, .03f);
-     Matrix.rotateM(modelMatrix, 0, 90, 1f, 0f, 0f);
-     drawCube();
-     //small cube2
-     Matrix.setIdentityM(modelMatrix, 0);
-     Matrix.translateM(modelMatrix, 0, .6f, -.4f, -4.0f);
-     Matrix.scaleM(modelMatrix, 0, .04f, 0.02f, .03f);
-     Matrix.rotateM(modelMatrix, 0, 90, 1f, 0f, 0f);
-     drawCube();
-     
-     //folder1
-     Matrix.setIdentityM(modelMatrix, 0);
-     Matrix.translateM(modelMatrix, 0,.92f, -.28f, -5.1f);
-     Matrix.scaleM(modelMatrix, 0, .02f, 0.02f, .03f);
-     Matrix.rotateM(modelMatrix, 0, 180, 1f, 0f, 0f);
-     drawCube();
-   //folder2
-     Matrix.setIdentityM(modelMatrix, 0);
-     Matrix.translateM(modelMatrix, 0,1f, -.28f, -5.1f);
-     Matrix.scaleM(modelMatrix, 0, .02f, 0.02f, .03f);
-     Matrix.rotateM(modelMatrix, 0, 180, 1f, 0f, 0f);
-     drawCube();
-   //folder3
-     Matrix.setIdentityM(modelMatrix, 0);
-     Matrix.translateM(modelMatrix, 0,1.08f, -.28f, -5.1f);
-     Matrix.scaleM(modelMatrix, 0, .02f, 0.02f, .03f);
-     Matrix.rotateM(modelMatrix, 0, 180, 1f, 0f, 0f);
-     drawCube();
-     
-   //sokes
-     Matrix.setIdentityM(modelMatrix, 0);
-     Matrix.translateM(modelMatrix, 0, .1f, -1.2f, -8f);
-     Matrix.scaleM(modelMatrix, 0, .3f, 1f, .5f);
-     drawCube();
-     
-   //sokes small cube1
-     Matrix.setIdentityM(modelMatrix, 0);
-     Matrix.translateM(modelMatrix, 0, .07f, -.2f, -4.0f);
-     Matrix.scaleM(modelMatrix, 0, .04f, 0.02f, .03f);
-     Matrix.rotateM(modelMatrix, 0, 90, 1f, 0f, 0f);
-     drawCube();
-     //sokes small cube2
-     Matrix.setIdentityM(modelMatrix, 0);
-     Matrix.translateM(modelMatrix, 0, .07f, -.4f, -4.0f);
-     Matrix.scaleM(modelMatrix, 0, .04f, 0.02f, .03f);
-     Matrix.rotateM(modelMatrix, 0, 90, 1f, 0f, 0f);
-     drawCube();
-     
-     //sokes small handler cube2
-     Matrix.setIdentityM(modelMatrix, 0);
-     Matrix.translateM(modelMatrix, 0, .01f, -.7f, -4.0f);
-     Matrix.scaleM(modelMatrix, 0, .01f, 0.04f, .03f);
-     Matrix.rotateM(modelMatrix, 0, 90, 1f, 0f, 0f);
-     drawCube();
-     
+        // Drawing brought back what is visible; the rest follows a bit per frame.
+        metrics.begin(FrameMetrics.PHASE_SUBMIT);
+        if (resources.restorePending(RESTORE_BUDGET_NANOS)) {
+            scheduler.invalidate(FrameScheduler.DIRTY_SCENE);
+        }
+        metrics.end(FrameMetrics.PHASE_SUBMIT);
+        metrics.count(FrameMetrics.COUNTER_STATE_CHANGES, glState.getIssuedCount() - stateChanges);
+        metrics.count(FrameMetrics.COUNTER_BYTES_UPLOADED,
+            meshes.getUploadedBytes() + textures.getUploadedBytes() - uploadedBytes);
+        metrics.endFrame();
+    }
+    
+    /**
+     * Brings the static batch's buffer object to the snapshot's version:
+     * creates it on the first frame of a context, uploads only the last
+     * change if the buffer holds the version before it, and everything if
+     * it is further behind.
      */
-     
-     
-     // Draw a point to indicate the light.
-        GLES20.glUseProgram(pointProgram);      
-        Matrix.setIdentityM(modelMatrix, 0);
-       //Matrix.translateM(modelMatrix, 0, 1f, 1.0f, 10f);
-        Matrix.translateM(modelMatrix, 0, 1.0f, 0.0f, -5.0f);
-        drawLight();
-       
-  
+    private void uploadStaticBatch(FrameSnapshot frame) {
+        if (frame.batchVersion == uploadedBatchVersion) {
+            return;
+        }
+        if (staticBatchMesh < 0) {
+            staticBatchMesh = meshes.addDynamic(frame.batchVertices, frame.batchVertexCount);
+        } else if (uploadedBatchVersion == frame.batchBaseVersion) {
+            meshes.update(staticBatchMesh, frame.batchVertices, frame.batchDirtyStart,
+                frame.batchDirtyEnd);
+        } else {
+            meshes.update(staticBatchMesh, frame.batchVertices, 0,
+                frame.batchVertexCount * MeshData.STRIDE);
+        }
+        uploadedBatchVersion = frame.batchVersion;
     }
     
-    //................TexturePurpose............//
-    private void drawTextureCube()
-    {       
-        
-        mPositionHandle = glGetAttribLocation(program, A_POSITION);
-        mColorHandle = glGetAttribLocation(program, A_COLOR);
-         
-        // Pass in the position information
-        mCubePositions.position(0);     
-        GLES20.glVertexAttribPointer(mPositionHandle, mPositionDataSize, GLES20.GL_FLOAT, false,
-                0, mCubePositions);        
+    /**
+     * Draws the sorted queue, switching program, texture and mesh only where
+     * consecutive packets differ.
+     */
+    private void submitQueue(FrameSnapshot frame) {
+        final RenderQueue renderQueue = frame.queue;
+        int currentProgram = -1;
+        int currentTexture = 0;
+        int currentMesh = 0;
+        int meshHandle = -1;
+        for (int i = 0; i < renderQueue.getCount(); i++) {
+            final int programId = renderQueue.getProgram(i);
+            if (programId != currentProgram) {
+                currentProgram = programId;
+                // Attribute locations belong to the program, so rebind the mesh.
+                currentMesh = 0;
+                beginProgram(programId, frame);
+            }
+            final int texture = renderQueue.getTexture(i);
+            if (texture != currentTexture && texture != 0) {
+                currentTexture = texture;
+                textureCache.bind(mPageTextureHandles[texture - 1]);
+            }
+            final int mesh = renderQueue.getMesh(i);
+            if (mesh != currentMesh && mesh != 0) {
+                currentMesh = mesh;
+                meshHandle = getMeshHandle(mesh);
+                meshes.bind(meshHandle, program.aPosition, program.aColor, program.aNormal, program.aTexCoordinate);
+            }
+            
+            final int item = renderQueue.getItem(i);
+            final int index = item & FrameSnapshot.ITEM_INDEX_MASK;
+            switch (item & FrameSnapshot.ITEM_KIND_MASK) {
+                case FrameSnapshot.ITEM_NODE:
+                    drawNode(meshHandle, index, frame);
+                    break;
+                case FrameSnapshot.ITEM_BATCH_RANGE:
+                    drawStaticBatchRange(index, frame);
+                    break;
+                case FrameSnapshot.ITEM_LIGHT:
+                    drawLight(frame);
+                    break;
+                default:
+                    throw new RuntimeException("Unknown render queue item: " + item);
+            }
+        }
+    }
+    
+    /** The registry mesh of this context for a snapshot mesh id. */
+    private int getMeshHandle(int mesh) {
+        if (mesh == FrameSnapshot.MESH_BATCH) {
+            return staticBatchMesh;
+        } else if (mesh == FrameSnapshot.MESH_CUBE) {
+            return cubeMesh;
+        }
+        return lodMeshes[mesh - FrameSnapshot.MESH_FIRST_LEVEL];
+    }
+    
+    private void beginProgram(int programId, FrameSnapshot frame) {
+        if (programId < FrameSnapshot.PROGRAM_POINT) {
+            final int key = shadingVariants[programId - FrameSnapshot.PROGRAM_SIMPLE];
+            program = variants.get(key);
+            program.useProgram();
+            
+            //...........TexturePurpose..........//
+            if (ShaderVariants.isTextured(key)) {
+                // Set the active texture unit to texture unit 0.
+                glState.activeTexture(Gl.GL_TEXTURE0);
                 
-        GLES20.glEnableVertexAttribArray(mPositionHandle);        
-        
-        // Pass in the color information
-        mCubeColors.position(0);
-        GLES20.glVertexAttribPointer(mColorHandle, mColorDataSize, GLES20.GL_FLOAT, false,
-                0, mCubeColors);        
-        
-     // Pass in the normal information
-        mCubeNormals.position(0);
-        GLES20.glVertexAttribPointer(mNormalHandle, mNormalDataSize, GLES20.GL_FLOAT, false, 
-                0, mCubeNormals);
-        
-        GLES20.glEnableVertexAttribArray(mColorHandle);
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, 36);    
-        
-        Matrix.multiplyMM(mvMatrix, 0, ViewMatrix, 0, modelMatrix, 0);  
-        // Pass in the modelview matrix.
-        GLES20.glUniformMatrix4fv(mMVMatrixHandle, 1, false, mvMatrix, 0);
-        multiplyMM(FprojectionMatrix, 0, projectionMatrix, 0, mvMatrix, 0);        
-        glUniformMatrix4fv(uMatrixLocation, 1, false, FprojectionMatrix, 0);
-     // Pass in the light position in eye space.        
-        GLES20.glUniform3f(mLightPosHandle, mLightPosInEyeSpace[0], mLightPosInEyeSpace[1], mLightPosInEyeSpace[2]);
-        // Draw the cube.
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, 36);      
+                // Tell the texture uniform sampler to use this texture in the
+                // shader by binding to texture unit 0.
+                program.setTextureUnit(0);
+            }
+            
+            // Pass in the light position in eye space.
+            program.setLightPosition(frame.lightPosInEyeSpace);
+        } else {
+            pointProgram.useProgram();
+        }
+    }
+    
+    /**
+     * Draws one range of the pre-transformed static geometry. Its vertices
+     * are already in world space, so the model-view matrix is just the view
+     * matrix.
+     */
+    private void drawStaticBatchRange(int range, FrameSnapshot frame) {
+        program.setTextureRegion(WHOLE_PAGE, 0);
+        program.setUniformMatrix4(program.uMvMatrix, frame.viewMatrix, 0);
+        program.setUniformMatrix4(program.uMatrix, frame.viewProjectionMatrix, 0);
+        meshes.drawArrays(frame.rangeFirstVertices[range], frame.rangeVertexCounts[range]);
     }
     
-    //.................TextureEnd..............//
-    private void drawCube()
+    /**
+     * Draws the bound mesh with the given node's cached matrices, mapped onto
+     * its material's region of the bound page.
+     */
+    private void drawNode(int mesh, int node, FrameSnapshot frame)
 	{		
-    	
-    	mPositionHandle = glGetAttribLocation(program, A_POSITION);
-        mColorHandle = glGetAttribLocation(program, A_COLOR);
-         
-		// Pass in the position information
-		mCubePositions.position(0);		
-        GLES20.glVertexAttribPointer(mPositionHandle, mPositionDataSize, GLES20.GL_FLOAT, false,
-        		0, mCubePositions);        
-                
-        GLES20.glEnableVertexAttribArray(mPositionHandle);        
-        
-        // Pass in the color information
-        mCubeColors.position(0);
-        GLES20.glVertexAttribPointer(mColorHandle, mColorDataSize, GLES20.GL_FLOAT, false,
-        		0, mCubeColors);        
-        
-     // Pass in the normal information
-        mCubeNormals.position(0);
-        GLES20.glVertexAttribPointer(mNormalHandle, mNormalDataSize, GLES20.GL_FLOAT, false, 
-                0, mCubeNormals);
-        
-        GLES20.glEnableVertexAttribArray(mColorHandle);
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, 36);    
-        
-        Matrix.multiplyMM(mvMatrix, 0, ViewMatrix, 0, modelMatrix, 0);  
-        // Pass in the modelview matrix.
-        GLES20.glUniformMatrix4fv(mMVMatrixHandle, 1, false, mvMatrix, 0);
-        multiplyMM(FprojectionMatrix, 0, projectionMatrix, 0, mvMatrix, 0);        
-        glUniformMatrix4fv(uMatrixLocation, 1, false, FprojectionMatrix, 0);
-     // Pass in the light position in eye space.        
-        GLES20.glUniform3f(mLightPosHandle, mLightPosInEyeSpace[0], mLightPosInEyeSpace[1], mLightPosInEyeSpace[2]);
+        program.setTextureRegion(scene.getMaterialRegions(),
+            scene.getMaterials()[node] * Scene.REGION_SIZE);
+        // Pass in the modelview and MVP matrices.
+        program.setMatrices(frame.mvMatrices, frame.mvpMatrices,
+            node * TransformCache.MATRIX_SIZE);
         // Draw the cube.
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, 36);      
+        meshes.draw(mesh);
 	}
     
+    /**
+     * Selects the node under a point in view coordinates and returns it, or
+     * -1 if there is none. Must run on the update thread, through
+     * {@link #queueUpdateEvent}, where the matrices and the BVH live.
+     */
+    public int pick(float x, float y) {
+        return updater.pick(x, y);
+    }
+    
+    /** Runs the event on the update thread before its next update. */
+    public void queueUpdateEvent(Runnable event) {
+        updateThread.queueEvent(event);
+    }
+    
+    /**
+     * Runs after every frame the update thread finishes, on that thread; on
+     * a surface that renders on request it should ask for a render.
+     */
+    public void setOnFrameReady(Runnable onFrameReady) {
+        updateThread.setOnPublish(onFrameReady);
+    }
+    
+    /** Stops updating while the activity is paused. */
+    public void onPause() {
+        updateThread.setPaused(true);
+    }
+    
+    public void onResume() {
+        updateThread.setPaused(false);
+        scheduler.invalidate(FrameScheduler.DIRTY_SCENE);
+    }
+    
+    /** Stops the update and texture decoder threads for good. */
+    public void release() {
+        updateThread.quit();
+        textures.release();
+    }
+    
+    /** The page textures' cache, with its budget and counters. It belongs to the GL thread. */
+    public TextureCache getTextureCache() {
+        return textureCache;
+    }
+    
+    public Scene getScene() {
+        return scene;
+    }
+    
+    /**
+     * The scene side of the renderer, with its visibility and level of
+     * detail statistics. It belongs to the update thread.
+     */
+    public SceneUpdater getUpdater() {
+        return updater;
+    }
+    
+    /**
+     * Timings and counters of recent frames. Like the rest of the renderer
+     * it belongs to the GL thread; enable, read and dump it through
+     * GLSurfaceView.queueEvent.
+     */
+    public FrameMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * The frame scheduler, which paces the update thread; every finished
+     * update asks for a frame through {@link #setOnFrameReady}.
+     */
+    public FrameScheduler getScheduler() {
+        return scheduler;
+    }
+    
     /**
      * Draws a point representing the position of the light.
      */
-    private void drawLight()
+    private void drawLight(FrameSnapshot frame)
     {
-        final int pointMVPMatrixHandle = GLES20.glGetUniformLocation(pointProgram, "u_MVPMatrix");
-        final int pointPositionHandle = GLES20.glGetAttribLocation(pointProgram, "a_Position");
-        
+        final float[] position = SceneUpdater.LIGHT_POSITION_IN_MODEL_SPACE;
+        // The point comes from a constant attribute, not an array, so turn
+        // off any array an earlier draw left enabled there and unbind its buffer.
+        glState.disableVertexAttribArray(pointProgram.aPosition);
+        glState.bindBuffer(Gl.GL_ARRAY_BUFFER, 0);
+
         // Pass in the position.
-        GLES20.glVertexAttrib3f(pointPositionHandle, mLightPosInModelSpace[0], mLightPosInModelSpace[1], mLightPosInModelSpace[2]);
+        gl.glVertexAttrib3f(pointProgram.aPosition, position[0], position[1], position[2]);
 
-        // Since we are not using a buffer object, disable vertex arrays for this attribute.
-       // GLES20.glDisableVertexAttribArray(pointPositionHandle);  
-        
         // Pass in the transformation matrix.
-        Matrix.multiplyMM(mvMatrix, 0, ViewMatrix, 0, mLightModelMatrix, 0);
-        Matrix.multiplyMM(FprojectionMatrix, 0, projectionMatrix, 0, mvMatrix, 0);
-        GLES20.glUniformMatrix4fv(pointMVPMatrixHandle, 1, false, FprojectionMatrix, 0);
+        pointProgram.setMvpMatrix(frame.lightMvpMatrix);
         
         // Draw the point.
-        GLES20.glDrawArrays(GLES20.GL_POINTS, 0, 1);
+        gl.glDrawArrays(Gl.GL_POINTS, 0, 1);
     }
 
 }
\ No newline at end of file
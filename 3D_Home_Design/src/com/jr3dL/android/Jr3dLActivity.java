@@ -8,6 +8,8 @@
 ***/
 package com.jr3dL.android;
 
+import java.io.File;
+
 import android.app.Activity;
 import android.app.ActivityManager;
 import android.content.Context;
@@ -15,14 +17,34 @@ import android.content.pm.ConfigurationInfo;
 import android.opengl.GLSurfaceView;
 import android.os.Build;
 import android.os.Bundle;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
 import android.widget.Toast;
 
+import com.jr3dL.android.scene.Scene;
+
 public class Jr3dLActivity extends Activity {
+    /** Frame rate while only the light and the spinning nodes move. */
+    private static final int ANIMATION_FRAMES_PER_SECOND = 30;
+    
     /**
      * Hold a reference to our GLSurfaceView
      */
     private GLSurfaceView glSurfaceView;
     private boolean rendererSet = false;
+    private Jr3DLRenderer renderer;
+    /** Frame metrics over the surface, toggled with a long press. */
+    private MetricsOverlay metricsOverlay;
+    
+    private final Runnable requestRender = new Runnable() {
+        @Override
+        public void run() {
+            glSurfaceView.requestRender();
+        }
+    };
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -52,10 +74,54 @@ public class Jr3dLActivity extends Activity {
         if (supportsEs2) {
             // Request an OpenGL ES 2.0 compatible context.
             glSurfaceView.setEGLContextClientVersion(2);            
+            // Keep the context through a pause where the device allows, so
+            // resuming needn't rebuild any GPU resources.
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                glSurfaceView.setPreserveEGLContextOnPause(true);
+            }
             
             // Assign our renderer.
-            glSurfaceView.setRenderer(new Jr3DLRenderer(this));
+            renderer = new Jr3DLRenderer(this);
+            glSurfaceView.setRenderer(renderer);
             rendererSet = true;
+            
+            // Draw only when the update thread has finished a frame. The
+            // scheduler runs it right away for changes and touches, at a
+            // capped rate for animation alone.
+            glSurfaceView.setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+            renderer.getScheduler().setAnimationFrameRate(ANIMATION_FRAMES_PER_SECOND);
+            renderer.setOnFrameReady(requestRender);
+            
+            metricsOverlay = new MetricsOverlay(this, glSurfaceView, renderer.getMetrics(),
+                renderer.getTextureCache(), new File(getFilesDir(), "frame_metrics.csv"));
+            
+            // Tap to select the object under the finger; long press to show
+            // or hide the frame metrics.
+            final GestureDetector gestureDetector = new GestureDetector(this,
+                new GestureDetector.SimpleOnGestureListener() {
+                    @Override
+                    public boolean onDown(MotionEvent event) {
+                        return true;
+                    }
+
+                    @Override
+                    public boolean onSingleTapUp(MotionEvent event) {
+                        pick(event.getX(), event.getY());
+                        return true;
+                    }
+
+                    @Override
+                    public void onLongPress(MotionEvent event) {
+                        metricsOverlay.toggle();
+                    }
+                });
+            glSurfaceView.setOnTouchListener(new View.OnTouchListener() {
+                @Override
+                public boolean onTouch(View v, MotionEvent event) {
+                    renderer.getScheduler().onInteraction();
+                    return gestureDetector.onTouchEvent(event);
+                }
+            });
         } else {
             /*
              * This is where you could create an OpenGL ES 1.x compatible
@@ -75,7 +141,36 @@ public class Jr3dLActivity extends Activity {
             return;
         }
 
-        setContentView(glSurfaceView);
+        final FrameLayout layout = new FrameLayout(this);
+        layout.addView(glSurfaceView);
+        layout.addView(metricsOverlay.getView(), new ViewGroup.LayoutParams(
+            ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+        setContentView(layout);
+    }
+
+    /**
+     * Picks on the update thread, where the renderer's matrices and BVH live,
+     * and reports the selection back on the UI thread.
+     */
+    private void pick(final float x, final float y) {
+        renderer.queueUpdateEvent(new Runnable() {
+            @Override
+            public void run() {
+                final int node = renderer.pick(x, y);
+                if (node < 0) {
+                    return;
+                }
+                final Scene scene = renderer.getScene();
+                final String material = scene.getMaterialName(scene.getMaterials()[node]);
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Toast.makeText(Jr3dLActivity.this, "Selected " + material + " #" + node,
+                            Toast.LENGTH_SHORT).show();
+                    }
+                });
+            }
+        });
     }
 
     @Override
@@ -83,7 +178,10 @@ public class Jr3dLActivity extends Activity {
         super.onPause();
         
         if (rendererSet) {
+            // The pause would show up as one long frame, so stop recording.
+            metricsOverlay.hide();
             glSurfaceView.onPause();
+            renderer.onPause();
         }
     }
 
@@ -93,6 +191,16 @@ public class Jr3dLActivity extends Activity {
         
         if (rendererSet) {
             glSurfaceView.onResume();
+            renderer.onResume();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        
+        if (rendererSet) {
+            renderer.release();
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,168 @@
+package com.jr3dL.android;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.opengl.GLSurfaceView;
+import android.util.Log;
+import android.view.View;
+import android.widget.TextView;
+
+import com.jr3dL.android.metrics.FrameMetrics;
+import com.jr3dL.android.texture.TextureCache;
+
+/**
+ * Shows the renderer's frame metrics and texture cache counters in a text
+ * view over the GL surface.
+ * Showing the overlay turns recording on; hiding it turns recording off
+ * and dumps what was recorded to logcat and to a CSV file.
+ *
+ * The metrics belong to the GL thread, so twice a second the summary is
+ * formatted there, into one of two preallocated builders, and handed to
+ * the UI thread. The text view keeps the builder it was given, so the next
+ * refresh writes the other one.
+ */
+public class MetricsOverlay {
+    private static final String TAG = "FrameMetrics";
+    private static final long REFRESH_MILLIS = 500;
+
+    private final GLSurfaceView glSurfaceView;
+    private final FrameMetrics metrics;
+    private final TextureCache textureCache;
+    private final File dumpFile;
+    private final TextView textView;
+
+    private final StringBuilder[] texts = {new StringBuilder(512), new StringBuilder(512)};
+    private int nextText;
+    private volatile StringBuilder formattedText;
+    private boolean shown;
+
+    /** Runs on the UI thread while shown, asking the GL thread for a new summary. */
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            if (!shown) {
+                return;
+            }
+            glSurfaceView.queueEvent(format);
+            textView.postDelayed(refresh, REFRESH_MILLIS);
+        }
+    };
+
+    private final Runnable format = new Runnable() {
+        @Override
+        public void run() {
+            final StringBuilder text = texts[nextText];
+            nextText ^= 1;
+            text.setLength(0);
+            metrics.formatSummary(text);
+            text.append('\n');
+            textureCache.formatSummary(text);
+            formattedText = text;
+            textView.post(display);
+        }
+    };
+
+    private final Runnable display = new Runnable() {
+        @Override
+        public void run() {
+            if (shown) {
+                textView.setText(formattedText);
+            }
+        }
+    };
+
+    /**
+     * Creates a hidden overlay for the given renderer's metrics and texture
+     * cache, dumping the metrics to dumpFile when hidden.
+     */
+    public MetricsOverlay(Context context, GLSurfaceView glSurfaceView, FrameMetrics metrics,
+        TextureCache textureCache, File dumpFile) {
+        this.glSurfaceView = glSurfaceView;
+        this.metrics = metrics;
+        this.textureCache = textureCache;
+        this.dumpFile = dumpFile;
+        textView = new TextView(context);
+        textView.setTextColor(Color.GREEN);
+        textView.setBackgroundColor(Color.argb(160, 0, 0, 0));
+        textView.setTextSize(12.0f);
+        textView.setTypeface(Typeface.MONOSPACE);
+        textView.setVisibility(View.GONE);
+    }
+
+    /** The view to lay over the GL surface. */
+    public View getView() {
+        return textView;
+    }
+
+    public boolean isShown() {
+        return shown;
+    }
+
+    public void toggle() {
+        if (shown) {
+            hide();
+        } else {
+            show();
+        }
+    }
+
+    /** Starts recording from scratch and shows the summary. */
+    public void show() {
+        if (shown) {
+            return;
+        }
+        shown = true;
+        textView.setText("");
+        textView.setVisibility(View.VISIBLE);
+        glSurfaceView.queueEvent(new Runnable() {
+            @Override
+            public void run() {
+                metrics.reset();
+                metrics.setEnabled(true);
+            }
+        });
+        textView.postDelayed(refresh, REFRESH_MILLIS);
+    }
+
+    /** Stops recording, hides the summary and dumps the recorded frames. */
+    public void hide() {
+        if (!shown) {
+            return;
+        }
+        shown = false;
+        textView.removeCallbacks(refresh);
+        textView.setVisibility(View.GONE);
+        glSurfaceView.queueEvent(new Runnable() {
+            @Override
+            public void run() {
+                metrics.setEnabled(false);
+                dump();
+            }
+        });
+    }
+
+    /** Writes the summary to logcat and every recorded frame to the dump file. */
+    private void dump() {
+        final StringBuilder summary = new StringBuilder(512);
+        metrics.formatSummary(summary);
+        summary.append('\n');
+        textureCache.formatSummary(summary);
+        Log.i(TAG, metrics.getFrameCount() + " frames\n" + summary);
+        try {
+            final FileWriter writer = new FileWriter(dumpFile);
+            try {
+                metrics.writeCsv(writer);
+            } finally {
+                writer.close();
+            }
+            Log.i(TAG, "Frames written to " + dumpFile);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write " + dumpFile, e);
+        }
+    }
+}
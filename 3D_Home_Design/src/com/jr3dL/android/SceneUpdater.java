@@ -0,0 +1,488 @@
+package com.jr3dL.android;
+
+import java.nio.FloatBuffer;
+
+import com.jr3dL.android.data.MeshData;
+import com.jr3dL.android.math.Matrix4;
+import com.jr3dL.android.scene.Bvh;
+import com.jr3dL.android.scene.FrustumCuller;
+import com.jr3dL.android.scene.LodSelector;
+import com.jr3dL.android.scene.Picker;
+import com.jr3dL.android.scene.PortalCuller;
+import com.jr3dL.android.scene.Scene;
+import com.jr3dL.android.scene.StaticBatch;
+import com.jr3dL.android.scene.TransformCache;
+import com.jr3dL.android.util.BufferHelper;
+
+/**
+ * The scene side of a frame: the light's orbit, the spinning nodes, the
+ * cached matrices, culling, level of detail and the sorted draw queue. Each
+ * {@link #update} writes one {@link FrameSnapshot} for the GL thread, and
+ * nothing here touches GL, so it runs on its own thread.
+ *
+ * Everything but {@link #setViewport} must be called from that thread,
+ * for instance through {@link UpdateThread#queueEvent}. Once warmed up, an
+ * update allocates nothing.
+ */
+public class SceneUpdater {
+    /** Nodes covering fewer pixels than this are not drawn. */
+    private static final float DETAIL_CULL_PIXELS = 2.0f;
+
+    static final float NEAR = 1.0f;
+    static final float FAR = 20.0f;
+
+    /** The light's position before its orbit is applied. */
+    static final float[] LIGHT_POSITION_IN_MODEL_SPACE = {2.50f, 0.0f, 0.0f, 1.0f};
+
+    /** The house layout, loaded from res/raw/house_scene.txt. */
+    private final Scene scene;
+    /** Cached per-node model, model-view and MVP matrices. */
+    private final TransformCache transforms;
+    /** World bounds of every node, tested against the view frustum each frame. */
+    private final FrustumCuller culler;
+    /** Spatial index over the node bounds, refit as nodes move. */
+    private final Bvh bvh = new Bvh();
+    private boolean bvhBuilt;
+    private final float[] nodeBounds;
+    /** Rooms seen from the camera through doors and windows. */
+    private final PortalCuller portals;
+    /** Level of detail of every individually drawn node, from its size on screen. */
+    private final LodSelector lods;
+    private final int cubeLevel;
+    /** Nodes the last frustum, portal and size tests kept, visibleNodeCount of them. */
+    private final int[] visibleNodes;
+    /** LOD level each visible node is drawn with. */
+    private final int[] visibleNodeLevels;
+    private int visibleNodeCount;
+    /** Triangles queued in the last frame, batch ranges and nodes together. */
+    private int submittedTriangleCount;
+    private final int cubeTriangleCount;
+    /** Finds the node under a tap, through the BVH and each node's oriented box. */
+    private final Picker picker;
+    private int selectedNode = -1;
+    /** Every static cube, pre-transformed into one vertex array. */
+    private final StaticBatch staticBatch;
+    private boolean staticBatchBuilt;
+    private int batchVersion;
+    private int batchBaseVersion;
+    private int batchDirtyStart;
+    private int batchDirtyEnd;
+
+    /** Width in the high half, height in the low half, set from the GL thread. */
+    private volatile long pendingViewport;
+    private long appliedViewport;
+    private int viewportWidth;
+    private int viewportHeight;
+
+    private final float[] viewMatrix = new float[16];
+    private final float[] projectionMatrix = new float[16];
+    private final float[] viewProjectionMatrix = new float[16];
+    private final float[] lightModelMatrix = new float[16];
+    private final float[] lightMvMatrix = new float[16];
+    private final float[] lightPosInWorldSpace = new float[4];
+
+    private long sequence;
+
+    public SceneUpdater(Scene scene, MeshData cubeMeshData) {
+        this.scene = scene;
+        transforms = new TransformCache(scene);
+        staticBatch = new StaticBatch(scene, scene.findMesh("cube"), cubeMeshData);
+        culler = new FrustumCuller(scene);
+        culler.setMeshBounds(scene.findMesh("cube"), cubeMeshData);
+        nodeBounds = new float[scene.getNodeCount() * Bvh.BOUNDS_SIZE];
+        visibleNodes = new int[scene.getNodeCount()];
+        visibleNodeLevels = new int[scene.getNodeCount()];
+        cubeTriangleCount = cubeMeshData.getIndexCount() / 3;
+        // The cube has a single level; finer furniture meshes add coarser
+        // levels after it with decreasing pixel thresholds.
+        lods = new LodSelector(scene);
+        lods.setCullThreshold(DETAIL_CULL_PIXELS);
+        cubeLevel = lods.addLevel(scene.findMesh("cube"), cubeTriangleCount, 0.0f);
+        portals = new PortalCuller(scene);
+        picker = new Picker(scene, bvh);
+        picker.setMeshBounds(scene.findMesh("cube"), cubeMeshData);
+
+        // Position the eye in front of the origin.
+        final float eyeX = 0.0f;
+        final float eyeY = 0.0f;
+        final float eyeZ = -.2f;
+
+        // We are looking toward the distance
+        final float lookX = 0.0f;
+        final float lookY = 0.0f;
+        final float lookZ = -20f;
+
+        // Set our up vector. This is where our head would be pointing were we holding the camera.
+        final float upX = 0.0f;
+        final float upY = 1.0f;
+        final float upZ = 0.0f;
+
+        // Set the view matrix. This matrix can be said to represent the camera position.
+        Matrix4.setLookAt(viewMatrix, 0, eyeX, eyeY, eyeZ, lookX, lookY, lookZ, upX, upY, upZ);
+        transforms.markViewChanged();
+        //Matrix.rotateM(viewMatrix, 0, -45, 0.0f, 1.0f, 0.0f);
+    }
+
+    /** Size of a snapshot's queue: every node, every batch range and the light. */
+    public int getQueueCapacity() {
+        return scene.getNodeCount() + scene.getMaterialCount() + 1;
+    }
+
+    /**
+     * Sets the size of the surface, picked up by the next update. May be
+     * called from any thread.
+     */
+    public void setViewport(int width, int height) {
+        pendingViewport = ((long) width << 32) | (height & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Brings the scene to the given time and writes the frame into out.
+     * Returns false, leaving out alone, until the viewport is known.
+     */
+    public boolean update(FrameSnapshot out, long uptimeMillis) {
+        applyViewport();
+        if (viewportWidth == 0 || viewportHeight == 0) {
+            return false;
+        }
+        final long start = System.nanoTime();
+
+        long time = uptimeMillis % 10000L;
+        float angleInDegrees = (2000.0f / 100000.0f) * ((int) time);
+
+        // Calculate position of the light. Rotate and then push into the distance.
+        Matrix4.setIdentity(lightModelMatrix, 0);
+        Matrix4.translate(lightModelMatrix, 0, 1.0f, 1.0f, -5.0f);
+        Matrix4.rotate(lightModelMatrix, 0, angleInDegrees, 0.0f, 1.0f, 0.0f);
+        Matrix4.translate(lightModelMatrix, 0, 0.0f, 0.0f, 2.0f);
+
+        Matrix4.multiplyVector(lightPosInWorldSpace, 0, lightModelMatrix, 0,
+            LIGHT_POSITION_IN_MODEL_SPACE, 0);
+        Matrix4.multiplyVector(out.lightPosInEyeSpace, 0, viewMatrix, 0, lightPosInWorldSpace, 0);
+        Matrix4.multiply(lightMvMatrix, 0, viewMatrix, 0, lightModelMatrix, 0);
+        Matrix4.multiply(out.lightMvpMatrix, 0, projectionMatrix, 0, lightMvMatrix, 0);
+
+        updateScene(angleInDegrees);
+        final long updated = System.nanoTime();
+        cullScene();
+        final long culled = System.nanoTime();
+        queueScene(out);
+
+        System.arraycopy(viewMatrix, 0, out.viewMatrix, 0, 16);
+        System.arraycopy(viewProjectionMatrix, 0, out.viewProjectionMatrix, 0, 16);
+        copyStaticBatch(out);
+        out.updateNanos = updated - start;
+        out.cullNanos = culled - updated;
+        out.sortNanos = System.nanoTime() - culled;
+        out.sequence = ++sequence;
+        return true;
+    }
+
+    private void applyViewport() {
+        final long viewport = pendingViewport;
+        if (viewport == appliedViewport) {
+            return;
+        }
+        appliedViewport = viewport;
+        final int width = (int) (viewport >>> 32);
+        final int height = (int) viewport;
+        viewportWidth = width;
+        viewportHeight = height;
+        if (width == 0 || height == 0) {
+            return;
+        }
+
+        final float ratio = (float) height / width;
+        final float left = -ratio;
+        final float right = ratio;
+        final float bottom = -1.0f;
+        final float top = 1.0f;
+
+        Matrix4.frustum(projectionMatrix, 0, bottom, top, left, right, NEAR, FAR);
+        transforms.markProjectionChanged();
+        Matrix4.multiply(viewProjectionMatrix, 0, projectionMatrix, 0, viewMatrix, 0);
+        picker.setViewProjection(viewProjectionMatrix);
+        lods.setProjection(projectionMatrix, width, height);
+    }
+
+    /**
+     * Brings the cached matrices and the static batch up to date. Spin nodes
+     * are rotated by the animation angle and are the only ones that get
+     * rebuilt while the camera stands still.
+     */
+    private void updateScene(float angleInDegrees) {
+        final int nodeCount = scene.getNodeCount();
+        final int[] flags = scene.getFlags();
+
+        for (int node = 0; node < nodeCount; node++) {
+            if ((flags[node] & Scene.FLAG_SPIN) != 0) {
+                transforms.setRotationAngle(node, angleInDegrees);
+            }
+        }
+        transforms.update(viewMatrix, projectionMatrix);
+        culler.updateBounds(transforms.getWorldMatrices(), transforms.getChangedNodes(),
+            transforms.getChangedCount());
+        updateBvh();
+        portals.updateNodes(culler, transforms.getChangedNodes(), transforms.getChangedCount());
+
+        if (!staticBatchBuilt) {
+            // Batch ranges are split by room so hidden rooms skip their draws.
+            staticBatch.setNodeGroups(portals.getNodeCells());
+            staticBatch.build(transforms.getWorldMatrices());
+            staticBatchBuilt = true;
+            markStaticBatchChanged(0, staticBatch.getVertexCount() * StaticBatch.STRIDE);
+        } else {
+            // Static nodes that moved get their slot re-baked.
+            final int[] changed = transforms.getChangedNodes();
+            for (int i = 0; i < transforms.getChangedCount(); i++) {
+                if (staticBatch.contains(changed[i])) {
+                    staticBatch.invalidate(changed[i]);
+                }
+            }
+            if (staticBatch.update(transforms.getWorldMatrices())) {
+                markStaticBatchChanged(staticBatch.getDirtyStart(), staticBatch.getDirtyEnd());
+            }
+        }
+        staticBatch.clearDirtyRange();
+    }
+
+    private void markStaticBatchChanged(int start, int end) {
+        batchBaseVersion = batchVersion;
+        batchVersion++;
+        batchDirtyStart = start;
+        batchDirtyEnd = end;
+    }
+
+    /**
+     * Keeps the nodes inside the view frustum and a visible room, and picks
+     * the level of detail of those drawn on their own.
+     */
+    private void cullScene() {
+        culler.setViewProjection(viewProjectionMatrix);
+        visibleNodeCount = bvh.queryFrustum(culler, visibleNodes);
+
+        // One pass keeps the nodes in rooms seen through the portals and picks
+        // the level of detail of those drawn on their own, dropping the ones
+        // too small to see. The eye is the view matrix's translation taken
+        // back through its rotation.
+        final float[] v = viewMatrix;
+        portals.update(culler,
+            -(v[0] * v[12] + v[1] * v[13] + v[2] * v[14]),
+            -(v[4] * v[12] + v[5] * v[13] + v[6] * v[14]),
+            -(v[8] * v[12] + v[9] * v[13] + v[10] * v[14]));
+        lods.beginFrame();
+        final float[] mvMatrices = transforms.getMvMatrices();
+        int kept = 0;
+        for (int i = 0; i < visibleNodeCount; i++) {
+            final int node = visibleNodes[i];
+            if (!portals.isNodeVisible(node)) {
+                continue;
+            }
+            int level = LodSelector.NO_LEVELS;
+            if (!staticBatch.contains(node)) {
+                level = lods.select(node, culler.getBoundingRadius(node),
+                    -mvMatrices[node * TransformCache.MATRIX_SIZE + 14]);
+                if (level == LodSelector.CULLED) {
+                    continue;
+                }
+            }
+            visibleNodes[kept] = node;
+            visibleNodeLevels[kept] = level;
+            kept++;
+        }
+        visibleNodeCount = kept;
+    }
+
+    /**
+     * Builds the spatial index on the first frame and afterwards refits it
+     * for the nodes whose model matrix changed.
+     */
+    private void updateBvh() {
+        if (!bvhBuilt) {
+            for (int node = 0; node < scene.getNodeCount(); node++) {
+                culler.getBounds(node, nodeBounds, node * Bvh.BOUNDS_SIZE);
+            }
+            bvh.build(nodeBounds, scene.getNodeCount());
+            bvhBuilt = true;
+            return;
+        }
+        final int[] changed = transforms.getChangedNodes();
+        for (int i = 0; i < transforms.getChangedCount(); i++) {
+            final int node = changed[i];
+            final int b = node * Bvh.BOUNDS_SIZE;
+            culler.getBounds(node, nodeBounds, b);
+            bvh.setObjectBounds(node, nodeBounds[b], nodeBounds[b + 1], nodeBounds[b + 2],
+                nodeBounds[b + 3], nodeBounds[b + 4], nodeBounds[b + 5]);
+        }
+    }
+
+    /**
+     * Queues one packet per visible static batch range, one per visible node
+     * outside the batch, drawn with its chosen level of detail, and one for
+     * the light, and copies the matrices of the queued nodes. Texture ids
+     * are texture page + 1, leaving 0 for "none" and untextured materials.
+     */
+    private void queueScene(FrameSnapshot out) {
+        final int[] materials = scene.getMaterials();
+        final int[] pages = scene.getMaterialPages();
+        final int[] shadings = scene.getMaterialShadings();
+        final float[] mvMatrices = transforms.getMvMatrices();
+        final float[] mvpMatrices = transforms.getMvpMatrices();
+
+        final float[] rangeBounds = staticBatch.getRangeBounds();
+
+        out.queue.setDepthRange(NEAR, FAR);
+        out.queue.clear();
+        int triangles = 0;
+        for (int range = 0; range < staticBatch.getRangeCount(); range++) {
+            final int room = staticBatch.getRangeGroup(range);
+            if (room >= 0 && !portals.isCellVisible(room)) {
+                continue;
+            }
+            final int b = range * StaticBatch.BOUNDS_SIZE;
+            if (!culler.isBoxVisible(rangeBounds[b], rangeBounds[b + 1], rangeBounds[b + 2],
+                rangeBounds[b + 3], rangeBounds[b + 4], rangeBounds[b + 5])) {
+                continue;
+            }
+            final int shading = staticBatch.getRangeShading(range);
+            out.queue.addOpaque(FrameSnapshot.PROGRAM_SIMPLE + shading,
+                textureOf(staticBatch.getRangePage(range), shading), FrameSnapshot.MESH_BATCH,
+                0.0f, FrameSnapshot.ITEM_BATCH_RANGE | range);
+            triangles += staticBatch.getRangeVertexCount(range) / 3;
+        }
+        for (int i = 0; i < visibleNodeCount; i++) {
+            final int node = visibleNodes[i];
+            if (staticBatch.contains(node)) {
+                continue;
+            }
+            final int m = node * TransformCache.MATRIX_SIZE;
+            // The eye looks down -z, so the distance is the negated view z.
+            final float depth = -mvMatrices[m + 14];
+            final int level = visibleNodeLevels[i];
+            final int mesh = level >= 0 ? FrameSnapshot.MESH_FIRST_LEVEL + level
+                : FrameSnapshot.MESH_CUBE;
+            final int material = materials[node];
+            out.queue.addOpaque(FrameSnapshot.PROGRAM_SIMPLE + shadings[material],
+                textureOf(pages[material], shadings[material]), mesh, depth,
+                FrameSnapshot.ITEM_NODE | node);
+            triangles += level >= 0 ? lods.getLevelTriangleCount(level) : cubeTriangleCount;
+            System.arraycopy(mvMatrices, m, out.mvMatrices, m, TransformCache.MATRIX_SIZE);
+            System.arraycopy(mvpMatrices, m, out.mvpMatrices, m, TransformCache.MATRIX_SIZE);
+        }
+        submittedTriangleCount = triangles;
+        out.triangleCount = triangles;
+        out.queue.addOpaque(FrameSnapshot.PROGRAM_POINT, 0, 0, -out.lightPosInEyeSpace[2],
+            FrameSnapshot.ITEM_LIGHT);
+        out.queue.sort();
+    }
+
+    /** The texture id of a page, or 0 for an untextured shading. */
+    private static int textureOf(int page, int shading) {
+        return (shading & Scene.SHADING_TEXTURED) != 0 ? page + 1 : 0;
+    }
+
+    /**
+     * Copies the static batch into the snapshot if the snapshot's copy is
+     * older. The batch only changes when static nodes move, so in steady
+     * state this copies nothing.
+     */
+    private void copyStaticBatch(FrameSnapshot out) {
+        if (out.batchVersion != batchVersion) {
+            final FloatBuffer source = staticBatch.getVertexBuffer();
+            final int rangeCount = staticBatch.getRangeCount();
+            if (out.batchVertices == null || out.batchVertices.capacity() != source.capacity()) {
+                // Only when the batch is first built.
+                out.batchVertices = BufferHelper.newFloatBuffer(source.capacity());
+                out.rangeFirstVertices = new int[rangeCount];
+                out.rangeVertexCounts = new int[rangeCount];
+            }
+            source.position(0);
+            out.batchVertices.position(0);
+            out.batchVertices.put(source);
+            out.batchVertices.position(0);
+            source.position(0);
+            for (int range = 0; range < rangeCount; range++) {
+                out.rangeFirstVertices[range] = staticBatch.getRangeFirstVertex(range);
+                out.rangeVertexCounts[range] = staticBatch.getRangeVertexCount(range);
+            }
+            out.batchVertexCount = staticBatch.getVertexCount();
+        }
+        out.batchVersion = batchVersion;
+        out.batchBaseVersion = batchBaseVersion;
+        out.batchDirtyStart = batchDirtyStart;
+        out.batchDirtyEnd = batchDirtyEnd;
+    }
+
+    /**
+     * Selects the node under a point in view coordinates and returns it, or
+     * -1 if there is none.
+     */
+    public int pick(float x, float y) {
+        if (!bvhBuilt || viewportWidth == 0 || viewportHeight == 0) {
+            return -1;
+        }
+        selectedNode = picker.pick(transforms.getWorldMatrices(), x, y,
+            viewportWidth, viewportHeight);
+        return selectedNode;
+    }
+
+    /**
+     * Moves a node. A static one is re-baked into its slot of the static
+     * batch by the next update, which uploads only that slot.
+     */
+    public void moveNode(int node, float x, float y, float z) {
+        transforms.setTranslation(node, x, y, z);
+    }
+
+    /** The node the last pick selected, or -1. */
+    public int getSelectedNode() {
+        return selectedNode;
+    }
+
+    public Scene getScene() {
+        return scene;
+    }
+
+    /** The static cubes, pre-transformed; read it only from the update thread. */
+    public StaticBatch getStaticBatch() {
+        return staticBatch;
+    }
+
+    /** LOD level of the cube mesh, the only one with levels so far. */
+    public int getCubeLevel() {
+        return cubeLevel;
+    }
+
+    /** Number of LOD levels of all meshes. */
+    public int getLevelCount() {
+        return lods.getLevelCount();
+    }
+
+    /**
+     * Triangles queued in the last frame. Per-level counts of the nodes
+     * drawn on their own are in {@link #getLods}.
+     */
+    public int getSubmittedTriangleCount() {
+        return submittedTriangleCount;
+    }
+
+    /** Level of detail choices and their per-level triangle counts. */
+    public LodSelector getLods() {
+        return lods;
+    }
+
+    /** Rooms seen from the camera in the last frame. */
+    public int getVisibleCellCount() {
+        return portals.getVisibleCellCount();
+    }
+
+    /** Nodes inside the view frustum and a visible room in the last frame. */
+    public int getVisibleNodeCount() {
+        return visibleNodeCount;
+    }
+
+    /** Nodes skipped in the last frame for lying outside the view frustum or a visible room. */
+    public int getCulledNodeCount() {
+        return scene.getNodeCount() - visibleNodeCount;
+    }
+}
@@ -0,0 +1,117 @@
+package com.jr3dL.android;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.jr3dL.android.render.FrameScheduler;
+import com.jr3dL.android.render.TripleBuffer;
+
+/**
+ * Runs the {@link SceneUpdater} on its own thread, so simulation time
+ * doesn't eat into the GL thread's frame.
+ *
+ * The thread is the frame scheduler's target: whenever the scheduler asks
+ * for a frame, the thread waits out the delay, writes the back snapshot,
+ * publishes it and runs the publish callback, which asks the surface to
+ * draw. Neither thread ever waits for the other; the GL thread draws the
+ * latest published snapshot whenever it draws. Nothing here waits for
+ * vsync, so the scheduler's minimum frame interval is what keeps updates
+ * at display rate while the scene stays dirty or the user touches it.
+ */
+public class UpdateThread extends Thread implements FrameScheduler.Target {
+    private static final long NONE = Long.MAX_VALUE;
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private final SceneUpdater updater;
+    private final TripleBuffer<FrameSnapshot> snapshots;
+    private final FrameScheduler scheduler;
+    private final FrameScheduler.Clock clock;
+
+    /** Uptime the next update is due at, or NONE. */
+    private final AtomicLong nextUpdate = new AtomicLong(NONE);
+    private final ConcurrentLinkedQueue<Runnable> events = new ConcurrentLinkedQueue<Runnable>();
+    private volatile Runnable onPublish;
+    private volatile boolean paused;
+    private volatile boolean quit;
+
+    public UpdateThread(SceneUpdater updater, TripleBuffer<FrameSnapshot> snapshots,
+        FrameScheduler scheduler, FrameScheduler.Clock clock) {
+        super("SceneUpdate");
+        setDaemon(true);
+        this.updater = updater;
+        this.snapshots = snapshots;
+        this.scheduler = scheduler;
+        this.clock = clock;
+    }
+
+    /** Runs after every published snapshot, on this thread. */
+    public void setOnPublish(Runnable onPublish) {
+        this.onPublish = onPublish;
+    }
+
+    /**
+     * Keeps the earliest of this and any pending request; the scheduler
+     * asks again after every update.
+     */
+    @Override
+    public void requestFrame(long delayMillis) {
+        final long due = clock.uptimeMillis() + delayMillis;
+        long pending;
+        do {
+            pending = nextUpdate.get();
+        } while (due < pending && !nextUpdate.compareAndSet(pending, due));
+        LockSupport.unpark(this);
+    }
+
+    /** Runs the event on this thread before the next update, as GLSurfaceView.queueEvent does. */
+    public void queueEvent(Runnable event) {
+        events.add(event);
+        LockSupport.unpark(this);
+    }
+
+    /** Holds back updates while paused; events still run. */
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+        LockSupport.unpark(this);
+    }
+
+    /** Stops the thread after the current update. */
+    public void quit() {
+        quit = true;
+        LockSupport.unpark(this);
+    }
+
+    @Override
+    public void run() {
+        while (!quit) {
+            Runnable event;
+            while ((event = events.poll()) != null) {
+                event.run();
+            }
+            final long due = nextUpdate.get();
+            final long now = clock.uptimeMillis();
+            if (paused || due == NONE) {
+                LockSupport.park(this);
+                continue;
+            }
+            if (now < due) {
+                LockSupport.parkNanos(this, (due - now) * NANOS_PER_MILLI);
+                continue;
+            }
+            // A request coming in from here on is for the next update.
+            nextUpdate.compareAndSet(due, NONE);
+
+            scheduler.beginFrame();
+            final boolean updated = updater.update(snapshots.getBack(), now);
+            if (updated) {
+                snapshots.publish();
+            }
+            scheduler.endFrame();
+            final Runnable callback = onPublish;
+            if (updated && callback != null) {
+                callback.run();
+            }
+        }
+    }
+}
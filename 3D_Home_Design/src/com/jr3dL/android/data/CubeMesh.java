@@ -0,0 +1,70 @@
+package com.jr3dL.android.data;
+
+/**
+ * The unit cube every scene node is built from, spanning -1 to 1 on each
+ * axis. Each face has its own four vertices so it keeps a flat normal, its
+ * own color and a full texture, which makes 24 vertices and 36 indices.
+ */
+public class CubeMesh {
+    private static final int FACE_COUNT = 6;
+    private static final int VERTICES_PER_FACE = 4;
+
+    public static MeshData create() {
+        final float[] vertices =
+        {
+            // X, Y, Z,            R, G, B, A,              normal X, Y, Z,      S, T
+
+            // Front face (red)
+            -1.0f,  1.0f,  1.0f,   1.0f, 0.0f, 0.0f, 1.0f,   0.0f,  0.0f,  1.0f,   0.0f, 0.0f,
+            -1.0f, -1.0f,  1.0f,   1.0f, 0.0f, 0.0f, 1.0f,   0.0f,  0.0f,  1.0f,   0.0f, 1.0f,
+             1.0f,  1.0f,  1.0f,   1.0f, 0.0f, 0.0f, 1.0f,   0.0f,  0.0f,  1.0f,   1.0f, 0.0f,
+             1.0f, -1.0f,  1.0f,   1.0f, 0.0f, 0.0f, 1.0f,   0.0f,  0.0f,  1.0f,   1.0f, 1.0f,
+
+            // Right face (green)
+             1.0f,  1.0f,  1.0f,   0.0f, 1.0f, 0.0f, 1.0f,   1.0f,  0.0f,  0.0f,   0.0f, 0.0f,
+             1.0f, -1.0f,  1.0f,   0.0f, 1.0f, 0.0f, 1.0f,   1.0f,  0.0f,  0.0f,   0.0f, 1.0f,
+             1.0f,  1.0f, -1.0f,   0.0f, 1.0f, 0.0f, 1.0f,   1.0f,  0.0f,  0.0f,   1.0f, 0.0f,
+             1.0f, -1.0f, -1.0f,   0.0f, 1.0f, 0.0f, 1.0f,   1.0f,  0.0f,  0.0f,   1.0f, 1.0f,
+
+            // Back face (blue)
+             1.0f,  1.0f, -1.0f,   0.0f, 0.0f, 1.0f, 1.0f,   0.0f,  0.0f, -1.0f,   0.0f, 0.0f,
+             1.0f, -1.0f, -1.0f,   0.0f, 0.0f, 1.0f, 1.0f,   0.0f,  0.0f, -1.0f,   0.0f, 1.0f,
+            -1.0f,  1.0f, -1.0f,   0.0f, 0.0f, 1.0f, 1.0f,   0.0f,  0.0f, -1.0f,   1.0f, 0.0f,
+            -1.0f, -1.0f, -1.0f,   0.0f, 0.0f, 1.0f, 1.0f,   0.0f,  0.0f, -1.0f,   1.0f, 1.0f,
+
+            // Left face (yellow)
+            -1.0f,  1.0f, -1.0f,   1.0f, 1.0f, 0.0f, 1.0f,  -1.0f,  0.0f,  0.0f,   0.0f, 0.0f,
+            -1.0f, -1.0f, -1.0f,   1.0f, 1.0f, 0.0f, 1.0f,  -1.0f,  0.0f,  0.0f,   0.0f, 1.0f,
+            -1.0f,  1.0f,  1.0f,   1.0f, 1.0f, 0.0f, 1.0f,  -1.0f,  0.0f,  0.0f,   1.0f, 0.0f,
+            -1.0f, -1.0f,  1.0f,   1.0f, 1.0f, 0.0f, 1.0f,  -1.0f,  0.0f,  0.0f,   1.0f, 1.0f,
+
+            // Top face (grayish white)
+            -1.0f,  1.0f, -1.0f,   0.8f, 1.0f, 1.0f, 0.0f,   0.0f,  1.0f,  0.0f,   0.0f, 0.0f,
+            -1.0f,  1.0f,  1.0f,   0.8f, 1.0f, 1.0f, 0.0f,   0.0f,  1.0f,  0.0f,   0.0f, 1.0f,
+             1.0f,  1.0f, -1.0f,   0.8f, 1.0f, 1.0f, 0.0f,   0.0f,  1.0f,  0.0f,   1.0f, 0.0f,
+             1.0f,  1.0f,  1.0f,   0.8f, 1.0f, 1.0f, 0.0f,   0.0f,  1.0f,  0.0f,   1.0f, 1.0f,
+
+            // Bottom face (grayish white)
+             1.0f, -1.0f, -1.0f,   0.8f, 1.0f, 1.0f, 0.0f,   0.0f, -1.0f,  0.0f,   0.0f, 0.0f,
+             1.0f, -1.0f,  1.0f,   0.8f, 1.0f, 1.0f, 0.0f,   0.0f, -1.0f,  0.0f,   0.0f, 1.0f,
+            -1.0f, -1.0f, -1.0f,   0.8f, 1.0f, 1.0f, 0.0f,   0.0f, -1.0f,  0.0f,   1.0f, 0.0f,
+            -1.0f, -1.0f,  1.0f,   0.8f, 1.0f, 1.0f, 0.0f,   0.0f, -1.0f,  0.0f,   1.0f, 1.0f,
+        };
+
+        // Every face is the quad top-left, bottom-left, top-right,
+        // bottom-right, split into two counter-clockwise triangles.
+        final short[] indices = new short[FACE_COUNT * 6];
+        for (int face = 0; face < FACE_COUNT; face++) {
+            final short first = (short) (face * VERTICES_PER_FACE);
+            final int i = face * 6;
+            indices[i] = first;
+            indices[i + 1] = (short) (first + 1);
+            indices[i + 2] = (short) (first + 2);
+            indices[i + 3] = (short) (first + 1);
+            indices[i + 4] = (short) (first + 3);
+            indices[i + 5] = (short) (first + 2);
+        }
+
+        return new MeshData(vertices, indices);
+    }
+}
@@ -0,0 +1,84 @@
+package com.jr3dL.android.data;
+
+/**
+ * CPU-side copy of an indexed triangle mesh in the interleaved vertex layout
+ * every program in the app reads: position, color, normal, texture
+ * coordinates. It is kept after upload so the mesh can be batched or
+ * re-uploaded after the GL context is lost.
+ */
+public class MeshData {
+    public static final int POSITION_COMPONENT_COUNT = 3;
+    public static final int COLOR_COMPONENT_COUNT = 4;
+    public static final int NORMAL_COMPONENT_COUNT = 3;
+    public static final int TEXTURE_COORDINATES_COMPONENT_COUNT = 2;
+
+    /** Float offsets of each attribute within a vertex. */
+    public static final int POSITION_OFFSET = 0;
+    public static final int COLOR_OFFSET = POSITION_OFFSET + POSITION_COMPONENT_COUNT;
+    public static final int NORMAL_OFFSET = COLOR_OFFSET + COLOR_COMPONENT_COUNT;
+    public static final int TEXTURE_COORDINATES_OFFSET = NORMAL_OFFSET + NORMAL_COMPONENT_COUNT;
+
+    /** Floats per interleaved vertex. */
+    public static final int STRIDE = TEXTURE_COORDINATES_OFFSET + TEXTURE_COORDINATES_COMPONENT_COUNT;
+
+    public static final int BYTES_PER_FLOAT = 4;
+    public static final int BYTES_PER_SHORT = 2;
+
+    private final float[] vertices;
+    private final short[] indices;
+
+    public MeshData(float[] vertices, short[] indices) {
+        if (vertices.length % STRIDE != 0) {
+            throw new IllegalArgumentException("Vertex data is not a multiple of the stride");
+        }
+        this.vertices = vertices;
+        this.indices = indices;
+    }
+
+    public float[] getVertices() {
+        return vertices;
+    }
+
+    public short[] getIndices() {
+        return indices;
+    }
+
+    public int getVertexCount() {
+        return vertices.length / STRIDE;
+    }
+
+    public int getIndexCount() {
+        return indices.length;
+    }
+
+    /**
+     * Writes the bounding box of the positions as min x, y, z then max x, y,
+     * z, starting at offset.
+     */
+    public void computeBounds(float[] bounds, int offset) {
+        float minX = Float.POSITIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY;
+        float minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+        float maxZ = Float.NEGATIVE_INFINITY;
+        for (int i = POSITION_OFFSET; i < vertices.length; i += STRIDE) {
+            minX = Math.min(minX, vertices[i]);
+            minY = Math.min(minY, vertices[i + 1]);
+            minZ = Math.min(minZ, vertices[i + 2]);
+            maxX = Math.max(maxX, vertices[i]);
+            maxY = Math.max(maxY, vertices[i + 1]);
+            maxZ = Math.max(maxZ, vertices[i + 2]);
+        }
+        bounds[offset] = minX;
+        bounds[offset + 1] = minY;
+        bounds[offset + 2] = minZ;
+        bounds[offset + 3] = maxX;
+        bounds[offset + 4] = maxY;
+        bounds[offset + 5] = maxZ;
+    }
+
+    public int getTriangleCount() {
+        return indices.length / 3;
+    }
+}
@@ -0,0 +1,177 @@
+package com.jr3dL.android.data;
+
+import static com.jr3dL.android.data.MeshData.BYTES_PER_FLOAT;
+import static com.jr3dL.android.data.MeshData.BYTES_PER_SHORT;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+import com.jr3dL.android.gl.Gl;
+import com.jr3dL.android.gl.GlStateCache;
+import com.jr3dL.android.util.BufferHelper;
+
+/**
+ * Owns the vertex and index buffer objects of every mesh and hands out int
+ * handles for them. Geometry is uploaded once; drawing a mesh afterwards only
+ * binds its buffers and points the attributes at offsets inside them.
+ *
+ * Buffer object names belong to the GL context, so a registry has to be
+ * recreated along with the context.
+ */
+public class MeshRegistry {
+    private static final int STRIDE_BYTES = MeshData.STRIDE * BYTES_PER_FLOAT;
+
+    private int meshCount;
+    private int[] vertexBufferIds = new int[4];
+    private int[] indexBufferIds = new int[4];
+    private int[] indexCounts = new int[4];
+    private int[] vertexCounts = new int[4];
+
+    private final GlStateCache state;
+    private final Gl gl;
+    private final int[] generated = new int[2];
+    /** Bytes handed to glBufferData and glBufferSubData so far. */
+    private long uploadedBytes;
+
+    public MeshRegistry(GlStateCache state) {
+        this.state = state;
+        this.gl = state.getGl();
+    }
+
+    /**
+     * Uploads an indexed mesh into static buffer objects and returns its
+     * handle.
+     */
+    public int add(MeshData mesh) {
+        gl.glGenBuffers(2, generated, 0);
+        if (generated[0] == 0 || generated[1] == 0) {
+            throw new RuntimeException("Could not create buffer objects.");
+        }
+
+        final float[] vertices = mesh.getVertices();
+        final FloatBuffer vertexData = BufferHelper.newFloatBuffer(vertices);
+        state.bindBuffer(Gl.GL_ARRAY_BUFFER, generated[0]);
+        gl.glBufferData(Gl.GL_ARRAY_BUFFER, vertices.length * BYTES_PER_FLOAT,
+            vertexData, Gl.GL_STATIC_DRAW);
+        uploadedBytes += vertices.length * BYTES_PER_FLOAT;
+
+        final short[] indices = mesh.getIndices();
+        final ShortBuffer indexData = BufferHelper.newShortBuffer(indices);
+        state.bindBuffer(Gl.GL_ELEMENT_ARRAY_BUFFER, generated[1]);
+        gl.glBufferData(Gl.GL_ELEMENT_ARRAY_BUFFER, indices.length * BYTES_PER_SHORT,
+            indexData, Gl.GL_STATIC_DRAW);
+        uploadedBytes += indices.length * BYTES_PER_SHORT;
+
+        return register(generated[0], generated[1], mesh.getIndexCount(), mesh.getVertexCount());
+    }
+
+    /**
+     * Uploads a non-indexed triangle list into a vertex buffer that can later
+     * be partially rewritten with {@link #update}, and returns its handle.
+     */
+    public int addDynamic(FloatBuffer vertices, int vertexCount) {
+        gl.glGenBuffers(1, generated, 0);
+        if (generated[0] == 0) {
+            throw new RuntimeException("Could not create buffer object.");
+        }
+
+        vertices.position(0);
+        state.bindBuffer(Gl.GL_ARRAY_BUFFER, generated[0]);
+        gl.glBufferData(Gl.GL_ARRAY_BUFFER, vertexCount * STRIDE_BYTES,
+            vertices, Gl.GL_DYNAMIC_DRAW);
+        uploadedBytes += vertexCount * STRIDE_BYTES;
+
+        return register(generated[0], 0, 0, vertexCount);
+    }
+
+    /**
+     * Re-uploads the floats from start (inclusive) to end (exclusive) of a
+     * dynamic mesh.
+     */
+    public void update(int handle, FloatBuffer vertices, int start, int end) {
+        vertices.position(start);
+        state.bindBuffer(Gl.GL_ARRAY_BUFFER, vertexBufferIds[handle]);
+        gl.glBufferSubData(Gl.GL_ARRAY_BUFFER, start * BYTES_PER_FLOAT,
+            (end - start) * BYTES_PER_FLOAT, vertices);
+        vertices.position(0);
+        uploadedBytes += (end - start) * BYTES_PER_FLOAT;
+    }
+
+    /**
+     * Binds a mesh's buffers and points the given attribute locations at its
+     * interleaved data. Locations of -1, attributes the program doesn't use,
+     * are skipped.
+     */
+    public void bind(int handle, int positionLocation, int colorLocation,
+        int normalLocation, int textureCoordinatesLocation) {
+        state.bindBuffer(Gl.GL_ARRAY_BUFFER, vertexBufferIds[handle]);
+        setAttribute(positionLocation, MeshData.POSITION_COMPONENT_COUNT, MeshData.POSITION_OFFSET);
+        setAttribute(colorLocation, MeshData.COLOR_COMPONENT_COUNT, MeshData.COLOR_OFFSET);
+        setAttribute(normalLocation, MeshData.NORMAL_COMPONENT_COUNT, MeshData.NORMAL_OFFSET);
+        setAttribute(textureCoordinatesLocation, MeshData.TEXTURE_COORDINATES_COMPONENT_COUNT,
+            MeshData.TEXTURE_COORDINATES_OFFSET);
+        state.bindBuffer(Gl.GL_ELEMENT_ARRAY_BUFFER, indexBufferIds[handle]);
+    }
+
+    /** Draws every triangle of the bound indexed mesh. */
+    public void draw(int handle) {
+        gl.glDrawElements(Gl.GL_TRIANGLES, indexCounts[handle],
+            Gl.GL_UNSIGNED_SHORT, 0);
+    }
+
+    /** Draws a range of vertices of the bound non-indexed mesh. */
+    public void drawArrays(int firstVertex, int vertexCount) {
+        gl.glDrawArrays(Gl.GL_TRIANGLES, firstVertex, vertexCount);
+    }
+
+    public int getIndexCount(int handle) {
+        return indexCounts[handle];
+    }
+
+    public int getVertexCount(int handle) {
+        return vertexCounts[handle];
+    }
+
+    /**
+     * Bytes of vertex and index data uploaded since the registry was
+     * created; the difference across a frame is what that frame uploaded.
+     */
+    public long getUploadedBytes() {
+        return uploadedBytes;
+    }
+
+    /** Deletes every buffer object. Handles are invalid afterwards. */
+    public void release() {
+        for (int i = 0; i < meshCount; i++) {
+            state.deleteBuffer(vertexBufferIds[i]);
+            if (indexBufferIds[i] != 0) {
+                state.deleteBuffer(indexBufferIds[i]);
+            }
+        }
+        meshCount = 0;
+    }
+
+    private void setAttribute(int location, int componentCount, int offset) {
+        if (location < 0) {
+            return;
+        }
+        state.vertexAttribPointer(location, componentCount, Gl.GL_FLOAT, false,
+            STRIDE_BYTES, offset * BYTES_PER_FLOAT);
+        state.enableVertexAttribArray(location);
+    }
+
+    private int register(int vertexBufferId, int indexBufferId, int indexCount, int vertexCount) {
+        if (meshCount == vertexBufferIds.length) {
+            vertexBufferIds = Arrays.copyOf(vertexBufferIds, meshCount * 2);
+            indexBufferIds = Arrays.copyOf(indexBufferIds, meshCount * 2);
+            indexCounts = Arrays.copyOf(indexCounts, meshCount * 2);
+            vertexCounts = Arrays.copyOf(vertexCounts, meshCount * 2);
+        }
+        vertexBufferIds[meshCount] = vertexBufferId;
+        indexBufferIds[meshCount] = indexBufferId;
+        indexCounts[meshCount] = indexCount;
+        vertexCounts[meshCount] = vertexCount;
+        return meshCount++;
+    }
+}
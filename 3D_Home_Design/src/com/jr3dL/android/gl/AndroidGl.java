@@ -0,0 +1,299 @@
+package com.jr3dL.android.gl;
+
+import java.nio.Buffer;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.os.Build;
+
+/**
+ * Forwards every call to the static {@code GLES20} bindings.
+ *
+ * The class is final and on device it is the only {@link Gl} implementation
+ * that ever gets loaded, so every call site through the interface stays
+ * monomorphic and the runtime inlines the forwarding method, leaving the
+ * native call. Keep it that way: wrap behaviour around a {@code Gl} (as
+ * {@link GlStateCache} does) instead of adding another implementation to
+ * the device build.
+ */
+public final class AndroidGl implements Gl {
+    /** GLES30, and with it program binaries, came with Android 4.3. */
+    private static final boolean HAS_GLES30 =
+        Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+
+    @Override
+    public void glClear(int mask) {
+        GLES20.glClear(mask);
+    }
+
+    @Override
+    public void glClearColor(float red, float green, float blue, float alpha) {
+        GLES20.glClearColor(red, green, blue, alpha);
+    }
+
+    @Override
+    public void glEnable(int capability) {
+        GLES20.glEnable(capability);
+    }
+
+    @Override
+    public void glDisable(int capability) {
+        GLES20.glDisable(capability);
+    }
+
+    @Override
+    public void glViewport(int x, int y, int width, int height) {
+        GLES20.glViewport(x, y, width, height);
+    }
+
+    @Override
+    public String glGetString(int name) {
+        return GLES20.glGetString(name);
+    }
+
+    @Override
+    public void glGetIntegerv(int name, int[] params, int offset) {
+        if (name == GL_NUM_PROGRAM_BINARY_FORMATS && !isGles3()) {
+            // No bindings to load binaries through, or no context that takes them.
+            params[offset] = 0;
+            return;
+        }
+        GLES20.glGetIntegerv(name, params, offset);
+    }
+
+    private static boolean isGles3() {
+        final String version = GLES20.glGetString(GL_VERSION);
+        return HAS_GLES30 && version != null && version.startsWith("OpenGL ES 3");
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count) {
+        GLES20.glDrawArrays(mode, first, count);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset) {
+        GLES20.glDrawElements(mode, count, type, offset);
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+        GLES20.glEnableVertexAttribArray(index);
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index) {
+        GLES20.glDisableVertexAttribArray(index);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized,
+        int stride, int offset) {
+        GLES20.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized,
+        int stride, Buffer pointer) {
+        GLES20.glVertexAttribPointer(index, size, type, normalized, stride, pointer);
+    }
+
+    @Override
+    public void glVertexAttrib3f(int index, float x, float y, float z) {
+        GLES20.glVertexAttrib3f(index, x, y, z);
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset) {
+        GLES20.glGenBuffers(n, buffers, offset);
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset) {
+        GLES20.glDeleteBuffers(n, buffers, offset);
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        GLES20.glBindBuffer(target, buffer);
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage) {
+        GLES20.glBufferData(target, size, data, usage);
+    }
+
+    @Override
+    public void glBufferSubData(int target, int offset, int size, Buffer data) {
+        GLES20.glBufferSubData(target, offset, size, data);
+    }
+
+    @Override
+    public void glGenTextures(int n, int[] textures, int offset) {
+        GLES20.glGenTextures(n, textures, offset);
+    }
+
+    @Override
+    public void glDeleteTextures(int n, int[] textures, int offset) {
+        GLES20.glDeleteTextures(n, textures, offset);
+    }
+
+    @Override
+    public void glActiveTexture(int texture) {
+        GLES20.glActiveTexture(texture);
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture) {
+        GLES20.glBindTexture(target, texture);
+    }
+
+    @Override
+    public void glTexParameteri(int target, int name, int value) {
+        GLES20.glTexParameteri(target, name, value);
+    }
+
+    @Override
+    public void glTexImage2D(int target, int level, int internalFormat, int width, int height,
+        int border, int format, int type, Buffer pixels) {
+        GLES20.glTexImage2D(target, level, internalFormat, width, height, border, format, type,
+            pixels);
+    }
+
+    @Override
+    public void glCompressedTexImage2D(int target, int level, int internalFormat, int width,
+        int height, int border, int imageSize, Buffer data) {
+        GLES20.glCompressedTexImage2D(target, level, internalFormat, width, height, border,
+            imageSize, data);
+    }
+
+    @Override
+    public int glCreateShader(int type) {
+        return GLES20.glCreateShader(type);
+    }
+
+    @Override
+    public void glShaderSource(int shader, String source) {
+        GLES20.glShaderSource(shader, source);
+    }
+
+    @Override
+    public void glCompileShader(int shader) {
+        GLES20.glCompileShader(shader);
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int name, int[] params, int offset) {
+        GLES20.glGetShaderiv(shader, name, params, offset);
+    }
+
+    @Override
+    public String glGetShaderInfoLog(int shader) {
+        return GLES20.glGetShaderInfoLog(shader);
+    }
+
+    @Override
+    public void glDeleteShader(int shader) {
+        GLES20.glDeleteShader(shader);
+    }
+
+    @Override
+    public int glCreateProgram() {
+        return GLES20.glCreateProgram();
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader) {
+        GLES20.glAttachShader(program, shader);
+    }
+
+    @Override
+    public void glLinkProgram(int program) {
+        GLES20.glLinkProgram(program);
+    }
+
+    @Override
+    public void glValidateProgram(int program) {
+        GLES20.glValidateProgram(program);
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int name, int[] params, int offset) {
+        GLES20.glGetProgramiv(program, name, params, offset);
+    }
+
+    @Override
+    public void glGetProgramBinary(int program, int bufferSize, int[] length, int lengthOffset,
+        int[] binaryFormat, int binaryFormatOffset, Buffer binary) {
+        GLES30.glGetProgramBinary(program, bufferSize, length, lengthOffset, binaryFormat,
+            binaryFormatOffset, binary);
+    }
+
+    @Override
+    public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length) {
+        GLES30.glProgramBinary(program, binaryFormat, binary, length);
+    }
+
+    @Override
+    public String glGetProgramInfoLog(int program) {
+        return GLES20.glGetProgramInfoLog(program);
+    }
+
+    @Override
+    public void glDeleteProgram(int program) {
+        GLES20.glDeleteProgram(program);
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+        GLES20.glUseProgram(program);
+    }
+
+    @Override
+    public String glGetActiveAttrib(int program, int index, int[] size, int sizeOffset,
+        int[] type, int typeOffset) {
+        return GLES20.glGetActiveAttrib(program, index, size, sizeOffset, type, typeOffset);
+    }
+
+    @Override
+    public String glGetActiveUniform(int program, int index, int[] size, int sizeOffset,
+        int[] type, int typeOffset) {
+        return GLES20.glGetActiveUniform(program, index, size, sizeOffset, type, typeOffset);
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name) {
+        return GLES20.glGetAttribLocation(program, name);
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name) {
+        return GLES20.glGetUniformLocation(program, name);
+    }
+
+    @Override
+    public void glUniform1i(int location, int x) {
+        GLES20.glUniform1i(location, x);
+    }
+
+    @Override
+    public void glUniform1f(int location, float x) {
+        GLES20.glUniform1f(location, x);
+    }
+
+    @Override
+    public void glUniform3f(int location, float x, float y, float z) {
+        GLES20.glUniform3f(location, x, y, z);
+    }
+
+    @Override
+    public void glUniform4f(int location, float x, float y, float z, float w) {
+        GLES20.glUniform4f(location, x, y, z, w);
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value,
+        int offset) {
+        GLES20.glUniformMatrix4fv(location, count, transpose, value, offset);
+    }
+}
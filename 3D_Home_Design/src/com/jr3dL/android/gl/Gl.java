@@ -0,0 +1,210 @@
+package com.jr3dL.android.gl;
+
+import java.nio.Buffer;
+
+/**
+ * The OpenGL ES 2.0 calls the renderer makes, so the render path can run
+ * against something other than the device driver. Methods are named and
+ * typed after their {@code GLES20} counterparts and constants carry the same
+ * values.
+ *
+ * {@link AndroidGl} is the implementation used on device; {@link RecordingGl}
+ * records the command stream on a plain JVM.
+ */
+public interface Gl {
+    int GL_FALSE = 0;
+    int GL_TRUE = 1;
+
+    int GL_POINTS = 0x0000;
+    int GL_LINES = 0x0001;
+    int GL_TRIANGLES = 0x0004;
+
+    int GL_DEPTH_BUFFER_BIT = 0x00000100;
+    int GL_COLOR_BUFFER_BIT = 0x00004000;
+
+    int GL_CULL_FACE = 0x0B44;
+    int GL_DEPTH_TEST = 0x0B71;
+    int GL_BLEND = 0x0BE2;
+
+    int GL_VENDOR = 0x1F00;
+    int GL_RENDERER = 0x1F01;
+    int GL_VERSION = 0x1F02;
+    int GL_EXTENSIONS = 0x1F03;
+
+    int GL_UNSIGNED_BYTE = 0x1401;
+    int GL_UNSIGNED_SHORT = 0x1403;
+    int GL_FLOAT = 0x1406;
+
+    int GL_RGB = 0x1907;
+    int GL_RGBA = 0x1908;
+
+    int GL_TEXTURE_2D = 0x0DE1;
+    int GL_TEXTURE0 = 0x84C0;
+    int GL_TEXTURE_MAG_FILTER = 0x2800;
+    int GL_TEXTURE_MIN_FILTER = 0x2801;
+    int GL_TEXTURE_WRAP_S = 0x2802;
+    int GL_TEXTURE_WRAP_T = 0x2803;
+    int GL_NEAREST = 0x2600;
+    int GL_LINEAR = 0x2601;
+    int GL_NEAREST_MIPMAP_NEAREST = 0x2700;
+    int GL_LINEAR_MIPMAP_NEAREST = 0x2701;
+    int GL_NEAREST_MIPMAP_LINEAR = 0x2702;
+    int GL_LINEAR_MIPMAP_LINEAR = 0x2703;
+    int GL_REPEAT = 0x2901;
+    int GL_CLAMP_TO_EDGE = 0x812F;
+    /** From OES_compressed_ETC1_RGB8_texture. */
+    int GL_ETC1_RGB8_OES = 0x8D64;
+
+    int GL_ARRAY_BUFFER = 0x8892;
+    int GL_ELEMENT_ARRAY_BUFFER = 0x8893;
+    int GL_STATIC_DRAW = 0x88E4;
+    int GL_DYNAMIC_DRAW = 0x88E8;
+
+    int GL_FRAGMENT_SHADER = 0x8B30;
+    int GL_VERTEX_SHADER = 0x8B31;
+    int GL_COMPILE_STATUS = 0x8B81;
+    int GL_LINK_STATUS = 0x8B82;
+    int GL_VALIDATE_STATUS = 0x8B83;
+    int GL_ACTIVE_UNIFORMS = 0x8B86;
+    int GL_ACTIVE_ATTRIBUTES = 0x8B89;
+    /** From OpenGL ES 3.0 and OES_get_program_binary. */
+    int GL_PROGRAM_BINARY_LENGTH = 0x8741;
+    int GL_NUM_PROGRAM_BINARY_FORMATS = 0x87FE;
+
+    int GL_FLOAT_VEC2 = 0x8B50;
+    int GL_FLOAT_VEC3 = 0x8B51;
+    int GL_FLOAT_VEC4 = 0x8B52;
+    int GL_INT = 0x1404;
+    int GL_FLOAT_MAT3 = 0x8B5B;
+    int GL_FLOAT_MAT4 = 0x8B5C;
+    int GL_SAMPLER_2D = 0x8B5E;
+
+    // Frame and fixed-function state
+
+    void glClear(int mask);
+
+    void glClearColor(float red, float green, float blue, float alpha);
+
+    void glEnable(int capability);
+
+    void glDisable(int capability);
+
+    void glViewport(int x, int y, int width, int height);
+
+    String glGetString(int name);
+
+    void glGetIntegerv(int name, int[] params, int offset);
+
+    // Drawing
+
+    void glDrawArrays(int mode, int first, int count);
+
+    /** Draws from the bound element array buffer, starting at a byte offset. */
+    void glDrawElements(int mode, int count, int type, int offset);
+
+    // Vertex attributes
+
+    void glEnableVertexAttribArray(int index);
+
+    void glDisableVertexAttribArray(int index);
+
+    /** Points an attribute at a byte offset into the bound array buffer. */
+    void glVertexAttribPointer(int index, int size, int type, boolean normalized,
+        int stride, int offset);
+
+    /** Points an attribute at client memory. */
+    void glVertexAttribPointer(int index, int size, int type, boolean normalized,
+        int stride, Buffer pointer);
+
+    void glVertexAttrib3f(int index, float x, float y, float z);
+
+    // Buffer objects
+
+    void glGenBuffers(int n, int[] buffers, int offset);
+
+    void glDeleteBuffers(int n, int[] buffers, int offset);
+
+    void glBindBuffer(int target, int buffer);
+
+    void glBufferData(int target, int size, Buffer data, int usage);
+
+    void glBufferSubData(int target, int offset, int size, Buffer data);
+
+    // Textures
+
+    void glGenTextures(int n, int[] textures, int offset);
+
+    void glDeleteTextures(int n, int[] textures, int offset);
+
+    void glActiveTexture(int texture);
+
+    void glBindTexture(int target, int texture);
+
+    void glTexParameteri(int target, int name, int value);
+
+    void glTexImage2D(int target, int level, int internalFormat, int width, int height,
+        int border, int format, int type, Buffer pixels);
+
+    void glCompressedTexImage2D(int target, int level, int internalFormat, int width,
+        int height, int border, int imageSize, Buffer data);
+
+    // Shaders and programs
+
+    int glCreateShader(int type);
+
+    void glShaderSource(int shader, String source);
+
+    void glCompileShader(int shader);
+
+    void glGetShaderiv(int shader, int name, int[] params, int offset);
+
+    String glGetShaderInfoLog(int shader);
+
+    void glDeleteShader(int shader);
+
+    int glCreateProgram();
+
+    void glAttachShader(int program, int shader);
+
+    void glLinkProgram(int program);
+
+    void glValidateProgram(int program);
+
+    void glGetProgramiv(int program, int name, int[] params, int offset);
+
+    String glGetProgramInfoLog(int program);
+
+    void glDeleteProgram(int program);
+
+    void glUseProgram(int program);
+
+    /** OpenGL ES 3.0; only call where GL_NUM_PROGRAM_BINARY_FORMATS is above 0. */
+    void glGetProgramBinary(int program, int bufferSize, int[] length, int lengthOffset,
+        int[] binaryFormat, int binaryFormatOffset, Buffer binary);
+
+    /** OpenGL ES 3.0; only call where GL_NUM_PROGRAM_BINARY_FORMATS is above 0. */
+    void glProgramBinary(int program, int binaryFormat, Buffer binary, int length);
+
+    String glGetActiveAttrib(int program, int index, int[] size, int sizeOffset,
+        int[] type, int typeOffset);
+
+    String glGetActiveUniform(int program, int index, int[] size, int sizeOffset,
+        int[] type, int typeOffset);
+
+    int glGetAttribLocation(int program, String name);
+
+    int glGetUniformLocation(int program, String name);
+
+    // Uniforms
+
+    void glUniform1i(int location, int x);
+
+    void glUniform1f(int location, float x);
+
+    void glUniform3f(int location, float x, float y, float z);
+
+    void glUniform4f(int location, float x, float y, float z, float w);
+
+    void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value,
+        int offset);
+}
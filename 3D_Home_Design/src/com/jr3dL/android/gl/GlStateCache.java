@@ -0,0 +1,322 @@
+package com.jr3dL.android.gl;
+
+import java.nio.Buffer;
+
+/**
+ * Shadows the GL state the renderer touches and drops calls that would set
+ * it to what it already is: the current program, the active texture unit
+ * and its 2D texture bindings, buffer bindings, enabled vertex attribute
+ * arrays and their pointers, capabilities such as culling and depth testing,
+ * and the clear color.
+ *
+ * It wraps a {@link Gl} rather than implementing one, so that on device
+ * {@link AndroidGl} stays the only implementation behind every call site.
+ *
+ * The shadow is only valid for the context it was built against, so
+ * {@link #invalidate} has to be called from onSurfaceCreated, which is also
+ * where a lost context comes back. All calls must come from the GL thread.
+ */
+public class GlStateCache {
+    private static final int UNKNOWN = -1;
+    private static final int MAX_TEXTURE_UNITS = 16;
+    private static final int MAX_VERTEX_ATTRIBUTES = 16;
+
+    private static final int CAPABILITY_CULL_FACE = 0;
+    private static final int CAPABILITY_DEPTH_TEST = 1;
+    private static final int CAPABILITY_BLEND = 2;
+    private static final int CAPABILITY_COUNT = 3;
+
+    private final Gl gl;
+
+    private int program;
+    private int activeTexture;
+    private final int[] boundTextures = new int[MAX_TEXTURE_UNITS];
+    private int arrayBuffer;
+    private int elementArrayBuffer;
+
+    private final int[] attributeEnabled = new int[MAX_VERTEX_ATTRIBUTES];
+    private final int[] pointerBuffer = new int[MAX_VERTEX_ATTRIBUTES];
+    private final int[] pointerSize = new int[MAX_VERTEX_ATTRIBUTES];
+    private final int[] pointerType = new int[MAX_VERTEX_ATTRIBUTES];
+    private final boolean[] pointerNormalized = new boolean[MAX_VERTEX_ATTRIBUTES];
+    private final int[] pointerStride = new int[MAX_VERTEX_ATTRIBUTES];
+    private final int[] pointerOffset = new int[MAX_VERTEX_ATTRIBUTES];
+
+    private final int[] capabilities = new int[CAPABILITY_COUNT];
+
+    private boolean clearColorKnown;
+    private float clearRed, clearGreen, clearBlue, clearAlpha;
+
+    private final int[] single = new int[1];
+
+    private int issuedCount;
+    private int filteredCount;
+
+    public GlStateCache(Gl gl) {
+        this.gl = gl;
+        invalidate();
+    }
+
+    /** The wrapped GL, for everything that isn't shadowed state. */
+    public Gl getGl() {
+        return gl;
+    }
+
+    /**
+     * Forgets everything, so the next call of every kind reaches the driver.
+     * Call whenever the context is new or may have been touched behind the
+     * cache's back.
+     */
+    public void invalidate() {
+        program = UNKNOWN;
+        activeTexture = UNKNOWN;
+        for (int i = 0; i < MAX_TEXTURE_UNITS; i++) {
+            boundTextures[i] = UNKNOWN;
+        }
+        arrayBuffer = UNKNOWN;
+        elementArrayBuffer = UNKNOWN;
+        for (int i = 0; i < MAX_VERTEX_ATTRIBUTES; i++) {
+            attributeEnabled[i] = UNKNOWN;
+            pointerBuffer[i] = UNKNOWN;
+        }
+        for (int i = 0; i < CAPABILITY_COUNT; i++) {
+            capabilities[i] = UNKNOWN;
+        }
+        clearColorKnown = false;
+    }
+
+    public void useProgram(int newProgram) {
+        if (program == newProgram) {
+            filteredCount++;
+            return;
+        }
+        program = newProgram;
+        issuedCount++;
+        gl.glUseProgram(newProgram);
+    }
+
+    /** Takes a unit enum such as GL_TEXTURE0. */
+    public void activeTexture(int unit) {
+        if (activeTexture == unit) {
+            filteredCount++;
+            return;
+        }
+        activeTexture = unit;
+        issuedCount++;
+        gl.glActiveTexture(unit);
+    }
+
+    /**
+     * Binds a texture to the active unit. Only GL_TEXTURE_2D bindings are
+     * shadowed; other targets always go through.
+     */
+    public void bindTexture(int target, int texture) {
+        final int unit = activeTexture - Gl.GL_TEXTURE0;
+        if (target == Gl.GL_TEXTURE_2D && activeTexture != UNKNOWN
+            && unit < MAX_TEXTURE_UNITS) {
+            if (boundTextures[unit] == texture) {
+                filteredCount++;
+                return;
+            }
+            boundTextures[unit] = texture;
+        }
+        issuedCount++;
+        gl.glBindTexture(target, texture);
+    }
+
+    public void bindBuffer(int target, int buffer) {
+        if (target == Gl.GL_ARRAY_BUFFER) {
+            if (arrayBuffer == buffer) {
+                filteredCount++;
+                return;
+            }
+            arrayBuffer = buffer;
+        } else if (target == Gl.GL_ELEMENT_ARRAY_BUFFER) {
+            if (elementArrayBuffer == buffer) {
+                filteredCount++;
+                return;
+            }
+            elementArrayBuffer = buffer;
+        }
+        issuedCount++;
+        gl.glBindBuffer(target, buffer);
+    }
+
+    public void enableVertexAttribArray(int index) {
+        if (index < MAX_VERTEX_ATTRIBUTES) {
+            if (attributeEnabled[index] == 1) {
+                filteredCount++;
+                return;
+            }
+            attributeEnabled[index] = 1;
+        }
+        issuedCount++;
+        gl.glEnableVertexAttribArray(index);
+    }
+
+    public void disableVertexAttribArray(int index) {
+        if (index < MAX_VERTEX_ATTRIBUTES) {
+            if (attributeEnabled[index] == 0) {
+                filteredCount++;
+                return;
+            }
+            attributeEnabled[index] = 0;
+        }
+        issuedCount++;
+        gl.glDisableVertexAttribArray(index);
+    }
+
+    /**
+     * Points an attribute at an offset into the bound array buffer. Skipped
+     * when the attribute already points at the same place in the same buffer.
+     */
+    public void vertexAttribPointer(int index, int size, int type, boolean normalized,
+        int stride, int offset) {
+        if (index < MAX_VERTEX_ATTRIBUTES) {
+            if (arrayBuffer != UNKNOWN && pointerBuffer[index] == arrayBuffer
+                && pointerSize[index] == size && pointerType[index] == type
+                && pointerNormalized[index] == normalized
+                && pointerStride[index] == stride && pointerOffset[index] == offset) {
+                filteredCount++;
+                return;
+            }
+            pointerBuffer[index] = arrayBuffer;
+            pointerSize[index] = size;
+            pointerType[index] = type;
+            pointerNormalized[index] = normalized;
+            pointerStride[index] = stride;
+            pointerOffset[index] = offset;
+        }
+        issuedCount++;
+        gl.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+    }
+
+    /**
+     * Points an attribute at client memory. Never skipped, since the buffer's
+     * contents may have changed; it also forgets the shadowed pointer.
+     */
+    public void vertexAttribPointer(int index, int size, int type, boolean normalized,
+        int stride, Buffer pointer) {
+        if (index < MAX_VERTEX_ATTRIBUTES) {
+            pointerBuffer[index] = UNKNOWN;
+        }
+        issuedCount++;
+        gl.glVertexAttribPointer(index, size, type, normalized, stride, pointer);
+    }
+
+    public void enable(int capability) {
+        setCapability(capability, true);
+    }
+
+    public void disable(int capability) {
+        setCapability(capability, false);
+    }
+
+    public void clearColor(float red, float green, float blue, float alpha) {
+        if (clearColorKnown && clearRed == red && clearGreen == green
+            && clearBlue == blue && clearAlpha == alpha) {
+            filteredCount++;
+            return;
+        }
+        clearColorKnown = true;
+        clearRed = red;
+        clearGreen = green;
+        clearBlue = blue;
+        clearAlpha = alpha;
+        issuedCount++;
+        gl.glClearColor(red, green, blue, alpha);
+    }
+
+    /**
+     * Deletes a texture and forgets any binding of it, as GL itself resets
+     * those bindings to 0.
+     */
+    public void deleteTexture(int texture) {
+        for (int i = 0; i < MAX_TEXTURE_UNITS; i++) {
+            if (boundTextures[i] == texture) {
+                boundTextures[i] = 0;
+            }
+        }
+        single[0] = texture;
+        issuedCount++;
+        gl.glDeleteTextures(1, single, 0);
+    }
+
+    /**
+     * Deletes a buffer object and forgets any binding of it.
+     */
+    public void deleteBuffer(int buffer) {
+        if (arrayBuffer == buffer) {
+            arrayBuffer = 0;
+        }
+        if (elementArrayBuffer == buffer) {
+            elementArrayBuffer = 0;
+        }
+        for (int i = 0; i < MAX_VERTEX_ATTRIBUTES; i++) {
+            if (pointerBuffer[i] == buffer) {
+                pointerBuffer[i] = UNKNOWN;
+            }
+        }
+        single[0] = buffer;
+        issuedCount++;
+        gl.glDeleteBuffers(1, single, 0);
+    }
+
+    /**
+     * Deletes a program. A program deleted while current stays in use until
+     * another one is made current, so the shadow is simply dropped.
+     */
+    public void deleteProgram(int deleted) {
+        if (program == deleted) {
+            program = UNKNOWN;
+        }
+        issuedCount++;
+        gl.glDeleteProgram(deleted);
+    }
+
+    /** State changes that reached the driver since the last reset. */
+    public int getIssuedCount() {
+        return issuedCount;
+    }
+
+    /** Redundant state changes dropped since the last reset. */
+    public int getFilteredCount() {
+        return filteredCount;
+    }
+
+    public void resetCounters() {
+        issuedCount = 0;
+        filteredCount = 0;
+    }
+
+    private void setCapability(int capability, boolean enabled) {
+        final int slot = capabilitySlot(capability);
+        final int value = enabled ? 1 : 0;
+        if (slot != UNKNOWN) {
+            if (capabilities[slot] == value) {
+                filteredCount++;
+                return;
+            }
+            capabilities[slot] = value;
+        }
+        issuedCount++;
+        if (enabled) {
+            gl.glEnable(capability);
+        } else {
+            gl.glDisable(capability);
+        }
+    }
+
+    private static int capabilitySlot(int capability) {
+        switch (capability) {
+            case Gl.GL_CULL_FACE:
+                return CAPABILITY_CULL_FACE;
+            case Gl.GL_DEPTH_TEST:
+                return CAPABILITY_DEPTH_TEST;
+            case Gl.GL_BLEND:
+                return CAPABILITY_BLEND;
+            default:
+                return UNKNOWN;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.jr3dL.android.gl;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Tracks every program, buffer and texture the renderer keeps on the GPU,
+ * each with a {@link Restorer} that makes it again, from data kept on the
+ * CPU where that is cheap, such as shader sources and compressed images.
+ *
+ * {@link #onContextCreated} restores, in order, the programs, buffers and
+ * textures needed before anything can draw, and queues the deferred ones.
+ * Those come back either when first needed, through {@link #restoreNow},
+ * or a few per frame through {@link #restorePending}, so the first frame
+ * after a resume only waits for the essentials.
+ *
+ * Everything happens on the GL thread.
+ */
+public class GpuResourceRegistry {
+    public static final int KIND_PROGRAM = 0;
+    public static final int KIND_BUFFER = 1;
+    public static final int KIND_TEXTURE = 2;
+    public static final int KIND_COUNT = 3;
+
+    /** Makes a resource's GL objects again in the current context. */
+    public interface Restorer {
+        void restore();
+    }
+
+    private static final class Resource {
+        int kind;
+        boolean deferred;
+        Restorer restorer;
+        long bytes;
+        /** Whether it awaits restoring in the current context. */
+        boolean lost;
+    }
+
+    /** Resources by id; null for free ids. */
+    private final List<Resource> resources = new ArrayList<Resource>();
+    private final List<Integer> freeIds = new ArrayList<Integer>();
+    /** Deferred resources awaiting restoring, in the order they were registered. */
+    private final LinkedList<Integer> pending = new LinkedList<Integer>();
+
+    private int contextCount;
+    private long restoreNanos;
+
+    /**
+     * Tracks a resource and returns its id. Essential ones are restored as
+     * soon as a new context exists, deferred ones when first needed or
+     * when their turn comes. Registering doesn't create anything; the
+     * caller does that for the current context.
+     */
+    public int register(int kind, boolean deferred, Restorer restorer) {
+        final Resource resource = new Resource();
+        resource.kind = kind;
+        resource.deferred = deferred;
+        resource.restorer = restorer;
+        if (freeIds.isEmpty()) {
+            resources.add(resource);
+            return resources.size() - 1;
+        }
+        final int id = freeIds.remove(freeIds.size() - 1);
+        resources.set(id, resource);
+        return id;
+    }
+
+    /** Stops tracking a resource the caller has deleted. */
+    public void unregister(int id) {
+        if (resources.get(id).lost) {
+            pending.remove(Integer.valueOf(id));
+        }
+        resources.set(id, null);
+        freeIds.add(id);
+    }
+
+    /** Records how many bytes of GPU memory the resource takes. */
+    public void setBytes(int id, long bytes) {
+        resources.get(id).bytes = bytes;
+    }
+
+    /**
+     * Call from onSurfaceCreated, once the old context's names have been
+     * forgotten. Restores every essential resource, by kind, and queues
+     * the deferred ones. Returns false for the first context, where there
+     * was nothing to lose.
+     */
+    public boolean onContextCreated() {
+        final long start = System.nanoTime();
+        pending.clear();
+        for (int kind = 0; kind < KIND_COUNT; kind++) {
+            for (int id = 0; id < resources.size(); id++) {
+                final Resource resource = resources.get(id);
+                if (resource == null || resource.kind != kind) {
+                    continue;
+                }
+                if (resource.deferred) {
+                    resource.bytes = 0;
+                    resource.lost = true;
+                    pending.add(id);
+                } else {
+                    resource.lost = false;
+                    resource.restorer.restore();
+                }
+            }
+        }
+        restoreNanos = System.nanoTime() - start;
+        return contextCount++ > 0;
+    }
+
+    /** Whether a deferred resource still awaits restoring. */
+    public boolean isLost(int id) {
+        return resources.get(id).lost;
+    }
+
+    /** Restores a deferred resource ahead of its turn, because it's needed now. */
+    public void restoreNow(int id) {
+        final Resource resource = resources.get(id);
+        if (resource.lost) {
+            pending.remove(Integer.valueOf(id));
+            resource.lost = false;
+            resource.restorer.restore();
+        }
+    }
+
+    /**
+     * Restores queued resources until the time budget is spent, at least
+     * one. Returns true if some are left for the next frame.
+     */
+    public boolean restorePending(long budgetNanos) {
+        final long start = System.nanoTime();
+        while (!pending.isEmpty()) {
+            final Resource resource = resources.get(pending.removeFirst());
+            resource.lost = false;
+            resource.restorer.restore();
+            if (System.nanoTime() - start > budgetNanos) {
+                return !pending.isEmpty();
+            }
+        }
+        return false;
+    }
+
+    /** Contexts created so far; more than one means a context was lost. */
+    public int getContextCount() {
+        return contextCount;
+    }
+
+    /** Time the last {@link #onContextCreated} spent restoring essential resources. */
+    public long getRestoreNanos() {
+        return restoreNanos;
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /** Number of tracked resources of a kind. */
+    public int getCount(int kind) {
+        int count = 0;
+        for (Resource resource : resources) {
+            if (resource != null && resource.kind == kind) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** Bytes of GPU memory the tracked resources of a kind take, as far as recorded. */
+    public long getBytes(int kind) {
+        long bytes = 0;
+        for (Resource resource : resources) {
+            if (resource != null && resource.kind == kind) {
+                bytes += resource.bytes;
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,996 @@
+package com.jr3dL.android.gl;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A headless {@link Gl} that draws nothing and records every call instead,
+ * so the render path can run on a plain JVM and be checked for call counts,
+ * state changes and upload sizes.
+ *
+ * Each command is stored in one int array as its opcode followed by its
+ * arguments, floats as their raw bits and booleans as 0 or 1. Bytes passed
+ * to buffer and texture uploads are copied into a second array and the
+ * command refers to them by offset. Strings aren't recorded.
+ *
+ * Object names are handed out from counters. The extension string lists
+ * ETC1 texture compression only. Shaders always compile and
+ * programs always link; linking reads the attribute and uniform
+ * declarations out of the attached sources and reports all of them as
+ * active, so {@code ShaderProgram} finds the locations it expects.
+ *
+ * It reports OpenGL ES 3.0 with one program binary format, whose binaries
+ * are the linked sources, so loading one gives the program the same
+ * interface. Binaries in another format fail to link, as do all of them
+ * after {@link #setRejectProgramBinaries}, the way a driver update does.
+ */
+public class RecordingGl implements Gl {
+    public static final int OP_CLEAR = 0;
+    public static final int OP_CLEAR_COLOR = 1;
+    public static final int OP_ENABLE = 2;
+    public static final int OP_DISABLE = 3;
+    public static final int OP_VIEWPORT = 4;
+    public static final int OP_DRAW_ARRAYS = 5;
+    public static final int OP_DRAW_ELEMENTS = 6;
+    public static final int OP_ENABLE_VERTEX_ATTRIB_ARRAY = 7;
+    public static final int OP_DISABLE_VERTEX_ATTRIB_ARRAY = 8;
+    /** index, size, type, normalized, stride, offset */
+    public static final int OP_VERTEX_ATTRIB_POINTER = 9;
+    /** index, size, type, normalized, stride; the client memory isn't copied */
+    public static final int OP_VERTEX_ATTRIB_POINTER_CLIENT = 10;
+    public static final int OP_VERTEX_ATTRIB_3F = 11;
+    public static final int OP_GEN_BUFFERS = 12;
+    public static final int OP_DELETE_BUFFERS = 13;
+    public static final int OP_BIND_BUFFER = 14;
+    /** target, size, usage, upload offset or -1 */
+    public static final int OP_BUFFER_DATA = 15;
+    /** target, offset, size, upload offset */
+    public static final int OP_BUFFER_SUB_DATA = 16;
+    public static final int OP_GEN_TEXTURES = 17;
+    public static final int OP_DELETE_TEXTURES = 18;
+    public static final int OP_ACTIVE_TEXTURE = 19;
+    public static final int OP_BIND_TEXTURE = 20;
+    public static final int OP_TEX_PARAMETER = 21;
+    /**
+     * target, level, internal format, width, height, border, format, type,
+     * upload offset or -1, upload size
+     */
+    public static final int OP_TEX_IMAGE_2D = 22;
+    public static final int OP_CREATE_SHADER = 23;
+    public static final int OP_SHADER_SOURCE = 24;
+    public static final int OP_COMPILE_SHADER = 25;
+    public static final int OP_GET_SHADER = 26;
+    public static final int OP_DELETE_SHADER = 27;
+    public static final int OP_CREATE_PROGRAM = 28;
+    public static final int OP_ATTACH_SHADER = 29;
+    public static final int OP_LINK_PROGRAM = 30;
+    public static final int OP_VALIDATE_PROGRAM = 31;
+    public static final int OP_GET_PROGRAM = 32;
+    public static final int OP_DELETE_PROGRAM = 33;
+    public static final int OP_USE_PROGRAM = 34;
+    public static final int OP_GET_ACTIVE_ATTRIB = 35;
+    public static final int OP_GET_ACTIVE_UNIFORM = 36;
+    public static final int OP_GET_ATTRIB_LOCATION = 37;
+    public static final int OP_GET_UNIFORM_LOCATION = 38;
+    public static final int OP_UNIFORM_1I = 39;
+    public static final int OP_UNIFORM_1F = 40;
+    public static final int OP_UNIFORM_3F = 41;
+    /** location, count, transpose, then 16 floats per matrix */
+    public static final int OP_UNIFORM_MATRIX_4FV = 42;
+    /** target, level, internal format, width, height, border, upload offset, upload size */
+    public static final int OP_COMPRESSED_TEX_IMAGE_2D = 43;
+    public static final int OP_GET_STRING = 44;
+    public static final int OP_UNIFORM_4F = 45;
+    public static final int OP_GET_INTEGER = 46;
+    /** program, buffer size */
+    public static final int OP_GET_PROGRAM_BINARY = 47;
+    /** program, binary format, length */
+    public static final int OP_PROGRAM_BINARY = 48;
+    public static final int OPCODE_COUNT = 49;
+
+    /** The one program binary format it reports. */
+    public static final int PROGRAM_BINARY_FORMAT = 0x5247;
+
+    private static final String[] OPCODE_NAMES = {
+        "glClear", "glClearColor", "glEnable", "glDisable", "glViewport",
+        "glDrawArrays", "glDrawElements", "glEnableVertexAttribArray",
+        "glDisableVertexAttribArray", "glVertexAttribPointer", "glVertexAttribPointer(client)",
+        "glVertexAttrib3f", "glGenBuffers", "glDeleteBuffers", "glBindBuffer",
+        "glBufferData", "glBufferSubData", "glGenTextures", "glDeleteTextures",
+        "glActiveTexture", "glBindTexture", "glTexParameteri", "glTexImage2D",
+        "glCreateShader", "glShaderSource", "glCompileShader", "glGetShaderiv",
+        "glDeleteShader", "glCreateProgram", "glAttachShader", "glLinkProgram",
+        "glValidateProgram", "glGetProgramiv", "glDeleteProgram", "glUseProgram",
+        "glGetActiveAttrib", "glGetActiveUniform", "glGetAttribLocation",
+        "glGetUniformLocation", "glUniform1i", "glUniform1f", "glUniform3f",
+        "glUniformMatrix4fv", "glCompressedTexImage2D", "glGetString", "glUniform4f",
+        "glGetIntegerv", "glGetProgramBinary", "glProgramBinary"
+    };
+
+    private static final int MATRIX_SIZE = 16;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private int[] stream = new int[1024];
+    private int streamSize;
+    private int[] commandOffsets = new int[256];
+    private int commandCount;
+
+    private byte[] uploads = new byte[4096];
+    private int uploadSize;
+
+    private final int[] opcodeCounts = new int[OPCODE_COUNT];
+    private int drawnVertexCount;
+
+    private int nextBuffer = 1;
+    private int nextTexture = 1;
+    // Shaders and programs share a namespace, as in GL.
+    private int nextObject = 1;
+    private String[] shaderSources = new String[16];
+    private int[][] attachedShaders = new int[16][];
+    private Declarations[] programInterfaces = new Declarations[16];
+    /** What each linked program's binary holds: its shaders' sources, NUL-separated. */
+    private String[] programBinaries = new String[16];
+    private boolean rejectProgramBinaries;
+
+    /** Drops the recorded commands and uploads. Object names stay valid. */
+    public void reset() {
+        streamSize = 0;
+        commandCount = 0;
+        uploadSize = 0;
+        Arrays.fill(opcodeCounts, 0);
+        drawnVertexCount = 0;
+    }
+
+    /** Makes every later glProgramBinary fail to link, or stops doing so. */
+    public void setRejectProgramBinaries(boolean reject) {
+        rejectProgramBinaries = reject;
+    }
+
+    public int getCommandCount() {
+        return commandCount;
+    }
+
+    public int getOpcode(int command) {
+        return stream[commandOffsets[command]];
+    }
+
+    public int getArgumentCount(int command) {
+        final int end = command + 1 < commandCount ? commandOffsets[command + 1] : streamSize;
+        return end - commandOffsets[command] - 1;
+    }
+
+    public int getArgument(int command, int argument) {
+        return stream[commandOffsets[command] + 1 + argument];
+    }
+
+    public float getFloatArgument(int command, int argument) {
+        return Float.intBitsToFloat(getArgument(command, argument));
+    }
+
+    /** How many times the call with this opcode was recorded. */
+    public int getCount(int opcode) {
+        return opcodeCounts[opcode];
+    }
+
+    public int getDrawCallCount() {
+        return opcodeCounts[OP_DRAW_ARRAYS] + opcodeCounts[OP_DRAW_ELEMENTS];
+    }
+
+    /** Vertices or indices consumed by every recorded draw call. */
+    public int getDrawnVertexCount() {
+        return drawnVertexCount;
+    }
+
+    /**
+     * Calls that change context state: capabilities, bindings, attribute
+     * setup, texture parameters and the current program. Uniform uploads
+     * are counted separately.
+     */
+    public int getStateChangeCount() {
+        int count = 0;
+        for (int opcode = 0; opcode < OPCODE_COUNT; opcode++) {
+            if (isStateChange(opcode)) {
+                count += opcodeCounts[opcode];
+            }
+        }
+        return count;
+    }
+
+    public int getUniformUploadCount() {
+        return opcodeCounts[OP_UNIFORM_1I] + opcodeCounts[OP_UNIFORM_1F]
+            + opcodeCounts[OP_UNIFORM_3F] + opcodeCounts[OP_UNIFORM_4F]
+            + opcodeCounts[OP_UNIFORM_MATRIX_4FV];
+    }
+
+    /** Bytes copied by buffer and texture uploads. */
+    public int getUploadedByteCount() {
+        return uploadSize;
+    }
+
+    /** The byte at an upload offset recorded by a buffer or texture command. */
+    public byte getUploadedByte(int offset) {
+        if (offset >= uploadSize) {
+            throw new RuntimeException("Upload offset " + offset + " out of range.");
+        }
+        return uploads[offset];
+    }
+
+    public static String getOpcodeName(int opcode) {
+        return OPCODE_NAMES[opcode];
+    }
+
+    public static boolean isStateChange(int opcode) {
+        switch (opcode) {
+            case OP_CLEAR_COLOR:
+            case OP_ENABLE:
+            case OP_DISABLE:
+            case OP_VIEWPORT:
+            case OP_ENABLE_VERTEX_ATTRIB_ARRAY:
+            case OP_DISABLE_VERTEX_ATTRIB_ARRAY:
+            case OP_VERTEX_ATTRIB_POINTER:
+            case OP_VERTEX_ATTRIB_POINTER_CLIENT:
+            case OP_VERTEX_ATTRIB_3F:
+            case OP_BIND_BUFFER:
+            case OP_ACTIVE_TEXTURE:
+            case OP_BIND_TEXTURE:
+            case OP_TEX_PARAMETER:
+            case OP_USE_PROGRAM:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /** One line per command, for failure messages. */
+    public String dump() {
+        final StringBuilder builder = new StringBuilder();
+        for (int command = 0; command < commandCount; command++) {
+            builder.append(getOpcodeName(getOpcode(command))).append('(');
+            for (int i = 0; i < getArgumentCount(command); i++) {
+                if (i > 0) {
+                    builder.append(", ");
+                }
+                builder.append(getArgument(command, i));
+            }
+            builder.append(")\n");
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public void glClear(int mask) {
+        begin(OP_CLEAR, 1);
+        put(mask);
+    }
+
+    @Override
+    public void glClearColor(float red, float green, float blue, float alpha) {
+        begin(OP_CLEAR_COLOR, 4);
+        put(red);
+        put(green);
+        put(blue);
+        put(alpha);
+    }
+
+    @Override
+    public void glEnable(int capability) {
+        begin(OP_ENABLE, 1);
+        put(capability);
+    }
+
+    @Override
+    public void glDisable(int capability) {
+        begin(OP_DISABLE, 1);
+        put(capability);
+    }
+
+    @Override
+    public void glViewport(int x, int y, int width, int height) {
+        begin(OP_VIEWPORT, 4);
+        put(x);
+        put(y);
+        put(width);
+        put(height);
+    }
+
+    @Override
+    public String glGetString(int name) {
+        begin(OP_GET_STRING, 1);
+        put(name);
+        switch (name) {
+            case GL_EXTENSIONS:
+                return "GL_OES_compressed_ETC1_RGB8_texture";
+            case GL_VERSION:
+                return "OpenGL ES 3.0 RecordingGl";
+            case GL_VENDOR:
+            case GL_RENDERER:
+                return "RecordingGl";
+            default:
+                return "";
+        }
+    }
+
+    @Override
+    public void glGetIntegerv(int name, int[] params, int offset) {
+        begin(OP_GET_INTEGER, 1);
+        put(name);
+        params[offset] = name == GL_NUM_PROGRAM_BINARY_FORMATS ? 1 : 0;
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count) {
+        begin(OP_DRAW_ARRAYS, 3);
+        put(mode);
+        put(first);
+        put(count);
+        drawnVertexCount += count;
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset) {
+        begin(OP_DRAW_ELEMENTS, 4);
+        put(mode);
+        put(count);
+        put(type);
+        put(offset);
+        drawnVertexCount += count;
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+        begin(OP_ENABLE_VERTEX_ATTRIB_ARRAY, 1);
+        put(index);
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index) {
+        begin(OP_DISABLE_VERTEX_ATTRIB_ARRAY, 1);
+        put(index);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized,
+        int stride, int offset) {
+        begin(OP_VERTEX_ATTRIB_POINTER, 6);
+        put(index);
+        put(size);
+        put(type);
+        put(normalized);
+        put(stride);
+        put(offset);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized,
+        int stride, Buffer pointer) {
+        begin(OP_VERTEX_ATTRIB_POINTER_CLIENT, 5);
+        put(index);
+        put(size);
+        put(type);
+        put(normalized);
+        put(stride);
+    }
+
+    @Override
+    public void glVertexAttrib3f(int index, float x, float y, float z) {
+        begin(OP_VERTEX_ATTRIB_3F, 4);
+        put(index);
+        put(x);
+        put(y);
+        put(z);
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset) {
+        begin(OP_GEN_BUFFERS, n);
+        for (int i = 0; i < n; i++) {
+            buffers[offset + i] = nextBuffer++;
+            put(buffers[offset + i]);
+        }
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset) {
+        begin(OP_DELETE_BUFFERS, n);
+        for (int i = 0; i < n; i++) {
+            put(buffers[offset + i]);
+        }
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        begin(OP_BIND_BUFFER, 2);
+        put(target);
+        put(buffer);
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage) {
+        final int upload = data != null ? upload(data, size) : -1;
+        begin(OP_BUFFER_DATA, 4);
+        put(target);
+        put(size);
+        put(usage);
+        put(upload);
+    }
+
+    @Override
+    public void glBufferSubData(int target, int offset, int size, Buffer data) {
+        final int upload = upload(data, size);
+        begin(OP_BUFFER_SUB_DATA, 4);
+        put(target);
+        put(offset);
+        put(size);
+        put(upload);
+    }
+
+    @Override
+    public void glGenTextures(int n, int[] textures, int offset) {
+        begin(OP_GEN_TEXTURES, n);
+        for (int i = 0; i < n; i++) {
+            textures[offset + i] = nextTexture++;
+            put(textures[offset + i]);
+        }
+    }
+
+    @Override
+    public void glDeleteTextures(int n, int[] textures, int offset) {
+        begin(OP_DELETE_TEXTURES, n);
+        for (int i = 0; i < n; i++) {
+            put(textures[offset + i]);
+        }
+    }
+
+    @Override
+    public void glActiveTexture(int texture) {
+        begin(OP_ACTIVE_TEXTURE, 1);
+        put(texture);
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture) {
+        begin(OP_BIND_TEXTURE, 2);
+        put(target);
+        put(texture);
+    }
+
+    @Override
+    public void glTexParameteri(int target, int name, int value) {
+        begin(OP_TEX_PARAMETER, 3);
+        put(target);
+        put(name);
+        put(value);
+    }
+
+    @Override
+    public void glTexImage2D(int target, int level, int internalFormat, int width, int height,
+        int border, int format, int type, Buffer pixels) {
+        final int size = pixels != null ? imageSize(width, height, format, type, pixels) : 0;
+        final int upload = pixels != null ? upload(pixels, size) : -1;
+        begin(OP_TEX_IMAGE_2D, 10);
+        put(target);
+        put(level);
+        put(internalFormat);
+        put(width);
+        put(height);
+        put(border);
+        put(format);
+        put(type);
+        put(upload);
+        put(size);
+    }
+
+    @Override
+    public void glCompressedTexImage2D(int target, int level, int internalFormat, int width,
+        int height, int border, int imageSize, Buffer data) {
+        final int upload = upload(data, imageSize);
+        begin(OP_COMPRESSED_TEX_IMAGE_2D, 8);
+        put(target);
+        put(level);
+        put(internalFormat);
+        put(width);
+        put(height);
+        put(border);
+        put(upload);
+        put(imageSize);
+    }
+
+    @Override
+    public int glCreateShader(int type) {
+        final int shader = newObject();
+        begin(OP_CREATE_SHADER, 2);
+        put(type);
+        put(shader);
+        return shader;
+    }
+
+    @Override
+    public void glShaderSource(int shader, String source) {
+        begin(OP_SHADER_SOURCE, 2);
+        put(shader);
+        put(source.length());
+        shaderSources[shader] = source;
+    }
+
+    @Override
+    public void glCompileShader(int shader) {
+        begin(OP_COMPILE_SHADER, 1);
+        put(shader);
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int name, int[] params, int offset) {
+        begin(OP_GET_SHADER, 2);
+        put(shader);
+        put(name);
+        params[offset] = name == GL_COMPILE_STATUS && shaderSources[shader] != null ? GL_TRUE : 0;
+    }
+
+    @Override
+    public String glGetShaderInfoLog(int shader) {
+        return "";
+    }
+
+    @Override
+    public void glDeleteShader(int shader) {
+        begin(OP_DELETE_SHADER, 1);
+        put(shader);
+    }
+
+    @Override
+    public int glCreateProgram() {
+        final int program = newObject();
+        begin(OP_CREATE_PROGRAM, 1);
+        put(program);
+        attachedShaders[program] = new int[0];
+        return program;
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader) {
+        begin(OP_ATTACH_SHADER, 2);
+        put(program);
+        put(shader);
+        final int[] attached = attachedShaders[program];
+        attachedShaders[program] = Arrays.copyOf(attached, attached.length + 1);
+        attachedShaders[program][attached.length] = shader;
+    }
+
+    @Override
+    public void glLinkProgram(int program) {
+        begin(OP_LINK_PROGRAM, 1);
+        put(program);
+        final Declarations declarations = new Declarations();
+        final StringBuilder binary = new StringBuilder();
+        for (int shader : attachedShaders[program]) {
+            declarations.parse(shaderSources[shader]);
+            binary.append(shaderSources[shader]).append('\0');
+        }
+        programInterfaces[program] = declarations;
+        programBinaries[program] = binary.toString();
+    }
+
+    @Override
+    public void glGetProgramBinary(int program, int bufferSize, int[] length, int lengthOffset,
+        int[] binaryFormat, int binaryFormatOffset, Buffer binary) {
+        begin(OP_GET_PROGRAM_BINARY, 2);
+        put(program);
+        put(bufferSize);
+        final byte[] bytes = programBinaries[program] != null
+            ? programBinaries[program].getBytes(UTF_8) : new byte[0];
+        final int written = Math.min(bytes.length, bufferSize);
+        ((ByteBuffer) binary).duplicate().put(bytes, 0, written);
+        if (length != null) {
+            length[lengthOffset] = written;
+        }
+        binaryFormat[binaryFormatOffset] = PROGRAM_BINARY_FORMAT;
+    }
+
+    @Override
+    public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length) {
+        begin(OP_PROGRAM_BINARY, 3);
+        put(program);
+        put(binaryFormat);
+        put(length);
+        programInterfaces[program] = null;
+        programBinaries[program] = null;
+        if (binaryFormat != PROGRAM_BINARY_FORMAT || rejectProgramBinaries) {
+            return;
+        }
+        final byte[] bytes = new byte[length];
+        ((ByteBuffer) binary).duplicate().get(bytes);
+        final String sources = new String(bytes, UTF_8);
+        final Declarations declarations = new Declarations();
+        for (String source : sources.split("\0")) {
+            declarations.parse(source);
+        }
+        programInterfaces[program] = declarations;
+        programBinaries[program] = sources;
+    }
+
+    @Override
+    public void glValidateProgram(int program) {
+        begin(OP_VALIDATE_PROGRAM, 1);
+        put(program);
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int name, int[] params, int offset) {
+        begin(OP_GET_PROGRAM, 2);
+        put(program);
+        put(name);
+        final Declarations declarations = programInterfaces[program];
+        switch (name) {
+            case GL_LINK_STATUS:
+            case GL_VALIDATE_STATUS:
+                params[offset] = declarations != null ? GL_TRUE : 0;
+                break;
+            case GL_ACTIVE_ATTRIBUTES:
+                params[offset] = declarations != null ? declarations.attributeCount : 0;
+                break;
+            case GL_ACTIVE_UNIFORMS:
+                params[offset] = declarations != null ? declarations.uniformCount : 0;
+                break;
+            case GL_PROGRAM_BINARY_LENGTH:
+                params[offset] = programBinaries[program] != null
+                    ? programBinaries[program].getBytes(UTF_8).length : 0;
+                break;
+            default:
+                params[offset] = 0;
+                break;
+        }
+    }
+
+    @Override
+    public String glGetProgramInfoLog(int program) {
+        return "";
+    }
+
+    @Override
+    public void glDeleteProgram(int program) {
+        begin(OP_DELETE_PROGRAM, 1);
+        put(program);
+        programInterfaces[program] = null;
+        programBinaries[program] = null;
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+        begin(OP_USE_PROGRAM, 1);
+        put(program);
+    }
+
+    @Override
+    public String glGetActiveAttrib(int program, int index, int[] size, int sizeOffset,
+        int[] type, int typeOffset) {
+        begin(OP_GET_ACTIVE_ATTRIB, 2);
+        put(program);
+        put(index);
+        final Declarations declarations = programInterfaces[program];
+        size[sizeOffset] = declarations.attributeSizes[index];
+        type[typeOffset] = declarations.attributeTypes[index];
+        return declarations.attributeNames[index];
+    }
+
+    @Override
+    public String glGetActiveUniform(int program, int index, int[] size, int sizeOffset,
+        int[] type, int typeOffset) {
+        begin(OP_GET_ACTIVE_UNIFORM, 2);
+        put(program);
+        put(index);
+        final Declarations declarations = programInterfaces[program];
+        size[sizeOffset] = declarations.uniformSizes[index];
+        type[typeOffset] = declarations.uniformTypes[index];
+        return declarations.uniformSizes[index] > 1
+            ? declarations.uniformNames[index] + "[0]" : declarations.uniformNames[index];
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name) {
+        begin(OP_GET_ATTRIB_LOCATION, 1);
+        put(program);
+        final Declarations declarations = programInterfaces[program];
+        return declarations != null ? declarations.attributeLocation(name) : -1;
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name) {
+        begin(OP_GET_UNIFORM_LOCATION, 1);
+        put(program);
+        final Declarations declarations = programInterfaces[program];
+        return declarations != null ? declarations.uniformLocation(name) : -1;
+    }
+
+    @Override
+    public void glUniform1i(int location, int x) {
+        begin(OP_UNIFORM_1I, 2);
+        put(location);
+        put(x);
+    }
+
+    @Override
+    public void glUniform1f(int location, float x) {
+        begin(OP_UNIFORM_1F, 2);
+        put(location);
+        put(x);
+    }
+
+    @Override
+    public void glUniform3f(int location, float x, float y, float z) {
+        begin(OP_UNIFORM_3F, 4);
+        put(location);
+        put(x);
+        put(y);
+        put(z);
+    }
+
+    @Override
+    public void glUniform4f(int location, float x, float y, float z, float w) {
+        begin(OP_UNIFORM_4F, 5);
+        put(location);
+        put(x);
+        put(y);
+        put(z);
+        put(w);
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value,
+        int offset) {
+        begin(OP_UNIFORM_MATRIX_4FV, 3 + count * MATRIX_SIZE);
+        put(location);
+        put(count);
+        put(transpose);
+        for (int i = 0; i < count * MATRIX_SIZE; i++) {
+            put(value[offset + i]);
+        }
+    }
+
+    private void begin(int opcode, int argumentCount) {
+        if (commandCount == commandOffsets.length) {
+            commandOffsets = Arrays.copyOf(commandOffsets, commandCount * 2);
+        }
+        if (streamSize + 1 + argumentCount > stream.length) {
+            stream = Arrays.copyOf(stream, Math.max(stream.length * 2, streamSize + 1 + argumentCount));
+        }
+        commandOffsets[commandCount++] = streamSize;
+        stream[streamSize++] = opcode;
+        opcodeCounts[opcode]++;
+    }
+
+    private void put(int value) {
+        stream[streamSize++] = value;
+    }
+
+    private void put(float value) {
+        stream[streamSize++] = Float.floatToRawIntBits(value);
+    }
+
+    private void put(boolean value) {
+        stream[streamSize++] = value ? 1 : 0;
+    }
+
+    private int newObject() {
+        final int name = nextObject++;
+        if (name >= shaderSources.length) {
+            shaderSources = Arrays.copyOf(shaderSources, name * 2);
+            attachedShaders = Arrays.copyOf(attachedShaders, name * 2);
+            programInterfaces = Arrays.copyOf(programInterfaces, name * 2);
+            programBinaries = Arrays.copyOf(programBinaries, name * 2);
+        }
+        return name;
+    }
+
+    /**
+     * Copies byteCount bytes from the buffer's position, in native order, and
+     * returns where they start in the upload array.
+     */
+    private int upload(Buffer data, int byteCount) {
+        if (uploadSize + byteCount > uploads.length) {
+            uploads = Arrays.copyOf(uploads, Math.max(uploads.length * 2, uploadSize + byteCount));
+        }
+        final int start = uploadSize;
+        final ByteBuffer target = ByteBuffer.wrap(uploads, start, byteCount)
+            .order(ByteOrder.nativeOrder());
+        if (data instanceof ByteBuffer) {
+            final ByteBuffer source = ((ByteBuffer) data).duplicate();
+            source.limit(source.position() + byteCount);
+            target.put(source);
+        } else if (data instanceof FloatBuffer) {
+            final FloatBuffer source = ((FloatBuffer) data).duplicate();
+            source.limit(source.position() + byteCount / 4);
+            target.asFloatBuffer().put(source);
+        } else if (data instanceof ShortBuffer) {
+            final ShortBuffer source = ((ShortBuffer) data).duplicate();
+            source.limit(source.position() + byteCount / 2);
+            target.asShortBuffer().put(source);
+        } else if (data instanceof IntBuffer) {
+            final IntBuffer source = ((IntBuffer) data).duplicate();
+            source.limit(source.position() + byteCount / 4);
+            target.asIntBuffer().put(source);
+        } else {
+            throw new RuntimeException("Unsupported buffer type: " + data.getClass().getName());
+        }
+        uploadSize += byteCount;
+        return start;
+    }
+
+    /**
+     * Bytes glTexImage2D reads for the common byte formats, honouring the
+     * default unpack alignment of 4. Anything else is taken to fill the rest
+     * of the buffer.
+     */
+    private static int imageSize(int width, int height, int format, int type, Buffer pixels) {
+        if (type == GL_UNSIGNED_BYTE && (format == GL_RGBA || format == GL_RGB)) {
+            final int pixelBytes = format == GL_RGBA ? 4 : 3;
+            final int rowBytes = width * pixelBytes;
+            final int alignedRowBytes = (rowBytes + 3) & ~3;
+            return height == 0 ? 0 : alignedRowBytes * (height - 1) + rowBytes;
+        }
+        if (pixels instanceof ByteBuffer) {
+            return pixels.remaining();
+        } else if (pixels instanceof ShortBuffer) {
+            return pixels.remaining() * 2;
+        }
+        return pixels.remaining() * 4;
+    }
+
+    /** The attributes and uniforms declared by a program's shaders. */
+    private static final class Declarations {
+        static final Pattern DEFINE =
+            Pattern.compile("(?m)^\\s*#\\s*define\\s+(\\w+)[ \\t]+(\\S+)");
+
+        final Map<String, String> defines = new HashMap<String, String>();
+
+        String[] attributeNames = new String[4];
+        int[] attributeTypes = new int[4];
+        int[] attributeSizes = new int[4];
+        int attributeCount;
+
+        String[] uniformNames = new String[4];
+        int[] uniformTypes = new int[4];
+        int[] uniformSizes = new int[4];
+        int[] uniformLocations = new int[4];
+        int uniformCount;
+        int nextUniformLocation;
+
+        int attributeLocation(String name) {
+            for (int i = 0; i < attributeCount; i++) {
+                if (attributeNames[i].equals(name)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        int uniformLocation(String name) {
+            for (int i = 0; i < uniformCount; i++) {
+                if (uniformNames[i].equals(name)) {
+                    return uniformLocations[i];
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Picks up global "attribute" and "uniform" declarations. Comments
+         * and preprocessor lines are skipped, not evaluated, though array
+         * sizes may name a #define.
+         */
+        void parse(String source) {
+            if (source == null) {
+                return;
+            }
+            String code = source.replaceAll("(?s)/\\*.*?\\*/", " ")
+                .replaceAll("//[^\\n]*", " ");
+            final Matcher define = DEFINE.matcher(code);
+            while (define.find()) {
+                defines.put(define.group(1), define.group(2));
+            }
+            code = code.replaceAll("(?m)^\\s*#[^\\n]*", " ");
+            for (String statement : code.split(";")) {
+                final int brace = Math.max(statement.lastIndexOf('{'), statement.lastIndexOf('}'));
+                final String[] tokens = statement.substring(brace + 1).trim().split("[\\s,]+");
+                if (tokens.length < 3) {
+                    continue;
+                }
+                final boolean attribute = tokens[0].equals("attribute");
+                if (!attribute && !tokens[0].equals("uniform")) {
+                    continue;
+                }
+                int t = 1;
+                if (isPrecision(tokens[t])) {
+                    t++;
+                }
+                final int type = glslType(tokens[t++]);
+                for (; t < tokens.length; t++) {
+                    String name = tokens[t];
+                    int size = 1;
+                    final int bracket = name.indexOf('[');
+                    if (bracket >= 0) {
+                        String length = name.substring(bracket + 1, name.indexOf(']')).trim();
+                        if (defines.containsKey(length)) {
+                            length = defines.get(length);
+                        }
+                        size = Integer.parseInt(length);
+                        name = name.substring(0, bracket);
+                    }
+                    if (attribute) {
+                        addAttribute(name, type, size);
+                    } else {
+                        addUniform(name, type, size);
+                    }
+                }
+            }
+        }
+
+        private void addAttribute(String name, int type, int size) {
+            if (attributeLocation(name) >= 0) {
+                return;
+            }
+            if (attributeCount == attributeNames.length) {
+                attributeNames = Arrays.copyOf(attributeNames, attributeCount * 2);
+                attributeTypes = Arrays.copyOf(attributeTypes, attributeCount * 2);
+                attributeSizes = Arrays.copyOf(attributeSizes, attributeCount * 2);
+            }
+            attributeNames[attributeCount] = name;
+            attributeTypes[attributeCount] = type;
+            attributeSizes[attributeCount] = size;
+            attributeCount++;
+        }
+
+        private void addUniform(String name, int type, int size) {
+            // A uniform shared by both stages is one uniform.
+            if (uniformLocation(name) >= 0) {
+                return;
+            }
+            if (uniformCount == uniformNames.length) {
+                uniformNames = Arrays.copyOf(uniformNames, uniformCount * 2);
+                uniformTypes = Arrays.copyOf(uniformTypes, uniformCount * 2);
+                uniformSizes = Arrays.copyOf(uniformSizes, uniformCount * 2);
+                uniformLocations = Arrays.copyOf(uniformLocations, uniformCount * 2);
+            }
+            uniformNames[uniformCount] = name;
+            uniformTypes[uniformCount] = type;
+            uniformSizes[uniformCount] = size;
+            uniformLocations[uniformCount] = nextUniformLocation;
+            nextUniformLocation += size;
+            uniformCount++;
+        }
+
+        private static boolean isPrecision(String token) {
+            return token.equals("lowp") || token.equals("mediump") || token.equals("highp");
+        }
+
+        private static int glslType(String token) {
+            if (token.equals("float")) {
+                return GL_FLOAT;
+            } else if (token.equals("vec2")) {
+                return GL_FLOAT_VEC2;
+            } else if (token.equals("vec3")) {
+                return GL_FLOAT_VEC3;
+            } else if (token.equals("vec4")) {
+                return GL_FLOAT_VEC4;
+            } else if (token.equals("mat3")) {
+                return GL_FLOAT_MAT3;
+            } else if (token.equals("mat4")) {
+                return GL_FLOAT_MAT4;
+            } else if (token.equals("sampler2D")) {
+                return GL_SAMPLER_2D;
+            } else if (token.equals("int")) {
+                return GL_INT;
+            }
+            return 0;
+        }
+    }
+}
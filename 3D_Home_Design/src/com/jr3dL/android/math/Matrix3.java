@@ -0,0 +1,135 @@
+package com.jr3dL.android.math;
+
+/**
+ * Column-major 3x3 matrix operations on float arrays at an offset, mostly
+ * for transforming normals and directions by the upper 3x3 of a
+ * {@link Matrix4}.
+ */
+public final class Matrix3 {
+    public static final int SIZE = 9;
+
+    private Matrix3() {
+    }
+
+    public static void setIdentity(float[] m, int offset) {
+        for (int i = 0; i < SIZE; i++) {
+            m[offset + i] = 0.0f;
+        }
+        m[offset] = 1.0f;
+        m[offset + 4] = 1.0f;
+        m[offset + 8] = 1.0f;
+    }
+
+    /** Copies the upper 3x3 of a 4x4 matrix. */
+    public static void setUpper(float[] result, int resultOffset, float[] m4, int offset) {
+        for (int column = 0; column < 3; column++) {
+            System.arraycopy(m4, offset + column * 4, result, resultOffset + column * 3, 3);
+        }
+    }
+
+    /**
+     * Sets result to lhs * rhs. The result may be lhs itself at the same
+     * offset, but must not overlap rhs.
+     */
+    public static void multiply(float[] result, int resultOffset,
+        float[] lhs, int lhsOffset, float[] rhs, int rhsOffset) {
+        for (int k = 0; k < 3; k++) {
+            final float l0 = lhs[lhsOffset + k];
+            final float l1 = lhs[lhsOffset + 3 + k];
+            final float l2 = lhs[lhsOffset + 6 + k];
+            for (int i = 0; i < 9; i += 3) {
+                final int r = rhsOffset + i;
+                result[resultOffset + i + k] = l0 * rhs[r] + l1 * rhs[r + 1] + l2 * rhs[r + 2];
+            }
+        }
+    }
+
+    /** Sets the three-component result to m * v. The result may be v itself. */
+    public static void multiplyVector(float[] result, int resultOffset,
+        float[] m, int mOffset, float[] v, int vOffset) {
+        final float x = v[vOffset];
+        final float y = v[vOffset + 1];
+        final float z = v[vOffset + 2];
+        result[resultOffset] = m[mOffset] * x + m[mOffset + 3] * y + m[mOffset + 6] * z;
+        result[resultOffset + 1] = m[mOffset + 1] * x + m[mOffset + 4] * y + m[mOffset + 7] * z;
+        result[resultOffset + 2] = m[mOffset + 2] * x + m[mOffset + 5] * y + m[mOffset + 8] * z;
+    }
+
+    public static void transpose(float[] m, int offset) {
+        swap(m, offset + 1, offset + 3);
+        swap(m, offset + 2, offset + 6);
+        swap(m, offset + 5, offset + 7);
+    }
+
+    /**
+     * Sets result to the inverse transpose of the upper 3x3 of a 4x4
+     * matrix, which keeps normals perpendicular to surfaces under
+     * non-uniform scale. Returns false if it is singular.
+     */
+    public static boolean setNormalMatrix(float[] result, int resultOffset,
+        float[] m4, int offset) {
+        final float determinant = cofactors(result, resultOffset, m4, offset, false);
+        if (determinant == 0.0f) {
+            return false;
+        }
+        final float inverse = 1.0f / determinant;
+        for (int i = 0; i < SIZE; i++) {
+            result[resultOffset + i] *= inverse;
+        }
+        return true;
+    }
+
+    /**
+     * Sets result to the cofactor matrix of the upper 3x3 of a 4x4 matrix,
+     * negated if its determinant is negative. That is the inverse transpose
+     * scaled by the absolute determinant, so it points normals the same way
+     * without a division, for callers that renormalize anyway; mirrored
+     * matrices don't flip normals inward.
+     */
+    public static void setUnscaledNormalMatrix(float[] result, int resultOffset,
+        float[] m4, int offset) {
+        cofactors(result, resultOffset, m4, offset, true);
+    }
+
+    /**
+     * Writes the cofactors of the upper 3x3, column major, optionally negated
+     * to make the determinant positive, and returns the determinant.
+     */
+    private static float cofactors(float[] result, int resultOffset, float[] m4, int offset,
+        boolean positive) {
+        final float a = m4[offset], b = m4[offset + 4], c = m4[offset + 8];
+        final float d = m4[offset + 1], e = m4[offset + 5], f = m4[offset + 9];
+        final float g = m4[offset + 2], h = m4[offset + 6], i = m4[offset + 10];
+
+        final float c00 = e * i - f * h;
+        final float c01 = f * g - d * i;
+        final float c02 = d * h - e * g;
+        final float c10 = c * h - b * i;
+        final float c11 = a * i - c * g;
+        final float c12 = b * g - a * h;
+        final float c20 = b * f - c * e;
+        final float c21 = c * d - a * f;
+        final float c22 = a * e - b * d;
+
+        final float determinant = a * c00 + b * c01 + c * c02;
+        final float sign = positive && determinant < 0.0f ? -1.0f : 1.0f;
+
+        final int o = resultOffset;
+        result[o] = sign * c00;
+        result[o + 1] = sign * c10;
+        result[o + 2] = sign * c20;
+        result[o + 3] = sign * c01;
+        result[o + 4] = sign * c11;
+        result[o + 5] = sign * c21;
+        result[o + 6] = sign * c02;
+        result[o + 7] = sign * c12;
+        result[o + 8] = sign * c22;
+        return determinant;
+    }
+
+    private static void swap(float[] m, int i, int j) {
+        final float t = m[i];
+        m[i] = m[j];
+        m[j] = t;
+    }
+}
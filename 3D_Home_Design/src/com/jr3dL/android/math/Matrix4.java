@@ -0,0 +1,433 @@
+package com.jr3dL.android.math;
+
+/**
+ * Column-major 4x4 matrix operations on float arrays at an offset, in pure
+ * Java so they run off device, and allocating nothing.
+ *
+ * The general operations do the same float arithmetic in the same order as
+ * android.opengl.Matrix, so replacing a call gives bit-identical results.
+ * The affine fast paths skip the work a general matrix needs but an affine
+ * one doesn't; {@link #setTranslateScaleRotate} still matches the
+ * identity, translate, scale, rotate sequence bit for bit.
+ */
+public final class Matrix4 {
+    public static final int SIZE = 16;
+
+    private static final float DEGREES_TO_RADIANS = (float) (Math.PI / 180.0f);
+
+    /** Rotation scratch per thread, so rotating allocates nothing. */
+    private static final ThreadLocal<float[]> ROTATION = new ThreadLocal<float[]>() {
+        @Override
+        protected float[] initialValue() {
+            return new float[SIZE];
+        }
+    };
+
+    private Matrix4() {
+    }
+
+    public static void setIdentity(float[] m, int offset) {
+        for (int i = 0; i < SIZE; i++) {
+            m[offset + i] = 0.0f;
+        }
+        for (int i = 0; i < SIZE; i += 5) {
+            m[offset + i] = 1.0f;
+        }
+    }
+
+    /** Multiplies m on the right by a translation. */
+    public static void translate(float[] m, int offset, float x, float y, float z) {
+        for (int i = 0; i < 4; i++) {
+            final int mi = offset + i;
+            m[12 + mi] += m[mi] * x + m[4 + mi] * y + m[8 + mi] * z;
+        }
+    }
+
+    /** Multiplies m on the right by a scale. */
+    public static void scale(float[] m, int offset, float x, float y, float z) {
+        for (int i = 0; i < 4; i++) {
+            final int mi = offset + i;
+            m[mi] *= x;
+            m[4 + mi] *= y;
+            m[8 + mi] *= z;
+        }
+    }
+
+    /**
+     * Sets m to a rotation of the given degrees around an axis, which needn't
+     * be normalized.
+     */
+    public static void setRotate(float[] m, int offset, float degrees,
+        float x, float y, float z) {
+        m[offset + 3] = 0.0f;
+        m[offset + 7] = 0.0f;
+        m[offset + 11] = 0.0f;
+        m[offset + 12] = 0.0f;
+        m[offset + 13] = 0.0f;
+        m[offset + 14] = 0.0f;
+        m[offset + 15] = 1.0f;
+        final float a = degrees * DEGREES_TO_RADIANS;
+        final float s = (float) Math.sin(a);
+        final float c = (float) Math.cos(a);
+        if (1.0f == x && 0.0f == y && 0.0f == z) {
+            m[offset + 5] = c;
+            m[offset + 10] = c;
+            m[offset + 6] = s;
+            m[offset + 9] = -s;
+            m[offset + 1] = 0.0f;
+            m[offset + 2] = 0.0f;
+            m[offset + 4] = 0.0f;
+            m[offset + 8] = 0.0f;
+            m[offset] = 1.0f;
+        } else if (0.0f == x && 1.0f == y && 0.0f == z) {
+            m[offset] = c;
+            m[offset + 10] = c;
+            m[offset + 8] = s;
+            m[offset + 2] = -s;
+            m[offset + 1] = 0.0f;
+            m[offset + 4] = 0.0f;
+            m[offset + 6] = 0.0f;
+            m[offset + 9] = 0.0f;
+            m[offset + 5] = 1.0f;
+        } else if (0.0f == x && 0.0f == y && 1.0f == z) {
+            m[offset] = c;
+            m[offset + 5] = c;
+            m[offset + 1] = s;
+            m[offset + 4] = -s;
+            m[offset + 2] = 0.0f;
+            m[offset + 6] = 0.0f;
+            m[offset + 8] = 0.0f;
+            m[offset + 9] = 0.0f;
+            m[offset + 10] = 1.0f;
+        } else {
+            final float length = length(x, y, z);
+            if (1.0f != length) {
+                final float inverseLength = 1.0f / length;
+                x *= inverseLength;
+                y *= inverseLength;
+                z *= inverseLength;
+            }
+            final float nc = 1.0f - c;
+            final float xy = x * y;
+            final float yz = y * z;
+            final float zx = z * x;
+            final float xs = x * s;
+            final float ys = y * s;
+            final float zs = z * s;
+            m[offset] = x * x * nc + c;
+            m[offset + 4] = xy * nc - zs;
+            m[offset + 8] = zx * nc + ys;
+            m[offset + 1] = xy * nc + zs;
+            m[offset + 5] = y * y * nc + c;
+            m[offset + 9] = yz * nc - xs;
+            m[offset + 2] = zx * nc - ys;
+            m[offset + 6] = yz * nc + xs;
+            m[offset + 10] = z * z * nc + c;
+        }
+    }
+
+    /**
+     * Multiplies m on the right by a rotation, in place. Only the rotation's
+     * upper 3x3 takes part, but its zero entries are still multiplied in so
+     * the signs of zero results match a full multiply.
+     */
+    public static void rotate(float[] m, int offset, float degrees, float x, float y, float z) {
+        final float[] r = ROTATION.get();
+        setRotate(r, 0, degrees, x, y, z);
+        for (int k = 0; k < 4; k++) {
+            final float m0 = m[offset + k];
+            final float m1 = m[offset + 4 + k];
+            final float m2 = m[offset + 8 + k];
+            final float m3 = m[offset + 12 + k];
+            final float w = m3 * 0.0f;
+            m[offset + k] = m0 * r[0] + m1 * r[1] + m2 * r[2] + w;
+            m[offset + 4 + k] = m0 * r[4] + m1 * r[5] + m2 * r[6] + w;
+            m[offset + 8 + k] = m0 * r[8] + m1 * r[9] + m2 * r[10] + w;
+            m[offset + 12 + k] = m0 * 0.0f + m1 * 0.0f + m2 * 0.0f + m3;
+        }
+    }
+
+    /**
+     * Sets result to lhs * rhs. Both are read in full before anything is
+     * written, so the result may be either of them.
+     */
+    public static void multiply(float[] result, int resultOffset,
+        float[] lhs, int lhsOffset, float[] rhs, int rhsOffset) {
+        final float l0 = lhs[lhsOffset], l1 = lhs[lhsOffset + 1];
+        final float l2 = lhs[lhsOffset + 2], l3 = lhs[lhsOffset + 3];
+        final float l4 = lhs[lhsOffset + 4], l5 = lhs[lhsOffset + 5];
+        final float l6 = lhs[lhsOffset + 6], l7 = lhs[lhsOffset + 7];
+        final float l8 = lhs[lhsOffset + 8], l9 = lhs[lhsOffset + 9];
+        final float l10 = lhs[lhsOffset + 10], l11 = lhs[lhsOffset + 11];
+        final float l12 = lhs[lhsOffset + 12], l13 = lhs[lhsOffset + 13];
+        final float l14 = lhs[lhsOffset + 14], l15 = lhs[lhsOffset + 15];
+        final float r0 = rhs[rhsOffset], r1 = rhs[rhsOffset + 1];
+        final float r2 = rhs[rhsOffset + 2], r3 = rhs[rhsOffset + 3];
+        final float r4 = rhs[rhsOffset + 4], r5 = rhs[rhsOffset + 5];
+        final float r6 = rhs[rhsOffset + 6], r7 = rhs[rhsOffset + 7];
+        final float r8 = rhs[rhsOffset + 8], r9 = rhs[rhsOffset + 9];
+        final float r10 = rhs[rhsOffset + 10], r11 = rhs[rhsOffset + 11];
+        final float r12 = rhs[rhsOffset + 12], r13 = rhs[rhsOffset + 13];
+        final float r14 = rhs[rhsOffset + 14], r15 = rhs[rhsOffset + 15];
+
+        // Each entry sums its four products left to right, as Android does.
+        final float[] out = result;
+        final int o = resultOffset;
+        out[o] = l0 * r0 + l4 * r1 + l8 * r2 + l12 * r3;
+        out[o + 1] = l1 * r0 + l5 * r1 + l9 * r2 + l13 * r3;
+        out[o + 2] = l2 * r0 + l6 * r1 + l10 * r2 + l14 * r3;
+        out[o + 3] = l3 * r0 + l7 * r1 + l11 * r2 + l15 * r3;
+        out[o + 4] = l0 * r4 + l4 * r5 + l8 * r6 + l12 * r7;
+        out[o + 5] = l1 * r4 + l5 * r5 + l9 * r6 + l13 * r7;
+        out[o + 6] = l2 * r4 + l6 * r5 + l10 * r6 + l14 * r7;
+        out[o + 7] = l3 * r4 + l7 * r5 + l11 * r6 + l15 * r7;
+        out[o + 8] = l0 * r8 + l4 * r9 + l8 * r10 + l12 * r11;
+        out[o + 9] = l1 * r8 + l5 * r9 + l9 * r10 + l13 * r11;
+        out[o + 10] = l2 * r8 + l6 * r9 + l10 * r10 + l14 * r11;
+        out[o + 11] = l3 * r8 + l7 * r9 + l11 * r10 + l15 * r11;
+        out[o + 12] = l0 * r12 + l4 * r13 + l8 * r14 + l12 * r15;
+        out[o + 13] = l1 * r12 + l5 * r13 + l9 * r14 + l13 * r15;
+        out[o + 14] = l2 * r12 + l6 * r13 + l10 * r14 + l14 * r15;
+        out[o + 15] = l3 * r12 + l7 * r13 + l11 * r14 + l15 * r15;
+    }
+
+    /** Sets the four-component result to m * v. The result may be v itself. */
+    public static void multiplyVector(float[] result, int resultOffset,
+        float[] m, int mOffset, float[] v, int vOffset) {
+        final float x = v[vOffset];
+        final float y = v[vOffset + 1];
+        final float z = v[vOffset + 2];
+        final float w = v[vOffset + 3];
+        for (int k = 0; k < 4; k++) {
+            final int mk = mOffset + k;
+            result[resultOffset + k] = m[mk] * x + m[mk + 4] * y + m[mk + 8] * z + m[mk + 12] * w;
+        }
+    }
+
+    /**
+     * Sets m to identity, translate, scale, rotate in one pass, the order
+     * {@link com.jr3dL.android.scene.TransformCache} builds model matrices
+     * in. For finite inputs the result is bit-identical to the four calls.
+     */
+    public static void setTranslateScaleRotate(float[] m, int offset,
+        float tx, float ty, float tz, float sx, float sy, float sz,
+        float degrees, float ax, float ay, float az) {
+        // The rotation goes into m first; each column of it is read just
+        // before the same column of the result replaces it.
+        setRotate(m, offset, degrees, ax, ay, az);
+
+        // What translate leaves in the last column of the identity, and the
+        // signed zeros scale leaves off the diagonal.
+        final float x = tx + 0.0f;
+        final float y = ty + 0.0f;
+        final float z = tz + 0.0f;
+        final float zeroX = 0.0f * sx;
+        final float zeroY = 0.0f * sy;
+        final float zeroZ = 0.0f * sz;
+        final float wx = x * 0.0f;
+        final float wy = y * 0.0f;
+        final float wz = z * 0.0f;
+
+        for (int i = 0; i < 12; i += 4) {
+            final float r0 = m[offset + i];
+            final float r1 = m[offset + i + 1];
+            final float r2 = m[offset + i + 2];
+            m[offset + i] = sx * r0 + zeroY * r1 + zeroZ * r2 + wx;
+            m[offset + i + 1] = zeroX * r0 + sy * r1 + zeroZ * r2 + wy;
+            m[offset + i + 2] = zeroX * r0 + zeroY * r1 + sz * r2 + wz;
+            m[offset + i + 3] = 0.0f;
+        }
+        m[offset + 12] = x;
+        m[offset + 13] = y;
+        m[offset + 14] = z;
+        m[offset + 15] = 1.0f;
+    }
+
+    /**
+     * Sets m to a view matrix at the eye, looking at the center, with the
+     * given up direction.
+     */
+    public static void setLookAt(float[] m, int offset, float eyeX, float eyeY, float eyeZ,
+        float centerX, float centerY, float centerZ, float upX, float upY, float upZ) {
+        float fx = centerX - eyeX;
+        float fy = centerY - eyeY;
+        float fz = centerZ - eyeZ;
+        final float inverseLengthF = 1.0f / length(fx, fy, fz);
+        fx *= inverseLengthF;
+        fy *= inverseLengthF;
+        fz *= inverseLengthF;
+
+        // Side is forward cross up, and up is recomputed as side cross forward.
+        float sx = fy * upZ - fz * upY;
+        float sy = fz * upX - fx * upZ;
+        float sz = fx * upY - fy * upX;
+        final float inverseLengthS = 1.0f / length(sx, sy, sz);
+        sx *= inverseLengthS;
+        sy *= inverseLengthS;
+        sz *= inverseLengthS;
+        final float ux = sy * fz - sz * fy;
+        final float uy = sz * fx - sx * fz;
+        final float uz = sx * fy - sy * fx;
+
+        m[offset] = sx;
+        m[offset + 1] = ux;
+        m[offset + 2] = -fx;
+        m[offset + 3] = 0.0f;
+        m[offset + 4] = sy;
+        m[offset + 5] = uy;
+        m[offset + 6] = -fy;
+        m[offset + 7] = 0.0f;
+        m[offset + 8] = sz;
+        m[offset + 9] = uz;
+        m[offset + 10] = -fz;
+        m[offset + 11] = 0.0f;
+        m[offset + 12] = 0.0f;
+        m[offset + 13] = 0.0f;
+        m[offset + 14] = 0.0f;
+        m[offset + 15] = 1.0f;
+        translate(m, offset, -eyeX, -eyeY, -eyeZ);
+    }
+
+    /** Sets m to a perspective projection of the given frustum. */
+    public static void frustum(float[] m, int offset, float left, float right,
+        float bottom, float top, float near, float far) {
+        if (left == right) {
+            throw new IllegalArgumentException("left == right");
+        }
+        if (top == bottom) {
+            throw new IllegalArgumentException("top == bottom");
+        }
+        if (near == far) {
+            throw new IllegalArgumentException("near == far");
+        }
+        if (near <= 0.0f) {
+            throw new IllegalArgumentException("near <= 0.0f");
+        }
+        if (far <= 0.0f) {
+            throw new IllegalArgumentException("far <= 0.0f");
+        }
+        final float inverseWidth = 1.0f / (right - left);
+        final float inverseHeight = 1.0f / (top - bottom);
+        final float inverseDepth = 1.0f / (near - far);
+        m[offset] = 2.0f * (near * inverseWidth);
+        m[offset + 5] = 2.0f * (near * inverseHeight);
+        m[offset + 8] = (right + left) * inverseWidth;
+        m[offset + 9] = (top + bottom) * inverseHeight;
+        m[offset + 10] = (far + near) * inverseDepth;
+        m[offset + 14] = 2.0f * (far * near * inverseDepth);
+        m[offset + 11] = -1.0f;
+        m[offset + 1] = 0.0f;
+        m[offset + 2] = 0.0f;
+        m[offset + 3] = 0.0f;
+        m[offset + 4] = 0.0f;
+        m[offset + 6] = 0.0f;
+        m[offset + 7] = 0.0f;
+        m[offset + 12] = 0.0f;
+        m[offset + 13] = 0.0f;
+        m[offset + 15] = 0.0f;
+    }
+
+    /**
+     * Inverts a general matrix by cofactor expansion. Returns false, leaving
+     * the result untouched, if it is singular. They must not overlap.
+     */
+    public static boolean invert(float[] result, int resultOffset, float[] m, int offset) {
+        final float m0 = m[offset], m1 = m[offset + 1], m2 = m[offset + 2], m3 = m[offset + 3];
+        final float m4 = m[offset + 4], m5 = m[offset + 5], m6 = m[offset + 6];
+        final float m7 = m[offset + 7], m8 = m[offset + 8], m9 = m[offset + 9];
+        final float m10 = m[offset + 10], m11 = m[offset + 11], m12 = m[offset + 12];
+        final float m13 = m[offset + 13], m14 = m[offset + 14], m15 = m[offset + 15];
+
+        final float a0 = m0 * m5 - m1 * m4;
+        final float a1 = m0 * m6 - m2 * m4;
+        final float a2 = m0 * m7 - m3 * m4;
+        final float a3 = m1 * m6 - m2 * m5;
+        final float a4 = m1 * m7 - m3 * m5;
+        final float a5 = m2 * m7 - m3 * m6;
+        final float b0 = m8 * m13 - m9 * m12;
+        final float b1 = m8 * m14 - m10 * m12;
+        final float b2 = m8 * m15 - m11 * m12;
+        final float b3 = m9 * m14 - m10 * m13;
+        final float b4 = m9 * m15 - m11 * m13;
+        final float b5 = m10 * m15 - m11 * m14;
+        final float determinant = a0 * b5 - a1 * b4 + a2 * b3 + a3 * b2 - a4 * b1 + a5 * b0;
+        if (determinant == 0.0f) {
+            return false;
+        }
+        final float inverse = 1.0f / determinant;
+        final float[] out = result;
+        final int o = resultOffset;
+        out[o] = (m5 * b5 - m6 * b4 + m7 * b3) * inverse;
+        out[o + 1] = (-m1 * b5 + m2 * b4 - m3 * b3) * inverse;
+        out[o + 2] = (m13 * a5 - m14 * a4 + m15 * a3) * inverse;
+        out[o + 3] = (-m9 * a5 + m10 * a4 - m11 * a3) * inverse;
+        out[o + 4] = (-m4 * b5 + m6 * b2 - m7 * b1) * inverse;
+        out[o + 5] = (m0 * b5 - m2 * b2 + m3 * b1) * inverse;
+        out[o + 6] = (-m12 * a5 + m14 * a2 - m15 * a1) * inverse;
+        out[o + 7] = (m8 * a5 - m10 * a2 + m11 * a1) * inverse;
+        out[o + 8] = (m4 * b4 - m5 * b2 + m7 * b0) * inverse;
+        out[o + 9] = (-m0 * b4 + m1 * b2 - m3 * b0) * inverse;
+        out[o + 10] = (m12 * a4 - m13 * a2 + m15 * a0) * inverse;
+        out[o + 11] = (-m8 * a4 + m9 * a2 - m11 * a0) * inverse;
+        out[o + 12] = (-m4 * b3 + m5 * b1 - m6 * b0) * inverse;
+        out[o + 13] = (m0 * b3 - m1 * b1 + m2 * b0) * inverse;
+        out[o + 14] = (-m12 * a3 + m13 * a1 - m14 * a0) * inverse;
+        out[o + 15] = (m8 * a3 - m9 * a1 + m10 * a0) * inverse;
+        return true;
+    }
+
+    /**
+     * Inverts a matrix whose last row is 0, 0, 0, 1: the upper 3x3 is
+     * inverted through its cofactors and the translation taken back through
+     * it. Returns false, leaving the result untouched, if it is singular.
+     * The result may be m itself at the same offset.
+     */
+    public static boolean invertAffine(float[] result, int resultOffset, float[] m, int offset) {
+        final float a = m[offset], b = m[offset + 4], c = m[offset + 8];
+        final float d = m[offset + 1], e = m[offset + 5], f = m[offset + 9];
+        final float g = m[offset + 2], h = m[offset + 6], i = m[offset + 10];
+        final float tx = m[offset + 12], ty = m[offset + 13], tz = m[offset + 14];
+
+        final float c00 = e * i - f * h;
+        final float c01 = f * g - d * i;
+        final float c02 = d * h - e * g;
+        final float determinant = a * c00 + b * c01 + c * c02;
+        if (determinant == 0.0f) {
+            return false;
+        }
+        final float inverse = 1.0f / determinant;
+        final float r00 = c00 * inverse;
+        final float r10 = c01 * inverse;
+        final float r20 = c02 * inverse;
+        final float r01 = (c * h - b * i) * inverse;
+        final float r11 = (a * i - c * g) * inverse;
+        final float r21 = (b * g - a * h) * inverse;
+        final float r02 = (b * f - c * e) * inverse;
+        final float r12 = (c * d - a * f) * inverse;
+        final float r22 = (a * e - b * d) * inverse;
+
+        final float[] out = result;
+        final int o = resultOffset;
+        out[o] = r00;
+        out[o + 1] = r10;
+        out[o + 2] = r20;
+        out[o + 3] = 0.0f;
+        out[o + 4] = r01;
+        out[o + 5] = r11;
+        out[o + 6] = r21;
+        out[o + 7] = 0.0f;
+        out[o + 8] = r02;
+        out[o + 9] = r12;
+        out[o + 10] = r22;
+        out[o + 11] = 0.0f;
+        out[o + 12] = -(r00 * tx + r01 * ty + r02 * tz);
+        out[o + 13] = -(r10 * tx + r11 * ty + r12 * tz);
+        out[o + 14] = -(r20 * tx + r21 * ty + r22 * tz);
+        out[o + 15] = 1.0f;
+        return true;
+    }
+
+    public static float length(float x, float y, float z) {
+        return (float) Math.sqrt(x * x + y * y + z * z);
+    }
+}
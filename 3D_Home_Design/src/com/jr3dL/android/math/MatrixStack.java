@@ -0,0 +1,96 @@
+package com.jr3dL.android.math;
+
+/**
+ * A stack of 4x4 matrices for walking parent/child transforms: push before
+ * descending into a child, apply the child's transform to the top, pop on
+ * the way back up.
+ *
+ * Every level is preallocated in one flat array, so pushing and popping
+ * copy at most one matrix and never allocate. The top matrix can be read
+ * in place through {@link #getMatrices} at {@link #getTopOffset}.
+ */
+public class MatrixStack {
+    private final float[] matrices;
+    private final int maxDepth;
+    private int top;
+
+    /** Makes a stack of up to maxDepth matrices, holding one identity. */
+    public MatrixStack(int maxDepth) {
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("Bad matrix stack depth: " + maxDepth);
+        }
+        this.maxDepth = maxDepth;
+        matrices = new float[maxDepth * Matrix4.SIZE];
+        Matrix4.setIdentity(matrices, 0);
+    }
+
+    /** Duplicates the top matrix. */
+    public void push() {
+        if (top + Matrix4.SIZE == matrices.length) {
+            throw new RuntimeException("Matrix stack overflow at depth " + maxDepth);
+        }
+        System.arraycopy(matrices, top, matrices, top + Matrix4.SIZE, Matrix4.SIZE);
+        top += Matrix4.SIZE;
+    }
+
+    public void pop() {
+        if (top == 0) {
+            throw new RuntimeException("Matrix stack underflow");
+        }
+        top -= Matrix4.SIZE;
+    }
+
+    /** Drops every level and sets the only remaining one to identity. */
+    public void reset() {
+        top = 0;
+        Matrix4.setIdentity(matrices, 0);
+    }
+
+    public void loadIdentity() {
+        Matrix4.setIdentity(matrices, top);
+    }
+
+    public void load(float[] m, int offset) {
+        System.arraycopy(m, offset, matrices, top, Matrix4.SIZE);
+    }
+
+    /** Multiplies the top on the right by m, so m applies first. */
+    public void multiply(float[] m, int offset) {
+        Matrix4.multiply(matrices, top, matrices, top, m, offset);
+    }
+
+    public void translate(float x, float y, float z) {
+        Matrix4.translate(matrices, top, x, y, z);
+    }
+
+    public void scale(float x, float y, float z) {
+        Matrix4.scale(matrices, top, x, y, z);
+    }
+
+    public void rotate(float degrees, float x, float y, float z) {
+        Matrix4.rotate(matrices, top, degrees, x, y, z);
+    }
+
+    /** Copies the top matrix out. */
+    public void get(float[] m, int offset) {
+        System.arraycopy(matrices, top, m, offset, Matrix4.SIZE);
+    }
+
+    /** Every level of the stack; the top starts at {@link #getTopOffset}. */
+    public float[] getMatrices() {
+        return matrices;
+    }
+
+    public int getTopOffset() {
+        return top;
+    }
+
+    /** Levels in use, 1 when nothing is pushed. */
+    public int getDepth() {
+        return top / Matrix4.SIZE + 1;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+}
@@ -0,0 +1,280 @@
+package com.jr3dL.android.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Per-frame timings and counters, kept for the last {@link #HISTORY_SIZE}
+ * frames in preallocated ring buffers, with histograms of the frame
+ * interval and of the CPU time of every frame since the last reset.
+ *
+ * A frame is bracketed by {@link #beginFrame} and {@link #endFrame}; in
+ * between, each phase is bracketed by {@link #begin} and {@link #end}, and
+ * can be entered several times, its times adding up. The swap phase isn't
+ * bracketed: it is the time from the end of one frame to the start of the
+ * next, which on GLSurfaceView is eglSwapBuffers and the wait for vsync,
+ * and when frames are drawn on request also the idle time between them.
+ *
+ * Nothing allocates while recording, and while disabled every call returns
+ * right away. Everything must be called from one thread, the GL thread in
+ * the renderer.
+ */
+public class FrameMetrics {
+    public static final int PHASE_UPDATE = 0;
+    public static final int PHASE_CULL = 1;
+    public static final int PHASE_SORT = 2;
+    public static final int PHASE_SUBMIT = 3;
+    public static final int PHASE_SWAP = 4;
+    public static final int PHASE_COUNT = 5;
+
+    public static final int COUNTER_DRAW_CALLS = 0;
+    public static final int COUNTER_TRIANGLES = 1;
+    public static final int COUNTER_STATE_CHANGES = 2;
+    public static final int COUNTER_BYTES_UPLOADED = 3;
+    public static final int COUNTER_COUNT = 4;
+
+    /** Frames kept in the ring buffers. */
+    public static final int HISTORY_SIZE = 256;
+
+    private static final String[] PHASE_NAMES = {"update", "cull", "sort", "submit", "swap"};
+    private static final String[] COUNTER_NAMES = {
+        "draw_calls", "triangles", "state_changes", "bytes_uploaded"
+    };
+
+    /** Quarter-millisecond buckets up to 100 ms. */
+    private static final long BUCKET_NANOS = 250000L;
+    private static final int BUCKET_COUNT = 400;
+
+    private final long[] phaseNanos = new long[HISTORY_SIZE * PHASE_COUNT];
+    private final long[] counters = new long[HISTORY_SIZE * COUNTER_COUNT];
+    private final long[] intervalNanos = new long[HISTORY_SIZE];
+    private final long[] cpuNanos = new long[HISTORY_SIZE];
+    private final long[] phaseStart = new long[PHASE_COUNT];
+
+    private final LatencyHistogram intervals = new LatencyHistogram(BUCKET_NANOS, BUCKET_COUNT);
+    private final LatencyHistogram cpuTimes = new LatencyHistogram(BUCKET_NANOS, BUCKET_COUNT);
+
+    private boolean enabled;
+    /** True between beginFrame and endFrame of an enabled frame. */
+    private boolean recording;
+    /** Frames recorded since the last reset; the ring slot is this modulo HISTORY_SIZE. */
+    private long frameCount;
+    private int slot;
+    private long frameStart;
+    private long lastFrameStart;
+    private long lastFrameEnd;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts or stops recording. Starting again doesn't count the time
+     * spent disabled as a frame interval.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        recording = false;
+        lastFrameStart = 0;
+        lastFrameEnd = 0;
+    }
+
+    /** Forgets every recorded frame. */
+    public void reset() {
+        frameCount = 0;
+        lastFrameStart = 0;
+        lastFrameEnd = 0;
+        intervals.reset();
+        cpuTimes.reset();
+    }
+
+    public void beginFrame() {
+        if (!enabled) {
+            return;
+        }
+        final long now = System.nanoTime();
+        slot = (int) (frameCount % HISTORY_SIZE);
+        final int phases = slot * PHASE_COUNT;
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            phaseNanos[phases + i] = 0;
+        }
+        final int counts = slot * COUNTER_COUNT;
+        for (int i = 0; i < COUNTER_COUNT; i++) {
+            counters[counts + i] = 0;
+        }
+        if (lastFrameEnd != 0) {
+            phaseNanos[phases + PHASE_SWAP] = now - lastFrameEnd;
+        }
+        intervalNanos[slot] = 0;
+        if (lastFrameStart != 0) {
+            intervalNanos[slot] = now - lastFrameStart;
+            intervals.record(intervalNanos[slot]);
+        }
+        lastFrameStart = now;
+        frameStart = now;
+        recording = true;
+    }
+
+    public void begin(int phase) {
+        if (recording) {
+            phaseStart[phase] = System.nanoTime();
+        }
+    }
+
+    public void end(int phase) {
+        if (recording) {
+            phaseNanos[slot * PHASE_COUNT + phase] += System.nanoTime() - phaseStart[phase];
+        }
+    }
+
+    /** Adds time measured elsewhere, such as on another thread, to a phase of this frame. */
+    public void add(int phase, long nanos) {
+        if (recording) {
+            phaseNanos[slot * PHASE_COUNT + phase] += nanos;
+        }
+    }
+
+    /** Adds to one of this frame's counters. */
+    public void count(int counter, long amount) {
+        if (recording) {
+            counters[slot * COUNTER_COUNT + counter] += amount;
+        }
+    }
+
+    public void endFrame() {
+        if (!recording) {
+            return;
+        }
+        final long now = System.nanoTime();
+        cpuNanos[slot] = now - frameStart;
+        cpuTimes.record(cpuNanos[slot]);
+        lastFrameEnd = now;
+        frameCount++;
+        recording = false;
+    }
+
+    /** Frames recorded since the last reset. */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /** Frames held in the ring buffers, at most HISTORY_SIZE. */
+    public int getHistoryCount() {
+        return (int) Math.min(frameCount, HISTORY_SIZE);
+    }
+
+    /** Time from the start of one frame to the start of the next. */
+    public LatencyHistogram getFrameIntervals() {
+        return intervals;
+    }
+
+    /** Time from the start to the end of each frame, leaving out the swap. */
+    public LatencyHistogram getCpuTimes() {
+        return cpuTimes;
+    }
+
+    /** Mean time of a phase over the frames in the ring buffers. */
+    public long getAveragePhaseNanos(int phase) {
+        final int frames = getHistoryCount();
+        if (frames == 0) {
+            return 0;
+        }
+        long total = 0;
+        for (int i = 0; i < frames; i++) {
+            total += phaseNanos[i * PHASE_COUNT + phase];
+        }
+        return total / frames;
+    }
+
+    /** Mean of a counter over the frames in the ring buffers. */
+    public long getAverageCount(int counter) {
+        final int frames = getHistoryCount();
+        if (frames == 0) {
+            return 0;
+        }
+        long total = 0;
+        for (int i = 0; i < frames; i++) {
+            total += counters[i * COUNTER_COUNT + counter];
+        }
+        return total / frames;
+    }
+
+    /**
+     * Appends a few lines on frame time percentiles, mean phase times and
+     * mean counts, for an overlay or the log. Doesn't allocate if out has
+     * room.
+     */
+    public void formatSummary(StringBuilder out) {
+        appendPercentiles(out, "frame", intervals);
+        appendPercentiles(out, "cpu", cpuTimes);
+        for (int phase = 0; phase < PHASE_COUNT; phase++) {
+            out.append(phase == 0 ? "" : " ").append(PHASE_NAMES[phase]).append(' ');
+            appendMillis(out, getAveragePhaseNanos(phase));
+        }
+        out.append(" ms\n");
+        out.append("draws ").append(getAverageCount(COUNTER_DRAW_CALLS))
+            .append(" tris ").append(getAverageCount(COUNTER_TRIANGLES))
+            .append(" state ").append(getAverageCount(COUNTER_STATE_CHANGES))
+            .append(" upload ").append(getAverageCount(COUNTER_BYTES_UPLOADED)).append(" B");
+    }
+
+    /**
+     * Writes the summary as comment lines, then one CSV row per frame in
+     * the ring buffers, oldest first, with times in milliseconds.
+     */
+    public void writeCsv(Writer out) throws IOException {
+        final StringBuilder line = new StringBuilder(256);
+        formatSummary(line);
+        out.write("# " + line.toString().replace("\n", "\n# ") + "\n");
+        out.write("frame,interval_ms,cpu_ms");
+        for (int phase = 0; phase < PHASE_COUNT; phase++) {
+            out.write("," + PHASE_NAMES[phase] + "_ms");
+        }
+        for (int counter = 0; counter < COUNTER_COUNT; counter++) {
+            out.write("," + COUNTER_NAMES[counter]);
+        }
+        out.write("\n");
+
+        final int frames = getHistoryCount();
+        for (long frame = frameCount - frames; frame < frameCount; frame++) {
+            final int s = (int) (frame % HISTORY_SIZE);
+            line.setLength(0);
+            line.append(frame).append(',');
+            appendMillis(line, intervalNanos[s]);
+            line.append(',');
+            appendMillis(line, cpuNanos[s]);
+            for (int phase = 0; phase < PHASE_COUNT; phase++) {
+                line.append(',');
+                appendMillis(line, phaseNanos[s * PHASE_COUNT + phase]);
+            }
+            for (int counter = 0; counter < COUNTER_COUNT; counter++) {
+                line.append(',').append(counters[s * COUNTER_COUNT + counter]);
+            }
+            out.write(line.append('\n').toString());
+        }
+    }
+
+    private static void appendPercentiles(StringBuilder out, String name,
+        LatencyHistogram histogram) {
+        out.append(name).append(" p50 ");
+        appendMillis(out, histogram.getPercentile(0.50));
+        out.append(" p95 ");
+        appendMillis(out, histogram.getPercentile(0.95));
+        out.append(" p99 ");
+        appendMillis(out, histogram.getPercentile(0.99));
+        out.append(" max ");
+        appendMillis(out, histogram.getMaxNanos());
+        out.append(" ms\n");
+    }
+
+    /** Appends nanoseconds as milliseconds with two decimals, without going through a float. */
+    private static void appendMillis(StringBuilder out, long nanos) {
+        final long hundredths = (nanos + 5000L) / 10000L;
+        final long fraction = hundredths % 100;
+        out.append(hundredths / 100).append('.');
+        if (fraction < 10) {
+            out.append('0');
+        }
+        out.append(fraction);
+    }
+}
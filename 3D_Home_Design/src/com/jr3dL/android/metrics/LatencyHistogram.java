@@ -0,0 +1,97 @@
+package com.jr3dL.android.metrics;
+
+/**
+ * Counts durations in fixed-width buckets, so percentiles come out of a
+ * preallocated array with no sorting and recording never allocates.
+ *
+ * A percentile is reported as the upper edge of the bucket it falls in, so
+ * it is at most one bucket width pessimistic. Durations past the last
+ * bucket are counted in it, and the percentiles landing there report the
+ * largest duration recorded instead.
+ */
+public class LatencyHistogram {
+    private final long bucketNanos;
+    private final long[] buckets;
+
+    private long count;
+    private long totalNanos;
+    private long maxNanos;
+
+    /**
+     * Creates a histogram of bucketCount buckets of bucketNanos each, the
+     * last one also holding everything longer.
+     */
+    public LatencyHistogram(long bucketNanos, int bucketCount) {
+        if (bucketNanos <= 0 || bucketCount < 1) {
+            throw new IllegalArgumentException("Bad histogram size: " + bucketCount
+                + " buckets of " + bucketNanos + " ns");
+        }
+        this.bucketNanos = bucketNanos;
+        this.buckets = new long[bucketCount];
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        final long bucket = nanos / bucketNanos;
+        buckets[bucket < buckets.length ? (int) bucket : buckets.length - 1]++;
+        count++;
+        totalNanos += nanos;
+        if (nanos > maxNanos) {
+            maxNanos = nanos;
+        }
+    }
+
+    /**
+     * The duration the given fraction of the recorded ones, such as 0.95
+     * for the 95th percentile, didn't exceed; 0 before anything is recorded.
+     */
+    public long getPercentile(double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        // The rank of the percentile among the recorded durations, from 1.
+        long rank = (long) Math.ceil(fraction * count);
+        if (rank < 1) {
+            rank = 1;
+        }
+        long seen = 0;
+        for (int i = 0; i < buckets.length - 1; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return Math.min((i + 1) * bucketNanos, maxNanos);
+            }
+        }
+        return maxNanos;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMeanNanos() {
+        return count == 0 ? 0 : totalNanos / count;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public long getBucketNanos() {
+        return bucketNanos;
+    }
+
+    public int getBucketCount() {
+        return buckets.length;
+    }
+
+    public void reset() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = 0;
+        }
+        count = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+    }
+}
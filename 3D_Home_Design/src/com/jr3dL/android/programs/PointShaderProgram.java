@@ -0,0 +1,52 @@
+package com.jr3dL.android.programs;
+
+import android.content.Context;
+
+import com.jakaria.android.R;
+import com.jr3dL.android.gl.GlStateCache;
+import com.jr3dL.android.util.ShaderHelper;
+import com.jr3dL.android.util.TextResourceReader;
+
+/**
+ * The program in point_vertex_shader.glsl and point_fragment_shader.glsl
+ * that marks the light's position with a single white point.
+ */
+public class PointShaderProgram extends ShaderProgram {
+    public static final int VERTEX_SHADER = R.raw.point_vertex_shader;
+    public static final int FRAGMENT_SHADER = R.raw.point_fragment_shader;
+
+    // Uniform slots
+    public final int uMvpMatrix;
+
+    // Attribute locations
+    public final int aPosition;
+
+    public PointShaderProgram(GlStateCache state, Context context) {
+        this(state, TextResourceReader.readTextFileFromResource(context, VERTEX_SHADER),
+            TextResourceReader.readTextFileFromResource(context, FRAGMENT_SHADER));
+    }
+
+    /** Builds the program from sources read earlier, as when restoring a lost context. */
+    public PointShaderProgram(GlStateCache state, String vertexShaderSource,
+        String fragmentShaderSource) {
+        this(state, ShaderHelper.buildProgram(state.getGl(), vertexShaderSource,
+            fragmentShaderSource));
+    }
+
+    /** Builds the program through the cache, from a stored binary where it has one. */
+    public PointShaderProgram(GlStateCache state, ProgramCache cache, String vertexShaderSource,
+        String fragmentShaderSource) {
+        this(state, cache.build(vertexShaderSource, fragmentShaderSource));
+    }
+
+    private PointShaderProgram(GlStateCache state, int program) {
+        super(state, program);
+
+        uMvpMatrix = getUniformSlot(U_MVP_MATRIX);
+        aPosition = getAttributeLocation(A_POSITION);
+    }
+
+    public void setMvpMatrix(float[] mvpMatrix) {
+        setUniformMatrix4(uMvpMatrix, mvpMatrix, 0);
+    }
+}
@@ -0,0 +1,273 @@
+package com.jr3dL.android.programs;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import com.jr3dL.android.gl.Gl;
+import com.jr3dL.android.util.ShaderHelper;
+
+/**
+ * Keeps linked program binaries on disk, so later starts and lost contexts
+ * load programs instead of compiling them. Each binary is filed under a
+ * hash of its shader sources and the driver identity: vendor, renderer and
+ * version strings plus a platform string such as the build fingerprint,
+ * since a driver update makes every binary useless. Binaries of another
+ * identity are deleted the first time the cache is used.
+ *
+ * A binary the driver rejects anyway is deleted and the program compiled
+ * from source, then stored again. Where the context offers no binary
+ * formats, as on OpenGL ES 2.0, the cache only compiles. Failing to read
+ * or write a file is never fatal; it only costs a compile.
+ *
+ * Everything happens on the GL thread.
+ */
+public class ProgramCache {
+    /** Compiles and links a program from source; returns 0 on failure. */
+    public interface Compiler {
+        int compile(Gl gl, String vertexShaderSource, String fragmentShaderSource);
+    }
+
+    /** "JRP1", starting each file; the binary format, length and bytes follow. */
+    private static final int FILE_MAGIC = 0x4A525031;
+    /** Bytes before the binary: magic, format and length. */
+    private static final int HEADER_SIZE = 12;
+    private static final String FILE_SUFFIX = ".bin";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final Gl gl;
+    private final File root;
+    private final String platformIdentity;
+    private Compiler compiler = new Compiler() {
+        @Override
+        public int compile(Gl gl, String vertexShaderSource, String fragmentShaderSource) {
+            return ShaderHelper.buildProgram(gl, vertexShaderSource, fragmentShaderSource);
+        }
+    };
+
+    /** Driver identity, read on first use since it needs a context. */
+    private String identity;
+    /** Where this identity's binaries go, or null if the context has no binary formats. */
+    private File directory;
+
+    private int hitCount;
+    private int missCount;
+    private int rejectedCount;
+    private long buildNanos;
+
+    /**
+     * Creates a cache keeping its files under the directory, which it owns,
+     * for binaries from the given platform, such as Build.FINGERPRINT.
+     */
+    public ProgramCache(Gl gl, File directory, String platformIdentity) {
+        this.gl = gl;
+        this.root = directory;
+        this.platformIdentity = platformIdentity;
+    }
+
+    /** Replaces how programs are built from source; ShaderHelper.buildProgram by default. */
+    public void setCompiler(Compiler compiler) {
+        this.compiler = compiler;
+    }
+
+    /**
+     * Returns a linked program of the sources, loaded from a stored binary
+     * when there is a good one and compiled otherwise. Returns 0 if it
+     * couldn't be compiled either.
+     */
+    public int build(String vertexShaderSource, String fragmentShaderSource) {
+        final long start = System.nanoTime();
+        if (identity == null) {
+            open();
+        }
+        File file = null;
+        if (directory != null) {
+            file = new File(directory, hash(identity + '\0' + vertexShaderSource + '\0'
+                + fragmentShaderSource) + FILE_SUFFIX);
+            final int program = load(file);
+            if (program != 0) {
+                hitCount++;
+                buildNanos += System.nanoTime() - start;
+                return program;
+            }
+        }
+
+        missCount++;
+        final int program = compiler.compile(gl, vertexShaderSource, fragmentShaderSource);
+        if (program != 0 && file != null) {
+            save(program, file);
+        }
+        buildNanos += System.nanoTime() - start;
+        return program;
+    }
+
+    /** Programs loaded from a stored binary. */
+    public int getHitCount() {
+        return hitCount;
+    }
+
+    /** Programs compiled from source, for want of a binary or because it was rejected. */
+    public int getMissCount() {
+        return missCount;
+    }
+
+    /** Stored binaries the driver refused to link. */
+    public int getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /** Time spent building programs, loaded and compiled alike. */
+    public long getBuildNanos() {
+        return buildNanos;
+    }
+
+    /** Writes the counters as one line of text, for a log. */
+    public void formatSummary(StringBuilder out) {
+        out.append("programs ").append(hitCount).append(" loaded ").append(missCount)
+            .append(" compiled ").append(rejectedCount).append(" rejected in ")
+            .append(buildNanos / 1000).append(" us");
+    }
+
+    /**
+     * Reads the driver identity and, if the context can load binaries,
+     * picks this identity's directory and deletes the others.
+     */
+    private void open() {
+        identity = gl.glGetString(Gl.GL_VENDOR) + '\0' + gl.glGetString(Gl.GL_RENDERER)
+            + '\0' + gl.glGetString(Gl.GL_VERSION) + '\0' + platformIdentity;
+        final int[] formatCount = new int[1];
+        gl.glGetIntegerv(Gl.GL_NUM_PROGRAM_BINARY_FORMATS, formatCount, 0);
+        if (formatCount[0] <= 0) {
+            return;
+        }
+        final String name = hash(identity);
+        final File[] stale = root.listFiles();
+        if (stale != null) {
+            for (File file : stale) {
+                if (!file.getName().equals(name)) {
+                    delete(file);
+                }
+            }
+        }
+        final File candidate = new File(root, name);
+        if (candidate.isDirectory() || candidate.mkdirs()) {
+            directory = candidate;
+        }
+    }
+
+    /**
+     * Links a program from the stored binary. Returns 0, deleting the file
+     * if the driver rejected it, when there is no binary to use.
+     */
+    private int load(File file) {
+        if (!file.isFile()) {
+            return 0;
+        }
+        final int format;
+        final ByteBuffer binary;
+        try {
+            final DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                if (in.readInt() != FILE_MAGIC) {
+                    throw new IOException("Not a program binary: " + file);
+                }
+                format = in.readInt();
+                // A corrupt length must not throw past this or allocate
+                // more than the file holds.
+                final int length = in.readInt();
+                if (length <= 0 || length > file.length() - HEADER_SIZE) {
+                    throw new IOException("Bad binary length " + length + " in " + file);
+                }
+                final byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                binary = ByteBuffer.allocateDirect(bytes.length);
+                binary.put(bytes).position(0);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            file.delete();
+            return 0;
+        }
+
+        final int program = gl.glCreateProgram();
+        gl.glProgramBinary(program, format, binary, binary.capacity());
+        final int[] linkStatus = new int[1];
+        gl.glGetProgramiv(program, Gl.GL_LINK_STATUS, linkStatus, 0);
+        if (linkStatus[0] == 0) {
+            gl.glDeleteProgram(program);
+            file.delete();
+            rejectedCount++;
+            return 0;
+        }
+        return program;
+    }
+
+    /** Stores the program's binary, writing a temporary file and renaming it. */
+    private void save(int program, File file) {
+        final int[] length = new int[1];
+        gl.glGetProgramiv(program, Gl.GL_PROGRAM_BINARY_LENGTH, length, 0);
+        if (length[0] <= 0) {
+            return;
+        }
+        final ByteBuffer binary = ByteBuffer.allocateDirect(length[0]);
+        final int[] format = new int[1];
+        gl.glGetProgramBinary(program, length[0], length, 0, format, 0, binary);
+        final byte[] bytes = new byte[length[0]];
+        binary.get(bytes);
+
+        final File temporary = new File(file.getPath() + TEMPORARY_SUFFIX);
+        try {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(temporary)));
+            try {
+                out.writeInt(FILE_MAGIC);
+                out.writeInt(format[0]);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            } finally {
+                out.close();
+            }
+            if (!temporary.renameTo(file)) {
+                throw new IOException("Could not rename " + temporary);
+            }
+        } catch (IOException e) {
+            // Only costs a compile next time.
+            temporary.delete();
+        }
+    }
+
+    private static void delete(File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static String hash(String text) {
+        final byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1").digest(text.getBytes("UTF-8"));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        final StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            hex.append(Character.forDigit(b >> 4 & 0xF, 16))
+                .append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,294 @@
+package com.jr3dL.android.programs;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resolves what GLSL ES can't on its own before a shader is compiled:
+ * {@code #include "name"} lines are replaced with the named file, read
+ * through an {@link Includer}, and conditional blocks are evaluated against
+ * the variant's defines, so the driver only ever sees the code one variant
+ * runs. Each file is included at most once per shader, which also makes
+ * include cycles harmless.
+ *
+ * Conditionals are {@code #ifdef}, {@code #ifndef}, {@code #if},
+ * {@code #elif}, {@code #else} and {@code #endif}. Conditions combine
+ * integers, defined names and {@code defined(NAME)} with comparisons,
+ * {@code !}, {@code &&}, {@code ||} and parentheses; undefined names are 0.
+ * The variant's defines are written as {@code #define} lines at the top,
+ * after any {@code #version}, and every other directive is passed on, so
+ * the names stay usable in the code, such as for array sizes.
+ */
+public class ShaderPreprocessor {
+    /** Reads an included file by the name in its include line. */
+    public interface Includer {
+        String read(String name);
+    }
+
+    private static final int MAX_DEPTH = 32;
+
+    private final Includer includer;
+
+    public ShaderPreprocessor(Includer includer) {
+        this.includer = includer;
+    }
+
+    /**
+     * Returns the source with its includes inlined and its conditionals
+     * resolved for the given defines, which map names to values; a name
+     * defined without a value maps to the empty string.
+     */
+    public String process(String source, Map<String, String> defines) {
+        final StringBuilder header = new StringBuilder();
+        for (Map.Entry<String, String> define : defines.entrySet()) {
+            header.append("#define ").append(define.getKey());
+            if (define.getValue().length() > 0) {
+                header.append(' ').append(define.getValue());
+            }
+            header.append('\n');
+        }
+        final StringBuilder out = new StringBuilder(source.length() + header.length());
+        final Map<String, String> state = new HashMap<String, String>(defines);
+        append(out, source, "<source>", state, new HashSet<String>());
+
+        // Defines go after #version, which has to come first.
+        int insert = 0;
+        if (out.toString().trim().startsWith("#version")) {
+            insert = out.indexOf("\n", out.indexOf("#version")) + 1;
+        }
+        out.insert(insert, header);
+        return out.toString();
+    }
+
+    private void append(StringBuilder out, String source, String file,
+        Map<String, String> defines, Set<String> included) {
+        // One entry per open conditional: whether any of its branches was
+        // taken yet, and whether the block around it is active.
+        final boolean[] taken = new boolean[MAX_DEPTH];
+        final boolean[] enclosing = new boolean[MAX_DEPTH];
+        int depth = 0;
+        boolean on = true;
+
+        final String[] lines = source.split("\n", -1);
+        for (int number = 1; number <= lines.length; number++) {
+            final String line = lines[number - 1];
+            final String trimmed = line.trim();
+            if (!trimmed.startsWith("#")) {
+                if (on && (number < lines.length || line.length() > 0)) {
+                    out.append(line).append('\n');
+                }
+                continue;
+            }
+            final String directive = trimmed.substring(1).trim();
+            final String keyword = directive.split("[\\s(]", 2)[0];
+            final String argument = directive.substring(keyword.length())
+                .replaceAll("//.*|/\\*.*?\\*/", "").trim();
+
+            if (keyword.equals("ifdef") || keyword.equals("ifndef") || keyword.equals("if")) {
+                if (depth == MAX_DEPTH) {
+                    throw error(file, number, "Conditionals nested too deep");
+                }
+                final boolean condition = !on ? false
+                    : keyword.equals("if") ? evaluate(argument, defines, file, number) != 0
+                    : defines.containsKey(argument) == keyword.equals("ifdef");
+                enclosing[depth] = on;
+                taken[depth] = condition;
+                depth++;
+                on = condition;
+            } else if (keyword.equals("elif") || keyword.equals("else")) {
+                if (depth == 0) {
+                    throw error(file, number, "#" + keyword + " without #if");
+                }
+                final int top = depth - 1;
+                final boolean condition = enclosing[top] && !taken[top]
+                    && (keyword.equals("else")
+                        || evaluate(argument, defines, file, number) != 0);
+                taken[top] |= condition;
+                on = condition;
+            } else if (keyword.equals("endif")) {
+                if (depth == 0) {
+                    throw error(file, number, "#endif without #if");
+                }
+                depth--;
+                on = enclosing[depth];
+            } else if (!on) {
+                continue;
+            } else if (keyword.equals("include")) {
+                final String name = parseIncludeName(argument, file, number);
+                if (included.add(name)) {
+                    append(out, includer.read(name), name, defines, included);
+                }
+            } else {
+                if (keyword.equals("define")) {
+                    final String[] parts = argument.split("\\s+", 2);
+                    defines.put(parts[0], parts.length > 1 ? parts[1].trim() : "");
+                } else if (keyword.equals("undef")) {
+                    defines.remove(argument);
+                }
+                out.append(line).append('\n');
+            }
+        }
+        if (depth != 0) {
+            throw error(file, lines.length, "Missing #endif");
+        }
+    }
+
+    private static String parseIncludeName(String argument, String file, int line) {
+        if (argument.length() < 2 || argument.charAt(0) != '"'
+            || argument.indexOf('"', 1) != argument.length() - 1) {
+            throw error(file, line, "Expected #include \"name\"");
+        }
+        return argument.substring(1, argument.length() - 1);
+    }
+
+    private static int evaluate(String expression, Map<String, String> defines, String file,
+        int line) {
+        return evaluate(expression, defines, file, line, 0);
+    }
+
+    private static int evaluate(String expression, Map<String, String> defines, String file,
+        int line, int depth) {
+        final Expression parser = new Expression(expression, defines, file, line, depth);
+        final int value = parser.parseOr();
+        parser.skipSpaces();
+        if (parser.position != expression.length()) {
+            throw error(file, line, "Unexpected text in condition: " + expression);
+        }
+        return value;
+    }
+
+    private static IllegalArgumentException error(String file, int line, String message) {
+        return new IllegalArgumentException(file + ":" + line + ": " + message);
+    }
+
+    /** Recursive descent over a condition, evaluating as it goes. */
+    private static final class Expression {
+        final String text;
+        final Map<String, String> defines;
+        final String file;
+        final int line;
+        /** Names expanded on the way to this text, to stop recursive defines. */
+        final int depth;
+        int position;
+
+        Expression(String text, Map<String, String> defines, String file, int line,
+            int depth) {
+            this.text = text;
+            this.defines = defines;
+            this.file = file;
+            this.line = line;
+            this.depth = depth;
+        }
+
+        int parseOr() {
+            int value = parseAnd();
+            while (accept("||")) {
+                final int right = parseAnd();
+                value = value != 0 || right != 0 ? 1 : 0;
+            }
+            return value;
+        }
+
+        int parseAnd() {
+            int value = parseComparison();
+            while (accept("&&")) {
+                final int right = parseComparison();
+                value = value != 0 && right != 0 ? 1 : 0;
+            }
+            return value;
+        }
+
+        int parseComparison() {
+            final int left = parseUnary();
+            if (accept("==")) {
+                return left == parseUnary() ? 1 : 0;
+            } else if (accept("!=")) {
+                return left != parseUnary() ? 1 : 0;
+            } else if (accept("<=")) {
+                return left <= parseUnary() ? 1 : 0;
+            } else if (accept(">=")) {
+                return left >= parseUnary() ? 1 : 0;
+            } else if (accept("<")) {
+                return left < parseUnary() ? 1 : 0;
+            } else if (accept(">")) {
+                return left > parseUnary() ? 1 : 0;
+            }
+            return left;
+        }
+
+        int parseUnary() {
+            if (accept("!")) {
+                return parseUnary() == 0 ? 1 : 0;
+            }
+            if (accept("(")) {
+                final int value = parseOr();
+                expect(")");
+                return value;
+            }
+            skipSpaces();
+            final int start = position;
+            while (position < text.length()
+                && (Character.isLetterOrDigit(text.charAt(position))
+                    || text.charAt(position) == '_')) {
+                position++;
+            }
+            final String token = text.substring(start, position);
+            if (token.length() == 0) {
+                throw error(file, line, "Expected a value in condition: " + text);
+            }
+            if (Character.isDigit(token.charAt(0))) {
+                try {
+                    return Integer.parseInt(token);
+                } catch (NumberFormatException e) {
+                    throw error(file, line, "Bad number in condition: " + token);
+                }
+            }
+            if (token.equals("defined")) {
+                final boolean parenthesized = accept("(");
+                skipSpaces();
+                final int nameStart = position;
+                while (position < text.length()
+                    && (Character.isLetterOrDigit(text.charAt(position))
+                        || text.charAt(position) == '_')) {
+                    position++;
+                }
+                final String name = text.substring(nameStart, position);
+                if (parenthesized) {
+                    expect(")");
+                }
+                return defines.containsKey(name) ? 1 : 0;
+            }
+            final String value = defines.get(token);
+            if (value == null || value.length() == 0) {
+                return 0;
+            }
+            if (depth >= defines.size()) {
+                throw error(file, line, "Recursive define in condition: " + token);
+            }
+            return evaluate(value, defines, file, line, depth + 1);
+        }
+
+        boolean accept(String symbol) {
+            skipSpaces();
+            if (text.startsWith(symbol, position)) {
+                position += symbol.length();
+                return true;
+            }
+            return false;
+        }
+
+        void expect(String symbol) {
+            if (!accept(symbol)) {
+                throw error(file, line, "Expected " + symbol + " in condition: " + text);
+            }
+        }
+
+        void skipSpaces() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.jr3dL.android.programs;
+
+import android.content.Context;
+
+import com.jr3dL.android.gl.Gl;
+import com.jr3dL.android.gl.GlStateCache;
+import com.jr3dL.android.util.ShaderHelper;
+import com.jr3dL.android.util.TextResourceReader;
+
+/**
+ * A linked program together with every active attribute and uniform it
+ * exposes. Locations are looked up once, right after linking, so nothing on
+ * the draw path has to ask the driver for a location by name.
+ *
+ * Uniforms are addressed by slot, their index in the table built at link
+ * time. The last value uploaded to each slot is remembered and an upload of
+ * the same value is dropped, since uniform values persist in the program.
+ */
+public class ShaderProgram {
+    // Uniform constants
+    protected static final String U_MATRIX = "u_Matrix";
+    protected static final String U_MVP_MATRIX = "u_MVPMatrix";
+    protected static final String U_MV_MATRIX = "u_MVMatrix";
+    protected static final String U_LIGHT_POS = "u_LightPos";
+    protected static final String U_TEXTURE = "u_Texture";
+    protected static final String U_TEX_REGION = "u_TexRegion";
+
+    // Attribute constants
+    protected static final String A_POSITION = "a_Position";
+    protected static final String A_COLOR = "a_Color";
+    protected static final String A_NORMAL = "a_Normal";
+    protected static final String A_TEX_COORDINATE = "a_TexCoordinate";
+
+    /** Slot or location of a name the program doesn't use. */
+    public static final int NOT_FOUND = -1;
+
+    private static final int MATRIX_SIZE = 16;
+
+    protected final int program;
+    private final GlStateCache state;
+    private final Gl gl;
+
+    private final String[] attributeNames;
+    private final int[] attributeLocations;
+
+    private final String[] uniformNames;
+    private final int[] uniformLocations;
+    private final float[] uniformValues;
+    private final boolean[] uniformSet;
+
+    private int uploadCount;
+    private int skippedUploadCount;
+
+    protected ShaderProgram(GlStateCache state, Context context, int vertexShaderResourceId,
+        int fragmentShaderResourceId) {
+        this(state, TextResourceReader.readTextFileFromResource(context, vertexShaderResourceId),
+            TextResourceReader.readTextFileFromResource(context, fragmentShaderResourceId));
+    }
+
+    protected ShaderProgram(GlStateCache state, String vertexShaderSource,
+        String fragmentShaderSource) {
+        this(state, ShaderHelper.buildProgram(state.getGl(), vertexShaderSource,
+            fragmentShaderSource));
+    }
+
+    /**
+     * Wraps an already linked program and reads its active attributes and
+     * uniforms.
+     */
+    protected ShaderProgram(GlStateCache state, int program) {
+        if (program == 0) {
+            throw new RuntimeException("Could not build shader program.");
+        }
+        this.state = state;
+        this.gl = state.getGl();
+        this.program = program;
+
+        final int[] count = new int[1];
+        final int[] size = new int[1];
+        final int[] type = new int[1];
+
+        gl.glGetProgramiv(program, Gl.GL_ACTIVE_ATTRIBUTES, count, 0);
+        attributeNames = new String[count[0]];
+        attributeLocations = new int[count[0]];
+        for (int i = 0; i < count[0]; i++) {
+            attributeNames[i] = gl.glGetActiveAttrib(program, i, size, 0, type, 0);
+            attributeLocations[i] = gl.glGetAttribLocation(program, attributeNames[i]);
+        }
+
+        gl.glGetProgramiv(program, Gl.GL_ACTIVE_UNIFORMS, count, 0);
+        uniformNames = new String[count[0]];
+        uniformLocations = new int[count[0]];
+        for (int i = 0; i < count[0]; i++) {
+            uniformNames[i] = stripArraySuffix(gl.glGetActiveUniform(program, i, size, 0, type, 0));
+            uniformLocations[i] = gl.glGetUniformLocation(program, uniformNames[i]);
+        }
+        uniformValues = new float[count[0] * MATRIX_SIZE];
+        uniformSet = new boolean[count[0]];
+    }
+
+    public void useProgram() {
+        // Set the current OpenGL shader program to this program.
+        state.useProgram(program);
+    }
+
+    public int getProgramId() {
+        return program;
+    }
+
+    /**
+     * Returns the location of an active attribute, or {@link #NOT_FOUND}.
+     * Meant for setup; keep the result in a field.
+     */
+    public int getAttributeLocation(String name) {
+        for (int i = 0; i < attributeNames.length; i++) {
+            if (attributeNames[i].equals(name)) {
+                return attributeLocations[i];
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Returns the slot of an active uniform, or {@link #NOT_FOUND}. Meant for
+     * setup; keep the result in a field.
+     */
+    public int getUniformSlot(String name) {
+        for (int i = 0; i < uniformNames.length; i++) {
+            if (uniformNames[i].equals(name)) {
+                return i;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    public int getUniformLocation(int slot) {
+        return slot == NOT_FOUND ? NOT_FOUND : uniformLocations[slot];
+    }
+
+    public int getAttributeCount() {
+        return attributeNames.length;
+    }
+
+    public int getUniformCount() {
+        return uniformNames.length;
+    }
+
+    /**
+     * Uploads a 4x4 matrix unless the slot already holds exactly these
+     * values. The program must be in use.
+     */
+    public void setUniformMatrix4(int slot, float[] matrix, int offset) {
+        if (slot == NOT_FOUND) {
+            return;
+        }
+        final int base = slot * MATRIX_SIZE;
+        if (uniformSet[slot]) {
+            boolean same = true;
+            for (int i = 0; i < MATRIX_SIZE; i++) {
+                if (uniformValues[base + i] != matrix[offset + i]) {
+                    same = false;
+                    break;
+                }
+            }
+            if (same) {
+                skippedUploadCount++;
+                return;
+            }
+        }
+        System.arraycopy(matrix, offset, uniformValues, base, MATRIX_SIZE);
+        uniformSet[slot] = true;
+        uploadCount++;
+        gl.glUniformMatrix4fv(uniformLocations[slot], 1, false, matrix, offset);
+    }
+
+    /**
+     * Uploads a vec3 unless the slot already holds it. The program must be in
+     * use.
+     */
+    public void setUniform3f(int slot, float x, float y, float z) {
+        if (slot == NOT_FOUND) {
+            return;
+        }
+        final int base = slot * MATRIX_SIZE;
+        if (uniformSet[slot] && uniformValues[base] == x
+            && uniformValues[base + 1] == y && uniformValues[base + 2] == z) {
+            skippedUploadCount++;
+            return;
+        }
+        uniformValues[base] = x;
+        uniformValues[base + 1] = y;
+        uniformValues[base + 2] = z;
+        uniformSet[slot] = true;
+        uploadCount++;
+        gl.glUniform3f(uniformLocations[slot], x, y, z);
+    }
+
+    /**
+     * Uploads a vec4 unless the slot already holds it. The program must be in
+     * use.
+     */
+    public void setUniform4f(int slot, float x, float y, float z, float w) {
+        if (slot == NOT_FOUND) {
+            return;
+        }
+        final int base = slot * MATRIX_SIZE;
+        if (uniformSet[slot] && uniformValues[base] == x && uniformValues[base + 1] == y
+            && uniformValues[base + 2] == z && uniformValues[base + 3] == w) {
+            skippedUploadCount++;
+            return;
+        }
+        uniformValues[base] = x;
+        uniformValues[base + 1] = y;
+        uniformValues[base + 2] = z;
+        uniformValues[base + 3] = w;
+        uniformSet[slot] = true;
+        uploadCount++;
+        gl.glUniform4f(uniformLocations[slot], x, y, z, w);
+    }
+
+    /**
+     * Uploads a float unless the slot already holds it. The program must be
+     * in use.
+     */
+    public void setUniform1f(int slot, float value) {
+        if (slot == NOT_FOUND) {
+            return;
+        }
+        final int base = slot * MATRIX_SIZE;
+        if (uniformSet[slot] && uniformValues[base] == value) {
+            skippedUploadCount++;
+            return;
+        }
+        uniformValues[base] = value;
+        uniformSet[slot] = true;
+        uploadCount++;
+        gl.glUniform1f(uniformLocations[slot], value);
+    }
+
+    /**
+     * Uploads an int, such as a sampler's texture unit, unless the slot
+     * already holds it. The program must be in use.
+     */
+    public void setUniform1i(int slot, int value) {
+        if (slot == NOT_FOUND) {
+            return;
+        }
+        final int base = slot * MATRIX_SIZE;
+        if (uniformSet[slot] && uniformValues[base] == value) {
+            skippedUploadCount++;
+            return;
+        }
+        uniformValues[base] = value;
+        uniformSet[slot] = true;
+        uploadCount++;
+        gl.glUniform1i(uniformLocations[slot], value);
+    }
+
+    /** Uniform uploads that reached the driver. */
+    public int getUploadCount() {
+        return uploadCount;
+    }
+
+    /** Uniform uploads dropped because the value was unchanged. */
+    public int getSkippedUploadCount() {
+        return skippedUploadCount;
+    }
+
+    public void resetCounters() {
+        uploadCount = 0;
+        skippedUploadCount = 0;
+    }
+
+    /** Uniform arrays are reported as "name[0]"; look them up by plain name. */
+    private static String stripArraySuffix(String name) {
+        return name.endsWith("[0]") ? name.substring(0, name.length() - 3) : name;
+    }
+}
@@ -0,0 +1,150 @@
+package com.jr3dL.android.programs;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.jr3dL.android.gl.GlStateCache;
+
+/**
+ * The permutations of the simple program, so each material is drawn by
+ * the cheapest one that does its job: sampling a texture or not, and lit
+ * by up to {@link #MAX_LIGHTS} lights or unlit. A variant is named by a
+ * small int key, from {@link #key}, below {@link #KEY_COUNT}.
+ *
+ * The shared sources are run through a {@link ShaderPreprocessor} with the
+ * variant's defines: TEXTURED, LIT and LIGHT_COUNT. A variant is built the
+ * first time it is asked for, through the {@link ProgramCache}, or ahead
+ * of time with {@link #prewarm}, such as while a new context is set up,
+ * so drawing never waits on a compile for variants declared in advance.
+ *
+ * Everything happens on the GL thread.
+ */
+public class ShaderVariants {
+    private static final int LIGHT_COUNT_SHIFT = 1;
+
+    /** Key bit of the variants that sample u_Texture. */
+    public static final int TEXTURED = 1;
+    public static final int MAX_LIGHTS = 4;
+    /** Keys are below this. */
+    public static final int KEY_COUNT = (MAX_LIGHTS + 1) << LIGHT_COUNT_SHIFT;
+
+    private final GlStateCache state;
+    private final ProgramCache cache;
+    private final ShaderPreprocessor preprocessor;
+    private final String vertexShaderSource;
+    private final String fragmentShaderSource;
+
+    /** The built variants of the current context, by key, or null. */
+    private final SimpleShaderProgram[] programs = new SimpleShaderProgram[KEY_COUNT];
+    private int builtCount;
+    private int lazyBuildCount;
+
+    /** Creates the variants of the given sources, building nothing yet. */
+    public ShaderVariants(GlStateCache state, ProgramCache cache,
+        ShaderPreprocessor preprocessor, String vertexShaderSource,
+        String fragmentShaderSource) {
+        this.state = state;
+        this.cache = cache;
+        this.preprocessor = preprocessor;
+        this.vertexShaderSource = vertexShaderSource;
+        this.fragmentShaderSource = fragmentShaderSource;
+    }
+
+    /** The key of a variant; 0 lights is unlit. */
+    public static int key(boolean textured, int lightCount) {
+        if (lightCount < 0 || lightCount > MAX_LIGHTS) {
+            throw new IllegalArgumentException("Between 0 and " + MAX_LIGHTS
+                + " lights, not " + lightCount);
+        }
+        return (textured ? TEXTURED : 0) | lightCount << LIGHT_COUNT_SHIFT;
+    }
+
+    public static boolean isTextured(int key) {
+        return (key & TEXTURED) != 0;
+    }
+
+    /** Lights the variant takes, 0 for unlit. */
+    public static int getLightCount(int key) {
+        return key >> LIGHT_COUNT_SHIFT;
+    }
+
+    /** A readable name of the variant, for logs. */
+    public static String getName(int key) {
+        return (isTextured(key) ? "textured" : "untextured")
+            + (getLightCount(key) > 0 ? " lit by " + getLightCount(key) : " unlit");
+    }
+
+    /**
+     * Returns the variant, building it first if this context hasn't yet.
+     * Building here stalls the frame; prewarm the variants known up front.
+     */
+    public SimpleShaderProgram get(int key) {
+        SimpleShaderProgram program = programs[key];
+        if (program == null) {
+            program = build(key);
+            lazyBuildCount++;
+        }
+        return program;
+    }
+
+    /** Builds those of the variants that aren't built yet. */
+    public void prewarm(int[] keys) {
+        for (int key : keys) {
+            if (programs[key] == null) {
+                build(key);
+            }
+        }
+    }
+
+    /** Whether the variant is built in the current context. */
+    public boolean isBuilt(int key) {
+        return programs[key] != null;
+    }
+
+    /** Forgets every built variant, for a new context. */
+    public void reset() {
+        for (int key = 0; key < KEY_COUNT; key++) {
+            programs[key] = null;
+        }
+    }
+
+    /** Variants built since created, in any context. */
+    public int getBuiltCount() {
+        return builtCount;
+    }
+
+    /** Variants built by {@link #get} because nobody prewarmed them. */
+    public int getLazyBuildCount() {
+        return lazyBuildCount;
+    }
+
+    /** The variant's vertex shader as compiled. */
+    public String getVertexShaderSource(int key) {
+        return preprocessor.process(vertexShaderSource, defines(key));
+    }
+
+    /** The variant's fragment shader as compiled. */
+    public String getFragmentShaderSource(int key) {
+        return preprocessor.process(fragmentShaderSource, defines(key));
+    }
+
+    private SimpleShaderProgram build(int key) {
+        final SimpleShaderProgram program = new SimpleShaderProgram(state, cache,
+            getVertexShaderSource(key), getFragmentShaderSource(key));
+        programs[key] = program;
+        builtCount++;
+        return program;
+    }
+
+    private static Map<String, String> defines(int key) {
+        final Map<String, String> defines = new LinkedHashMap<String, String>();
+        if (isTextured(key)) {
+            defines.put("TEXTURED", "");
+        }
+        if (getLightCount(key) > 0) {
+            defines.put("LIT", "");
+            defines.put("LIGHT_COUNT", Integer.toString(getLightCount(key)));
+        }
+        return defines;
+    }
+}
@@ -0,0 +1,96 @@
+package com.jr3dL.android.programs;
+
+import android.content.Context;
+
+import com.jakaria.android.R;
+import com.jr3dL.android.gl.GlStateCache;
+import com.jr3dL.android.util.ShaderHelper;
+import com.jr3dL.android.util.TextResourceReader;
+
+/**
+ * The vertex-colored program in simple_vertex_shader.glsl and
+ * simple_fragment_shader.glsl that draws the house, in whichever of its
+ * {@link ShaderVariants} the material needs. Uniforms and attributes a
+ * variant leaves out are {@link #NOT_FOUND}, and setting them does nothing.
+ */
+public class SimpleShaderProgram extends ShaderProgram {
+    public static final int VERTEX_SHADER = R.raw.simple_vertex_shader;
+    public static final int FRAGMENT_SHADER = R.raw.simple_fragment_shader;
+
+    // Uniform slots
+    public final int uMatrix;
+    public final int uMvMatrix;
+    public final int uLightPos;
+    public final int uTexture;
+    public final int uTexRegion;
+
+    // Attribute locations
+    public final int aPosition;
+    public final int aColor;
+    public final int aNormal;
+    public final int aTexCoordinate;
+
+    public SimpleShaderProgram(GlStateCache state, Context context) {
+        this(state, TextResourceReader.readTextFileFromResource(context, VERTEX_SHADER),
+            TextResourceReader.readTextFileFromResource(context, FRAGMENT_SHADER));
+    }
+
+    /** Builds the program from sources read earlier, as when restoring a lost context. */
+    public SimpleShaderProgram(GlStateCache state, String vertexShaderSource,
+        String fragmentShaderSource) {
+        this(state, ShaderHelper.buildProgram(state.getGl(), vertexShaderSource,
+            fragmentShaderSource));
+    }
+
+    /** Builds the program through the cache, from a stored binary where it has one. */
+    public SimpleShaderProgram(GlStateCache state, ProgramCache cache, String vertexShaderSource,
+        String fragmentShaderSource) {
+        this(state, cache.build(vertexShaderSource, fragmentShaderSource));
+    }
+
+    private SimpleShaderProgram(GlStateCache state, int program) {
+        super(state, program);
+
+        // Retrieve uniform slots for the shader program.
+        uMatrix = getUniformSlot(U_MATRIX);
+        uMvMatrix = getUniformSlot(U_MV_MATRIX);
+        uLightPos = getUniformSlot(U_LIGHT_POS);
+        uTexture = getUniformSlot(U_TEXTURE);
+        uTexRegion = getUniformSlot(U_TEX_REGION);
+
+        // Retrieve attribute locations for the shader program.
+        aPosition = getAttributeLocation(A_POSITION);
+        aColor = getAttributeLocation(A_COLOR);
+        aNormal = getAttributeLocation(A_NORMAL);
+        aTexCoordinate = getAttributeLocation(A_TEX_COORDINATE);
+    }
+
+    /**
+     * Sets the per-object matrices; either upload is skipped when the value
+     * is already current.
+     */
+    public void setMatrices(float[] mvMatrix, float[] mvpMatrix, int offset) {
+        setUniformMatrix4(uMvMatrix, mvMatrix, offset);
+        setUniformMatrix4(uMatrix, mvpMatrix, offset);
+    }
+
+    /** Sets the position of the first light, the only one the scene has. */
+    public void setLightPosition(float[] lightPosInEyeSpace) {
+        setUniform3f(uLightPos, lightPosInEyeSpace[0], lightPosInEyeSpace[1],
+            lightPosInEyeSpace[2]);
+    }
+
+    public void setTextureUnit(int unit) {
+        setUniform1i(uTexture, unit);
+    }
+
+    /**
+     * Sets the part of the bound texture the mesh's 0 to 1 texture
+     * coordinates map onto, as u0, v0, u1, v1 starting at offset.
+     */
+    public void setTextureRegion(float[] regions, int offset) {
+        final float u0 = regions[offset];
+        final float v0 = regions[offset + 1];
+        setUniform4f(uTexRegion, u0, v0, regions[offset + 2] - u0, regions[offset + 3] - v0);
+    }
+}
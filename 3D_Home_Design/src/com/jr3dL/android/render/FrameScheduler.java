@@ -0,0 +1,189 @@
+package com.jr3dL.android.render;
+
+/**
+ * Decides when the next frame has to be drawn, for a surface that only
+ * draws on request (GLSurfaceView.RENDERMODE_WHEN_DIRTY).
+ *
+ * Changes to the scene, the camera or the viewport are marked with
+ * {@link #invalidate} and get a frame right away. While the user touches
+ * the screen, and for a short hold after, frames follow each other at full
+ * rate. Otherwise, if something animates, frames come at most at the
+ * animation frame rate; with nothing animating and nothing dirty, no
+ * frames are drawn at all. Full rate is one frame per minimum interval,
+ * about a display refresh, since a target such as the update thread isn't
+ * paced by vsync and would otherwise run frames back to back.
+ *
+ * The scheduler doesn't draw or post anything itself: it tells its
+ * {@link Target} how long to wait before the next frame. Time comes from a
+ * {@link Clock}, so the decisions can be driven by a fake one off device.
+ * Its methods may be called from the UI and GL threads alike.
+ */
+public class FrameScheduler {
+    /** Source of the current time in milliseconds, SystemClock.uptimeMillis on device. */
+    public interface Clock {
+        long uptimeMillis();
+    }
+
+    /** Receives the frame requests. */
+    public interface Target {
+        /** Asks for a frame after the given delay. */
+        void requestFrame(long delayMillis);
+    }
+
+    public static final int DIRTY_SCENE = 1;
+    public static final int DIRTY_CAMERA = 1 << 1;
+    public static final int DIRTY_VIEWPORT = 1 << 2;
+
+    /** Returned by {@link #getDelayMillis} when no frame is needed. */
+    public static final long IDLE = -1;
+
+    private static final long DEFAULT_INTERACTION_HOLD_MILLIS = 1000;
+    private static final long DEFAULT_MIN_FRAME_INTERVAL_MILLIS = 16;
+
+    private final Clock clock;
+    private Target target;
+
+    private int dirtyFlags;
+    private boolean animating;
+    /** Shortest time between the starts of two animation-only frames; 0 for no limit. */
+    private long animationIntervalMillis;
+    private long interactionHoldMillis = DEFAULT_INTERACTION_HOLD_MILLIS;
+    /** Shortest time between the starts of any two frames. */
+    private long minFrameIntervalMillis = DEFAULT_MIN_FRAME_INTERVAL_MILLIS;
+    private long lastInteraction;
+    private boolean interacted;
+    private long lastFrameStart;
+    private boolean framed;
+    private boolean inFrame;
+
+    public FrameScheduler(Clock clock) {
+        this.clock = clock;
+    }
+
+    public synchronized void setTarget(Target target) {
+        this.target = target;
+    }
+
+    /**
+     * Turns continuous animation on or off. While on, frames are drawn at
+     * the animation frame rate even when nothing is dirty.
+     */
+    public void setAnimating(boolean animating) {
+        synchronized (this) {
+            this.animating = animating;
+        }
+        reschedule();
+    }
+
+    /**
+     * Caps frames drawn only for animation at the given rate; 0 draws them
+     * at full rate.
+     */
+    public void setAnimationFrameRate(int framesPerSecond) {
+        if (framesPerSecond < 0) {
+            throw new IllegalArgumentException("Negative frame rate: " + framesPerSecond);
+        }
+        synchronized (this) {
+            animationIntervalMillis = framesPerSecond == 0 ? 0 : 1000 / framesPerSecond;
+        }
+        reschedule();
+    }
+
+    /** How long frames stay at full rate after the last interaction. */
+    public synchronized void setInteractionHoldMillis(long millis) {
+        interactionHoldMillis = millis;
+    }
+
+    /** Sets the shortest time between the starts of two frames, the full rate. */
+    public synchronized void setMinFrameIntervalMillis(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Negative frame interval: " + millis);
+        }
+        minFrameIntervalMillis = millis;
+    }
+
+    /** Marks a change that needs a new frame, as a combination of DIRTY_ flags. */
+    public void invalidate(int flags) {
+        synchronized (this) {
+            dirtyFlags |= flags;
+        }
+        reschedule();
+    }
+
+    /** Called on every touch; frames run at full rate until the hold passes. */
+    public void onInteraction() {
+        synchronized (this) {
+            lastInteraction = clock.uptimeMillis();
+            interacted = true;
+        }
+        reschedule();
+    }
+
+    /**
+     * Called at the start of a frame. Returns the DIRTY_ flags the frame
+     * takes care of and clears them; changes marked during the frame ask
+     * for the next one.
+     */
+    public synchronized int beginFrame() {
+        lastFrameStart = clock.uptimeMillis();
+        framed = true;
+        inFrame = true;
+        final int flags = dirtyFlags;
+        dirtyFlags = 0;
+        return flags;
+    }
+
+    /** Called at the end of a frame, to ask for the next one if needed. */
+    public void endFrame() {
+        synchronized (this) {
+            inFrame = false;
+        }
+        reschedule();
+    }
+
+    /**
+     * Milliseconds until the next frame should start, 0 for right away, or
+     * IDLE if none is needed.
+     */
+    public synchronized long getDelayMillis() {
+        final long now = clock.uptimeMillis();
+        final long fullRateDelay = !framed ? 0
+            : Math.max(0, lastFrameStart + minFrameIntervalMillis - now);
+        if (dirtyFlags != 0) {
+            return fullRateDelay;
+        }
+        if (interacted && now - lastInteraction < interactionHoldMillis) {
+            return fullRateDelay;
+        }
+        if (animating) {
+            if (!framed) {
+                return 0;
+            }
+            return Math.max(fullRateDelay, lastFrameStart + animationIntervalMillis - now);
+        }
+        return IDLE;
+    }
+
+    public synchronized int getDirtyFlags() {
+        return dirtyFlags;
+    }
+
+    /**
+     * Passes the next frame's delay to the target. During a frame nothing is
+     * requested; its end does that, with the flags it left behind.
+     */
+    private void reschedule() {
+        final Target requestTarget;
+        final long delay;
+        synchronized (this) {
+            if (target == null || inFrame) {
+                return;
+            }
+            requestTarget = target;
+            delay = getDelayMillis();
+        }
+        if (delay != IDLE) {
+            requestTarget.requestFrame(delay);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.jr3dL.android.render;
+
+import java.util.Arrays;
+
+/**
+ * Collects the frame's draw packets and orders them so consecutive packets
+ * share as much GPU state as possible.
+ *
+ * A packet is a 64-bit sort key and one int item the caller interprets.
+ * Opaque keys put the program in the highest bits, then the texture, then
+ * the mesh, then the quantized view depth, so opaque geometry is drawn
+ * grouped by state and front to back within a group. Translucent keys sort
+ * after every opaque one and lead with inverted depth, so they come out
+ * back to front.
+ *
+ * Packets live in preallocated parallel arrays and are ordered with an LSD
+ * radix sort over the keys, skipping byte positions every key agrees on.
+ * Nothing is allocated per frame unless the capacity is exceeded.
+ */
+public class RenderQueue {
+    public static final int MAX_PROGRAMS = 1 << 8;
+    public static final int MAX_TEXTURES = 1 << 12;
+    public static final int MAX_MESHES = 1 << 12;
+
+    private static final int DEPTH_BITS = 24;
+    private static final int DEPTH_MAX = (1 << DEPTH_BITS) - 1;
+
+    // Opaque: [63] 0 | program 8 | texture 12 | mesh 12 | depth 24 | 7 spare
+    // Translucent: [63] 1 | inverted depth 24 | program 8 | texture 12 | mesh 12 | 7 spare
+    private static final long TRANSLUCENT_BIT = 1L << 63;
+    private static final int OPAQUE_DEPTH_SHIFT = 7;
+    private static final int OPAQUE_MESH_SHIFT = 31;
+    private static final int OPAQUE_TEXTURE_SHIFT = 43;
+    private static final int OPAQUE_PROGRAM_SHIFT = 55;
+    private static final int TRANSLUCENT_MESH_SHIFT = 7;
+    private static final int TRANSLUCENT_TEXTURE_SHIFT = 19;
+    private static final int TRANSLUCENT_PROGRAM_SHIFT = 31;
+    private static final int TRANSLUCENT_DEPTH_SHIFT = 39;
+
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+    private static final int PASSES = 64 / RADIX_BITS;
+
+    private long[] keys;
+    private int[] items;
+    private long[] scratchKeys;
+    private int[] scratchItems;
+    private int count;
+
+    private final int[] histograms = new int[PASSES * RADIX];
+
+    private float depthNear = 0.0f;
+    private float depthScale = 1.0f;
+
+    public RenderQueue(int capacity) {
+        keys = new long[capacity];
+        items = new int[capacity];
+        scratchKeys = new long[capacity];
+        scratchItems = new int[capacity];
+    }
+
+    /**
+     * Sets the view distances mapped onto the depth bits. Packets outside
+     * the range are clamped to its ends.
+     */
+    public void setDepthRange(float near, float far) {
+        depthNear = near;
+        depthScale = far > near ? 1.0f / (far - near) : 0.0f;
+    }
+
+    /** Empties the queue for a new frame. */
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * Queues an opaque packet. Program, texture and mesh are small ids the
+     * caller assigns, below {@link #MAX_PROGRAMS}, {@link #MAX_TEXTURES} and
+     * {@link #MAX_MESHES}; depth is the distance from the eye.
+     */
+    public void addOpaque(int program, int texture, int mesh, float depth, int item) {
+        checkIds(program, texture, mesh);
+        add(((long) program << OPAQUE_PROGRAM_SHIFT)
+            | ((long) texture << OPAQUE_TEXTURE_SHIFT)
+            | ((long) mesh << OPAQUE_MESH_SHIFT)
+            | ((long) quantizeDepth(depth) << OPAQUE_DEPTH_SHIFT), item);
+    }
+
+    /** Queues a translucent packet, drawn after all opaque ones, far first. */
+    public void addTranslucent(int program, int texture, int mesh, float depth, int item) {
+        checkIds(program, texture, mesh);
+        add(TRANSLUCENT_BIT
+            | ((long) (DEPTH_MAX - quantizeDepth(depth)) << TRANSLUCENT_DEPTH_SHIFT)
+            | ((long) program << TRANSLUCENT_PROGRAM_SHIFT)
+            | ((long) texture << TRANSLUCENT_TEXTURE_SHIFT)
+            | ((long) mesh << TRANSLUCENT_MESH_SHIFT), item);
+    }
+
+    /** Orders the queued packets by key. */
+    public void sort() {
+        final int n = count;
+        if (n < 2) {
+            return;
+        }
+
+        // One read over the keys builds the histograms of every pass.
+        final int[] histograms = this.histograms;
+        Arrays.fill(histograms, 0);
+        final long[] keys = this.keys;
+        for (int i = 0; i < n; i++) {
+            final long key = keys[i];
+            for (int pass = 0; pass < PASSES; pass++) {
+                histograms[pass * RADIX + (int) ((key >>> (pass * RADIX_BITS)) & (RADIX - 1))]++;
+            }
+        }
+
+        long[] fromKeys = this.keys;
+        int[] fromItems = this.items;
+        long[] toKeys = scratchKeys;
+        int[] toItems = scratchItems;
+        for (int pass = 0; pass < PASSES; pass++) {
+            final int shift = pass * RADIX_BITS;
+            final int base = pass * RADIX;
+            // Every key has the same byte here, so this pass wouldn't move anything.
+            if (histograms[base + (int) ((fromKeys[0] >>> shift) & (RADIX - 1))] == n) {
+                continue;
+            }
+            int offset = 0;
+            for (int digit = 0; digit < RADIX; digit++) {
+                final int digitCount = histograms[base + digit];
+                histograms[base + digit] = offset;
+                offset += digitCount;
+            }
+            for (int i = 0; i < n; i++) {
+                final long key = fromKeys[i];
+                final int slot = histograms[base + (int) ((key >>> shift) & (RADIX - 1))]++;
+                toKeys[slot] = key;
+                toItems[slot] = fromItems[i];
+            }
+            final long[] swapKeys = fromKeys;
+            fromKeys = toKeys;
+            toKeys = swapKeys;
+            final int[] swapItems = fromItems;
+            fromItems = toItems;
+            toItems = swapItems;
+        }
+        this.keys = fromKeys;
+        this.items = fromItems;
+        scratchKeys = toKeys;
+        scratchItems = toItems;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getKey(int index) {
+        return keys[index];
+    }
+
+    public int getItem(int index) {
+        return items[index];
+    }
+
+    public boolean isTranslucent(int index) {
+        return keys[index] < 0;
+    }
+
+    public int getProgram(int index) {
+        final long key = keys[index];
+        return (int) (key >>> (key < 0 ? TRANSLUCENT_PROGRAM_SHIFT : OPAQUE_PROGRAM_SHIFT))
+            & (MAX_PROGRAMS - 1);
+    }
+
+    public int getTexture(int index) {
+        final long key = keys[index];
+        return (int) (key >>> (key < 0 ? TRANSLUCENT_TEXTURE_SHIFT : OPAQUE_TEXTURE_SHIFT))
+            & (MAX_TEXTURES - 1);
+    }
+
+    public int getMesh(int index) {
+        final long key = keys[index];
+        return (int) (key >>> (key < 0 ? TRANSLUCENT_MESH_SHIFT : OPAQUE_MESH_SHIFT))
+            & (MAX_MESHES - 1);
+    }
+
+    private void add(long key, int item) {
+        if (count == keys.length) {
+            final int capacity = Math.max(16, count * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            items = Arrays.copyOf(items, capacity);
+            scratchKeys = new long[capacity];
+            scratchItems = new int[capacity];
+        }
+        keys[count] = key;
+        items[count] = item;
+        count++;
+    }
+
+    private int quantizeDepth(float depth) {
+        final float t = (depth - depthNear) * depthScale;
+        if (!(t > 0.0f)) {
+            return 0;
+        }
+        return t >= 1.0f ? DEPTH_MAX : (int) (t * DEPTH_MAX);
+    }
+
+    private static void checkIds(int program, int texture, int mesh) {
+        if (program < 0 || program >= MAX_PROGRAMS || texture < 0 || texture >= MAX_TEXTURES
+            || mesh < 0 || mesh >= MAX_MESHES) {
+            throw new RuntimeException("Render queue id out of range: program " + program
+                + ", texture " + texture + ", mesh " + mesh);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.jr3dL.android.render;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands whole frames from one producer thread to one consumer thread
+ * without either side ever waiting on the other.
+ *
+ * Of the three buffers, the producer owns the back one and the consumer
+ * the front one; the third sits between them. Publishing swaps the back
+ * buffer with the middle one, and acquiring swaps the middle one with the
+ * front one if something new was published since. Both swaps are a single
+ * atomic exchange of the middle index, so the consumer always gets the
+ * latest complete frame, never one the producer is still writing, and
+ * frames it was too slow for are skipped.
+ */
+public class TripleBuffer<T> {
+    private static final int INDEX_MASK = 3;
+    /** Set on the middle index from publish until the consumer takes it. */
+    private static final int FRESH = 4;
+
+    private final Object[] buffers;
+    private final AtomicInteger middle = new AtomicInteger(1);
+    /** Owned by the producer. */
+    private int back = 0;
+    /** Owned by the consumer. */
+    private int front = 2;
+
+    public TripleBuffer(T first, T second, T third) {
+        buffers = new Object[] {first, second, third};
+    }
+
+    /** The buffer the producer writes next. Producer thread only. */
+    @SuppressWarnings("unchecked")
+    public T getBack() {
+        return (T) buffers[back];
+    }
+
+    /**
+     * Makes the back buffer the latest frame and gives the producer a new
+     * one. Returns true if the frame it replaces was never acquired.
+     * Producer thread only.
+     */
+    public boolean publish() {
+        final int previous = middle.getAndSet(back | FRESH);
+        back = previous & INDEX_MASK;
+        return (previous & FRESH) != 0;
+    }
+
+    /**
+     * Whether a published frame is waiting for the consumer. The answer
+     * can be stale by the time it returns.
+     */
+    public boolean hasPublished() {
+        return (middle.get() & FRESH) != 0;
+    }
+
+    /**
+     * Moves the latest published frame to the front if there is one newer
+     * than the front, and returns whether there was. Consumer thread only.
+     */
+    public boolean acquire() {
+        if ((middle.get() & FRESH) == 0) {
+            return false;
+        }
+        front = middle.getAndSet(front) & INDEX_MASK;
+        return true;
+    }
+
+    /** The frame the consumer reads. Consumer thread only. */
+    @SuppressWarnings("unchecked")
+    public T getFront() {
+        return (T) buffers[front];
+    }
+}
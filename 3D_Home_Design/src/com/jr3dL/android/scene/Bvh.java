@@ -0,0 +1,566 @@
+package com.jr3dL.android.scene;
+
+import java.util.Arrays;
+
+/**
+ * A bounding volume hierarchy over axis-aligned object boxes, for culling
+ * and spatial queries that don't touch every object.
+ *
+ * The tree is built top down with a binned surface area heuristic and kept
+ * in flat arrays: nodes are indices, the two children of a node are
+ * allocated next to each other, and every subtree covers a contiguous run
+ * of the primitive array, so a subtree found entirely inside a query can be
+ * copied out without visiting its leaves.
+ *
+ * When objects move, {@link #setObjectBounds} refits the boxes on the path
+ * from the object's leaf to the root instead of rebuilding. Refitting keeps
+ * the tree valid but not optimal; rebuild after large rearrangements.
+ *
+ * Queries write object indices into a caller-supplied array and return how
+ * many they wrote; nothing is allocated after {@link #build}.
+ */
+public class Bvh {
+    /** Floats per box: min x, y, z then max x, y, z. */
+    public static final int BOUNDS_SIZE = 6;
+
+    private static final int MAX_LEAF_SIZE = 4;
+    private static final int BIN_COUNT = 12;
+    /** Cost of visiting a node relative to testing one object. */
+    private static final float TRAVERSAL_COST = 1.0f;
+
+    /** Tests a ray against one object's exact shape. */
+    public interface RayTest {
+        /**
+         * Returns the distance along the ray to the object, or
+         * {@code Float.POSITIVE_INFINITY} if it is missed or farther than
+         * maxDistance.
+         */
+        float intersect(int object, float originX, float originY, float originZ,
+            float directionX, float directionY, float directionZ, float maxDistance);
+    }
+
+    private int objectCount;
+    private float[] objectBounds = new float[0];
+    private float[] centroids = new float[0];
+    private int[] leafOfObject = new int[0];
+    private int[] primitives = new int[0];
+
+    private int nodeCount;
+    private float[] nodeBounds = new float[0];
+    /** Left child of an interior node, -1 for a leaf; the right child follows it. */
+    private int[] nodeChild = new int[0];
+    private int[] nodeParent = new int[0];
+    /** First entry in the primitive array covered by the node's subtree. */
+    private int[] nodeFirst = new int[0];
+    /** Number of primitives covered by the node's subtree. */
+    private int[] nodeSize = new int[0];
+
+    private int[] stack = new int[64];
+
+    private final int[] binCounts = new int[BIN_COUNT];
+    private final float[] binBounds = new float[BIN_COUNT * BOUNDS_SIZE];
+    private final float[] rightCosts = new float[BIN_COUNT];
+    private final float[] scratchBounds = new float[BOUNDS_SIZE];
+
+    private float hitDistance;
+    private int visitedNodeCount;
+
+    /**
+     * Builds the tree over count boxes, {@link #BOUNDS_SIZE} floats each. The
+     * boxes are copied.
+     */
+    public void build(float[] bounds, int count) {
+        objectCount = count;
+        if (objectBounds.length < count * BOUNDS_SIZE) {
+            objectBounds = new float[count * BOUNDS_SIZE];
+            centroids = new float[count * 3];
+            leafOfObject = new int[count];
+            primitives = new int[count];
+            final int maxNodes = Math.max(1, 2 * count - 1);
+            nodeBounds = new float[maxNodes * BOUNDS_SIZE];
+            nodeChild = new int[maxNodes];
+            nodeParent = new int[maxNodes];
+            nodeFirst = new int[maxNodes];
+            nodeSize = new int[maxNodes];
+        }
+        System.arraycopy(bounds, 0, objectBounds, 0, count * BOUNDS_SIZE);
+        for (int object = 0; object < count; object++) {
+            final int b = object * BOUNDS_SIZE;
+            centroids[object * 3] = (objectBounds[b] + objectBounds[b + 3]) * 0.5f;
+            centroids[object * 3 + 1] = (objectBounds[b + 1] + objectBounds[b + 4]) * 0.5f;
+            centroids[object * 3 + 2] = (objectBounds[b + 2] + objectBounds[b + 5]) * 0.5f;
+            primitives[object] = object;
+        }
+
+        nodeCount = 1;
+        nodeParent[0] = -1;
+        final int depth = count > 0 ? buildNode(0, 0, count) : 0;
+        if (count == 0) {
+            nodeChild[0] = -1;
+            nodeFirst[0] = 0;
+            nodeSize[0] = 0;
+            Arrays.fill(nodeBounds, 0, BOUNDS_SIZE, 0.0f);
+        }
+        // Ordered traversal pushes at most one extra node per level.
+        if (stack.length < depth + 2) {
+            stack = new int[depth + 2];
+        }
+    }
+
+    public int getObjectCount() {
+        return objectCount;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /** Nodes whose box the last query tested. */
+    public int getVisitedNodeCount() {
+        return visitedNodeCount;
+    }
+
+    /**
+     * Moves an object's box and refits every node above it. Stops as soon as
+     * a node's box comes out unchanged.
+     */
+    public void setObjectBounds(int object, float minX, float minY, float minZ,
+        float maxX, float maxY, float maxZ) {
+        final int b = object * BOUNDS_SIZE;
+        objectBounds[b] = minX;
+        objectBounds[b + 1] = minY;
+        objectBounds[b + 2] = minZ;
+        objectBounds[b + 3] = maxX;
+        objectBounds[b + 4] = maxY;
+        objectBounds[b + 5] = maxZ;
+
+        int node = leafOfObject[object];
+        while (node >= 0) {
+            if (nodeChild[node] < 0) {
+                primitiveBounds(nodeFirst[node], nodeSize[node], scratchBounds);
+            } else {
+                unionChildren(nodeChild[node], scratchBounds);
+            }
+            if (!replaceNodeBounds(node, scratchBounds)) {
+                return;
+            }
+            node = nodeParent[node];
+        }
+    }
+
+    /**
+     * Writes every object whose box touches the frustum into out. Subtrees
+     * entirely inside the frustum are copied without testing their objects.
+     */
+    public int queryFrustum(FrustumCuller frustum, int[] out) {
+        visitedNodeCount = 0;
+        if (objectCount == 0) {
+            return 0;
+        }
+        int found = 0;
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            final int node = stack[--top];
+            final int n = node * BOUNDS_SIZE;
+            visitedNodeCount++;
+            final int side = frustum.classifyBox(nodeBounds[n], nodeBounds[n + 1],
+                nodeBounds[n + 2], nodeBounds[n + 3], nodeBounds[n + 4], nodeBounds[n + 5]);
+            if (side == FrustumCuller.OUTSIDE) {
+                continue;
+            }
+            if (side == FrustumCuller.INSIDE) {
+                System.arraycopy(primitives, nodeFirst[node], out, found, nodeSize[node]);
+                found += nodeSize[node];
+            } else if (nodeChild[node] < 0) {
+                final int end = nodeFirst[node] + nodeSize[node];
+                for (int i = nodeFirst[node]; i < end; i++) {
+                    final int object = primitives[i];
+                    final int b = object * BOUNDS_SIZE;
+                    if (frustum.isBoxVisible(objectBounds[b], objectBounds[b + 1],
+                        objectBounds[b + 2], objectBounds[b + 3], objectBounds[b + 4],
+                        objectBounds[b + 5])) {
+                        out[found++] = object;
+                    }
+                }
+            } else {
+                stack[top++] = nodeChild[node];
+                stack[top++] = nodeChild[node] + 1;
+            }
+        }
+        return found;
+    }
+
+    /** Writes every object whose box overlaps the given box into out. */
+    public int queryBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ,
+        int[] out) {
+        visitedNodeCount = 0;
+        if (objectCount == 0) {
+            return 0;
+        }
+        int found = 0;
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            final int node = stack[--top];
+            visitedNodeCount++;
+            if (!overlaps(nodeBounds, node * BOUNDS_SIZE, minX, minY, minZ, maxX, maxY, maxZ)) {
+                continue;
+            }
+            if (nodeChild[node] < 0) {
+                final int end = nodeFirst[node] + nodeSize[node];
+                for (int i = nodeFirst[node]; i < end; i++) {
+                    final int object = primitives[i];
+                    if (overlaps(objectBounds, object * BOUNDS_SIZE,
+                        minX, minY, minZ, maxX, maxY, maxZ)) {
+                        out[found++] = object;
+                    }
+                }
+            } else {
+                stack[top++] = nodeChild[node];
+                stack[top++] = nodeChild[node] + 1;
+            }
+        }
+        return found;
+    }
+
+    /** Writes every object whose box overlaps the given sphere into out. */
+    public int querySphere(float centerX, float centerY, float centerZ, float radius, int[] out) {
+        visitedNodeCount = 0;
+        if (objectCount == 0) {
+            return 0;
+        }
+        final float radiusSquared = radius * radius;
+        int found = 0;
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            final int node = stack[--top];
+            visitedNodeCount++;
+            if (distanceSquared(nodeBounds, node * BOUNDS_SIZE, centerX, centerY, centerZ)
+                > radiusSquared) {
+                continue;
+            }
+            if (nodeChild[node] < 0) {
+                final int end = nodeFirst[node] + nodeSize[node];
+                for (int i = nodeFirst[node]; i < end; i++) {
+                    final int object = primitives[i];
+                    if (distanceSquared(objectBounds, object * BOUNDS_SIZE,
+                        centerX, centerY, centerZ) <= radiusSquared) {
+                        out[found++] = object;
+                    }
+                }
+            } else {
+                stack[top++] = nodeChild[node];
+                stack[top++] = nodeChild[node] + 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Finds the nearest object hit by the ray within maxDistance, or -1. The
+     * direction needn't be normalized; distances are in multiples of it.
+     * Objects are tested with the given test, or against their boxes if it
+     * is null. The distance of the hit is left in {@link #getHitDistance}.
+     */
+    public int raycast(float originX, float originY, float originZ,
+        float directionX, float directionY, float directionZ, float maxDistance, RayTest test) {
+        visitedNodeCount = 0;
+        hitDistance = Float.POSITIVE_INFINITY;
+        if (objectCount == 0) {
+            return -1;
+        }
+        final float inverseX = 1.0f / directionX;
+        final float inverseY = 1.0f / directionY;
+        final float inverseZ = 1.0f / directionZ;
+        float nearest = maxDistance;
+        int hit = -1;
+
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            final int node = stack[--top];
+            visitedNodeCount++;
+            if (slab(nodeBounds, node * BOUNDS_SIZE, originX, originY, originZ,
+                inverseX, inverseY, inverseZ, nearest) == Float.POSITIVE_INFINITY) {
+                continue;
+            }
+            if (nodeChild[node] < 0) {
+                final int end = nodeFirst[node] + nodeSize[node];
+                for (int i = nodeFirst[node]; i < end; i++) {
+                    final int object = primitives[i];
+                    final float distance = test != null
+                        ? test.intersect(object, originX, originY, originZ,
+                            directionX, directionY, directionZ, nearest)
+                        : slab(objectBounds, object * BOUNDS_SIZE, originX, originY, originZ,
+                            inverseX, inverseY, inverseZ, nearest);
+                    if (distance <= nearest && distance != Float.POSITIVE_INFINITY) {
+                        nearest = distance;
+                        hit = object;
+                    }
+                }
+            } else {
+                // Visit the nearer child first so the farther one is more
+                // likely to be pruned by the hit it finds.
+                final int left = nodeChild[node];
+                final int right = left + 1;
+                final float leftDistance = slab(nodeBounds, left * BOUNDS_SIZE, originX, originY,
+                    originZ, inverseX, inverseY, inverseZ, nearest);
+                final float rightDistance = slab(nodeBounds, right * BOUNDS_SIZE, originX, originY,
+                    originZ, inverseX, inverseY, inverseZ, nearest);
+                final boolean hitsLeft = leftDistance != Float.POSITIVE_INFINITY;
+                final boolean hitsRight = rightDistance != Float.POSITIVE_INFINITY;
+                if (leftDistance <= rightDistance) {
+                    if (hitsRight) {
+                        stack[top++] = right;
+                    }
+                    if (hitsLeft) {
+                        stack[top++] = left;
+                    }
+                } else {
+                    if (hitsLeft) {
+                        stack[top++] = left;
+                    }
+                    if (hitsRight) {
+                        stack[top++] = right;
+                    }
+                }
+            }
+        }
+        if (hit >= 0) {
+            hitDistance = nearest;
+        }
+        return hit;
+    }
+
+    /** Distance of the last raycast's hit, or infinity if it missed. */
+    public float getHitDistance() {
+        return hitDistance;
+    }
+
+    /**
+     * Builds the subtree of a node covering count primitives from first and
+     * returns its depth.
+     */
+    private int buildNode(int node, int first, int count) {
+        nodeFirst[node] = first;
+        nodeSize[node] = count;
+        primitiveBounds(first, count, scratchBounds);
+        System.arraycopy(scratchBounds, 0, nodeBounds, node * BOUNDS_SIZE, BOUNDS_SIZE);
+
+        if (count <= MAX_LEAF_SIZE) {
+            makeLeaf(node, first, count);
+            return 1;
+        }
+
+        // Bin the centroids along each axis and keep the cheapest split.
+        float centroidMinX = Float.POSITIVE_INFINITY, centroidMaxX = Float.NEGATIVE_INFINITY;
+        float centroidMinY = Float.POSITIVE_INFINITY, centroidMaxY = Float.NEGATIVE_INFINITY;
+        float centroidMinZ = Float.POSITIVE_INFINITY, centroidMaxZ = Float.NEGATIVE_INFINITY;
+        for (int i = first; i < first + count; i++) {
+            final int c = primitives[i] * 3;
+            centroidMinX = Math.min(centroidMinX, centroids[c]);
+            centroidMaxX = Math.max(centroidMaxX, centroids[c]);
+            centroidMinY = Math.min(centroidMinY, centroids[c + 1]);
+            centroidMaxY = Math.max(centroidMaxY, centroids[c + 1]);
+            centroidMinZ = Math.min(centroidMinZ, centroids[c + 2]);
+            centroidMaxZ = Math.max(centroidMaxZ, centroids[c + 2]);
+        }
+
+        float bestCost = Float.POSITIVE_INFINITY;
+        int bestAxis = -1;
+        int bestBin = 0;
+        for (int axis = 0; axis < 3; axis++) {
+            final float low = axis == 0 ? centroidMinX : axis == 1 ? centroidMinY : centroidMinZ;
+            final float high = axis == 0 ? centroidMaxX : axis == 1 ? centroidMaxY : centroidMaxZ;
+            if (high <= low) {
+                continue;
+            }
+            final float binScale = BIN_COUNT / (high - low);
+            Arrays.fill(binCounts, 0);
+            for (int bin = 0; bin < BIN_COUNT; bin++) {
+                emptyBounds(binBounds, bin * BOUNDS_SIZE);
+            }
+            for (int i = first; i < first + count; i++) {
+                final int object = primitives[i];
+                final int bin = binOf(centroids[object * 3 + axis], low, binScale);
+                binCounts[bin]++;
+                include(binBounds, bin * BOUNDS_SIZE, objectBounds, object * BOUNDS_SIZE);
+            }
+
+            // Sweep from the right to get the cost of every right side, then
+            // from the left to combine it with every left side.
+            emptyBounds(scratchBounds, 0);
+            int rightCount = 0;
+            for (int bin = BIN_COUNT - 1; bin > 0; bin--) {
+                include(scratchBounds, 0, binBounds, bin * BOUNDS_SIZE);
+                rightCount += binCounts[bin];
+                rightCosts[bin] = rightCount * area(scratchBounds, 0);
+            }
+            emptyBounds(scratchBounds, 0);
+            int leftCount = 0;
+            for (int bin = 0; bin < BIN_COUNT - 1; bin++) {
+                include(scratchBounds, 0, binBounds, bin * BOUNDS_SIZE);
+                leftCount += binCounts[bin];
+                if (leftCount == 0 || leftCount == count) {
+                    continue;
+                }
+                final float cost = leftCount * area(scratchBounds, 0) + rightCosts[bin + 1];
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestAxis = axis;
+                    bestBin = bin;
+                }
+            }
+        }
+
+        final float nodeArea = area(nodeBounds, node * BOUNDS_SIZE);
+        final float splitCost = nodeArea > 0.0f ? TRAVERSAL_COST + bestCost / nodeArea : 0.0f;
+        int middle;
+        if (bestAxis < 0) {
+            // Every centroid is in the same place; split by count.
+            middle = first + count / 2;
+        } else if (splitCost >= count && count <= 4 * MAX_LEAF_SIZE) {
+            makeLeaf(node, first, count);
+            return 1;
+        } else {
+            final float low = bestAxis == 0 ? centroidMinX
+                : bestAxis == 1 ? centroidMinY : centroidMinZ;
+            final float high = bestAxis == 0 ? centroidMaxX
+                : bestAxis == 1 ? centroidMaxY : centroidMaxZ;
+            final float binScale = BIN_COUNT / (high - low);
+            middle = first;
+            for (int i = first; i < first + count; i++) {
+                final int object = primitives[i];
+                if (binOf(centroids[object * 3 + bestAxis], low, binScale) <= bestBin) {
+                    primitives[i] = primitives[middle];
+                    primitives[middle++] = object;
+                }
+            }
+        }
+
+        final int left = nodeCount;
+        nodeCount += 2;
+        nodeChild[node] = left;
+        nodeParent[left] = node;
+        nodeParent[left + 1] = node;
+        final int leftDepth = buildNode(left, first, middle - first);
+        final int rightDepth = buildNode(left + 1, middle, first + count - middle);
+        return 1 + Math.max(leftDepth, rightDepth);
+    }
+
+    private void makeLeaf(int node, int first, int count) {
+        nodeChild[node] = -1;
+        for (int i = first; i < first + count; i++) {
+            leafOfObject[primitives[i]] = node;
+        }
+    }
+
+    private static int binOf(float centroid, float low, float binScale) {
+        final int bin = (int) ((centroid - low) * binScale);
+        return bin < 0 ? 0 : bin >= BIN_COUNT ? BIN_COUNT - 1 : bin;
+    }
+
+    private void primitiveBounds(int first, int count, float[] out) {
+        emptyBounds(out, 0);
+        for (int i = first; i < first + count; i++) {
+            include(out, 0, objectBounds, primitives[i] * BOUNDS_SIZE);
+        }
+    }
+
+    private void unionChildren(int left, float[] out) {
+        System.arraycopy(nodeBounds, left * BOUNDS_SIZE, out, 0, BOUNDS_SIZE);
+        include(out, 0, nodeBounds, (left + 1) * BOUNDS_SIZE);
+    }
+
+    /** Stores a node's new box and returns whether it differs from the old one. */
+    private boolean replaceNodeBounds(int node, float[] bounds) {
+        final int n = node * BOUNDS_SIZE;
+        boolean changed = false;
+        for (int i = 0; i < BOUNDS_SIZE; i++) {
+            if (nodeBounds[n + i] != bounds[i]) {
+                nodeBounds[n + i] = bounds[i];
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private static void emptyBounds(float[] bounds, int b) {
+        bounds[b] = bounds[b + 1] = bounds[b + 2] = Float.POSITIVE_INFINITY;
+        bounds[b + 3] = bounds[b + 4] = bounds[b + 5] = Float.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Grows a box to contain another. Plain comparisons rather than
+     * Math.min and max, which also order NaN and signed zeros and are much
+     * slower on Dalvik; boxes never hold either.
+     */
+    private static void include(float[] bounds, int b, float[] other, int o) {
+        if (other[o] < bounds[b]) {
+            bounds[b] = other[o];
+        }
+        if (other[o + 1] < bounds[b + 1]) {
+            bounds[b + 1] = other[o + 1];
+        }
+        if (other[o + 2] < bounds[b + 2]) {
+            bounds[b + 2] = other[o + 2];
+        }
+        if (other[o + 3] > bounds[b + 3]) {
+            bounds[b + 3] = other[o + 3];
+        }
+        if (other[o + 4] > bounds[b + 4]) {
+            bounds[b + 4] = other[o + 4];
+        }
+        if (other[o + 5] > bounds[b + 5]) {
+            bounds[b + 5] = other[o + 5];
+        }
+    }
+
+    private static float area(float[] bounds, int b) {
+        final float dx = bounds[b + 3] - bounds[b];
+        final float dy = bounds[b + 4] - bounds[b + 1];
+        final float dz = bounds[b + 5] - bounds[b + 2];
+        if (dx < 0.0f || dy < 0.0f || dz < 0.0f) {
+            return 0.0f;
+        }
+        return 2.0f * (dx * dy + dy * dz + dz * dx);
+    }
+
+    private static boolean overlaps(float[] bounds, int b, float minX, float minY, float minZ,
+        float maxX, float maxY, float maxZ) {
+        return bounds[b] <= maxX && bounds[b + 3] >= minX
+            && bounds[b + 1] <= maxY && bounds[b + 4] >= minY
+            && bounds[b + 2] <= maxZ && bounds[b + 5] >= minZ;
+    }
+
+    private static float distanceSquared(float[] bounds, int b, float x, float y, float z) {
+        final float dx = Math.max(Math.max(bounds[b] - x, 0.0f), x - bounds[b + 3]);
+        final float dy = Math.max(Math.max(bounds[b + 1] - y, 0.0f), y - bounds[b + 4]);
+        final float dz = Math.max(Math.max(bounds[b + 2] - z, 0.0f), z - bounds[b + 5]);
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * Distance at which the ray enters the box, 0 if it starts inside, or
+     * infinity if it misses it or only reaches it beyond maxDistance.
+     */
+    private static float slab(float[] bounds, int b, float originX, float originY, float originZ,
+        float inverseX, float inverseY, float inverseZ, float maxDistance) {
+        float tx1 = (bounds[b] - originX) * inverseX;
+        float tx2 = (bounds[b + 3] - originX) * inverseX;
+        float near = Math.min(tx1, tx2);
+        float far = Math.max(tx1, tx2);
+        final float ty1 = (bounds[b + 1] - originY) * inverseY;
+        final float ty2 = (bounds[b + 4] - originY) * inverseY;
+        near = Math.max(near, Math.min(ty1, ty2));
+        far = Math.min(far, Math.max(ty1, ty2));
+        final float tz1 = (bounds[b + 2] - originZ) * inverseZ;
+        final float tz2 = (bounds[b + 5] - originZ) * inverseZ;
+        near = Math.max(near, Math.min(tz1, tz2));
+        far = Math.min(far, Math.max(tz1, tz2));
+        near = Math.max(near, 0.0f);
+        return near <= far && near <= maxDistance ? near : Float.POSITIVE_INFINITY;
+    }
+}
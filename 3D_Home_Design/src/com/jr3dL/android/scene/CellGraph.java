@@ -0,0 +1,142 @@
+package com.jr3dL.android.scene;
+
+import java.util.Arrays;
+
+/**
+ * The rooms of a house as cells and the doors and windows between them as
+ * portals, for {@link PortalCuller}.
+ *
+ * A cell is an axis-aligned box. A portal is a convex quad, four corners in
+ * order around its edge, that joins two cells; it can be seen through from
+ * either side. Like {@link Scene}, everything is kept in flat arrays indexed
+ * by cell and portal number.
+ */
+public class CellGraph {
+    /** Floats per cell box: min x, y, z then max x, y, z. */
+    public static final int BOUNDS_SIZE = 6;
+    public static final int PORTAL_CORNERS = 4;
+    /** Floats per portal: x, y, z of each corner. */
+    public static final int PORTAL_SIZE = PORTAL_CORNERS * 3;
+
+    private int cellCount;
+    private String[] cellNames = new String[4];
+    private float[] cellBounds = new float[4 * BOUNDS_SIZE];
+    /** First portal of each cell's list, or -1. */
+    private int[] cellFirstPortal = new int[4];
+
+    private int portalCount;
+    private float[] portalCorners = new float[4 * PORTAL_SIZE];
+    private int[] portalCells = new int[4 * 2];
+    /** Next portal in the list of each of the portal's two cells, or -1. */
+    private int[] portalNext = new int[4 * 2];
+
+    /** Adds a cell and returns its index. */
+    public int addCell(String name, float minX, float minY, float minZ,
+        float maxX, float maxY, float maxZ) {
+        if (findCell(name) >= 0) {
+            throw new IllegalArgumentException("Duplicate cell: " + name);
+        }
+        if (cellCount == cellNames.length) {
+            cellNames = Arrays.copyOf(cellNames, cellCount * 2);
+            cellBounds = Arrays.copyOf(cellBounds, cellCount * 2 * BOUNDS_SIZE);
+            cellFirstPortal = Arrays.copyOf(cellFirstPortal, cellCount * 2);
+        }
+        final int b = cellCount * BOUNDS_SIZE;
+        cellBounds[b] = Math.min(minX, maxX);
+        cellBounds[b + 1] = Math.min(minY, maxY);
+        cellBounds[b + 2] = Math.min(minZ, maxZ);
+        cellBounds[b + 3] = Math.max(minX, maxX);
+        cellBounds[b + 4] = Math.max(minY, maxY);
+        cellBounds[b + 5] = Math.max(minZ, maxZ);
+        cellNames[cellCount] = name;
+        cellFirstPortal[cellCount] = -1;
+        return cellCount++;
+    }
+
+    /**
+     * Adds a portal between two cells and returns its index. Corners holds
+     * {@link #PORTAL_SIZE} floats from offset.
+     */
+    public int addPortal(int cellA, int cellB, float[] corners, int offset) {
+        if (cellA < 0 || cellA >= cellCount || cellB < 0 || cellB >= cellCount
+            || cellA == cellB) {
+            throw new IllegalArgumentException("Bad portal cells: " + cellA + ", " + cellB);
+        }
+        if (portalCount * PORTAL_SIZE == portalCorners.length) {
+            portalCorners = Arrays.copyOf(portalCorners, portalCount * 2 * PORTAL_SIZE);
+            portalCells = Arrays.copyOf(portalCells, portalCount * 2 * 2);
+            portalNext = Arrays.copyOf(portalNext, portalCount * 2 * 2);
+        }
+        final int portal = portalCount++;
+        System.arraycopy(corners, offset, portalCorners, portal * PORTAL_SIZE, PORTAL_SIZE);
+        portalCells[portal * 2] = cellA;
+        portalCells[portal * 2 + 1] = cellB;
+        portalNext[portal * 2] = cellFirstPortal[cellA];
+        cellFirstPortal[cellA] = portal * 2;
+        portalNext[portal * 2 + 1] = cellFirstPortal[cellB];
+        cellFirstPortal[cellB] = portal * 2 + 1;
+        return portal;
+    }
+
+    public int findCell(String name) {
+        for (int i = 0; i < cellCount; i++) {
+            if (cellNames[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** The cell whose box holds the point, or -1. The first one wins. */
+    public int findCell(float x, float y, float z) {
+        for (int cell = 0; cell < cellCount; cell++) {
+            final int b = cell * BOUNDS_SIZE;
+            if (x >= cellBounds[b] && x <= cellBounds[b + 3]
+                && y >= cellBounds[b + 1] && y <= cellBounds[b + 4]
+                && z >= cellBounds[b + 2] && z <= cellBounds[b + 5]) {
+                return cell;
+            }
+        }
+        return -1;
+    }
+
+    public int getCellCount() {
+        return cellCount;
+    }
+
+    public String getCellName(int cell) {
+        return cellNames[cell];
+    }
+
+    /** Cell boxes, {@link #BOUNDS_SIZE} floats per cell. */
+    public float[] getCellBounds() {
+        return cellBounds;
+    }
+
+    public int getPortalCount() {
+        return portalCount;
+    }
+
+    /** Portal corners, {@link #PORTAL_SIZE} floats per portal. */
+    public float[] getPortalCorners() {
+        return portalCorners;
+    }
+
+    /**
+     * The first link of a cell's portal list, or -1. A link is a portal
+     * index times two, plus one if the cell is the portal's second cell;
+     * walk the list with {@link #getNextLink}.
+     */
+    public int getFirstLink(int cell) {
+        return cellFirstPortal[cell];
+    }
+
+    public int getNextLink(int link) {
+        return portalNext[link];
+    }
+
+    /** The cell on the far side of a link's portal. */
+    public int getLinkedCell(int link) {
+        return portalCells[link ^ 1];
+    }
+}
@@ -0,0 +1,260 @@
+package com.jr3dL.android.scene;
+
+import java.util.Arrays;
+
+import com.jr3dL.android.data.MeshData;
+
+/**
+ * Tests every scene node's world-space bounding box against the six planes
+ * of the view frustum.
+ *
+ * Boxes are kept as center and half extent in separate arrays per
+ * component, and the test runs plane by plane over all nodes, so the inner
+ * loop is a branch-free run of multiply-adds and a min over flat float
+ * arrays.
+ */
+public class FrustumCuller {
+    public static final int PLANE_COUNT = 6;
+    private static final int BOUNDS_SIZE = 6;
+
+    /** Results of {@link #classifyBox}. */
+    public static final int OUTSIDE = 0;
+    public static final int INTERSECTING = 1;
+    public static final int INSIDE = 2;
+
+    private final Scene scene;
+
+    private final float[] planeX = new float[PLANE_COUNT];
+    private final float[] planeY = new float[PLANE_COUNT];
+    private final float[] planeZ = new float[PLANE_COUNT];
+    private final float[] planeW = new float[PLANE_COUNT];
+
+    /** Local bounds per mesh, min x, y, z then max x, y, z. */
+    private float[] meshBounds = new float[0];
+
+    private float[] centerX = new float[0];
+    private float[] centerY = new float[0];
+    private float[] centerZ = new float[0];
+    private float[] extentX = new float[0];
+    private float[] extentY = new float[0];
+    private float[] extentZ = new float[0];
+    /** Smallest signed distance of each box to any plane; negative is outside. */
+    private float[] nearestDistance = new float[0];
+
+    private int visibleCount;
+    private int culledCount;
+
+    public FrustumCuller(Scene scene) {
+        this.scene = scene;
+    }
+
+    /** Takes a mesh's local bounds from its vertex positions. */
+    public void setMeshBounds(int mesh, MeshData data) {
+        if ((mesh + 1) * BOUNDS_SIZE > meshBounds.length) {
+            meshBounds = Arrays.copyOf(meshBounds, (mesh + 1) * BOUNDS_SIZE);
+        }
+        data.computeBounds(meshBounds, mesh * BOUNDS_SIZE);
+    }
+
+    /**
+     * Recomputes the world bounds of the given nodes from their model
+     * matrices, such as the nodes a {@link TransformCache} update changed.
+     */
+    public void updateBounds(float[] worldMatrices, int[] nodes, int nodeCount) {
+        ensureCapacity(scene.getNodeCount());
+        final int[] meshes = scene.getMeshes();
+        for (int i = 0; i < nodeCount; i++) {
+            final int node = nodes[i];
+            final int b = meshes[node] * BOUNDS_SIZE;
+            final float localCenterX = (meshBounds[b] + meshBounds[b + 3]) * 0.5f;
+            final float localCenterY = (meshBounds[b + 1] + meshBounds[b + 4]) * 0.5f;
+            final float localCenterZ = (meshBounds[b + 2] + meshBounds[b + 5]) * 0.5f;
+            final float localExtentX = (meshBounds[b + 3] - meshBounds[b]) * 0.5f;
+            final float localExtentY = (meshBounds[b + 4] - meshBounds[b + 1]) * 0.5f;
+            final float localExtentZ = (meshBounds[b + 5] - meshBounds[b + 2]) * 0.5f;
+
+            // The world box around a transformed box: the center goes through
+            // the matrix, the extent through its absolute upper 3x3.
+            final float[] w = worldMatrices;
+            final int m = node * TransformCache.MATRIX_SIZE;
+            centerX[node] = w[m] * localCenterX + w[m + 4] * localCenterY
+                + w[m + 8] * localCenterZ + w[m + 12];
+            centerY[node] = w[m + 1] * localCenterX + w[m + 5] * localCenterY
+                + w[m + 9] * localCenterZ + w[m + 13];
+            centerZ[node] = w[m + 2] * localCenterX + w[m + 6] * localCenterY
+                + w[m + 10] * localCenterZ + w[m + 14];
+            extentX[node] = Math.abs(w[m]) * localExtentX + Math.abs(w[m + 4]) * localExtentY
+                + Math.abs(w[m + 8]) * localExtentZ;
+            extentY[node] = Math.abs(w[m + 1]) * localExtentX + Math.abs(w[m + 5]) * localExtentY
+                + Math.abs(w[m + 9]) * localExtentZ;
+            extentZ[node] = Math.abs(w[m + 2]) * localExtentX + Math.abs(w[m + 6]) * localExtentY
+                + Math.abs(w[m + 10]) * localExtentZ;
+        }
+    }
+
+    /**
+     * Extracts the frustum planes from a projection * view matrix, column
+     * major, as the sums and differences of its fourth row with the others.
+     * Planes are normalized so distances are in world units.
+     */
+    public void setViewProjection(float[] m) {
+        setPlane(0, m[3] + m[0], m[7] + m[4], m[11] + m[8], m[15] + m[12]);   // left
+        setPlane(1, m[3] - m[0], m[7] - m[4], m[11] - m[8], m[15] - m[12]);   // right
+        setPlane(2, m[3] + m[1], m[7] + m[5], m[11] + m[9], m[15] + m[13]);   // bottom
+        setPlane(3, m[3] - m[1], m[7] - m[5], m[11] - m[9], m[15] - m[13]);   // top
+        setPlane(4, m[3] + m[2], m[7] + m[6], m[11] + m[10], m[15] + m[14]);  // near
+        setPlane(5, m[3] - m[2], m[7] - m[6], m[11] - m[10], m[15] - m[14]);  // far
+    }
+
+    /** Classifies every node against the current planes. */
+    public void cull() {
+        final int nodeCount = scene.getNodeCount();
+        ensureCapacity(nodeCount);
+        final float[] nearest = nearestDistance;
+        Arrays.fill(nearest, 0, nodeCount, Float.POSITIVE_INFINITY);
+
+        for (int plane = 0; plane < PLANE_COUNT; plane++) {
+            final float px = planeX[plane];
+            final float py = planeY[plane];
+            final float pz = planeZ[plane];
+            final float pw = planeW[plane];
+            final float ax = Math.abs(px);
+            final float ay = Math.abs(py);
+            final float az = Math.abs(pz);
+            for (int node = 0; node < nodeCount; node++) {
+                // Distance of the box's farthest corner along the plane normal.
+                final float distance = px * centerX[node] + py * centerY[node]
+                    + pz * centerZ[node] + pw
+                    + ax * extentX[node] + ay * extentY[node] + az * extentZ[node];
+                nearest[node] = Math.min(nearest[node], distance);
+            }
+        }
+
+        int visible = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            if (nearest[node] >= 0.0f) {
+                visible++;
+            }
+        }
+        visibleCount = visible;
+        culledCount = nodeCount - visible;
+    }
+
+    /** Whether the node's box touched the frustum at the last {@link #cull}. */
+    public boolean isVisible(int node) {
+        return nearestDistance[node] >= 0.0f;
+    }
+
+    /** Tests an arbitrary world-space box against the current planes. */
+    public boolean isBoxVisible(float minX, float minY, float minZ,
+        float maxX, float maxY, float maxZ) {
+        final float cx = (minX + maxX) * 0.5f;
+        final float cy = (minY + maxY) * 0.5f;
+        final float cz = (minZ + maxZ) * 0.5f;
+        final float ex = (maxX - minX) * 0.5f;
+        final float ey = (maxY - minY) * 0.5f;
+        final float ez = (maxZ - minZ) * 0.5f;
+        for (int plane = 0; plane < PLANE_COUNT; plane++) {
+            final float distance = planeX[plane] * cx + planeY[plane] * cy + planeZ[plane] * cz
+                + planeW[plane] + Math.abs(planeX[plane]) * ex + Math.abs(planeY[plane]) * ey
+                + Math.abs(planeZ[plane]) * ez;
+            if (distance < 0.0f) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tells whether a world-space box is entirely outside the frustum,
+     * entirely inside it, or crosses one of its planes.
+     */
+    public int classifyBox(float minX, float minY, float minZ,
+        float maxX, float maxY, float maxZ) {
+        final float cx = (minX + maxX) * 0.5f;
+        final float cy = (minY + maxY) * 0.5f;
+        final float cz = (minZ + maxZ) * 0.5f;
+        final float ex = (maxX - minX) * 0.5f;
+        final float ey = (maxY - minY) * 0.5f;
+        final float ez = (maxZ - minZ) * 0.5f;
+        int result = INSIDE;
+        for (int plane = 0; plane < PLANE_COUNT; plane++) {
+            final float distance = planeX[plane] * cx + planeY[plane] * cy + planeZ[plane] * cz
+                + planeW[plane];
+            final float radius = Math.abs(planeX[plane]) * ex + Math.abs(planeY[plane]) * ey
+                + Math.abs(planeZ[plane]) * ez;
+            if (distance + radius < 0.0f) {
+                return OUTSIDE;
+            }
+            if (distance - radius < 0.0f) {
+                result = INTERSECTING;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes a node's world box, min x, y, z then max x, y, z, as of the
+     * last {@link #updateBounds}.
+     */
+    public void getBounds(int node, float[] bounds, int offset) {
+        bounds[offset] = centerX[node] - extentX[node];
+        bounds[offset + 1] = centerY[node] - extentY[node];
+        bounds[offset + 2] = centerZ[node] - extentZ[node];
+        bounds[offset + 3] = centerX[node] + extentX[node];
+        bounds[offset + 4] = centerY[node] + extentY[node];
+        bounds[offset + 5] = centerZ[node] + extentZ[node];
+    }
+
+    /** Radius of the sphere around a node's world box. */
+    public float getBoundingRadius(int node) {
+        return (float) Math.sqrt(extentX[node] * extentX[node] + extentY[node] * extentY[node]
+            + extentZ[node] * extentZ[node]);
+    }
+
+    /**
+     * Writes the current planes as x, y, z, w each, normals pointing into
+     * the frustum.
+     */
+    public void getPlanes(float[] planes, int offset) {
+        for (int plane = 0; plane < PLANE_COUNT; plane++) {
+            final int p = offset + plane * 4;
+            planes[p] = planeX[plane];
+            planes[p + 1] = planeY[plane];
+            planes[p + 2] = planeZ[plane];
+            planes[p + 3] = planeW[plane];
+        }
+    }
+
+    /** Nodes found inside or touching the frustum by the last cull. */
+    public int getVisibleCount() {
+        return visibleCount;
+    }
+
+    /** Nodes found entirely outside the frustum by the last cull. */
+    public int getCulledCount() {
+        return culledCount;
+    }
+
+    private void setPlane(int plane, float x, float y, float z, float w) {
+        final float length = (float) Math.sqrt(x * x + y * y + z * z);
+        final float scale = length > 0.0f ? 1.0f / length : 0.0f;
+        planeX[plane] = x * scale;
+        planeY[plane] = y * scale;
+        planeZ[plane] = z * scale;
+        planeW[plane] = w * scale;
+    }
+
+    private void ensureCapacity(int nodeCount) {
+        if (nodeCount <= centerX.length) {
+            return;
+        }
+        centerX = Arrays.copyOf(centerX, nodeCount);
+        centerY = Arrays.copyOf(centerY, nodeCount);
+        centerZ = Arrays.copyOf(centerZ, nodeCount);
+        extentX = Arrays.copyOf(extentX, nodeCount);
+        extentY = Arrays.copyOf(extentY, nodeCount);
+        extentZ = Arrays.copyOf(extentZ, nodeCount);
+        nearestDistance = Arrays.copyOf(nearestDistance, nodeCount);
+    }
+}
@@ -0,0 +1,208 @@
+package com.jr3dL.android.scene;
+
+import java.util.Arrays;
+
+/**
+ * Picks a level of detail for every drawn node from how large it appears on
+ * screen, and drops nodes too small to matter.
+ *
+ * Each scene mesh can carry several levels, finest first, each with the
+ * smallest projected size in pixels it is used down to. A node's size is
+ * the diameter of its bounding sphere projected at its view depth. A node
+ * only moves to a finer level once it is a margin above that level's
+ * threshold and to a coarser one once it is the same margin below, so a
+ * node hovering at a threshold doesn't flicker between levels. Below the
+ * cull threshold, with the same margin, the node isn't drawn at all.
+ *
+ * Levels are numbered globally in the order they are added, so the caller
+ * can map a level straight to the GPU mesh drawn for it. Per-level triangle
+ * counts and per-frame totals let the frame's triangle budget be checked.
+ */
+public class LodSelector {
+    /** Returned by {@link #select} for a node too small to draw. */
+    public static final int CULLED = -1;
+    /** Returned by {@link #select} for a node whose mesh has no levels. */
+    public static final int NO_LEVELS = -2;
+
+    private final Scene scene;
+
+    /** First level and level count of each scene mesh. */
+    private int[] meshFirstLevel = new int[0];
+    private int[] meshLevelCount = new int[0];
+
+    private int levelCount;
+    private int[] levelTriangles = new int[4];
+    private float[] levelMinPixels = new float[4];
+
+    /** Current level of each node, or CULLED. */
+    private int[] nodeLevels = new int[0];
+
+    private float cullPixels = 1.0f;
+    private float hysteresis = 0.15f;
+    private float pixelsPerUnit = 1.0f;
+
+    private int[] frameLevelNodes = new int[4];
+    private int frameTriangles;
+    private int frameCulled;
+
+    public LodSelector(Scene scene) {
+        this.scene = scene;
+    }
+
+    /**
+     * Adds the next coarser level of a mesh and returns its global index.
+     * It is used while the node covers at least minPixels; the coarsest
+     * level usually uses 0 and leaves the rest to the cull threshold.
+     */
+    public int addLevel(int mesh, int triangleCount, float minPixels) {
+        if (mesh >= meshFirstLevel.length) {
+            final int oldLength = meshFirstLevel.length;
+            meshFirstLevel = Arrays.copyOf(meshFirstLevel, mesh + 1);
+            meshLevelCount = Arrays.copyOf(meshLevelCount, mesh + 1);
+            Arrays.fill(meshFirstLevel, oldLength, mesh + 1, -1);
+        }
+        if (meshLevelCount[mesh] > 0) {
+            final int last = meshFirstLevel[mesh] + meshLevelCount[mesh] - 1;
+            if (last != levelCount - 1) {
+                throw new IllegalArgumentException("Levels of mesh " + mesh
+                    + " must be added together");
+            }
+            if (minPixels > levelMinPixels[last]) {
+                throw new IllegalArgumentException("Level thresholds must decrease");
+            }
+        } else {
+            meshFirstLevel[mesh] = levelCount;
+        }
+        if (levelCount == levelTriangles.length) {
+            levelTriangles = Arrays.copyOf(levelTriangles, levelCount * 2);
+            levelMinPixels = Arrays.copyOf(levelMinPixels, levelCount * 2);
+            frameLevelNodes = Arrays.copyOf(frameLevelNodes, levelCount * 2);
+        }
+        levelTriangles[levelCount] = triangleCount;
+        levelMinPixels[levelCount] = minPixels;
+        meshLevelCount[mesh]++;
+        return levelCount++;
+    }
+
+    /** Projected size in pixels below which nodes are not drawn. */
+    public void setCullThreshold(float pixels) {
+        cullPixels = pixels;
+    }
+
+    /**
+     * Fraction of a threshold a node must pass it by before its level
+     * changes.
+     */
+    public void setHysteresis(float fraction) {
+        hysteresis = fraction;
+    }
+
+    /**
+     * Takes the pixel scale from a perspective projection matrix and the
+     * viewport it draws to.
+     */
+    public void setProjection(float[] projectionMatrix, int viewportWidth, int viewportHeight) {
+        pixelsPerUnit = 0.5f * Math.max(Math.abs(projectionMatrix[0]) * viewportWidth,
+            Math.abs(projectionMatrix[5]) * viewportHeight);
+    }
+
+    /** Clears the per-frame counts. */
+    public void beginFrame() {
+        Arrays.fill(frameLevelNodes, 0, levelCount, 0);
+        frameTriangles = 0;
+        frameCulled = 0;
+    }
+
+    /**
+     * Chooses the level a node is drawn with from its bounding radius and
+     * view depth, and counts it into the frame. Returns the global level, or
+     * {@link #CULLED}, or {@link #NO_LEVELS} if the node is big enough to
+     * draw but its mesh has no levels.
+     */
+    public int select(int node, float radius, float depth) {
+        ensureCapacity();
+        final int mesh = scene.getMeshes()[node];
+        final float pixels = depth > 0.0f ? 2.0f * radius * pixelsPerUnit / depth
+            : Float.POSITIVE_INFINITY;
+        final float grow = 1.0f + hysteresis;
+        final float shrink = 1.0f - hysteresis;
+
+        final int current = nodeLevels[node];
+        if (pixels < cullPixels * (current == CULLED ? grow : shrink)) {
+            nodeLevels[node] = CULLED;
+            frameCulled++;
+            return CULLED;
+        }
+        if (mesh >= meshFirstLevel.length || meshLevelCount[mesh] == 0) {
+            nodeLevels[node] = NO_LEVELS;
+            return NO_LEVELS;
+        }
+
+        final int first = meshFirstLevel[mesh];
+        final int last = first + meshLevelCount[mesh] - 1;
+        int level;
+        if (current < first || current > last) {
+            // Coming back into view: there is no level to hold on to.
+            level = first;
+            while (level < last && pixels < levelMinPixels[level]) {
+                level++;
+            }
+        } else {
+            // Coarser once well below this level's threshold, finer once
+            // well above the next finer level's.
+            level = current;
+            while (level < last && pixels < levelMinPixels[level] * shrink) {
+                level++;
+            }
+            while (level > first && pixels >= levelMinPixels[level - 1] * grow) {
+                level--;
+            }
+        }
+        nodeLevels[node] = level;
+        frameLevelNodes[level]++;
+        frameTriangles += levelTriangles[level];
+        return level;
+    }
+
+    /** Levels of every mesh together. */
+    public int getLevelCount() {
+        return levelCount;
+    }
+
+    /** Global index of a mesh's level, 0 being its finest. */
+    public int getLevel(int mesh, int index) {
+        return meshFirstLevel[mesh] + index;
+    }
+
+    public int getMeshLevelCount(int mesh) {
+        return mesh < meshLevelCount.length ? meshLevelCount[mesh] : 0;
+    }
+
+    public int getLevelTriangleCount(int level) {
+        return levelTriangles[level];
+    }
+
+    /** Nodes drawn at a level since {@link #beginFrame}. */
+    public int getFrameNodeCount(int level) {
+        return frameLevelNodes[level];
+    }
+
+    /** Triangles of every level chosen since {@link #beginFrame}. */
+    public int getFrameTriangleCount() {
+        return frameTriangles;
+    }
+
+    /** Nodes dropped for being too small since {@link #beginFrame}. */
+    public int getFrameCulledCount() {
+        return frameCulled;
+    }
+
+    private void ensureCapacity() {
+        final int nodeCount = scene.getNodeCount();
+        if (nodeLevels.length < nodeCount) {
+            final int oldLength = nodeLevels.length;
+            nodeLevels = Arrays.copyOf(nodeLevels, nodeCount);
+            Arrays.fill(nodeLevels, oldLength, nodeCount, CULLED);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.jr3dL.android.scene;
+
+import java.util.Arrays;
+
+import com.jr3dL.android.data.MeshData;
+import com.jr3dL.android.math.Matrix4;
+
+/**
+ * Finds the scene node under a point on the screen.
+ *
+ * The point is unprojected through the inverse of the projection * view
+ * matrix into a ray from the near to the far plane. The {@link Bvh} narrows
+ * the nodes down to those whose world box the ray crosses, and each of
+ * those is tested exactly: the ray is taken into the node's local space
+ * through the inverse of its model matrix and intersected with the mesh's
+ * local box, so rotated and scaled nodes are hit exactly where they are
+ * drawn.
+ *
+ * Picking is pure Java and allocates nothing, so it can run on the GL
+ * thread between frames or off device.
+ */
+public class Picker implements Bvh.RayTest {
+    private static final int BOUNDS_SIZE = 6;
+    private static final int MATRIX_SIZE = TransformCache.MATRIX_SIZE;
+
+    private final Scene scene;
+    private final Bvh bvh;
+
+    /** Local bounds per mesh, min x, y, z then max x, y, z. */
+    private float[] meshBounds = new float[0];
+
+    private final float[] inverseViewProjection = new float[MATRIX_SIZE];
+    /** Inverse model matrix of the node being tested. */
+    private final float[] inverseWorld = new float[MATRIX_SIZE];
+    private boolean invertible;
+
+    /** Model matrices of the pick in progress. */
+    private float[] worldMatrices;
+
+    /** Ray of the last pick: origin at the near plane, direction to the far plane. */
+    private final float[] ray = new float[6];
+    private float hitDistance = Float.POSITIVE_INFINITY;
+
+    public Picker(Scene scene, Bvh bvh) {
+        this.scene = scene;
+        this.bvh = bvh;
+    }
+
+    /** Takes a mesh's local bounds from its vertex positions. */
+    public void setMeshBounds(int mesh, MeshData data) {
+        if ((mesh + 1) * BOUNDS_SIZE > meshBounds.length) {
+            meshBounds = Arrays.copyOf(meshBounds, (mesh + 1) * BOUNDS_SIZE);
+        }
+        data.computeBounds(meshBounds, mesh * BOUNDS_SIZE);
+    }
+
+    /**
+     * Sets the projection * view matrix picks are made through. Returns
+     * false, and picks find nothing, if it can't be inverted.
+     */
+    public boolean setViewProjection(float[] viewProjection) {
+        invertible = Matrix4.invert(inverseViewProjection, 0, viewProjection, 0);
+        return invertible;
+    }
+
+    /**
+     * Picks the node under a point in window coordinates, with y growing
+     * down as in touch events, on a viewport of the given size. The model
+     * matrices must be the ones the BVH was last built or refit from.
+     */
+    public int pick(float[] worldMatrices, float x, float y, int width, int height) {
+        return pickNdc(worldMatrices, 2.0f * x / width - 1.0f, 1.0f - 2.0f * y / height);
+    }
+
+    /** Picks the node under a point in normalized device coordinates. */
+    public int pickNdc(float[] worldMatrices, float ndcX, float ndcY) {
+        hitDistance = Float.POSITIVE_INFINITY;
+        if (!invertible) {
+            return -1;
+        }
+        unproject(ndcX, ndcY, -1.0f, ray, 0);
+        unproject(ndcX, ndcY, 1.0f, ray, 3);
+        ray[3] -= ray[0];
+        ray[4] -= ray[1];
+        ray[5] -= ray[2];
+
+        // Distances along the ray run from 0 at the near plane to 1 at the far plane.
+        this.worldMatrices = worldMatrices;
+        final int node = bvh.raycast(ray[0], ray[1], ray[2], ray[3], ray[4], ray[5], 1.0f, this);
+        this.worldMatrices = null;
+        if (node >= 0) {
+            hitDistance = bvh.getHitDistance();
+        }
+        return node;
+    }
+
+    /**
+     * Where along the last pick's ray the node was hit, from 0 at the near
+     * plane to 1 at the far plane, or infinity if nothing was hit.
+     */
+    public float getHitDistance() {
+        return hitDistance;
+    }
+
+    /**
+     * Writes the last pick's ray: its origin on the near plane, then the
+     * direction to the far plane, six floats in all.
+     */
+    public void getRay(float[] out, int offset) {
+        System.arraycopy(ray, 0, out, offset, ray.length);
+    }
+
+    /** Writes the world-space point the last pick hit. */
+    public void getHitPoint(float[] point, int offset) {
+        point[offset] = ray[0] + ray[3] * hitDistance;
+        point[offset + 1] = ray[1] + ray[4] * hitDistance;
+        point[offset + 2] = ray[2] + ray[5] * hitDistance;
+    }
+
+    /** Intersects the ray with a node's oriented box, under the pick's model matrices. */
+    @Override
+    public float intersect(int node, float originX, float originY, float originZ,
+        float directionX, float directionY, float directionZ, float maxDistance) {
+        return intersect(worldMatrices, node, originX, originY, originZ,
+            directionX, directionY, directionZ, maxDistance);
+    }
+
+    /**
+     * Intersects a ray with a node's oriented box under the given model
+     * matrices, without the BVH. Returns the distance along the ray of the
+     * first hit, at most maxDistance, or infinity for none. Affine maps keep
+     * ratios along a line, so the distance found in local space is the
+     * distance along the world ray.
+     */
+    public float intersect(float[] worldMatrices, int node, float originX, float originY,
+        float originZ, float directionX, float directionY, float directionZ, float maxDistance) {
+        final float[] i = inverseWorld;
+        if (!Matrix4.invertAffine(i, 0, worldMatrices, node * MATRIX_SIZE)) {
+            return Float.POSITIVE_INFINITY;
+        }
+        final float localOriginX = i[0] * originX + i[4] * originY + i[8] * originZ + i[12];
+        final float localOriginY = i[1] * originX + i[5] * originY + i[9] * originZ + i[13];
+        final float localOriginZ = i[2] * originX + i[6] * originY + i[10] * originZ + i[14];
+        final float localDirectionX = i[0] * directionX + i[4] * directionY + i[8] * directionZ;
+        final float localDirectionY = i[1] * directionX + i[5] * directionY + i[9] * directionZ;
+        final float localDirectionZ = i[2] * directionX + i[6] * directionY + i[10] * directionZ;
+
+        final int b = scene.getMeshes()[node] * BOUNDS_SIZE;
+        float near = 0.0f;
+        float far = maxDistance;
+        final float[] bounds = meshBounds;
+        final float inverseX = 1.0f / localDirectionX;
+        float t1 = (bounds[b] - localOriginX) * inverseX;
+        float t2 = (bounds[b + 3] - localOriginX) * inverseX;
+        near = Math.max(near, Math.min(t1, t2));
+        far = Math.min(far, Math.max(t1, t2));
+        final float inverseY = 1.0f / localDirectionY;
+        t1 = (bounds[b + 1] - localOriginY) * inverseY;
+        t2 = (bounds[b + 4] - localOriginY) * inverseY;
+        near = Math.max(near, Math.min(t1, t2));
+        far = Math.min(far, Math.max(t1, t2));
+        final float inverseZ = 1.0f / localDirectionZ;
+        t1 = (bounds[b + 2] - localOriginZ) * inverseZ;
+        t2 = (bounds[b + 5] - localOriginZ) * inverseZ;
+        near = Math.max(near, Math.min(t1, t2));
+        far = Math.min(far, Math.max(t1, t2));
+        return near <= far ? near : Float.POSITIVE_INFINITY;
+    }
+
+    /** Takes a point in normalized device coordinates back to world space. */
+    private void unproject(float x, float y, float z, float[] out, int offset) {
+        final float[] m = inverseViewProjection;
+        final float w = m[3] * x + m[7] * y + m[11] * z + m[15];
+        final float scale = 1.0f / w;
+        out[offset] = (m[0] * x + m[4] * y + m[8] * z + m[12]) * scale;
+        out[offset + 1] = (m[1] * x + m[5] * y + m[9] * z + m[13]) * scale;
+        out[offset + 2] = (m[2] * x + m[6] * y + m[10] * z + m[14]) * scale;
+    }
+}
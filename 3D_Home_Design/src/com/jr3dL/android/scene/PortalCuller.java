@@ -0,0 +1,353 @@
+package com.jr3dL.android.scene;
+
+import java.util.Arrays;
+
+/**
+ * Finds the rooms of a {@link CellGraph} that can be seen from the camera
+ * and the nodes inside them.
+ *
+ * Starting from the camera's cell with the view frustum, every portal of a
+ * visible cell is clipped against the current frustum. Whatever is left of
+ * it narrows the frustum to the planes through the eye and the clipped
+ * portal's edges, and the cell behind it is visited with that frustum, and
+ * so on through the house. A room hidden behind walls is never reached.
+ *
+ * Every node is assigned to the one cell its world box lies in. Nodes that
+ * span several cells, such as the wall between two rooms, or lie outside
+ * every cell are shared and treated as always visible; the frustum test
+ * still applies to them. With the camera outside every cell, all cells are
+ * treated as visible.
+ *
+ * Traversal works on preallocated arrays and allocates nothing per frame.
+ */
+public class PortalCuller {
+    /** Portals deep a path through the house may go. */
+    public static final int MAX_DEPTH = 16;
+
+    private static final int PLANE_SIZE = 4;
+    /** A quad clipped by n planes has at most 4 + n corners. */
+    private static final int MAX_CORNERS = 4 + FrustumCuller.PLANE_COUNT + 8;
+    /** One plane per clipped portal edge, plus the portal's own plane. */
+    private static final int MAX_PLANES = MAX_CORNERS + 1;
+    /** How close the eye may come to a portal before it is simply passed through. */
+    private static final float PORTAL_EPSILON = 1e-3f;
+
+    private final Scene scene;
+    private final CellGraph cells;
+
+    /** Cell of each node, or -1 if it is shared. */
+    private int[] nodeCells = new int[0];
+    private int[] cellVisibleFrame = new int[0];
+    private boolean[] cellOnPath = new boolean[0];
+    private int frame;
+    private int cameraCell = -1;
+    private int visibleCellCount;
+    private int visitedPortalCount;
+
+    /** Plane sets per depth, {@link #MAX_PLANES} planes of x, y, z, w each. */
+    private final float[] planes = new float[(MAX_DEPTH + 1) * MAX_PLANES * PLANE_SIZE];
+    private final int[] planeCounts = new int[MAX_DEPTH + 1];
+    private final float[] polygon = new float[MAX_CORNERS * 3];
+    private final float[] clipped = new float[MAX_CORNERS * 3];
+    private final float[] nodeBounds = new float[CellGraph.BOUNDS_SIZE];
+
+    private float eyeX;
+    private float eyeY;
+    private float eyeZ;
+
+    public PortalCuller(Scene scene) {
+        this.scene = scene;
+        this.cells = scene.getCells();
+    }
+
+    /** Whether the scene has any cells to cull with. */
+    public boolean isEnabled() {
+        return cells.getCellCount() > 0;
+    }
+
+    /**
+     * Assigns the given nodes to cells from their world bounds, such as the
+     * nodes a {@link TransformCache} update changed.
+     */
+    public void updateNodes(FrustumCuller bounds, int[] nodes, int nodeCount) {
+        ensureCapacity();
+        final float[] scratch = nodeBounds;
+        final float[] cellBounds = cells.getCellBounds();
+        for (int i = 0; i < nodeCount; i++) {
+            final int node = nodes[i];
+            bounds.getBounds(node, scratch, 0);
+            int found = -1;
+            for (int cell = 0; cell < cells.getCellCount(); cell++) {
+                final int b = cell * CellGraph.BOUNDS_SIZE;
+                if (scratch[0] >= cellBounds[b] && scratch[3] <= cellBounds[b + 3]
+                    && scratch[1] >= cellBounds[b + 1] && scratch[4] <= cellBounds[b + 4]
+                    && scratch[2] >= cellBounds[b + 2] && scratch[5] <= cellBounds[b + 5]) {
+                    found = cell;
+                    break;
+                }
+            }
+            nodeCells[node] = found;
+        }
+    }
+
+    /**
+     * Finds the visible cells for an eye position and the view frustum the
+     * given culler currently holds.
+     */
+    public void update(FrustumCuller frustum, float eyeX, float eyeY, float eyeZ) {
+        ensureCapacity();
+        frame++;
+        visibleCellCount = 0;
+        visitedPortalCount = 0;
+        this.eyeX = eyeX;
+        this.eyeY = eyeY;
+        this.eyeZ = eyeZ;
+        cameraCell = cells.findCell(eyeX, eyeY, eyeZ);
+        if (cameraCell < 0) {
+            for (int cell = 0; cell < cells.getCellCount(); cell++) {
+                cellVisibleFrame[cell] = frame;
+            }
+            visibleCellCount = cells.getCellCount();
+            return;
+        }
+        frustum.getPlanes(planes, 0);
+        planeCounts[0] = FrustumCuller.PLANE_COUNT;
+        visit(cameraCell, 0);
+    }
+
+    /** Camera position is inside, or -1 if it is outside every cell. */
+    public int getCameraCell() {
+        return cameraCell;
+    }
+
+    public boolean isCellVisible(int cell) {
+        return cellVisibleFrame[cell] == frame;
+    }
+
+    /** Whether the node is in a visible cell or shared between cells. */
+    public boolean isNodeVisible(int node) {
+        final int cell = node < nodeCells.length ? nodeCells[node] : -1;
+        return cell < 0 || cellVisibleFrame[cell] == frame;
+    }
+
+    /** The cell a node was assigned to, or -1 if it is shared. */
+    public int getNodeCell(int node) {
+        return node < nodeCells.length ? nodeCells[node] : -1;
+    }
+
+    /** Cell of each node, -1 for shared, as of the last {@link #updateNodes}. */
+    public int[] getNodeCells() {
+        return nodeCells;
+    }
+
+    public int getVisibleCellCount() {
+        return visibleCellCount;
+    }
+
+    /** Portals clipped against a frustum during the last update. */
+    public int getVisitedPortalCount() {
+        return visitedPortalCount;
+    }
+
+    /** Marks a cell visible and looks through its portals with the planes at depth. */
+    private void visit(int cell, int depth) {
+        if (cellVisibleFrame[cell] != frame) {
+            cellVisibleFrame[cell] = frame;
+            visibleCellCount++;
+        }
+        if (depth == MAX_DEPTH) {
+            return;
+        }
+        cellOnPath[cell] = true;
+        for (int link = cells.getFirstLink(cell); link >= 0; link = cells.getNextLink(link)) {
+            final int next = cells.getLinkedCell(link);
+            if (cellOnPath[next]) {
+                continue;
+            }
+            visitedPortalCount++;
+            if (narrow(link >> 1, depth)) {
+                visit(next, depth + 1);
+            }
+        }
+        cellOnPath[cell] = false;
+    }
+
+    /**
+     * Clips a portal against the planes at depth and writes the frustum
+     * through what is left of it at depth + 1. Returns false if nothing of
+     * the portal can be seen.
+     */
+    private boolean narrow(int portal, int depth) {
+        final float[] corners = cells.getPortalCorners();
+        final int c = portal * CellGraph.PORTAL_SIZE;
+        System.arraycopy(corners, c, polygon, 0, CellGraph.PORTAL_SIZE);
+        int count = CellGraph.PORTAL_CORNERS;
+
+        final int base = depth * MAX_PLANES * PLANE_SIZE;
+        for (int plane = 0; plane < planeCounts[depth] && count >= 3; plane++) {
+            count = clip(polygon, count, planes, base + plane * PLANE_SIZE);
+            if (count < 0) {
+                // Too many corners to narrow with; stay conservative.
+                passThrough(depth);
+                return true;
+            }
+        }
+        if (count < 3) {
+            return false;
+        }
+
+        // The portal's own plane, facing away from the eye, keeps what is in
+        // front of the portal out of the cell behind it.
+        final float ax = corners[c + 3] - corners[c];
+        final float ay = corners[c + 4] - corners[c + 1];
+        final float az = corners[c + 5] - corners[c + 2];
+        final float bx = corners[c + 6] - corners[c];
+        final float by = corners[c + 7] - corners[c + 1];
+        final float bz = corners[c + 8] - corners[c + 2];
+        float nx = ay * bz - az * by;
+        float ny = az * bx - ax * bz;
+        float nz = ax * by - ay * bx;
+        final float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (length == 0.0f) {
+            return false;
+        }
+        nx /= length;
+        ny /= length;
+        nz /= length;
+        float nw = -(nx * corners[c] + ny * corners[c + 1] + nz * corners[c + 2]);
+        float eyeDistance = nx * eyeX + ny * eyeY + nz * eyeZ + nw;
+        if (eyeDistance > 0.0f) {
+            nx = -nx;
+            ny = -ny;
+            nz = -nz;
+            nw = -nw;
+            eyeDistance = -eyeDistance;
+        }
+
+        if (eyeDistance > -PORTAL_EPSILON) {
+            // Standing in the doorway: the edge planes would be degenerate,
+            // so see through with the frustum as it is.
+            passThrough(depth);
+            return true;
+        }
+
+        // Planes through the eye and each clipped edge, turned to face the
+        // middle of the polygon.
+        float centerX = 0.0f;
+        float centerY = 0.0f;
+        float centerZ = 0.0f;
+        for (int i = 0; i < count; i++) {
+            centerX += polygon[i * 3];
+            centerY += polygon[i * 3 + 1];
+            centerZ += polygon[i * 3 + 2];
+        }
+        centerX /= count;
+        centerY /= count;
+        centerZ /= count;
+        final int next = (depth + 1) * MAX_PLANES * PLANE_SIZE;
+        int planeCount = 0;
+        for (int i = 0; i < count; i++) {
+            final int j = (i + 1) % count;
+            final float ux = polygon[i * 3] - eyeX;
+            final float uy = polygon[i * 3 + 1] - eyeY;
+            final float uz = polygon[i * 3 + 2] - eyeZ;
+            final float vx = polygon[j * 3] - eyeX;
+            final float vy = polygon[j * 3 + 1] - eyeY;
+            final float vz = polygon[j * 3 + 2] - eyeZ;
+            float px = uy * vz - uz * vy;
+            float py = uz * vx - ux * vz;
+            float pz = ux * vy - uy * vx;
+            final float planeLength = (float) Math.sqrt(px * px + py * py + pz * pz);
+            if (planeLength < 1e-12f) {
+                continue;
+            }
+            px /= planeLength;
+            py /= planeLength;
+            pz /= planeLength;
+            float pw = -(px * eyeX + py * eyeY + pz * eyeZ);
+            if (px * centerX + py * centerY + pz * centerZ + pw < 0.0f) {
+                px = -px;
+                py = -py;
+                pz = -pz;
+                pw = -pw;
+            }
+            setPlane(next + planeCount * PLANE_SIZE, px, py, pz, pw);
+            planeCount++;
+        }
+        setPlane(next + planeCount * PLANE_SIZE, nx, ny, nz, nw);
+        planeCounts[depth + 1] = planeCount + 1;
+        return true;
+    }
+
+    /** Uses the planes at depth unchanged at depth + 1. */
+    private void passThrough(int depth) {
+        final int base = depth * MAX_PLANES * PLANE_SIZE;
+        System.arraycopy(planes, base, planes, base + MAX_PLANES * PLANE_SIZE,
+            planeCounts[depth] * PLANE_SIZE);
+        planeCounts[depth + 1] = planeCounts[depth];
+    }
+
+    /**
+     * Clips a convex polygon in place to the positive side of a plane and
+     * returns its new corner count, or -1 if it would have more than
+     * {@link #MAX_CORNERS}.
+     */
+    private int clip(float[] points, int count, float[] planeArray, int p) {
+        final float px = planeArray[p];
+        final float py = planeArray[p + 1];
+        final float pz = planeArray[p + 2];
+        final float pw = planeArray[p + 3];
+        int out = 0;
+        for (int i = 0; i < count; i++) {
+            final int j = (i + 1) % count;
+            final float di = px * points[i * 3] + py * points[i * 3 + 1]
+                + pz * points[i * 3 + 2] + pw;
+            final float dj = px * points[j * 3] + py * points[j * 3 + 1]
+                + pz * points[j * 3 + 2] + pw;
+            if (di >= 0.0f) {
+                if (out == MAX_CORNERS) {
+                    return -1;
+                }
+                clipped[out * 3] = points[i * 3];
+                clipped[out * 3 + 1] = points[i * 3 + 1];
+                clipped[out * 3 + 2] = points[i * 3 + 2];
+                out++;
+            }
+            if ((di >= 0.0f) != (dj >= 0.0f)) {
+                if (out == MAX_CORNERS) {
+                    return -1;
+                }
+                final float t = di / (di - dj);
+                clipped[out * 3] = points[i * 3] + (points[j * 3] - points[i * 3]) * t;
+                clipped[out * 3 + 1] = points[i * 3 + 1]
+                    + (points[j * 3 + 1] - points[i * 3 + 1]) * t;
+                clipped[out * 3 + 2] = points[i * 3 + 2]
+                    + (points[j * 3 + 2] - points[i * 3 + 2]) * t;
+                out++;
+            }
+        }
+        System.arraycopy(clipped, 0, points, 0, out * 3);
+        return out;
+    }
+
+    private void setPlane(int p, float x, float y, float z, float w) {
+        planes[p] = x;
+        planes[p + 1] = y;
+        planes[p + 2] = z;
+        planes[p + 3] = w;
+    }
+
+    private void ensureCapacity() {
+        final int nodeCount = scene.getNodeCount();
+        if (nodeCells.length < nodeCount) {
+            final int oldCount = nodeCells.length;
+            nodeCells = Arrays.copyOf(nodeCells, nodeCount);
+            Arrays.fill(nodeCells, oldCount, nodeCount, -1);
+        }
+        final int cellCount = cells.getCellCount();
+        if (cellVisibleFrame.length < cellCount) {
+            cellVisibleFrame = Arrays.copyOf(cellVisibleFrame, cellCount);
+            cellOnPath = Arrays.copyOf(cellOnPath, cellCount);
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package com.jr3dL.android.scene;
+
+import java.util.Arrays;
+
+/**
+ * Flat, array-backed description of a house scene. Every node is an index
+ * into parallel primitive arrays rather than an object, so a scene with
+ * thousands of walls and pieces of furniture is a handful of allocations and
+ * can be walked every frame without creating garbage.
+ *
+ * A node's model matrix is built the same way the renderer always has:
+ * identity, translate, scale, then rotate about an axis.
+ */
+public class Scene {
+    /** The node never moves once loaded. */
+    public static final int FLAG_STATIC = 1;
+    /** The node's rotation angle is driven by the animation clock. */
+    public static final int FLAG_SPIN = 2;
+    /**
+     * A small piece drawn on its own rather than batched, so its level of
+     * detail can be chosen or it can be dropped when it covers few pixels.
+     */
+    public static final int FLAG_DETAIL = 4;
+
+    /** Shading bit of a material that samples a texture. */
+    public static final int SHADING_TEXTURED = 1;
+    /** Shading bit of a material that takes the scene's lights. */
+    public static final int SHADING_LIT = 2;
+    /** Shadings are below this. */
+    public static final int SHADING_COUNT = 4;
+
+    public static final int TRANSLATION_SIZE = 3;
+    public static final int SCALE_SIZE = 3;
+    /** Angle in degrees followed by the rotation axis. */
+    public static final int ROTATION_SIZE = 4;
+    /** Texture region of a material: u0, v0, u1, v1. */
+    public static final int REGION_SIZE = 4;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int nodeCount;
+    private float[] translations;
+    private float[] scales;
+    private float[] rotations;
+    private int[] meshes;
+    private int[] materials;
+    private int[] flags;
+
+    private int meshCount;
+    private String[] meshNames = new String[4];
+
+    private int materialCount;
+    private String[] materialNames = new String[4];
+    private String[] materialTextures = new String[4];
+    private int[] materialPages = new int[4];
+    private int[] materialShadings = new int[4];
+    private float[] materialRegions = new float[4 * REGION_SIZE];
+
+    private final CellGraph cells = new CellGraph();
+
+    public Scene() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public Scene(int nodeCapacity) {
+        final int capacity = Math.max(1, nodeCapacity);
+        translations = new float[capacity * TRANSLATION_SIZE];
+        scales = new float[capacity * SCALE_SIZE];
+        rotations = new float[capacity * ROTATION_SIZE];
+        meshes = new int[capacity];
+        materials = new int[capacity];
+        flags = new int[capacity];
+    }
+
+    /**
+     * Registers a mesh name and returns its index. Registering the same name
+     * twice returns the existing index.
+     */
+    public int addMesh(String name) {
+        final int existing = findMesh(name);
+        if (existing >= 0) {
+            return existing;
+        }
+        if (meshCount == meshNames.length) {
+            meshNames = Arrays.copyOf(meshNames, meshCount * 2);
+        }
+        meshNames[meshCount] = name;
+        return meshCount++;
+    }
+
+    /** Registers a lit material; see {@link #addMaterial(String, String, boolean)}. */
+    public int addMaterial(String name, String texture) {
+        return addMaterial(name, texture, true);
+    }
+
+    /**
+     * Registers a material that samples the given texture, or null for
+     * none, and returns its index. Registering the same name twice replaces
+     * the texture and lighting. The material starts out on a page of its
+     * own, numbered like the material, covering all of it.
+     */
+    public int addMaterial(String name, String texture, boolean lit) {
+        final int shading = (texture != null ? SHADING_TEXTURED : 0) | (lit ? SHADING_LIT : 0);
+        final int existing = findMaterial(name);
+        if (existing >= 0) {
+            materialTextures[existing] = texture;
+            materialShadings[existing] = shading;
+            return existing;
+        }
+        if (materialCount == materialNames.length) {
+            materialNames = Arrays.copyOf(materialNames, materialCount * 2);
+            materialTextures = Arrays.copyOf(materialTextures, materialCount * 2);
+            materialPages = Arrays.copyOf(materialPages, materialCount * 2);
+            materialShadings = Arrays.copyOf(materialShadings, materialCount * 2);
+            materialRegions = Arrays.copyOf(materialRegions, materialCount * 2 * REGION_SIZE);
+        }
+        materialNames[materialCount] = name;
+        materialTextures[materialCount] = texture;
+        materialShadings[materialCount] = shading;
+        setMaterialRegion(materialCount, materialCount, 0.0f, 0.0f, 1.0f, 1.0f);
+        return materialCount++;
+    }
+
+    /**
+     * Places a material's texture on a texture page, such as a page of a
+     * texture atlas other materials share, covering the given region of it.
+     * Materials on the same page draw without switching textures, so their
+     * batched geometry merges. Set before the scene is first drawn.
+     */
+    public void setMaterialRegion(int material, int page, float u0, float v0, float u1,
+        float v1) {
+        final int r = material * REGION_SIZE;
+        materialPages[material] = page;
+        materialRegions[r] = u0;
+        materialRegions[r + 1] = v0;
+        materialRegions[r + 2] = u1;
+        materialRegions[r + 3] = v1;
+    }
+
+    /**
+     * Appends a node and returns its index.
+     */
+    public int addNode(int mesh, int material,
+        float tx, float ty, float tz,
+        float sx, float sy, float sz,
+        float angle, float ax, float ay, float az,
+        int nodeFlags) {
+        if (mesh < 0 || mesh >= meshCount) {
+            throw new IllegalArgumentException("Unknown mesh: " + mesh);
+        }
+        if (material < 0 || material >= materialCount) {
+            throw new IllegalArgumentException("Unknown material: " + material);
+        }
+        ensureCapacity(nodeCount + 1);
+
+        final int node = nodeCount++;
+        int t = node * TRANSLATION_SIZE;
+        translations[t] = tx;
+        translations[t + 1] = ty;
+        translations[t + 2] = tz;
+
+        int s = node * SCALE_SIZE;
+        scales[s] = sx;
+        scales[s + 1] = sy;
+        scales[s + 2] = sz;
+
+        int r = node * ROTATION_SIZE;
+        rotations[r] = angle;
+        rotations[r + 1] = ax;
+        rotations[r + 2] = ay;
+        rotations[r + 3] = az;
+
+        meshes[node] = mesh;
+        materials[node] = material;
+        flags[node] = nodeFlags;
+        return node;
+    }
+
+    /**
+     * Grows the node arrays so that at least the given number of nodes fit
+     * without further reallocation.
+     */
+    public void ensureCapacity(int nodes) {
+        if (nodes <= meshes.length) {
+            return;
+        }
+        final int capacity = Math.max(nodes, meshes.length * 2);
+        translations = Arrays.copyOf(translations, capacity * TRANSLATION_SIZE);
+        scales = Arrays.copyOf(scales, capacity * SCALE_SIZE);
+        rotations = Arrays.copyOf(rotations, capacity * ROTATION_SIZE);
+        meshes = Arrays.copyOf(meshes, capacity);
+        materials = Arrays.copyOf(materials, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+    }
+
+    public int findMesh(String name) {
+        for (int i = 0; i < meshCount; i++) {
+            if (meshNames[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int findMaterial(String name) {
+        for (int i = 0; i < materialCount; i++) {
+            if (materialNames[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /** Node translations, {@link #TRANSLATION_SIZE} floats per node. */
+    public float[] getTranslations() {
+        return translations;
+    }
+
+    /** Node scales, {@link #SCALE_SIZE} floats per node. */
+    public float[] getScales() {
+        return scales;
+    }
+
+    /** Node rotations, {@link #ROTATION_SIZE} floats per node. */
+    public float[] getRotations() {
+        return rotations;
+    }
+
+    public int[] getMeshes() {
+        return meshes;
+    }
+
+    public int[] getMaterials() {
+        return materials;
+    }
+
+    public int[] getFlags() {
+        return flags;
+    }
+
+    public int getMeshCount() {
+        return meshCount;
+    }
+
+    public String getMeshName(int mesh) {
+        return meshNames[mesh];
+    }
+
+    public int getMaterialCount() {
+        return materialCount;
+    }
+
+    public String getMaterialName(int material) {
+        return materialNames[material];
+    }
+
+    /** The drawable a material samples, or null if it is untextured. */
+    public String getMaterialTexture(int material) {
+        return materialTextures[material];
+    }
+
+    /**
+     * The shading of every material, {@link #SHADING_TEXTURED} and
+     * {@link #SHADING_LIT} bits, which picks the cheapest program that
+     * draws it.
+     */
+    public int[] getMaterialShadings() {
+        return materialShadings;
+    }
+
+    /** The texture page of every material. */
+    public int[] getMaterialPages() {
+        return materialPages;
+    }
+
+    /** The region of its page every material covers, {@link #REGION_SIZE} floats each. */
+    public float[] getMaterialRegions() {
+        return materialRegions;
+    }
+
+    /** One more than the highest page any material is on. */
+    public int getPageCount() {
+        int count = 0;
+        for (int i = 0; i < materialCount; i++) {
+            count = Math.max(count, materialPages[i] + 1);
+        }
+        return count;
+    }
+
+    /** The rooms and portals of the house; empty if the scene declares none. */
+    public CellGraph getCells() {
+        return cells;
+    }
+}
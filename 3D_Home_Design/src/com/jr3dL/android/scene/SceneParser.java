@@ -0,0 +1,362 @@
+package com.jr3dL.android.scene;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+/**
+ * Streaming parser for the line based scene format:
+ *
+ * <pre>
+ * # comment
+ * mesh     &lt;name&gt;
+ * material &lt;name&gt; &lt;texture|-&gt; [unlit]
+ * node     &lt;mesh&gt; &lt;material&gt; tx ty tz  sx sy sz  angle ax ay az  [static|spin|detail]
+ * cell     &lt;name&gt; minx miny minz  maxx maxy maxz
+ * portal   &lt;cell&gt; &lt;cell&gt; x0 y0 z0  x1 y1 z1  x2 y2 z2  x3 y3 z3
+ * </pre>
+ *
+ * Input is read in fixed-size chunks and tokenized in place; numbers are
+ * parsed straight from the character buffer, so the only allocations while
+ * loading are the growing {@link Scene} arrays and the mesh/material names.
+ */
+public class SceneParser {
+    private static final int CHUNK_SIZE = 8192;
+    private static final int MAX_TOKENS = 16;
+    private static final int NODE_NUMBERS = 10;
+    private static final int CELL_NUMBERS = CellGraph.BOUNDS_SIZE;
+    private static final int PORTAL_NUMBERS = CellGraph.PORTAL_SIZE;
+
+    private final char[] chunk = new char[CHUNK_SIZE];
+    private char[] line = new char[256];
+    private int lineLength;
+    private int lineNumber;
+
+    private final int[] tokenStart = new int[MAX_TOKENS];
+    private final int[] tokenLength = new int[MAX_TOKENS];
+    private int tokenCount;
+
+    private final float[] numbers = new float[PORTAL_NUMBERS];
+
+    private Scene scene;
+
+    /**
+     * Parses a scene from a UTF-8 stream. The stream is closed when done.
+     */
+    public static Scene parse(InputStream inputStream) {
+        try {
+            return new SceneParser().parse(new InputStreamReader(inputStream, "UTF-8"),
+                new Scene());
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read scene", e);
+        } finally {
+            try {
+                inputStream.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Parses every line of the reader into the given scene and returns it.
+     */
+    public Scene parse(Reader reader, Scene target) throws IOException {
+        scene = target;
+        lineLength = 0;
+        lineNumber = 0;
+
+        int read;
+        while ((read = reader.read(chunk, 0, CHUNK_SIZE)) != -1) {
+            for (int i = 0; i < read; i++) {
+                final char c = chunk[i];
+                if (c == '\n') {
+                    endLine();
+                } else if (c != '\r') {
+                    if (lineLength == line.length) {
+                        final char[] grown = new char[line.length * 2];
+                        System.arraycopy(line, 0, grown, 0, lineLength);
+                        line = grown;
+                    }
+                    line[lineLength++] = c;
+                }
+            }
+        }
+        if (lineLength > 0) {
+            endLine();
+        }
+
+        scene = null;
+        return target;
+    }
+
+    private void endLine() {
+        lineNumber++;
+        tokenize();
+        lineLength = 0;
+
+        if (tokenCount == 0) {
+            return;
+        }
+        if (tokenIs(0, "node")) {
+            parseNode();
+        } else if (tokenIs(0, "mesh")) {
+            expectTokens(2);
+            scene.addMesh(tokenString(1));
+        } else if (tokenIs(0, "material")) {
+            parseMaterial();
+        } else if (tokenIs(0, "cell")) {
+            parseCell();
+        } else if (tokenIs(0, "portal")) {
+            parsePortal();
+        } else {
+            throw error("Unknown directive " + tokenString(0));
+        }
+    }
+
+    private void parseMaterial() {
+        if (tokenCount != 3 && tokenCount != 4) {
+            throw error("Expected name, texture or -, and an optional unlit");
+        }
+        if (tokenCount == 4 && !tokenIs(3, "unlit")) {
+            throw error("Unknown material flag " + tokenString(3));
+        }
+        scene.addMaterial(tokenString(1), tokenIs(2, "-") ? null : tokenString(2),
+            tokenCount == 3);
+    }
+
+    private void parseNode() {
+        if (tokenCount != 3 + NODE_NUMBERS && tokenCount != 4 + NODE_NUMBERS) {
+            throw error("Expected mesh, material, " + NODE_NUMBERS
+                + " numbers and an optional flag");
+        }
+
+        final int mesh = findMesh(1);
+        if (mesh < 0) {
+            throw error("Undeclared mesh " + tokenString(1));
+        }
+        final int material = findMaterial(2);
+        if (material < 0) {
+            throw error("Undeclared material " + tokenString(2));
+        }
+
+        for (int i = 0; i < NODE_NUMBERS; i++) {
+            numbers[i] = parseFloat(3 + i);
+        }
+
+        int flags = 0;
+        if (tokenCount == 4 + NODE_NUMBERS) {
+            final int flag = 3 + NODE_NUMBERS;
+            if (tokenIs(flag, "static")) {
+                flags = Scene.FLAG_STATIC;
+            } else if (tokenIs(flag, "spin")) {
+                flags = Scene.FLAG_SPIN;
+            } else if (tokenIs(flag, "detail")) {
+                flags = Scene.FLAG_STATIC | Scene.FLAG_DETAIL;
+            } else {
+                throw error("Unknown node flag " + tokenString(flag));
+            }
+        }
+
+        scene.addNode(mesh, material,
+            numbers[0], numbers[1], numbers[2],
+            numbers[3], numbers[4], numbers[5],
+            numbers[6], numbers[7], numbers[8], numbers[9],
+            flags);
+    }
+
+    private void parseCell() {
+        expectTokens(2 + CELL_NUMBERS);
+        final CellGraph cells = scene.getCells();
+        if (cells.findCell(tokenString(1)) >= 0) {
+            throw error("Duplicate cell " + tokenString(1));
+        }
+        for (int i = 0; i < CELL_NUMBERS; i++) {
+            numbers[i] = parseFloat(2 + i);
+        }
+        cells.addCell(tokenString(1), numbers[0], numbers[1], numbers[2],
+            numbers[3], numbers[4], numbers[5]);
+    }
+
+    private void parsePortal() {
+        expectTokens(3 + PORTAL_NUMBERS);
+        final CellGraph cells = scene.getCells();
+        final int cellA = cells.findCell(tokenString(1));
+        final int cellB = cells.findCell(tokenString(2));
+        if (cellA < 0 || cellB < 0) {
+            throw error("Undeclared cell " + tokenString(cellA < 0 ? 1 : 2));
+        }
+        if (cellA == cellB) {
+            throw error("Portal joins cell " + tokenString(1) + " to itself");
+        }
+        for (int i = 0; i < PORTAL_NUMBERS; i++) {
+            numbers[i] = parseFloat(3 + i);
+        }
+        cells.addPortal(cellA, cellB, numbers, 0);
+    }
+
+    private void tokenize() {
+        tokenCount = 0;
+        int i = 0;
+        while (i < lineLength) {
+            final char c = line[i];
+            if (c == '#') {
+                return;
+            }
+            if (c == ' ' || c == '\t' || c == ',') {
+                i++;
+                continue;
+            }
+            if (tokenCount == MAX_TOKENS) {
+                throw error("Too many tokens");
+            }
+            final int start = i;
+            while (i < lineLength && line[i] != ' ' && line[i] != '\t'
+                && line[i] != ',' && line[i] != '#') {
+                i++;
+            }
+            tokenStart[tokenCount] = start;
+            tokenLength[tokenCount] = i - start;
+            tokenCount++;
+        }
+    }
+
+    private void expectTokens(int count) {
+        if (tokenCount != count) {
+            throw error("Expected " + count + " tokens but found " + tokenCount);
+        }
+    }
+
+    private boolean tokenIs(int token, String value) {
+        final int length = tokenLength[token];
+        if (length != value.length()) {
+            return false;
+        }
+        final int start = tokenStart[token];
+        for (int i = 0; i < length; i++) {
+            if (line[start + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int findMesh(int token) {
+        for (int i = 0; i < scene.getMeshCount(); i++) {
+            if (tokenIs(token, scene.getMeshName(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int findMaterial(int token) {
+        for (int i = 0; i < scene.getMaterialCount(); i++) {
+            if (tokenIs(token, scene.getMaterialName(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private String tokenString(int token) {
+        return new String(line, tokenStart[token], tokenLength[token]);
+    }
+
+    /**
+     * Parses a decimal float such as -4, .02, 1.5f or 2e-3 without creating
+     * a String. Up to 18 significant digits are accumulated exactly, which
+     * covers every hand-written coordinate.
+     */
+    private float parseFloat(int token) {
+        int i = tokenStart[token];
+        int end = i + tokenLength[token];
+        if (end > i && (line[end - 1] == 'f' || line[end - 1] == 'F')) {
+            end--;
+        }
+
+        boolean negative = false;
+        if (i < end && (line[i] == '-' || line[i] == '+')) {
+            negative = line[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean seenDigit = false;
+        boolean seenPoint = false;
+        for (; i < end; i++) {
+            final char c = line[i];
+            if (c >= '0' && c <= '9') {
+                seenDigit = true;
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    if (seenPoint) {
+                        exponent--;
+                    }
+                } else if (!seenPoint) {
+                    exponent++;
+                }
+            } else if (c == '.' && !seenPoint) {
+                seenPoint = true;
+            } else if (c == 'e' || c == 'E') {
+                exponent += parseExponent(token, i + 1, end);
+                i = end;
+            } else {
+                throw error("Malformed number " + tokenString(token));
+            }
+        }
+        if (!seenDigit) {
+            throw error("Malformed number " + tokenString(token));
+        }
+
+        double value = mantissa;
+        if (exponent < 0) {
+            value /= pow10(-exponent);
+        } else if (exponent > 0) {
+            value *= pow10(exponent);
+        }
+        return (float) (negative ? -value : value);
+    }
+
+    private int parseExponent(int token, int i, int end) {
+        boolean negative = false;
+        if (i < end && (line[i] == '-' || line[i] == '+')) {
+            negative = line[i] == '-';
+            i++;
+        }
+        if (i == end) {
+            throw error("Malformed number " + tokenString(token));
+        }
+        int exponent = 0;
+        for (; i < end; i++) {
+            final char c = line[i];
+            if (c < '0' || c > '9') {
+                throw error("Malformed number " + tokenString(token));
+            }
+            exponent = Math.min(exponent * 10 + (c - '0'), 400);
+        }
+        return negative ? -exponent : exponent;
+    }
+
+    private static double pow10(int exponent) {
+        double result = 1.0;
+        double base = 10.0;
+        while (exponent != 0) {
+            if ((exponent & 1) != 0) {
+                result *= base;
+            }
+            base *= base;
+            exponent >>= 1;
+        }
+        return result;
+    }
+
+    private RuntimeException error(String message) {
+        return new RuntimeException("Scene line " + lineNumber + ": " + message);
+    }
+}
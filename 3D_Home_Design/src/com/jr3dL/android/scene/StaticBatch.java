@@ -0,0 +1,385 @@
+package com.jr3dL.android.scene;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import com.jr3dL.android.data.MeshData;
+import com.jr3dL.android.math.Matrix3;
+import com.jr3dL.android.util.BufferHelper;
+
+/**
+ * Pre-transforms every static node of one mesh, other than detail nodes,
+ * into a single interleaved vertex array, grouped by texture page and
+ * material shading, so the whole set draws with one call per page and
+ * shading and a model matrix of identity.
+ * Texture coordinates are mapped into the region of the page each node's
+ * material covers, so materials sharing an atlas page share draws.
+ *
+ * Every node owns a fixed slot in the array. Moving a static node only
+ * rewrites its own slot; adding nodes or changing materials needs a
+ * {@link #build}.
+ *
+ * Nodes can also be split into groups, such as the rooms a
+ * {@link PortalCuller} assigns them to, so each group's ranges can be
+ * skipped as a whole.
+ */
+public class StaticBatch {
+    /** Floats per interleaved vertex, the same layout as {@link MeshData}. */
+    public static final int STRIDE = MeshData.STRIDE;
+    /** Floats per range in {@link #getRangeBounds}. */
+    public static final int BOUNDS_SIZE = 6;
+
+    private final Scene scene;
+    private final int mesh;
+
+    private final float[] sourceVertices;
+    private final short[] sourceIndices;
+    private final int verticesPerNode;
+
+    private float[] vertices = new float[0];
+    private FloatBuffer vertexBuffer;
+    private int vertexCount;
+
+    private int[] slotOfNode = new int[0];
+    private int[] pending = new int[16];
+    private int pendingCount;
+    private int dirtyStart = Integer.MAX_VALUE;
+    private int dirtyEnd;
+
+    /** Group of each node, -1 for none, or null for no grouping at all. */
+    private int[] nodeGroups;
+
+    private int rangeCount;
+    private int[] rangePages = new int[4];
+    private int[] rangeShadings = new int[4];
+    private int[] rangeGroups = new int[4];
+    private int[] rangeFirstVertices = new int[4];
+    private int[] rangeVertexCounts = new int[4];
+    /** World bounds per range, min x, y, z then max x, y, z. */
+    private float[] rangeBounds = new float[4 * BOUNDS_SIZE];
+
+    private final float[] normalMatrix = new float[Matrix3.SIZE];
+
+    /**
+     * Creates a batch for the nodes of the given mesh. The indexed source
+     * geometry is expanded into a plain triangle list per node, so the batch
+     * isn't limited by 16-bit indices however many nodes it holds.
+     */
+    public StaticBatch(Scene scene, int mesh, MeshData source) {
+        this.scene = scene;
+        this.mesh = mesh;
+        this.sourceVertices = source.getVertices();
+        this.sourceIndices = source.getIndices();
+        this.verticesPerNode = source.getIndexCount();
+    }
+
+    /**
+     * Sets the group of every node, -1 for none, read by the next
+     * {@link #build}. Pass null to stop grouping.
+     */
+    public void setNodeGroups(int[] nodeGroups) {
+        this.nodeGroups = nodeGroups;
+    }
+
+    /**
+     * Lays out every static node of the mesh, sorted by group, then by
+     * texture page, then by shading, and bakes their geometry using the
+     * given model matrices.
+     */
+    public void build(float[] worldMatrices) {
+        final int nodeCount = scene.getNodeCount();
+        final int[] meshes = scene.getMeshes();
+        final int[] materials = scene.getMaterials();
+        final int[] flags = scene.getFlags();
+        final int stateCount = scene.getPageCount() * Scene.SHADING_COUNT;
+
+        slotOfNode = new int[nodeCount];
+        Arrays.fill(slotOfNode, -1);
+        pendingCount = 0;
+        rangeCount = 0;
+
+        // Count the nodes of every group, page and shading, ungrouped first.
+        int groupCount = 1;
+        for (int node = 0; node < nodeCount; node++) {
+            groupCount = Math.max(groupCount, groupOf(node) + 2);
+        }
+        final int[] keyStarts = new int[groupCount * stateCount + 1];
+        for (int node = 0; node < nodeCount; node++) {
+            if (isBatched(node, meshes, flags)) {
+                keyStarts[keyOf(node, materials, stateCount) + 1]++;
+            }
+        }
+        for (int key = 0; key < groupCount * stateCount; key++) {
+            keyStarts[key + 1] += keyStarts[key];
+        }
+
+        // Every key is one contiguous range of slots, in node order within it.
+        for (int key = 0; key < groupCount * stateCount; key++) {
+            final int count = keyStarts[key + 1] - keyStarts[key];
+            if (count > 0) {
+                final int state = key % stateCount;
+                addRange(state / Scene.SHADING_COUNT, state % Scene.SHADING_COUNT,
+                    key / stateCount - 1, keyStarts[key] * verticesPerNode,
+                    count * verticesPerNode);
+            }
+        }
+        for (int node = 0; node < nodeCount; node++) {
+            if (isBatched(node, meshes, flags)) {
+                slotOfNode[node] = keyStarts[keyOf(node, materials, stateCount)]++;
+            }
+        }
+        final int slot = keyStarts[groupCount * stateCount];
+
+        vertexCount = slot * verticesPerNode;
+        vertices = new float[vertexCount * STRIDE];
+        vertexBuffer = BufferHelper.newFloatBuffer(Math.max(1, vertices.length));
+
+        for (int node = 0; node < nodeCount; node++) {
+            if (slotOfNode[node] >= 0) {
+                bake(node, worldMatrices);
+            }
+        }
+        vertexBuffer.put(vertices, 0, vertices.length).position(0);
+        for (int range = 0; range < rangeCount; range++) {
+            computeRangeBounds(range);
+        }
+        dirtyStart = Integer.MAX_VALUE;
+        dirtyEnd = 0;
+    }
+
+    /** Whether the node's geometry lives in this batch. */
+    public boolean contains(int node) {
+        return node < slotOfNode.length && slotOfNode[node] >= 0;
+    }
+
+    /**
+     * Queues a batched node whose transform changed. Its slot is rewritten on
+     * the next {@link #update}.
+     */
+    public void invalidate(int node) {
+        if (!contains(node)) {
+            return;
+        }
+        for (int i = 0; i < pendingCount; i++) {
+            if (pending[i] == node) {
+                return;
+            }
+        }
+        if (pendingCount == pending.length) {
+            pending = Arrays.copyOf(pending, pendingCount * 2);
+        }
+        pending[pendingCount++] = node;
+    }
+
+    /**
+     * Rewrites the slots of every invalidated node and copies them into the
+     * vertex buffer. Returns true if anything changed.
+     */
+    public boolean update(float[] worldMatrices) {
+        if (pendingCount == 0) {
+            return false;
+        }
+        for (int i = 0; i < pendingCount; i++) {
+            final int node = pending[i];
+            bake(node, worldMatrices);
+
+            final int floatsPerNode = verticesPerNode * STRIDE;
+            final int start = slotOfNode[node] * floatsPerNode;
+            vertexBuffer.position(start);
+            vertexBuffer.put(vertices, start, floatsPerNode);
+            dirtyStart = Math.min(dirtyStart, start);
+            dirtyEnd = Math.max(dirtyEnd, start + floatsPerNode);
+            computeRangeBounds(rangeOfSlot(slotOfNode[node]));
+        }
+        vertexBuffer.position(0);
+        pendingCount = 0;
+        return true;
+    }
+
+    /**
+     * Returns the first float written since the last {@link #clearDirtyRange},
+     * or -1 if the buffer is unchanged.
+     */
+    public int getDirtyStart() {
+        return dirtyStart == Integer.MAX_VALUE ? -1 : dirtyStart;
+    }
+
+    /** One past the last float written since the last clear. */
+    public int getDirtyEnd() {
+        return dirtyEnd;
+    }
+
+    public void clearDirtyRange() {
+        dirtyStart = Integer.MAX_VALUE;
+        dirtyEnd = 0;
+    }
+
+    /** Interleaved position, color, normal and texture coordinate data. */
+    public FloatBuffer getVertexBuffer() {
+        return vertexBuffer;
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    /** Number of ranges, and therefore draw calls. */
+    public int getRangeCount() {
+        return rangeCount;
+    }
+
+    /** The texture page every node of the range samples. */
+    public int getRangePage(int range) {
+        return rangePages[range];
+    }
+
+    /** The material shading every node of the range has. */
+    public int getRangeShading(int range) {
+        return rangeShadings[range];
+    }
+
+    /** The group the range's nodes belong to, or -1. */
+    public int getRangeGroup(int range) {
+        return rangeGroups[range];
+    }
+
+    public int getRangeFirstVertex(int range) {
+        return rangeFirstVertices[range];
+    }
+
+    public int getRangeVertexCount(int range) {
+        return rangeVertexCounts[range];
+    }
+
+    /**
+     * World bounds of every range, {@link #BOUNDS_SIZE} floats each, as of
+     * the last build or update.
+     */
+    public float[] getRangeBounds() {
+        return rangeBounds;
+    }
+
+    private int rangeOfSlot(int slot) {
+        final int firstVertex = slot * verticesPerNode;
+        int range = 0;
+        while (range + 1 < rangeCount && rangeFirstVertices[range + 1] <= firstVertex) {
+            range++;
+        }
+        return range;
+    }
+
+    /** Recomputes a range's bounds from its baked positions. */
+    private void computeRangeBounds(int range) {
+        float minX = Float.POSITIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY;
+        float minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+        float maxZ = Float.NEGATIVE_INFINITY;
+        final int end = (rangeFirstVertices[range] + rangeVertexCounts[range]) * STRIDE;
+        for (int i = rangeFirstVertices[range] * STRIDE; i < end; i += STRIDE) {
+            minX = Math.min(minX, vertices[i]);
+            minY = Math.min(minY, vertices[i + 1]);
+            minZ = Math.min(minZ, vertices[i + 2]);
+            maxX = Math.max(maxX, vertices[i]);
+            maxY = Math.max(maxY, vertices[i + 1]);
+            maxZ = Math.max(maxZ, vertices[i + 2]);
+        }
+        final int b = range * BOUNDS_SIZE;
+        rangeBounds[b] = minX;
+        rangeBounds[b + 1] = minY;
+        rangeBounds[b + 2] = minZ;
+        rangeBounds[b + 3] = maxX;
+        rangeBounds[b + 4] = maxY;
+        rangeBounds[b + 5] = maxZ;
+    }
+
+    private boolean isBatched(int node, int[] meshes, int[] flags) {
+        return meshes[node] == mesh
+            && (flags[node] & (Scene.FLAG_STATIC | Scene.FLAG_DETAIL)) == Scene.FLAG_STATIC;
+    }
+
+    private int groupOf(int node) {
+        return nodeGroups != null && node < nodeGroups.length ? nodeGroups[node] : -1;
+    }
+
+    private int keyOf(int node, int[] materials, int stateCount) {
+        final int material = materials[node];
+        return (groupOf(node) + 1) * stateCount
+            + scene.getMaterialPages()[material] * Scene.SHADING_COUNT
+            + scene.getMaterialShadings()[material];
+    }
+
+    private void addRange(int page, int shading, int group, int firstVertex, int count) {
+        if (rangeCount == rangePages.length) {
+            rangePages = Arrays.copyOf(rangePages, rangeCount * 2);
+            rangeShadings = Arrays.copyOf(rangeShadings, rangeCount * 2);
+            rangeGroups = Arrays.copyOf(rangeGroups, rangeCount * 2);
+            rangeFirstVertices = Arrays.copyOf(rangeFirstVertices, rangeCount * 2);
+            rangeVertexCounts = Arrays.copyOf(rangeVertexCounts, rangeCount * 2);
+            rangeBounds = Arrays.copyOf(rangeBounds, rangeCount * 2 * BOUNDS_SIZE);
+        }
+        rangePages[rangeCount] = page;
+        rangeShadings[rangeCount] = shading;
+        rangeGroups[rangeCount] = group;
+        rangeFirstVertices[rangeCount] = firstVertex;
+        rangeVertexCounts[rangeCount] = count;
+        rangeCount++;
+    }
+
+    /**
+     * Transforms the source geometry by the node's model matrix into its
+     * slot. Normals go through the inverse transpose of the upper 3x3 so they
+     * stay perpendicular under the non-uniform scales the walls use, and
+     * texture coordinates are mapped into the material's region.
+     */
+    private void bake(int node, float[] worldMatrices) {
+        final int m = node * TransformCache.MATRIX_SIZE;
+        final float[] w = worldMatrices;
+        final int r = scene.getMaterials()[node] * Scene.REGION_SIZE;
+        final float[] regions = scene.getMaterialRegions();
+        final float u0 = regions[r];
+        final float v0 = regions[r + 1];
+        final float uScale = regions[r + 2] - u0;
+        final float vScale = regions[r + 3] - v0;
+        // The unscaled normal matrix is enough: the length it leaves on the
+        // normals drops out when they are renormalized.
+        Matrix3.setUnscaledNormalMatrix(normalMatrix, 0, w, m);
+        final float[] n = normalMatrix;
+
+        int out = slotOfNode[node] * verticesPerNode * STRIDE;
+        for (int v = 0; v < verticesPerNode; v++) {
+            final int in = sourceIndices[v] * STRIDE;
+            final float px = sourceVertices[in + MeshData.POSITION_OFFSET];
+            final float py = sourceVertices[in + MeshData.POSITION_OFFSET + 1];
+            final float pz = sourceVertices[in + MeshData.POSITION_OFFSET + 2];
+            vertices[out] = w[m] * px + w[m + 4] * py + w[m + 8] * pz + w[m + 12];
+            vertices[out + 1] = w[m + 1] * px + w[m + 5] * py + w[m + 9] * pz + w[m + 13];
+            vertices[out + 2] = w[m + 2] * px + w[m + 6] * py + w[m + 10] * pz + w[m + 14];
+
+            System.arraycopy(sourceVertices, in + MeshData.COLOR_OFFSET,
+                vertices, out + MeshData.COLOR_OFFSET, MeshData.COLOR_COMPONENT_COUNT);
+
+            final float nx = sourceVertices[in + MeshData.NORMAL_OFFSET];
+            final float ny = sourceVertices[in + MeshData.NORMAL_OFFSET + 1];
+            final float nz = sourceVertices[in + MeshData.NORMAL_OFFSET + 2];
+            float tx = n[0] * nx + n[3] * ny + n[6] * nz;
+            float ty = n[1] * nx + n[4] * ny + n[7] * nz;
+            float tz = n[2] * nx + n[5] * ny + n[8] * nz;
+            final float length = (float) Math.sqrt(tx * tx + ty * ty + tz * tz);
+            if (length > 0.0f) {
+                tx /= length;
+                ty /= length;
+                tz /= length;
+            }
+            vertices[out + MeshData.NORMAL_OFFSET] = tx;
+            vertices[out + MeshData.NORMAL_OFFSET + 1] = ty;
+            vertices[out + MeshData.NORMAL_OFFSET + 2] = tz;
+
+            final int t = MeshData.TEXTURE_COORDINATES_OFFSET;
+            vertices[out + t] = u0 + sourceVertices[in + t] * uScale;
+            vertices[out + t + 1] = v0 + sourceVertices[in + t + 1] * vScale;
+            out += STRIDE;
+        }
+    }
+}
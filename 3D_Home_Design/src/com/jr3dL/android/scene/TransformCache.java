@@ -0,0 +1,192 @@
+package com.jr3dL.android.scene;
+
+import java.util.Arrays;
+
+import com.jr3dL.android.math.Matrix4;
+
+/**
+ * Caches the model, model-view and model-view-projection matrix of every
+ * scene node. A node's matrices are only rebuilt when the node itself moved
+ * or when the view or projection matrix changed, so a frame where the camera
+ * and the static geometry stand still does no matrix work at all.
+ */
+public class TransformCache {
+    public static final int MATRIX_SIZE = 16;
+
+    private final Scene scene;
+
+    private float[] world = new float[0];
+    private float[] mv = new float[0];
+    private float[] mvp = new float[0];
+    private boolean[] dirty = new boolean[0];
+    private int dirtyCount;
+
+    private boolean viewChanged = true;
+    private boolean projectionChanged = true;
+
+    private int[] changedNodes = new int[0];
+    private int changedCount;
+
+    private int recomputedCount;
+    private int skippedCount;
+
+    public TransformCache(Scene scene) {
+        this.scene = scene;
+        sync();
+    }
+
+    /**
+     * Picks up nodes added to the scene since the last call. New nodes start
+     * out dirty.
+     */
+    public void sync() {
+        final int nodeCount = scene.getNodeCount();
+        final int oldCount = dirty.length;
+        if (nodeCount <= oldCount) {
+            return;
+        }
+        world = Arrays.copyOf(world, nodeCount * MATRIX_SIZE);
+        mv = Arrays.copyOf(mv, nodeCount * MATRIX_SIZE);
+        mvp = Arrays.copyOf(mvp, nodeCount * MATRIX_SIZE);
+        dirty = Arrays.copyOf(dirty, nodeCount);
+        changedNodes = Arrays.copyOf(changedNodes, nodeCount);
+        for (int node = oldCount; node < nodeCount; node++) {
+            markDirty(node);
+        }
+    }
+
+    /** Call whenever the contents of the view matrix change. */
+    public void markViewChanged() {
+        viewChanged = true;
+    }
+
+    /** Call whenever the contents of the projection matrix change. */
+    public void markProjectionChanged() {
+        projectionChanged = true;
+    }
+
+    /** Call after changing a node's translation, scale or rotation directly. */
+    public void markDirty(int node) {
+        if (!dirty[node]) {
+            dirty[node] = true;
+            dirtyCount++;
+        }
+    }
+
+    public boolean isDirty(int node) {
+        return dirty[node];
+    }
+
+    /**
+     * Sets a node's rotation angle, marking it dirty only if it changed.
+     */
+    public void setRotationAngle(int node, float angle) {
+        final float[] rotations = scene.getRotations();
+        final int r = node * Scene.ROTATION_SIZE;
+        if (rotations[r] != angle) {
+            rotations[r] = angle;
+            markDirty(node);
+        }
+    }
+
+    /**
+     * Moves a node, marking it dirty only if it changed.
+     */
+    public void setTranslation(int node, float x, float y, float z) {
+        final float[] translations = scene.getTranslations();
+        final int t = node * Scene.TRANSLATION_SIZE;
+        if (translations[t] != x || translations[t + 1] != y || translations[t + 2] != z) {
+            translations[t] = x;
+            translations[t + 1] = y;
+            translations[t + 2] = z;
+            markDirty(node);
+        }
+    }
+
+    /**
+     * Brings every cached matrix up to date with the scene and the given
+     * view and projection matrices.
+     */
+    public void update(float[] viewMatrix, float[] projectionMatrix) {
+        final int nodeCount = dirty.length;
+        recomputedCount = 0;
+        changedCount = 0;
+
+        if (!viewChanged && !projectionChanged && dirtyCount == 0) {
+            skippedCount = nodeCount;
+            return;
+        }
+
+        final float[] translations = scene.getTranslations();
+        final float[] scales = scene.getScales();
+        final float[] rotations = scene.getRotations();
+        final boolean cameraChanged = viewChanged || projectionChanged;
+
+        for (int node = 0; node < nodeCount; node++) {
+            final boolean nodeDirty = dirty[node];
+            if (!nodeDirty && !cameraChanged) {
+                continue;
+            }
+            final int m = node * MATRIX_SIZE;
+
+            if (nodeDirty) {
+                final int t = node * Scene.TRANSLATION_SIZE;
+                final int s = node * Scene.SCALE_SIZE;
+                final int r = node * Scene.ROTATION_SIZE;
+                Matrix4.setTranslateScaleRotate(world, m,
+                    translations[t], translations[t + 1], translations[t + 2],
+                    scales[s], scales[s + 1], scales[s + 2],
+                    rotations[r], rotations[r + 1], rotations[r + 2], rotations[r + 3]);
+                dirty[node] = false;
+                changedNodes[changedCount++] = node;
+            }
+            if (nodeDirty || viewChanged) {
+                Matrix4.multiply(mv, m, viewMatrix, 0, world, m);
+            }
+            Matrix4.multiply(mvp, m, projectionMatrix, 0, mv, m);
+            recomputedCount++;
+        }
+
+        skippedCount = nodeCount - recomputedCount;
+        dirtyCount = 0;
+        viewChanged = false;
+        projectionChanged = false;
+    }
+
+    /** Model matrices, {@link #MATRIX_SIZE} floats per node. */
+    public float[] getWorldMatrices() {
+        return world;
+    }
+
+    /** Model-view matrices, {@link #MATRIX_SIZE} floats per node. */
+    public float[] getMvMatrices() {
+        return mv;
+    }
+
+    /** Model-view-projection matrices, {@link #MATRIX_SIZE} floats per node. */
+    public float[] getMvpMatrices() {
+        return mvp;
+    }
+
+    /**
+     * Nodes whose model matrix the last update rebuilt, in the first
+     * {@link #getChangedCount} entries.
+     */
+    public int[] getChangedNodes() {
+        return changedNodes;
+    }
+
+    public int getChangedCount() {
+        return changedCount;
+    }
+
+    /** Number of nodes whose matrices were rebuilt by the last update. */
+    public int getRecomputedCount() {
+        return recomputedCount;
+    }
+
+    /** Number of nodes whose cached matrices were reused by the last update. */
+    public int getSkippedCount() {
+        return skippedCount;
+    }
+}
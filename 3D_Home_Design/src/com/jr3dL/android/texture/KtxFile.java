@@ -0,0 +1,78 @@
+package com.jr3dL.android.texture;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reads compressed textures in the KTX 1.1 container: a 64-byte header,
+ * optional key/value data, then each mip level as its byte size followed
+ * by its data, padded to 4 bytes.
+ *
+ * Parsing copies nothing. The levels of the returned image are slices of
+ * the buffer passed in, so a memory-mapped file goes from the page cache
+ * straight to glCompressedTexImage2D.
+ */
+public final class KtxFile {
+    public static final byte[] IDENTIFIER = {
+        (byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n'
+    };
+    /** Written in the file's byte order, so a reader can tell which that was. */
+    public static final int ENDIANNESS = 0x04030201;
+    public static final int HEADER_SIZE = 64;
+
+    private KtxFile() {
+    }
+
+    /**
+     * Reads the compressed 2D texture in the buffer, from its position to
+     * its limit. Throws if it isn't one.
+     */
+    public static TextureImage read(ByteBuffer file) {
+        final ByteBuffer header = file.slice();
+        if (header.remaining() < HEADER_SIZE) {
+            throw new RuntimeException("KTX file too short: " + header.remaining() + " bytes.");
+        }
+        for (int i = 0; i < IDENTIFIER.length; i++) {
+            if (header.get(i) != IDENTIFIER[i]) {
+                throw new RuntimeException("Not a KTX 1.1 file.");
+            }
+        }
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt(12) != ENDIANNESS) {
+            header.order(ByteOrder.BIG_ENDIAN);
+        }
+        final int glType = header.getInt(16);
+        final int glInternalFormat = header.getInt(28);
+        final int width = header.getInt(36);
+        final int height = header.getInt(40);
+        final int depth = header.getInt(44);
+        final int arrayElements = header.getInt(48);
+        final int faces = header.getInt(52);
+        final int levelCount = Math.max(1, header.getInt(56));
+        final int keyValueBytes = header.getInt(60);
+        if (glType != 0) {
+            throw new RuntimeException("KTX file isn't compressed.");
+        }
+        if (depth != 0 || arrayElements != 0 || faces != 1) {
+            throw new RuntimeException("KTX file isn't a single 2D texture.");
+        }
+
+        final ByteBuffer[] levels = new ByteBuffer[levelCount];
+        int offset = HEADER_SIZE + keyValueBytes;
+        for (int level = 0; level < levelCount; level++) {
+            if (offset + 4 > header.limit()) {
+                throw new RuntimeException("KTX file truncated at level " + level + ".");
+            }
+            final int size = header.getInt(offset);
+            offset += 4;
+            if (size < 0 || offset + size > header.limit()) {
+                throw new RuntimeException("KTX file truncated at level " + level + ".");
+            }
+            header.limit(offset + size).position(offset);
+            levels[level] = header.slice();
+            header.limit(header.capacity());
+            offset += (size + 3) & ~3;
+        }
+        return new TextureImage(glInternalFormat, width, height, levels);
+    }
+}
@@ -0,0 +1,115 @@
+package com.jr3dL.android.texture;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The lookup table tools/AtlasBuilder writes next to the atlas pages it
+ * packs drawables into, in the line based format:
+ *
+ * <pre>
+ * # comment
+ * page    &lt;index&gt; &lt;file name without extension&gt; &lt;width&gt; &lt;height&gt;
+ * texture &lt;drawable name&gt; &lt;page&gt; u0 v0 u1 v1
+ * </pre>
+ *
+ * Regions are in texture coordinates of their page, so coordinates from 0
+ * to 1 on a mesh map onto the texture as u0 + u * (u1 - u0).
+ */
+public class TextureAtlas {
+    public static final String FILE_NAME = "atlas.txt";
+    /** Floats per region in {@link #getRegion}. */
+    public static final int REGION_SIZE = 4;
+
+    private final List<String> pageNames = new ArrayList<String>();
+    private final List<String> textureNames = new ArrayList<String>();
+    private final List<Integer> texturePages = new ArrayList<Integer>();
+    private final List<float[]> textureRegions = new ArrayList<float[]>();
+
+    /** Parses a table from a UTF-8 stream. The stream is closed when done. */
+    public static TextureAtlas read(InputStream inputStream) {
+        final TextureAtlas atlas = new TextureAtlas();
+        int lineNumber = 0;
+        try {
+            final BufferedReader reader = new BufferedReader(
+                new InputStreamReader(inputStream, "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                final int comment = line.indexOf('#');
+                final String content = (comment < 0 ? line : line.substring(0, comment)).trim();
+                if (content.length() > 0) {
+                    atlas.parseLine(content.split("\\s+"));
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read texture atlas", e);
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Atlas line " + lineNumber + ": " + e.getMessage(), e);
+        } finally {
+            try {
+                inputStream.close();
+            } catch (IOException ignored) {
+            }
+        }
+        for (int i = 0; i < atlas.pageNames.size(); i++) {
+            if (atlas.pageNames.get(i) == null) {
+                throw new RuntimeException("Atlas page " + i + " is missing.");
+            }
+        }
+        for (int i = 0; i < atlas.textureNames.size(); i++) {
+            if (atlas.texturePages.get(i) >= atlas.pageNames.size()) {
+                throw new RuntimeException("Atlas texture " + atlas.textureNames.get(i)
+                    + " is on a missing page.");
+            }
+        }
+        return atlas;
+    }
+
+    private void parseLine(String[] tokens) {
+        if (tokens[0].equals("page") && tokens.length == 5) {
+            final int page = Integer.parseInt(tokens[1]);
+            while (pageNames.size() <= page) {
+                pageNames.add(null);
+            }
+            pageNames.set(page, tokens[2]);
+        } else if (tokens[0].equals("texture") && tokens.length == 7) {
+            final float[] region = new float[REGION_SIZE];
+            for (int i = 0; i < REGION_SIZE; i++) {
+                region[i] = Float.parseFloat(tokens[3 + i]);
+            }
+            textureNames.add(tokens[1]);
+            texturePages.add(Integer.parseInt(tokens[2]));
+            textureRegions.add(region);
+        } else {
+            throw new RuntimeException("Unknown or malformed directive " + tokens[0]);
+        }
+    }
+
+    public int getPageCount() {
+        return pageNames.size();
+    }
+
+    /** The page's file name without extension; .ktx holds ETC1, .jpg the fallback. */
+    public String getPageName(int page) {
+        return pageNames.get(page);
+    }
+
+    /** The entry of the drawable with this name, or -1 if it isn't in the atlas. */
+    public int find(String texture) {
+        return textureNames.indexOf(texture);
+    }
+
+    public int getPage(int entry) {
+        return texturePages.get(entry);
+    }
+
+    /** u0, v0, u1, v1 of the entry on its page. */
+    public float[] getRegion(int entry) {
+        return textureRegions.get(entry);
+    }
+}
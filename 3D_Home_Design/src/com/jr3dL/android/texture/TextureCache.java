@@ -0,0 +1,334 @@
+package com.jr3dL.android.texture;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.jr3dL.android.gl.Gl;
+import com.jr3dL.android.gl.GlStateCache;
+import com.jr3dL.android.gl.GpuResourceRegistry;
+
+/**
+ * Shares textures between everyone drawing the same image with the same
+ * sampling, and keeps the GPU memory they take under a budget. Textures
+ * are loaded through a {@link TextureStreamer} and handed out as int
+ * handles, counted by reference; the same source and sampling acquired
+ * twice is one texture.
+ *
+ * Past the budget, {@link #update} deletes the textures used least
+ * recently, referenced or not, though never one drawn in the last frame.
+ * Binding an evicted texture loads it again, showing the streamer's
+ * placeholder meanwhile. A texture nobody references stays until evicted,
+ * so acquiring it again is free. Budget and counters count uploaded
+ * images only; placeholders are a few bytes each.
+ *
+ * Every texture is registered as a deferred resource, so after a context
+ * loss the ones drawn first come back first. Compressed images are kept
+ * after uploading, since they are small and usually mapped straight from
+ * the APK, so those come back without reading or decoding anything.
+ *
+ * Everything happens on the GL thread.
+ */
+public class TextureCache {
+    public static final long DEFAULT_BUDGET_BYTES = 32L * 1024 * 1024;
+
+    private static final class Entry {
+        String key;
+        TextureStreamer.Decoder decoder;
+        int minFilter;
+        int magFilter;
+        int wrapS;
+        int wrapT;
+        int refCount;
+        /** The GL name, or 0 while evicted or lost with the context. */
+        int texture;
+        /** Whether it was evicted, and so isn't worth restoring with the context. */
+        boolean evicted;
+        /** Bytes of the uploaded image, or 0 while the placeholder shows. */
+        int bytes;
+        /** The last {@link #update} count it was bound in. */
+        long lastUsed;
+        /** Its id in the resource registry. */
+        int resource;
+        /** The uploaded image when it is worth keeping, or null. */
+        TextureImage retained;
+    }
+
+    private final GlStateCache state;
+    private final Gl gl;
+    private final TextureStreamer streamer;
+    private final GpuResourceRegistry registry;
+
+    /** Entries by handle; null for free handles. */
+    private final List<Entry> entries = new ArrayList<Entry>();
+    private final List<Integer> freeHandles = new ArrayList<Integer>();
+    private final Map<String, Integer> handlesByKey = new HashMap<String, Integer>();
+    private final Map<Integer, Entry> entriesByTexture = new HashMap<Integer, Entry>();
+
+    private long budgetBytes = DEFAULT_BUDGET_BYTES;
+    private long frame;
+    private long residentBytes;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * Creates a cache loading through the streamer, which it takes upload
+     * reports from, and registering its textures with the registry.
+     */
+    public TextureCache(GlStateCache state, TextureStreamer streamer,
+        GpuResourceRegistry registry) {
+        this.state = state;
+        this.gl = state.getGl();
+        this.streamer = streamer;
+        this.registry = registry;
+        streamer.setUploadListener(new TextureStreamer.UploadListener() {
+            @Override
+            public void onUploaded(int texture, TextureImage image) {
+                uploaded(texture, image);
+            }
+        });
+    }
+
+    /** Sets the bytes of uploaded images to keep at most, when not all in use. */
+    public void setBudget(long bytes) {
+        budgetBytes = bytes;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /**
+     * Returns a handle to the texture of the given source with the given
+     * sampling, adding a reference. The first acquire starts loading it
+     * with the decoder; later ones share it. Sources are any name unique
+     * to the image, such as a drawable or asset name. Mipmapped minifying
+     * filters fall back to their base filter for images without mip levels.
+     */
+    public int acquire(String source, int minFilter, int magFilter, int wrapS, int wrapT,
+        TextureStreamer.Decoder decoder) {
+        final String key = source + '|' + minFilter + ',' + magFilter + ',' + wrapS + ',' + wrapT;
+        final Integer existing = handlesByKey.get(key);
+        if (existing != null) {
+            entries.get(existing).refCount++;
+            hitCount++;
+            return existing;
+        }
+
+        final Entry entry = new Entry();
+        entry.key = key;
+        entry.decoder = decoder;
+        entry.minFilter = minFilter;
+        entry.magFilter = magFilter;
+        entry.wrapS = wrapS;
+        entry.wrapT = wrapT;
+        entry.refCount = 1;
+        entry.lastUsed = frame;
+        entry.resource = registry.register(GpuResourceRegistry.KIND_TEXTURE, true,
+            new GpuResourceRegistry.Restorer() {
+                @Override
+                public void restore() {
+                    if (entry.texture == 0 && !entry.evicted) {
+                        load(entry);
+                    }
+                }
+            });
+        final int handle;
+        if (freeHandles.isEmpty()) {
+            handle = entries.size();
+            entries.add(entry);
+        } else {
+            handle = freeHandles.remove(freeHandles.size() - 1);
+            entries.set(handle, entry);
+        }
+        handlesByKey.put(key, handle);
+        load(entry);
+        return handle;
+    }
+
+    /**
+     * Drops a reference. An unreferenced texture that is still loading is
+     * dropped at once; a loaded one stays until evicted.
+     */
+    public void release(int handle) {
+        final Entry entry = entries.get(handle);
+        if (entry.refCount <= 0) {
+            throw new IllegalArgumentException("Texture " + handle + " is not acquired.");
+        }
+        entry.refCount--;
+        if (entry.refCount == 0 && entry.texture != 0 && streamer.isPending(entry.texture)) {
+            unload(entry);
+            remove(handle);
+        }
+    }
+
+    /**
+     * Binds the texture to the active unit for this frame's draws, loading
+     * it again first if it was evicted or lost with the context.
+     */
+    public void bind(int handle) {
+        final Entry entry = entries.get(handle);
+        if (entry.texture == 0) {
+            registry.restoreNow(entry.resource);
+        }
+        if (entry.texture == 0) {
+            load(entry);
+        }
+        entry.lastUsed = frame;
+        state.bindTexture(Gl.GL_TEXTURE_2D, entry.texture);
+    }
+
+    /**
+     * Uploads what the streamer has decoded and evicts down to the budget.
+     * Call once per frame, before binding. Returns true if decoded images
+     * are left for the next frame.
+     */
+    public boolean update() {
+        final boolean more = streamer.update();
+        while (residentBytes > budgetBytes && evictLeastRecentlyUsed()) {
+            // Keep going until under budget or only textures in use are left.
+        }
+        frame++;
+        return more;
+    }
+
+    /**
+     * Forgets every texture name, for a new GL context. Unreferenced
+     * textures are dropped; the registry restores the rest.
+     */
+    public void reset() {
+        streamer.reset();
+        entriesByTexture.clear();
+        residentBytes = 0;
+        for (int handle = 0; handle < entries.size(); handle++) {
+            final Entry entry = entries.get(handle);
+            if (entry == null) {
+                continue;
+            }
+            entry.texture = 0;
+            entry.bytes = 0;
+            if (entry.refCount == 0) {
+                remove(handle);
+            }
+        }
+    }
+
+    /** Acquires served by a texture already in the cache. */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /** Loads started, first ones and reloads after eviction alike. */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /** Bytes of the images uploaded into textures that still exist. */
+    public long getResidentBytes() {
+        return residentBytes;
+    }
+
+    /** Writes the counters as one line of text, for an overlay or a log. */
+    public void formatSummary(StringBuilder out) {
+        out.append("textures ").append(residentBytes / 1024).append('/')
+            .append(budgetBytes / 1024).append(" KB hits ").append(hitCount)
+            .append(" misses ").append(missCount)
+            .append(" evictions ").append(evictionCount);
+    }
+
+    private void load(Entry entry) {
+        final TextureImage retained = entry.retained;
+        entry.texture = streamer.request(retained == null ? entry.decoder
+            : new TextureStreamer.Decoder() {
+                @Override
+                public TextureImage decode() {
+                    return retained;
+                }
+            });
+        entry.evicted = false;
+        entriesByTexture.put(entry.texture, entry);
+        missCount++;
+    }
+
+    private void uploaded(int texture, TextureImage image) {
+        final Entry entry = entriesByTexture.get(texture);
+        if (entry == null) {
+            return;
+        }
+        entry.bytes = image.getByteCount();
+        residentBytes += entry.bytes;
+        registry.setBytes(entry.resource, entry.bytes);
+        if (image.isCompressed()) {
+            entry.retained = image;
+        }
+        // The streamer leaves the texture bound.
+        int minFilter = entry.minFilter;
+        if (image.getLevelCount() == 1 && minFilter != Gl.GL_NEAREST
+            && minFilter != Gl.GL_LINEAR) {
+            minFilter = minFilter == Gl.GL_NEAREST_MIPMAP_NEAREST
+                || minFilter == Gl.GL_NEAREST_MIPMAP_LINEAR ? Gl.GL_NEAREST : Gl.GL_LINEAR;
+        }
+        gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_MIN_FILTER, minFilter);
+        gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_MAG_FILTER, entry.magFilter);
+        gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_WRAP_S, entry.wrapS);
+        gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_WRAP_T, entry.wrapT);
+    }
+
+    /**
+     * Deletes the loaded texture bound longest ago, unreferenced ones
+     * first, unless it was bound in the last frame. Returns false if there
+     * was none to delete.
+     */
+    private boolean evictLeastRecentlyUsed() {
+        int victim = -1;
+        for (int handle = 0; handle < entries.size(); handle++) {
+            final Entry entry = entries.get(handle);
+            if (entry == null || entry.bytes == 0 || entry.lastUsed >= frame) {
+                continue;
+            }
+            if (victim < 0) {
+                victim = handle;
+                continue;
+            }
+            final Entry best = entries.get(victim);
+            if ((entry.refCount == 0) != (best.refCount == 0)
+                ? entry.refCount == 0 : entry.lastUsed < best.lastUsed) {
+                victim = handle;
+            }
+        }
+        if (victim < 0) {
+            return false;
+        }
+        final Entry entry = entries.get(victim);
+        unload(entry);
+        entry.evicted = true;
+        evictionCount++;
+        if (entry.refCount == 0) {
+            remove(victim);
+        }
+        return true;
+    }
+
+    private void unload(Entry entry) {
+        streamer.cancel(entry.texture);
+        entriesByTexture.remove(entry.texture);
+        state.deleteTexture(entry.texture);
+        residentBytes -= entry.bytes;
+        registry.setBytes(entry.resource, 0);
+        entry.texture = 0;
+        entry.bytes = 0;
+    }
+
+    private void remove(int handle) {
+        registry.unregister(entries.get(handle).resource);
+        handlesByKey.remove(entries.get(handle).key);
+        entries.set(handle, null);
+        freeHandles.add(handle);
+    }
+}
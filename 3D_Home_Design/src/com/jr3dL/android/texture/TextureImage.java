@@ -0,0 +1,92 @@
+package com.jr3dL.android.texture;
+
+import java.nio.ByteBuffer;
+
+import com.jr3dL.android.gl.Gl;
+
+/**
+ * Texture data ready for upload: either tightly packed RGBA bytes, or a
+ * chain of compressed mip levels such as a {@link KtxFile} holds. Each level
+ * is a buffer positioned at its first byte and limited to its last, and may
+ * be a slice of a larger, memory-mapped one.
+ */
+public class TextureImage {
+    private final int width;
+    private final int height;
+    /** GL_RGBA, or the compressed internal format of the levels. */
+    private final int format;
+    private final ByteBuffer[] levels;
+
+    /** An uncompressed RGBA image without mip levels. */
+    public TextureImage(int width, int height, ByteBuffer pixels) {
+        this(Gl.GL_RGBA, width, height, new ByteBuffer[] {pixels});
+    }
+
+    /** Level 0 is width by height; each next level halves both, down to 1. */
+    public TextureImage(int format, int width, int height, ByteBuffer[] levels) {
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.levels = levels;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getFormat() {
+        return format;
+    }
+
+    public boolean isCompressed() {
+        return format != Gl.GL_RGBA;
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    public ByteBuffer getLevel(int level) {
+        return levels[level];
+    }
+
+    /** The level 0 pixels. */
+    public ByteBuffer getPixels() {
+        return levels[0];
+    }
+
+    /** Bytes handed to GL when uploading the image, every level included. */
+    public int getByteCount() {
+        int count = 0;
+        for (ByteBuffer level : levels) {
+            count += level.remaining();
+        }
+        return count;
+    }
+
+    /**
+     * Uploads every level into the bound 2D texture. A texture with more
+     * than one level is switched to minify from its mip chain.
+     */
+    public void upload(Gl gl) {
+        for (int level = 0; level < levels.length; level++) {
+            final int levelWidth = Math.max(1, width >> level);
+            final int levelHeight = Math.max(1, height >> level);
+            if (isCompressed()) {
+                gl.glCompressedTexImage2D(Gl.GL_TEXTURE_2D, level, format, levelWidth,
+                    levelHeight, 0, levels[level].remaining(), levels[level]);
+            } else {
+                gl.glTexImage2D(Gl.GL_TEXTURE_2D, level, Gl.GL_RGBA, levelWidth, levelHeight, 0,
+                    Gl.GL_RGBA, Gl.GL_UNSIGNED_BYTE, levels[level]);
+            }
+        }
+        if (levels.length > 1) {
+            gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_MIN_FILTER,
+                Gl.GL_LINEAR_MIPMAP_NEAREST);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.jr3dL.android.texture;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import com.jr3dL.android.gl.Gl;
+import com.jr3dL.android.gl.GlStateCache;
+
+/**
+ * Loads textures without holding up the GL thread. A request creates the
+ * texture right away, filled with a 1x1 placeholder, and decodes the real
+ * image on background threads. Decoded images are uploaded by
+ * {@link #update}, once per frame, within a byte and time budget, so a
+ * large texture or many of them never stall a frame for long.
+ *
+ * Requests, updates and cancellations happen on the GL thread; only the
+ * decoding runs elsewhere. Texture names belong to the GL context, so
+ * {@link #reset} drops every request when the context is recreated.
+ */
+public class TextureStreamer {
+    /** Produces a texture's pixels; runs on a decoder thread. */
+    public interface Decoder {
+        TextureImage decode();
+    }
+
+    /** Told of every image right after it is uploaded, on the GL thread. */
+    public interface UploadListener {
+        void onUploaded(int texture, TextureImage image);
+    }
+
+    private static final int DEFAULT_BUDGET_BYTES = 4 * 1024 * 1024;
+    private static final long DEFAULT_BUDGET_NANOS = 2000000L;
+
+    /** Mid grey, so untextured surfaces are still lit sensibly. */
+    private static final byte PLACEHOLDER_GREY = (byte) 0x80;
+
+    private static final class Request implements Runnable {
+        final int texture;
+        final Decoder decoder;
+        final TextureStreamer streamer;
+        volatile boolean cancelled;
+        TextureImage image;
+        Future<?> future;
+
+        Request(TextureStreamer streamer, int texture, Decoder decoder) {
+            this.streamer = streamer;
+            this.texture = texture;
+            this.decoder = decoder;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            try {
+                image = decoder.decode();
+            } catch (RuntimeException e) {
+                // Left with its placeholder; the GL thread reports it.
+                streamer.failed(this, e);
+                return;
+            }
+            streamer.decoded(this);
+        }
+    }
+
+    private final GlStateCache state;
+    private final Gl gl;
+    private final ExecutorService decoders;
+    private final ByteBuffer placeholder;
+    private final int[] generated = new int[1];
+
+    /** Requests not yet uploaded or cancelled, by texture. GL thread only. */
+    private final Map<Integer, Request> pending = new HashMap<Integer, Request>();
+    private final ConcurrentLinkedQueue<Request> decodedQueue =
+        new ConcurrentLinkedQueue<Request>();
+    private final ConcurrentLinkedQueue<RuntimeException> errors =
+        new ConcurrentLinkedQueue<RuntimeException>();
+    private volatile Runnable onDecoded;
+    private UploadListener uploadListener;
+
+    private int budgetBytes = DEFAULT_BUDGET_BYTES;
+    private long budgetNanos = DEFAULT_BUDGET_NANOS;
+    private long uploadedBytes;
+
+    /** Creates a streamer decoding on the given number of background threads. */
+    public TextureStreamer(GlStateCache state, int decoderThreads) {
+        this.state = state;
+        this.gl = state.getGl();
+        decoders = Executors.newFixedThreadPool(decoderThreads, new ThreadFactory() {
+            private int count;
+
+            @Override
+            public synchronized Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "TextureDecoder-" + ++count);
+                thread.setDaemon(true);
+                // Decoding shouldn't compete with the GL and update threads.
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        placeholder = ByteBuffer.allocateDirect(4).order(ByteOrder.nativeOrder());
+        placeholder.put(PLACEHOLDER_GREY).put(PLACEHOLDER_GREY).put(PLACEHOLDER_GREY)
+            .put((byte) 0xFF).position(0);
+    }
+
+    /**
+     * Sets how much may be uploaded per {@link #update}. At least one image
+     * is uploaded per update however large, so nothing waits forever.
+     */
+    public void setBudget(int bytes, long nanos) {
+        budgetBytes = bytes;
+        budgetNanos = nanos;
+    }
+
+    /**
+     * Runs on a decoder thread whenever an image is ready, so an idle
+     * surface can ask for the frame that uploads it.
+     */
+    public void setOnDecoded(Runnable onDecoded) {
+        this.onDecoded = onDecoded;
+    }
+
+    /** Sets who is told of uploads, with the texture still bound. */
+    public void setUploadListener(UploadListener uploadListener) {
+        this.uploadListener = uploadListener;
+    }
+
+    /**
+     * Creates a texture showing the placeholder and starts decoding its
+     * image. Returns the texture name, usable right away.
+     */
+    public int request(Decoder decoder) {
+        gl.glGenTextures(1, generated, 0);
+        if (generated[0] == 0) {
+            throw new RuntimeException("Error loading texture.");
+        }
+        final int texture = generated[0];
+        state.bindTexture(Gl.GL_TEXTURE_2D, texture);
+        gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_MIN_FILTER, Gl.GL_NEAREST);
+        gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_MAG_FILTER, Gl.GL_NEAREST);
+        gl.glTexImage2D(Gl.GL_TEXTURE_2D, 0, Gl.GL_RGBA, 1, 1, 0, Gl.GL_RGBA,
+            Gl.GL_UNSIGNED_BYTE, placeholder);
+
+        final Request request = new Request(this, texture, decoder);
+        pending.put(texture, request);
+        request.future = decoders.submit(request);
+        return texture;
+    }
+
+    /**
+     * Stops loading a texture that is no longer needed. It keeps whatever
+     * it shows; deleting it is up to the caller.
+     */
+    public void cancel(int texture) {
+        final Request request = pending.remove(texture);
+        if (request != null) {
+            request.cancelled = true;
+            request.future.cancel(false);
+        }
+    }
+
+    /** Whether the texture still shows its placeholder. */
+    public boolean isPending(int texture) {
+        return pending.containsKey(texture);
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Uploads decoded images until the budget is spent. Returns true if
+     * decoded images are left for the next update. Throws if an image
+     * failed to decode.
+     */
+    public boolean update() {
+        final RuntimeException error = errors.poll();
+        if (error != null) {
+            throw error;
+        }
+        final long start = System.nanoTime();
+        int bytes = 0;
+        Request request;
+        while ((request = decodedQueue.peek()) != null) {
+            if (!request.cancelled) {
+                final TextureImage image = request.image;
+                if (bytes > 0 && (bytes + image.getByteCount() > budgetBytes
+                    || System.nanoTime() - start > budgetNanos)) {
+                    return true;
+                }
+                pending.remove(request.texture);
+                upload(request.texture, image);
+                bytes += image.getByteCount();
+            }
+            decodedQueue.poll();
+            request.image = null;
+        }
+        return false;
+    }
+
+    /** Bytes of texture data uploaded so far, placeholders aside. */
+    public long getUploadedBytes() {
+        return uploadedBytes;
+    }
+
+    /**
+     * Forgets every request, for a new GL context where the old texture
+     * names mean nothing.
+     */
+    public void reset() {
+        for (Request request : pending.values()) {
+            request.cancelled = true;
+            request.future.cancel(false);
+        }
+        pending.clear();
+        decodedQueue.clear();
+        errors.clear();
+    }
+
+    /** Stops the decoder threads for good. */
+    public void release() {
+        reset();
+        decoders.shutdownNow();
+    }
+
+    private void upload(int texture, TextureImage image) {
+        state.bindTexture(Gl.GL_TEXTURE_2D, texture);
+        image.upload(gl);
+        uploadedBytes += image.getByteCount();
+        if (uploadListener != null) {
+            uploadListener.onUploaded(texture, image);
+        }
+    }
+
+    private void decoded(Request request) {
+        decodedQueue.add(request);
+        final Runnable callback = onDecoded;
+        if (callback != null) {
+            callback.run();
+        }
+    }
+
+    private void failed(Request request, RuntimeException e) {
+        if (!request.cancelled) {
+            errors.add(e);
+            final Runnable callback = onDecoded;
+            if (callback != null) {
+                callback.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.jr3dL.android.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+import com.jr3dL.android.data.MeshData;
+
+/**
+ * Creates the native-order direct buffers OpenGL reads vertex and index data
+ * from.
+ */
+public class BufferHelper {
+    /** An empty direct float buffer of the given capacity. */
+    public static FloatBuffer newFloatBuffer(int capacity) {
+        return ByteBuffer.allocateDirect(capacity * MeshData.BYTES_PER_FLOAT)
+            .order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    /** A direct float buffer holding a copy of the data, positioned at 0. */
+    public static FloatBuffer newFloatBuffer(float[] data) {
+        final FloatBuffer buffer = newFloatBuffer(data.length);
+        buffer.put(data).position(0);
+        return buffer;
+    }
+
+    /** A direct short buffer holding a copy of the data, positioned at 0. */
+    public static ShortBuffer newShortBuffer(short[] data) {
+        final ShortBuffer buffer = ByteBuffer.allocateDirect(data.length * MeshData.BYTES_PER_SHORT)
+            .order(ByteOrder.nativeOrder()).asShortBuffer();
+        buffer.put(data).position(0);
+        return buffer;
+    }
+}
@@ -8,49 +8,39 @@
 ***/
 package com.jr3dL.android.util;
 
-import static android.opengl.GLES20.GL_COMPILE_STATUS;
-import static android.opengl.GLES20.GL_FRAGMENT_SHADER;
-import static android.opengl.GLES20.GL_LINK_STATUS;
-import static android.opengl.GLES20.GL_VALIDATE_STATUS;
-import static android.opengl.GLES20.GL_VERTEX_SHADER;
-import static android.opengl.GLES20.glAttachShader;
-import static android.opengl.GLES20.glCompileShader;
-import static android.opengl.GLES20.glCreateProgram;
-import static android.opengl.GLES20.glCreateShader;
-import static android.opengl.GLES20.glDeleteProgram;
-import static android.opengl.GLES20.glDeleteShader;
-import static android.opengl.GLES20.glGetProgramInfoLog;
-import static android.opengl.GLES20.glGetProgramiv;
-import static android.opengl.GLES20.glGetShaderInfoLog;
-import static android.opengl.GLES20.glGetShaderiv;
-import static android.opengl.GLES20.glLinkProgram;
-import static android.opengl.GLES20.glShaderSource;
-import static android.opengl.GLES20.glValidateProgram;
+import static com.jr3dL.android.gl.Gl.GL_COMPILE_STATUS;
+import static com.jr3dL.android.gl.Gl.GL_FRAGMENT_SHADER;
+import static com.jr3dL.android.gl.Gl.GL_LINK_STATUS;
+import static com.jr3dL.android.gl.Gl.GL_VALIDATE_STATUS;
+import static com.jr3dL.android.gl.Gl.GL_VERTEX_SHADER;
+
 import android.util.Log;
 
+import com.jr3dL.android.gl.Gl;
+
 public class ShaderHelper {
     private static final String TAG = "ShaderHelper";
 
     /**
      * Loads and compiles a vertex shader, returning the OpenGL object ID.
      */
-    public static int compileVertexShader(String shaderCode) {
-        return compileShader(GL_VERTEX_SHADER, shaderCode);
+    public static int compileVertexShader(Gl gl, String shaderCode) {
+        return compileShader(gl, GL_VERTEX_SHADER, shaderCode);
     }
 
     /**
      * Loads and compiles a fragment shader, returning the OpenGL object ID.
      */
-    public static int compileFragmentShader(String shaderCode) {
-        return compileShader(GL_FRAGMENT_SHADER, shaderCode);
+    public static int compileFragmentShader(Gl gl, String shaderCode) {
+        return compileShader(gl, GL_FRAGMENT_SHADER, shaderCode);
     }
 
     /**
      * Compiles a shader, returning the OpenGL object ID.
      */
-    private static int compileShader(int type, String shaderCode) {        
+    private static int compileShader(Gl gl, int type, String shaderCode) {        
         // Create a new shader object.
-        final int shaderObjectId = glCreateShader(type);
+        final int shaderObjectId = gl.glCreateShader(type);
 
         if (shaderObjectId == 0) {
             if (LoggerConfig.ON) {
@@ -61,27 +51,27 @@ public class ShaderHelper {
         }       
         
         // Pass in the shader source.
-        glShaderSource(shaderObjectId, shaderCode);
+        gl.glShaderSource(shaderObjectId, shaderCode);
         
         // Compile the shader.
-        glCompileShader(shaderObjectId);
+        gl.glCompileShader(shaderObjectId);
         
         // Get the compilation status.
         final int[] compileStatus = new int[1];
-        glGetShaderiv(shaderObjectId, GL_COMPILE_STATUS,
+        gl.glGetShaderiv(shaderObjectId, GL_COMPILE_STATUS,
             compileStatus, 0);
 
         if (LoggerConfig.ON) {
             // Print the shader info log to the Android log output.
             Log.v(TAG, "Results of compiling source:" 
                 + "\n" + shaderCode + "\n:" 
-                + glGetShaderInfoLog(shaderObjectId));
+                + gl.glGetShaderInfoLog(shaderObjectId));
         }
         
         // Verify the compile status.
         if (compileStatus[0] == 0) {
             // If it failed, delete the shader object.
-            glDeleteShader(shaderObjectId);
+            gl.glDeleteShader(shaderObjectId);
 
             if (LoggerConfig.ON) {
                 Log.w(TAG, "Compilation of shader failed.");
@@ -98,9 +88,9 @@ public class ShaderHelper {
      * Links a vertex shader and a fragment shader together into an OpenGL
      * program. Returns the OpenGL program object ID, or 0 if linking failed.
      */
-    public static int linkProgram(int vertexShaderId, int fragmentShaderId) {        
+    public static int linkProgram(Gl gl, int vertexShaderId, int fragmentShaderId) {        
         // Create a new program object.
-        final int programObjectId = glCreateProgram();
+        final int programObjectId = gl.glCreateProgram();
 
         if (programObjectId == 0) {
             if (LoggerConfig.ON) {
@@ -111,29 +101,29 @@ public class ShaderHelper {
         }
         
         // Attach the vertex shader to the program.
-        glAttachShader(programObjectId, vertexShaderId);
+        gl.glAttachShader(programObjectId, vertexShaderId);
 
         // Attach the fragment shader to the program.
-        glAttachShader(programObjectId, fragmentShaderId);        
+        gl.glAttachShader(programObjectId, fragmentShaderId);        
         
         // Link the two shaders together into a program.
-        glLinkProgram(programObjectId);
+        gl.glLinkProgram(programObjectId);
         
         // Get the link status.
         final int[] linkStatus = new int[1];
-        glGetProgramiv(programObjectId, GL_LINK_STATUS,
+        gl.glGetProgramiv(programObjectId, GL_LINK_STATUS,
             linkStatus, 0);
 
         if (LoggerConfig.ON) {
             // Print the program info log to the Android log output.
             Log.v(TAG, "Results of linking program:\n"
-                + glGetProgramInfoLog(programObjectId));         
+                + gl.glGetProgramInfoLog(programObjectId));         
         }
         
         // Verify the link status.
         if (linkStatus[0] == 0) {
             // If it failed, delete the program object.
-            glDeleteProgram(programObjectId);
+            gl.glDeleteProgram(programObjectId);
 
             if (LoggerConfig.ON) {
                 Log.w(TAG, "Linking of program failed.");
@@ -146,17 +136,39 @@ public class ShaderHelper {
         return programObjectId;
     }
 
+    /**
+     * Helper function that compiles the shaders, links and validates the
+     * program, returning the program ID.
+     */
+    public static int buildProgram(Gl gl, String vertexShaderSource,
+        String fragmentShaderSource) {
+        int program;
+
+        // Compile the shaders.
+        int vertexShader = compileVertexShader(gl, vertexShaderSource);
+        int fragmentShader = compileFragmentShader(gl, fragmentShaderSource);
+
+        // Link them into a shader program.
+        program = linkProgram(gl, vertexShader, fragmentShader);
+
+        if (LoggerConfig.ON) {
+            validateProgram(gl, program);
+        }
+
+        return program;
+    }
+
     /**
      * Validates an OpenGL program. Should only be called when developing the
      * application.
      */
-    public static boolean validateProgram(int programObjectId) {
-        glValidateProgram(programObjectId);
+    public static boolean validateProgram(Gl gl, int programObjectId) {
+        gl.glValidateProgram(programObjectId);
         final int[] validateStatus = new int[1];
-        glGetProgramiv(programObjectId, GL_VALIDATE_STATUS,
+        gl.glGetProgramiv(programObjectId, GL_VALIDATE_STATUS,
             validateStatus, 0);
         Log.v(TAG, "Results of validating program: " + validateStatus[0]
-            + "\nLog:" + glGetProgramInfoLog(programObjectId));
+            + "\nLog:" + gl.glGetProgramInfoLog(programObjectId));
 
         return validateStatus[0] != 0;
     }
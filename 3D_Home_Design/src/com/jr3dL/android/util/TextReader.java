@@ -0,0 +1,39 @@
+package com.jr3dL.android.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * Reads text such as shader sources from a stream. Unlike
+ * {@link TextResourceReader} it needs no Android classes, so the same code
+ * runs off device.
+ */
+public class TextReader {
+    /**
+     * Reads a stream line by line into a String, ending every line with a
+     * newline, and closes it.
+     */
+    public static String readText(InputStream inputStream) throws IOException {
+        StringBuilder body = new StringBuilder();
+
+        try {
+            InputStreamReader inputStreamReader = new InputStreamReader(
+                inputStream);
+            BufferedReader bufferedReader = new BufferedReader(
+                inputStreamReader);
+
+            String nextLine;
+
+            while ((nextLine = bufferedReader.readLine()) != null) {
+                body.append(nextLine);
+                body.append('\n');
+            }
+        } finally {
+            inputStream.close();
+        }
+
+        return body.toString();
+    }
+}
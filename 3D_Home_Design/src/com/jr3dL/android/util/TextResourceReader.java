@@ -8,10 +8,7 @@
 ***/
 package com.jr3dL.android.util;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 
 import android.content.Context;
 import android.content.res.Resources;
@@ -23,22 +20,8 @@ public class TextResourceReader {
      */
     public static String readTextFileFromResource(Context context,
         int resourceId) {
-        StringBuilder body = new StringBuilder();
-
         try {
-            InputStream inputStream = context.getResources()
-                .openRawResource(resourceId);
-            InputStreamReader inputStreamReader = new InputStreamReader(
-                inputStream);
-            BufferedReader bufferedReader = new BufferedReader(
-                inputStreamReader);
-
-            String nextLine;
-
-            while ((nextLine = bufferedReader.readLine()) != null) {
-                body.append(nextLine);
-                body.append('\n');
-            }
+            return TextReader.readText(context.getResources().openRawResource(resourceId));
         } catch (IOException e) {
             throw new RuntimeException(
                 "Could not open resource: " + resourceId, e);
@@ -46,7 +29,5 @@ public class TextResourceReader {
             throw new RuntimeException("Resource not found: " 
                 + resourceId, nfe);
         }
-
-        return body.toString();
     }
 }
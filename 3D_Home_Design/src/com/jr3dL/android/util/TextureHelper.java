@@ -1,39 +1,265 @@
 package com.jr3dL.android.util;
 
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.opengl.GLES20;
-import android.opengl.GLUtils;
+
+import com.jr3dL.android.gl.Gl;
+import com.jr3dL.android.gl.GlStateCache;
+import com.jr3dL.android.texture.KtxFile;
+import com.jr3dL.android.texture.TextureAtlas;
+import com.jr3dL.android.texture.TextureImage;
 
 public class TextureHelper
 {
-	public static int loadTexture(final Context context, final int resourceId)
+	/**
+	 * Where tools/TextureConverter writes the compressed copy of
+	 * res/drawable-nodpi/name.jpg: TEXTURE_ASSET_DIRECTORY + name + ".ktx".
+	 */
+	public static final String TEXTURE_ASSET_DIRECTORY = "textures/";
+	
+	private static final String ETC1_EXTENSION = "GL_OES_compressed_ETC1_RGB8_texture";
+	
+	/** Whether the context takes ETC1 textures. Call on the GL thread. */
+	public static boolean isEtc1Supported(final Gl gl)
+	{
+		final String extensions = gl.glGetString(Gl.GL_EXTENSIONS);
+		return extensions != null && extensions.contains(ETC1_EXTENSION);
+	}
+	
+	/**
+	 * Loads a drawable's texture, preferring its ETC1 copy in the assets when
+	 * the context takes ETC1, which needs a sixth of the memory of the
+	 * decoded drawable, mip levels included. Falls back to decoding the
+	 * drawable. Touches no GL state.
+	 */
+	public static TextureImage decodeTexture(final Context context, final int resourceId,
+		final boolean etc1Supported)
+	{
+		if (etc1Supported)
+		{
+			final String name = context.getResources().getResourceEntryName(resourceId);
+			final TextureImage image = readCompressed(context, TEXTURE_ASSET_DIRECTORY + name + ".ktx");
+			if (image != null)
+			{
+				return image;
+			}
+		}
+		return decodeResource(context, resourceId);
+	}
+	
+	/**
+	 * Reads the atlas table tools/AtlasBuilder wrote into the texture assets,
+	 * or returns null if there is none.
+	 */
+	public static TextureAtlas readAtlas(final Context context)
 	{
+		final InputStream input;
+		try
+		{
+			input = context.getAssets().open(TEXTURE_ASSET_DIRECTORY + TextureAtlas.FILE_NAME);
+		}
+		catch (FileNotFoundException e)
+		{
+			return null;
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException("Could not read texture atlas", e);
+		}
+		return TextureAtlas.read(input);
+	}
+	
+	/**
+	 * Loads an atlas page: its ETC1 file when the context takes ETC1,
+	 * otherwise its JPEG. Touches no GL state.
+	 */
+	public static TextureImage decodeAtlasPage(final Context context, final TextureAtlas atlas,
+		final int page, final boolean etc1Supported)
+	{
+		final String path = TEXTURE_ASSET_DIRECTORY + atlas.getPageName(page);
+		if (etc1Supported)
+		{
+			final TextureImage image = readCompressed(context, path + ".ktx");
+			if (image != null)
+			{
+				return image;
+			}
+		}
+		try
+		{
+			final InputStream input = context.getAssets().open(path + ".jpg");
+			try
+			{
+				return toTextureImage(BitmapFactory.decodeStream(input, null, newDecodeOptions()),
+					path);
+			}
+			finally
+			{
+				input.close();
+			}
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException("Could not read atlas page " + path, e);
+		}
+	}
+	
+	/**
+	 * Reads a KTX asset, or returns null if there is none. An asset stored
+	 * uncompressed in the APK is memory-mapped and never copied; a deflated
+	 * one has to be inflated into a direct buffer first.
+	 */
+	public static TextureImage readCompressed(final Context context, final String assetPath)
+	{
+		final AssetManager assets = context.getAssets();
+		try
+		{
+			final AssetFileDescriptor descriptor;
+			try
+			{
+				descriptor = assets.openFd(assetPath);
+			}
+			catch (FileNotFoundException e)
+			{
+				// Missing, or deflated and so not mappable.
+				return readCompressedStream(assets, assetPath);
+			}
+			
+			final FileInputStream input = descriptor.createInputStream();
+			try
+			{
+				// The mapping outlives the stream and descriptor.
+				final ByteBuffer file = input.getChannel().map(FileChannel.MapMode.READ_ONLY,
+					descriptor.getStartOffset(), descriptor.getLength());
+				return KtxFile.read(file);
+			}
+			finally
+			{
+				input.close();
+				descriptor.close();
+			}
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException("Could not read texture asset " + assetPath, e);
+		}
+	}
+	
+	private static TextureImage readCompressedStream(final AssetManager assets, final String assetPath)
+		throws IOException
+	{
+		final InputStream input;
+		try
+		{
+			input = assets.open(assetPath);
+		}
+		catch (FileNotFoundException e)
+		{
+			return null;
+		}
+		try
+		{
+			byte[] bytes = new byte[Math.max(input.available(), KtxFile.HEADER_SIZE)];
+			int length = 0;
+			int read;
+			while ((read = input.read(bytes, length, bytes.length - length)) > 0)
+			{
+				length += read;
+				if (length == bytes.length)
+				{
+					bytes = Arrays.copyOf(bytes, length * 2);
+				}
+			}
+			final ByteBuffer file = ByteBuffer.allocateDirect(length);
+			file.put(bytes, 0, length).position(0);
+			return KtxFile.read(file);
+		}
+		finally
+		{
+			input.close();
+		}
+	}
+	
+	/**
+	 * Decodes a drawable into RGBA pixels, without pre-scaling. Touches no
+	 * GL state, so it can run on any thread, such as a
+	 * {@link com.jr3dL.android.texture.TextureStreamer} decoder.
+	 */
+	public static TextureImage decodeResource(final Context context, final int resourceId)
+	{
+		// Read in the resource
+		final Bitmap bitmap = BitmapFactory.decodeResource(context.getResources(), resourceId,
+			newDecodeOptions());
+		return toTextureImage(bitmap, "resource " + resourceId);
+	}
+	
+	private static BitmapFactory.Options newDecodeOptions()
+	{
+		final BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inScaled = false;	// No pre-scaling
+		options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+		return options;
+	}
+	
+	private static TextureImage toTextureImage(final Bitmap bitmap, final String source)
+	{
+		if (bitmap == null)
+		{
+			throw new RuntimeException("Could not decode texture " + source);
+		}
+		
+		// ARGB_8888 pixels are laid out in memory as RGBA bytes, which is
+		// what GL expects.
+		final ByteBuffer pixels = ByteBuffer.allocateDirect(bitmap.getByteCount())
+			.order(ByteOrder.nativeOrder());
+		bitmap.copyPixelsToBuffer(pixels);
+		pixels.position(0);
+		final TextureImage image = new TextureImage(bitmap.getWidth(), bitmap.getHeight(), pixels);
+		
+		// Recycle the bitmap, since its data has been copied out.
+		bitmap.recycle();
+		return image;
+	}
+	
+	/**
+	 * Loads and uploads a drawable's texture on the calling thread, which
+	 * must be the GL thread. {@link com.jr3dL.android.texture.TextureStreamer}
+	 * does the same without blocking it. The caller owns the texture and
+	 * deletes it; {@link com.jr3dL.android.texture.TextureCache} shares
+	 * textures and keeps them under a memory budget instead.
+	 */
+	public static int loadTexture(final GlStateCache state, final Context context, final int resourceId)
+	{
+		final Gl gl = state.getGl();
 		final int[] textureHandle = new int[1];
 		
-		GLES20.glGenTextures(1, textureHandle, 0);
+		gl.glGenTextures(1, textureHandle, 0);
 		
 		if (textureHandle[0] != 0)
 		{
-			final BitmapFactory.Options options = new BitmapFactory.Options();
-			options.inScaled = false;	// No pre-scaling
-
-			// Read in the resource
-			final Bitmap bitmap = BitmapFactory.decodeResource(context.getResources(), resourceId, options);
+			final TextureImage image = decodeTexture(context, resourceId, isEtc1Supported(gl));
 						
 			// Bind to the texture in OpenGL
-			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle[0]);
+			state.bindTexture(Gl.GL_TEXTURE_2D, textureHandle[0]);
 			
 			// Set filtering
-			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
-			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
-			
-			// Load the bitmap into the bound texture.
-			GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
+			gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_MIN_FILTER, Gl.GL_NEAREST);
+			gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_MAG_FILTER, Gl.GL_NEAREST);
 			
-			// Recycle the bitmap, since its data has been loaded into OpenGL.
-			bitmap.recycle();						
+			// Load the levels into the bound texture.
+			image.upload(gl);
 		}
 		
 		if (textureHandle[0] == 0)
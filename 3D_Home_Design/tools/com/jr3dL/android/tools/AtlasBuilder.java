@@ -0,0 +1,283 @@
+package com.jr3dL.android.tools;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.FileOutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import com.jr3dL.android.texture.TextureAtlas;
+
+/**
+ * Packs the drawables textures are made from into a few atlas pages, so
+ * materials sharing a page draw without switching textures. Writes each
+ * page as an ETC1 KTX file with a full mip chain and as a JPEG for devices
+ * without ETC1, plus the {@link TextureAtlas} table saying where each
+ * drawable went.
+ *
+ * Every drawable gets a gutter of padding texels repeating its edges, so
+ * the first log2(padding) + 1 mip levels never blend in a neighbour, and
+ * starts on a 4-texel boundary so no ETC1 block spans two drawables.
+ * Drawables larger than the maximum entry size would crowd a page on their
+ * own and are left to {@link TextureConverter}. Each page is shrunk to the
+ * smallest power of two its drawables still fit. From {@code 3D_Home_Design}:
+ *
+ *     javac -d bin/tools -cp android.jar $(find src tools -name "*.java")
+ *     java -cp bin/tools com.jr3dL.android.tools.AtlasBuilder \
+ *         [-page 2048] [-padding 8] [-max 1024] [res/drawable-nodpi [assets/textures]]
+ */
+public class AtlasBuilder {
+    private static final int DEFAULT_PAGE_SIZE = 2048;
+    private static final int DEFAULT_PADDING = 8;
+    private static final int DEFAULT_MAX_ENTRY_SIZE = 1024;
+    private static final String DEFAULT_INPUT = "res/drawable-nodpi";
+    private static final String DEFAULT_OUTPUT = "assets/textures";
+    private static final String PAGE_PREFIX = "atlas";
+    private static final float JPEG_QUALITY = 0.9f;
+
+    /** A drawable and the cell it is packed into, gutter included. */
+    private static final class Entry {
+        String name;
+        BufferedImage image;
+        int cellWidth;
+        int cellHeight;
+        int page;
+        int x;
+        int y;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int pageSize = DEFAULT_PAGE_SIZE;
+        int padding = DEFAULT_PADDING;
+        int maxEntrySize = DEFAULT_MAX_ENTRY_SIZE;
+        final List<String> paths = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-page") && i + 1 < args.length) {
+                pageSize = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-padding") && i + 1 < args.length) {
+                padding = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-max") && i + 1 < args.length) {
+                maxEntrySize = Integer.parseInt(args[++i]);
+            } else {
+                paths.add(args[i]);
+            }
+        }
+        if (Integer.bitCount(pageSize) != 1 || padding % 4 != 0
+            || maxEntrySize + 2 * padding > pageSize) {
+            throw new IllegalArgumentException("The page size must be a power of two, the"
+                + " padding a multiple of 4 and a padded entry must fit a page.");
+        }
+        final File input = new File(paths.size() > 0 ? paths.get(0) : DEFAULT_INPUT);
+        final File output = new File(paths.size() > 1 ? paths.get(1) : DEFAULT_OUTPUT);
+        final File[] files = input.listFiles();
+        if (files == null) {
+            throw new IOException("Not a directory: " + input);
+        }
+        Arrays.sort(files);
+        if (!output.isDirectory() && !output.mkdirs()) {
+            throw new IOException("Could not create " + output);
+        }
+
+        final List<Entry> entries = new ArrayList<Entry>();
+        for (File file : files) {
+            final String name = file.getName();
+            final int dot = name.lastIndexOf('.');
+            final String extension = dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.US);
+            if (!extension.equals("jpg") && !extension.equals("jpeg")
+                && !extension.equals("png")) {
+                continue;
+            }
+            final BufferedImage image = ImageIO.read(file);
+            if (image == null) {
+                throw new IOException("Could not decode " + file);
+            }
+            if (image.getWidth() > maxEntrySize || image.getHeight() > maxEntrySize) {
+                System.out.println(name + ": " + image.getWidth() + "x" + image.getHeight()
+                    + ", too large for the atlas");
+                continue;
+            }
+            final Entry entry = new Entry();
+            entry.name = name.substring(0, dot);
+            entry.image = image;
+            entry.cellWidth = alignToBlock(image.getWidth() + 2 * padding);
+            entry.cellHeight = alignToBlock(image.getHeight() + 2 * padding);
+            entries.add(entry);
+        }
+        // Largest first packs tightest.
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                final int side = Math.max(b.cellWidth, b.cellHeight)
+                    - Math.max(a.cellWidth, a.cellHeight);
+                return side != 0 ? side : b.cellWidth * b.cellHeight - a.cellWidth * a.cellHeight;
+            }
+        });
+
+        final List<MaxRectsPacker> pages = pack(entries, pageSize);
+        final Writer table = new OutputStreamWriter(
+            new FileOutputStream(new File(output, TextureAtlas.FILE_NAME)), "UTF-8");
+        try {
+            table.write("# Written by tools/AtlasBuilder; regenerate rather than edit.\n#\n"
+                + "# page    <index> <file name without extension> <width> <height>\n"
+                + "# texture <drawable name> <page> u0 v0 u1 v1\n\n");
+            for (int page = 0; page < pages.size(); page++) {
+                final MaxRectsPacker packer = pages.get(page);
+                final String pageName = PAGE_PREFIX + page;
+                writePage(entries, page, packer.getWidth(), packer.getHeight(), padding, output,
+                    pageName);
+                table.write("page " + page + " " + pageName + " " + packer.getWidth() + " "
+                    + packer.getHeight() + "\n");
+            }
+            for (Entry entry : entries) {
+                final MaxRectsPacker packer = pages.get(entry.page);
+                final float pageWidth = packer.getWidth();
+                final float pageHeight = packer.getHeight();
+                final int left = entry.x + padding;
+                final int top = entry.y + padding;
+                table.write(String.format(Locale.US, "texture %s %d %s %s %s %s\n", entry.name,
+                    entry.page, left / pageWidth, top / pageHeight,
+                    (left + entry.image.getWidth()) / pageWidth,
+                    (top + entry.image.getHeight()) / pageHeight));
+            }
+        } finally {
+            table.close();
+        }
+        System.out.println(entries.size() + " drawables in " + pages.size() + " pages");
+    }
+
+    /**
+     * Places every entry, opening a page whenever one doesn't fit the open
+     * ones, then shrinks each page as far as its entries allow.
+     */
+    private static List<MaxRectsPacker> pack(List<Entry> entries, int pageSize) {
+        final List<MaxRectsPacker> pages = new ArrayList<MaxRectsPacker>();
+        final int[] position = new int[2];
+        for (Entry entry : entries) {
+            entry.page = -1;
+            for (int page = 0; page < pages.size() && entry.page < 0; page++) {
+                if (pages.get(page).insert(entry.cellWidth, entry.cellHeight, position)) {
+                    entry.page = page;
+                }
+            }
+            if (entry.page < 0) {
+                pages.add(new MaxRectsPacker(pageSize, pageSize));
+                entry.page = pages.size() - 1;
+                pages.get(entry.page).insert(entry.cellWidth, entry.cellHeight, position);
+            }
+            entry.x = position[0];
+            entry.y = position[1];
+        }
+        for (int page = 0; page < pages.size(); page++) {
+            int width = pageSize;
+            int height = pageSize;
+            boolean shrunk = true;
+            while (shrunk) {
+                // Halve the longer side first, keeping pages close to square.
+                shrunk = (width >= height && repack(entries, page, width / 2, height, pages))
+                    || repack(entries, page, width, height / 2, pages)
+                    || (width < height && repack(entries, page, width / 2, height, pages));
+                width = pages.get(page).getWidth();
+                height = pages.get(page).getHeight();
+            }
+        }
+        return pages;
+    }
+
+    /** Moves the page's entries onto a page of the given size if they all fit it. */
+    private static boolean repack(List<Entry> entries, int page, int width, int height,
+        List<MaxRectsPacker> pages) {
+        if (width < 4 || height < 4) {
+            return false;
+        }
+        final MaxRectsPacker packer = new MaxRectsPacker(width, height);
+        final List<int[]> positions = new ArrayList<int[]>();
+        for (Entry entry : entries) {
+            if (entry.page == page) {
+                final int[] position = new int[2];
+                if (!packer.insert(entry.cellWidth, entry.cellHeight, position)) {
+                    return false;
+                }
+                positions.add(position);
+            }
+        }
+        int i = 0;
+        for (Entry entry : entries) {
+            if (entry.page == page) {
+                entry.x = positions.get(i)[0];
+                entry.y = positions.get(i)[1];
+                i++;
+            }
+        }
+        pages.set(page, packer);
+        return true;
+    }
+
+    /** Draws the page's entries with their gutters and writes it as KTX and JPEG. */
+    private static void writePage(List<Entry> entries, int page, int width, int height,
+        int padding, File output, String pageName) throws IOException {
+        final int[] pixels = new int[width * height];
+        Arrays.fill(pixels, 0xFF000000);
+        for (Entry entry : entries) {
+            if (entry.page != page) {
+                continue;
+            }
+            final BufferedImage image = entry.image;
+            for (int y = 0; y < entry.cellHeight; y++) {
+                final int sourceY = Math.max(0, Math.min(image.getHeight() - 1, y - padding));
+                for (int x = 0; x < entry.cellWidth; x++) {
+                    final int sourceX = Math.max(0, Math.min(image.getWidth() - 1, x - padding));
+                    pixels[(entry.y + y) * width + entry.x + x] =
+                        0xFF000000 | image.getRGB(sourceX, sourceY);
+                }
+            }
+        }
+
+        final List<byte[]> levels = TextureConverter.encodeMipChain(pixels, width, height);
+        final File ktx = new File(output, pageName + ".ktx");
+        final long ktxBytes = TextureConverter.writeKtx(ktx, width, height, levels);
+
+        final BufferedImage composed = new BufferedImage(width, height,
+            BufferedImage.TYPE_INT_RGB);
+        composed.setRGB(0, 0, width, height, pixels, 0, width);
+        final File jpeg = new File(output, pageName + ".jpg");
+        writeJpeg(composed, jpeg);
+        System.out.println(String.format(Locale.US, "%s: %dx%d, %d KB as ETC1, %d KB as JPEG,"
+            + " PSNR %.2f dB", pageName, width, height, ktxBytes / 1024, jpeg.length() / 1024,
+            TextureConverter.psnr(pixels, levels.get(0), width, height)));
+    }
+
+    private static void writeJpeg(BufferedImage image, File target) throws IOException {
+        final ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        final ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(JPEG_QUALITY);
+        if (target.exists() && !target.delete()) {
+            throw new IOException("Could not replace " + target);
+        }
+        final ImageOutputStream out = ImageIO.createImageOutputStream(target);
+        try {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            out.close();
+            writer.dispose();
+        }
+    }
+
+    private static int alignToBlock(int size) {
+        return (size + 3) & ~3;
+    }
+}
@@ -0,0 +1,274 @@
+package com.jr3dL.android.tools;
+
+/**
+ * Compresses 4x4 pixel blocks to ETC1 and back. A block is two half-blocks
+ * side by side, or stacked when the flip bit is set, each with a base
+ * colour and one of eight intensity tables; every pixel picks one of its
+ * table's four offsets, added to all three channels of the base colour.
+ * Base colours are either two RGB444 colours, or an RGB555 colour and an
+ * RGB333 signed difference to the second.
+ *
+ * The encoder tries both layouts and both base colour modes, bases around
+ * each half-block's mean, and every table, keeping the least squared
+ * error. That is slow next to real-time encoders but fine offline.
+ */
+final class Etc1Codec {
+    /** Bytes per encoded block. */
+    static final int BLOCK_SIZE = 8;
+
+    /** The small and large offset of each intensity table. */
+    private static final int[][] MODIFIERS = {
+        {2, 8}, {5, 17}, {9, 29}, {13, 42}, {18, 60}, {24, 80}, {33, 106}, {47, 183}
+    };
+    private static final int TABLE_COUNT = MODIFIERS.length;
+
+    /** Offsets of base colours tried around each half-block's quantized mean. */
+    private static final int[] BASE_STEPS = {0, -1, 1};
+
+    private Etc1Codec() {
+    }
+
+    /** The offset selected by a pixel index of 0 to 3: +small, +large, -small, -large. */
+    private static int modifier(int table, int index) {
+        final int value = MODIFIERS[table][index & 1];
+        return index < 2 ? value : -value;
+    }
+
+    /**
+     * Encodes a block of 16 pixels, 0xRRGGBB in row-major order, into
+     * BLOCK_SIZE bytes of out starting at offset.
+     */
+    static void encodeBlock(int[] pixels, byte[] out, int offset) {
+        final Candidate best = new Candidate();
+        final Candidate candidate = new Candidate();
+        best.error = Long.MAX_VALUE;
+        for (int flip = 0; flip < 2; flip++) {
+            for (int differential = 0; differential < 2; differential++) {
+                encode(pixels, flip == 1, differential == 1, candidate);
+                if (candidate.error < best.error) {
+                    best.copy(candidate);
+                }
+            }
+        }
+        final long bits = best.pack();
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            out[offset + i] = (byte) (bits >>> (56 - 8 * i));
+        }
+    }
+
+    /** Decodes BLOCK_SIZE bytes of in at offset into 16 pixels, 0xRRGGBB in row-major order. */
+    static void decodeBlock(byte[] in, int offset, int[] pixels) {
+        long bits = 0;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            bits = bits << 8 | (in[offset + i] & 0xFF);
+        }
+        final int high = (int) (bits >>> 32);
+        final int low = (int) bits;
+        final boolean flip = (high & 1) != 0;
+        final int[][] bases = new int[2][3];
+        if ((high & 2) != 0) {
+            for (int channel = 0; channel < 3; channel++) {
+                final int shift = 27 - 8 * channel;
+                final int first = high >>> shift & 0x1F;
+                final int delta = (high >>> (shift - 3) & 7) << 29 >> 29;
+                bases[0][channel] = expand5(first);
+                bases[1][channel] = expand5(first + delta);
+            }
+        } else {
+            for (int channel = 0; channel < 3; channel++) {
+                final int shift = 28 - 8 * channel;
+                bases[0][channel] = expand4(high >>> shift & 0xF);
+                bases[1][channel] = expand4(high >>> (shift - 4) & 0xF);
+            }
+        }
+        final int[] tables = {high >>> 5 & 7, high >>> 2 & 7};
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                final int half = (flip ? y : x) >= 2 ? 1 : 0;
+                final int bit = x * 4 + y;
+                final int index = (low >>> (bit + 16) & 1) << 1 | (low >>> bit & 1);
+                final int offsetValue = modifier(tables[half], index);
+                final int[] base = bases[half];
+                pixels[y * 4 + x] = clamp(base[0] + offsetValue) << 16
+                    | clamp(base[1] + offsetValue) << 8 | clamp(base[2] + offsetValue);
+            }
+        }
+    }
+
+    private static void encode(int[] pixels, boolean flip, boolean differential,
+        Candidate out) {
+        out.flip = flip;
+        out.differential = differential;
+        out.error = 0;
+        final int bits = differential ? 5 : 4;
+        final int max = (1 << bits) - 1;
+        for (int half = 0; half < 2; half++) {
+            // The mean of the half-block, quantized to the base colour's precision.
+            final int[] mean = new int[3];
+            for (int y = 0; y < 4; y++) {
+                for (int x = 0; x < 4; x++) {
+                    if (((flip ? y : x) >= 2 ? 1 : 0) == half) {
+                        final int pixel = pixels[y * 4 + x];
+                        mean[0] += pixel >>> 16 & 0xFF;
+                        mean[1] += pixel >>> 8 & 0xFF;
+                        mean[2] += pixel & 0xFF;
+                    }
+                }
+            }
+            for (int channel = 0; channel < 3; channel++) {
+                mean[channel] = Math.round(mean[channel] / 8f * max / 255f);
+            }
+
+            long halfError = Long.MAX_VALUE;
+            for (int step : BASE_STEPS) {
+                final int r = mean[0] + step;
+                final int g = mean[1] + step;
+                final int b = mean[2] + step;
+                if (r < 0 || g < 0 || b < 0 || r > max || g > max || b > max) {
+                    continue;
+                }
+                if (differential && half == 1 && !(inDeltaRange(r - out.bases[0][0])
+                    && inDeltaRange(g - out.bases[0][1]) && inDeltaRange(b - out.bases[0][2]))) {
+                    continue;
+                }
+                final long error = fitHalf(pixels, flip, half, r, g, b, bits, out, halfError);
+                if (error < halfError) {
+                    halfError = error;
+                }
+            }
+            if (halfError == Long.MAX_VALUE) {
+                // No base near the mean is reachable from the first half's;
+                // take the nearest one that is.
+                final int r = clampDelta(mean[0], out.bases[0][0]);
+                final int g = clampDelta(mean[1], out.bases[0][1]);
+                final int b = clampDelta(mean[2], out.bases[0][2]);
+                halfError = fitHalf(pixels, flip, half, r, g, b, bits, out, halfError);
+            }
+            out.error += halfError;
+        }
+    }
+
+    /**
+     * Finds the best table and indices for one half-block with the given
+     * quantized base, and stores them in out if its error beats
+     * bestError. Returns the error.
+     */
+    private static long fitHalf(int[] pixels, boolean flip, int half, int r, int g, int b,
+        int bits, Candidate out, long bestError) {
+        final int red = bits == 5 ? expand5(r) : expand4(r);
+        final int green = bits == 5 ? expand5(g) : expand4(g);
+        final int blue = bits == 5 ? expand5(b) : expand4(b);
+        long best = Long.MAX_VALUE;
+        int bestTable = 0;
+        int bestIndices = 0;
+        for (int table = 0; table < TABLE_COUNT; table++) {
+            long error = 0;
+            int indices = 0;
+            for (int y = 0; y < 4; y++) {
+                for (int x = 0; x < 4; x++) {
+                    if (((flip ? y : x) >= 2 ? 1 : 0) != half) {
+                        continue;
+                    }
+                    final int pixel = pixels[y * 4 + x];
+                    int pixelBest = Integer.MAX_VALUE;
+                    int pixelIndex = 0;
+                    for (int index = 0; index < 4; index++) {
+                        final int offset = modifier(table, index);
+                        final int dr = clamp(red + offset) - (pixel >>> 16 & 0xFF);
+                        final int dg = clamp(green + offset) - (pixel >>> 8 & 0xFF);
+                        final int db = clamp(blue + offset) - (pixel & 0xFF);
+                        final int pixelError = dr * dr + dg * dg + db * db;
+                        if (pixelError < pixelBest) {
+                            pixelBest = pixelError;
+                            pixelIndex = index;
+                        }
+                    }
+                    error += pixelBest;
+                    indices |= pixelIndex << 2 * (y * 4 + x);
+                }
+            }
+            if (error < best) {
+                best = error;
+                bestTable = table;
+                bestIndices = indices;
+            }
+        }
+        if (best < bestError) {
+            out.bases[half][0] = r;
+            out.bases[half][1] = g;
+            out.bases[half][2] = b;
+            out.tables[half] = bestTable;
+            out.indices[half] = bestIndices;
+        }
+        return best;
+    }
+
+    private static boolean inDeltaRange(int delta) {
+        return delta >= -4 && delta <= 3;
+    }
+
+    private static int clampDelta(int value, int base) {
+        return Math.max(base - 4, Math.min(base + 3, value));
+    }
+
+    private static int expand4(int value) {
+        return value << 4 | value;
+    }
+
+    private static int expand5(int value) {
+        return value << 3 | value >>> 2;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : value > 255 ? 255 : value;
+    }
+
+    /** One way of encoding a block, and its error. */
+    private static final class Candidate {
+        boolean flip;
+        boolean differential;
+        final int[][] bases = new int[2][3];
+        final int[] tables = new int[2];
+        /** Two bits per pixel, row-major, for the pixels of each half. */
+        final int[] indices = new int[2];
+        long error;
+
+        void copy(Candidate other) {
+            flip = other.flip;
+            differential = other.differential;
+            for (int half = 0; half < 2; half++) {
+                System.arraycopy(other.bases[half], 0, bases[half], 0, 3);
+                tables[half] = other.tables[half];
+                indices[half] = other.indices[half];
+            }
+            error = other.error;
+        }
+
+        long pack() {
+            int high = 0;
+            for (int channel = 0; channel < 3; channel++) {
+                if (differential) {
+                    final int delta = bases[1][channel] - bases[0][channel];
+                    high |= bases[0][channel] << (27 - 8 * channel)
+                        | (delta & 7) << (24 - 8 * channel);
+                } else {
+                    high |= bases[0][channel] << (28 - 8 * channel)
+                        | bases[1][channel] << (24 - 8 * channel);
+                }
+            }
+            high |= tables[0] << 5 | tables[1] << 2 | (differential ? 2 : 0) | (flip ? 1 : 0);
+
+            // Pixel indices go in column-major order, high bits above low bits.
+            int low = 0;
+            for (int y = 0; y < 4; y++) {
+                for (int x = 0; x < 4; x++) {
+                    final int half = (flip ? y : x) >= 2 ? 1 : 0;
+                    final int index = indices[half] >>> 2 * (y * 4 + x) & 3;
+                    final int bit = x * 4 + y;
+                    low |= (index >>> 1) << (bit + 16) | (index & 1) << bit;
+                }
+            }
+            return (long) high << 32 | low & 0xFFFFFFFFL;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.jr3dL.android.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Packs rectangles into one fixed-size page with the MaxRects algorithm:
+ * the page's free space is kept as the list of maximal free rectangles,
+ * which may overlap, and each rectangle goes where it leaves the shortest
+ * leftover side (best short side fit). Rectangles are never rotated, since
+ * that would turn their textures too.
+ */
+final class MaxRectsPacker {
+    private final int width;
+    private final int height;
+    /** x, y, width, height of every maximal free rectangle. */
+    private final List<int[]> free = new ArrayList<int[]>();
+
+    MaxRectsPacker(int width, int height) {
+        this.width = width;
+        this.height = height;
+        free.add(new int[] {0, 0, width, height});
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * Places a rectangle and writes its x and y into position. Returns false,
+     * changing nothing, if it doesn't fit.
+     */
+    boolean insert(int rectWidth, int rectHeight, int[] position) {
+        int bestShort = Integer.MAX_VALUE;
+        int bestLong = Integer.MAX_VALUE;
+        int[] best = null;
+        for (int[] space : free) {
+            if (space[2] < rectWidth || space[3] < rectHeight) {
+                continue;
+            }
+            final int leftoverX = space[2] - rectWidth;
+            final int leftoverY = space[3] - rectHeight;
+            final int shortSide = Math.min(leftoverX, leftoverY);
+            final int longSide = Math.max(leftoverX, leftoverY);
+            if (shortSide < bestShort || (shortSide == bestShort && longSide < bestLong)) {
+                bestShort = shortSide;
+                bestLong = longSide;
+                best = space;
+            }
+        }
+        if (best == null) {
+            return false;
+        }
+        position[0] = best[0];
+        position[1] = best[1];
+        place(best[0], best[1], rectWidth, rectHeight);
+        return true;
+    }
+
+    /** Splits every free rectangle the placed one overlaps, then drops the redundant ones. */
+    private void place(int x, int y, int rectWidth, int rectHeight) {
+        final List<int[]> split = new ArrayList<int[]>();
+        for (int[] space : free) {
+            if (x >= space[0] + space[2] || x + rectWidth <= space[0]
+                || y >= space[1] + space[3] || y + rectHeight <= space[1]) {
+                split.add(space);
+                continue;
+            }
+            // Up to four maximal pieces: left, right, above and below the placed rectangle.
+            if (x > space[0]) {
+                split.add(new int[] {space[0], space[1], x - space[0], space[3]});
+            }
+            if (x + rectWidth < space[0] + space[2]) {
+                split.add(new int[] {x + rectWidth, space[1],
+                    space[0] + space[2] - x - rectWidth, space[3]});
+            }
+            if (y > space[1]) {
+                split.add(new int[] {space[0], space[1], space[2], y - space[1]});
+            }
+            if (y + rectHeight < space[1] + space[3]) {
+                split.add(new int[] {space[0], y + rectHeight, space[2],
+                    space[1] + space[3] - y - rectHeight});
+            }
+        }
+        free.clear();
+        for (int i = 0; i < split.size(); i++) {
+            boolean contained = false;
+            for (int j = 0; j < split.size() && !contained; j++) {
+                // Of two identical rectangles, keep the first.
+                contained = i != j && contains(split.get(j), split.get(i))
+                    && (j < i || !contains(split.get(i), split.get(j)));
+            }
+            if (!contained) {
+                free.add(split.get(i));
+            }
+        }
+    }
+
+    private static boolean contains(int[] outer, int[] inner) {
+        return inner[0] >= outer[0] && inner[1] >= outer[1]
+            && inner[0] + inner[2] <= outer[0] + outer[2]
+            && inner[1] + inner[3] <= outer[1] + outer[3];
+    }
+}
@@ -0,0 +1,244 @@
+package com.jr3dL.android.tools;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import javax.imageio.ImageIO;
+
+import com.jr3dL.android.gl.Gl;
+import com.jr3dL.android.texture.KtxFile;
+
+/**
+ * Converts the drawables textures are made from into ETC1 KTX files with a
+ * full mip chain, for {@code TextureHelper.decodeTexture} to load instead
+ * of decoding the drawable on device.
+ *
+ * Images are scaled down to power-of-two sides no larger than the maximum
+ * size, since GLES 2.0 only mipmaps those. Each file is reported with its
+ * size next to the RGBA texture it replaces, and the PSNR of its top level
+ * against the scaled image. From {@code 3D_Home_Design}:
+ *
+ *     javac -d bin/tools -cp android.jar $(find src tools -name "*.java")
+ *     java -cp bin/tools com.jr3dL.android.tools.TextureConverter \
+ *         [-max 2048] [res/drawable-nodpi [assets/textures]]
+ */
+public class TextureConverter {
+    private static final int DEFAULT_MAX_SIZE = 2048;
+    private static final String DEFAULT_INPUT = "res/drawable-nodpi";
+    private static final String DEFAULT_OUTPUT = "assets/textures";
+
+    public static void main(String[] args) throws IOException {
+        int maxSize = DEFAULT_MAX_SIZE;
+        final List<String> paths = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-max") && i + 1 < args.length) {
+                maxSize = Integer.parseInt(args[++i]);
+            } else {
+                paths.add(args[i]);
+            }
+        }
+        final File input = new File(paths.size() > 0 ? paths.get(0) : DEFAULT_INPUT);
+        final File output = new File(paths.size() > 1 ? paths.get(1) : DEFAULT_OUTPUT);
+        final File[] files = input.listFiles();
+        if (files == null) {
+            throw new IOException("Not a directory: " + input);
+        }
+        Arrays.sort(files);
+        if (!output.isDirectory() && !output.mkdirs()) {
+            throw new IOException("Could not create " + output);
+        }
+
+        long rgbaBytes = 0;
+        long etc1Bytes = 0;
+        for (File file : files) {
+            final String name = file.getName();
+            final int dot = name.lastIndexOf('.');
+            final String extension = dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.US);
+            if (!extension.equals("jpg") && !extension.equals("jpeg")
+                && !extension.equals("png")) {
+                continue;
+            }
+            final BufferedImage image = ImageIO.read(file);
+            if (image == null) {
+                throw new IOException("Could not decode " + file);
+            }
+            final File target = new File(output, name.substring(0, dot) + ".ktx");
+            final long written = convert(image, maxSize, target);
+            // What the drawable costs decoded as RGBA, without mip levels.
+            final long rgba = (long) image.getWidth() * image.getHeight() * 4;
+            rgbaBytes += rgba;
+            etc1Bytes += written;
+            System.out.println(String.format(Locale.US, "%s: %dx%d, %d KB as RGBA -> %s,"
+                + " %d KB (%.1fx smaller)", name, image.getWidth(), image.getHeight(),
+                rgba / 1024, target.getName(), written / 1024, (double) rgba / written));
+        }
+        if (etc1Bytes > 0) {
+            System.out.println(String.format(Locale.US, "total: %d KB as RGBA -> %d KB (%.1fx"
+                + " smaller)", rgbaBytes / 1024, etc1Bytes / 1024, (double) rgbaBytes / etc1Bytes));
+        }
+    }
+
+    /** Writes the image's ETC1 mip chain to the file and returns its size. */
+    static long convert(BufferedImage image, int maxSize, File target) throws IOException {
+        final int width = powerOfTwoAtMost(Math.min(image.getWidth(), maxSize));
+        final int height = powerOfTwoAtMost(Math.min(image.getHeight(), maxSize));
+        final int[] pixels = scale(image.getRGB(0, 0, image.getWidth(), image.getHeight(), null,
+            0, image.getWidth()), image.getWidth(), image.getHeight(), width, height);
+        final List<byte[]> levels = encodeMipChain(pixels, width, height);
+        System.out.println(String.format(Locale.US, "%s: %dx%d, %d levels, PSNR %.2f dB",
+            target.getName(), width, height, levels.size(),
+            psnr(pixels, levels.get(0), width, height)));
+        return writeKtx(target, width, height, levels);
+    }
+
+    /** Encodes the pixels and every level below them, halving down to 1x1. */
+    static List<byte[]> encodeMipChain(int[] pixels, int width, int height) {
+        final List<byte[]> levels = new ArrayList<byte[]>();
+        int levelWidth = width;
+        int levelHeight = height;
+        while (true) {
+            levels.add(encode(pixels, levelWidth, levelHeight));
+            if (levelWidth == 1 && levelHeight == 1) {
+                return levels;
+            }
+            final int nextWidth = Math.max(1, levelWidth / 2);
+            final int nextHeight = Math.max(1, levelHeight / 2);
+            pixels = scale(pixels, levelWidth, levelHeight, nextWidth, nextHeight);
+            levelWidth = nextWidth;
+            levelHeight = nextHeight;
+        }
+    }
+
+    /** Writes ETC1 levels as a KTX file and returns its size. */
+    static long writeKtx(File target, int width, int height, List<byte[]> levels)
+        throws IOException {
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(target)));
+        try {
+            out.write(KtxFile.IDENTIFIER);
+            // Little-endian, like every device the app runs on.
+            writeInt(out, KtxFile.ENDIANNESS);
+            writeInt(out, 0); // glType: compressed
+            writeInt(out, 1); // glTypeSize
+            writeInt(out, 0); // glFormat: compressed
+            writeInt(out, Gl.GL_ETC1_RGB8_OES);
+            writeInt(out, Gl.GL_RGB); // glBaseInternalFormat
+            writeInt(out, width);
+            writeInt(out, height);
+            writeInt(out, 0); // pixelDepth
+            writeInt(out, 0); // numberOfArrayElements
+            writeInt(out, 1); // numberOfFaces
+            writeInt(out, levels.size());
+            writeInt(out, 0); // bytesOfKeyValueData
+            for (byte[] level : levels) {
+                // Blocks are 8 bytes, so levels never need padding.
+                writeInt(out, level.length);
+                out.write(level);
+            }
+        } finally {
+            out.close();
+        }
+        return target.length();
+    }
+
+    /** Encodes a level, repeating edge pixels to fill blocks past its sides. */
+    static byte[] encode(int[] pixels, int width, int height) {
+        final int blocksWide = (width + 3) / 4;
+        final int blocksHigh = (height + 3) / 4;
+        final byte[] encoded = new byte[blocksWide * blocksHigh * Etc1Codec.BLOCK_SIZE];
+        final int[] block = new int[16];
+        for (int blockY = 0; blockY < blocksHigh; blockY++) {
+            for (int blockX = 0; blockX < blocksWide; blockX++) {
+                for (int y = 0; y < 4; y++) {
+                    for (int x = 0; x < 4; x++) {
+                        final int sourceX = Math.min(blockX * 4 + x, width - 1);
+                        final int sourceY = Math.min(blockY * 4 + y, height - 1);
+                        block[y * 4 + x] = pixels[sourceY * width + sourceX] & 0xFFFFFF;
+                    }
+                }
+                Etc1Codec.encodeBlock(block, encoded,
+                    (blockY * blocksWide + blockX) * Etc1Codec.BLOCK_SIZE);
+            }
+        }
+        return encoded;
+    }
+
+    /** PSNR of an encoded level against the pixels it was encoded from. */
+    static double psnr(int[] pixels, byte[] encoded, int width, int height) {
+        final int blocksWide = (width + 3) / 4;
+        final int[] block = new int[16];
+        double squaredError = 0;
+        for (int blockY = 0; blockY < (height + 3) / 4; blockY++) {
+            for (int blockX = 0; blockX < blocksWide; blockX++) {
+                Etc1Codec.decodeBlock(encoded, (blockY * blocksWide + blockX)
+                    * Etc1Codec.BLOCK_SIZE, block);
+                for (int y = 0; y < 4 && blockY * 4 + y < height; y++) {
+                    for (int x = 0; x < 4 && blockX * 4 + x < width; x++) {
+                        final int original = pixels[(blockY * 4 + y) * width + blockX * 4 + x];
+                        final int decoded = block[y * 4 + x];
+                        for (int shift = 0; shift <= 16; shift += 8) {
+                            final int difference = (original >>> shift & 0xFF)
+                                - (decoded >>> shift & 0xFF);
+                            squaredError += difference * difference;
+                        }
+                    }
+                }
+            }
+        }
+        final double meanSquaredError = squaredError / (3.0 * width * height);
+        return meanSquaredError == 0 ? Double.POSITIVE_INFINITY
+            : 10 * Math.log10(255 * 255 / meanSquaredError);
+    }
+
+    /**
+     * Resamples 0xAARRGGBB pixels to a smaller or equal size, averaging
+     * every source pixel that falls in each target pixel.
+     */
+    static int[] scale(int[] pixels, int width, int height, int targetWidth, int targetHeight) {
+        if (width == targetWidth && height == targetHeight) {
+            return pixels;
+        }
+        final int[] scaled = new int[targetWidth * targetHeight];
+        for (int y = 0; y < targetHeight; y++) {
+            final int top = (int) ((long) y * height / targetHeight);
+            final int bottom = Math.max(top + 1, (int) ((long) (y + 1) * height / targetHeight));
+            for (int x = 0; x < targetWidth; x++) {
+                final int left = (int) ((long) x * width / targetWidth);
+                final int right = Math.max(left + 1, (int) ((long) (x + 1) * width / targetWidth));
+                long red = 0;
+                long green = 0;
+                long blue = 0;
+                for (int sourceY = top; sourceY < bottom; sourceY++) {
+                    for (int sourceX = left; sourceX < right; sourceX++) {
+                        final int pixel = pixels[sourceY * width + sourceX];
+                        red += pixel >>> 16 & 0xFF;
+                        green += pixel >>> 8 & 0xFF;
+                        blue += pixel & 0xFF;
+                    }
+                }
+                final long count = (long) (bottom - top) * (right - left);
+                scaled[y * targetWidth + x] = 0xFF000000
+                    | (int) ((red + count / 2) / count) << 16
+                    | (int) ((green + count / 2) / count) << 8
+                    | (int) ((blue + count / 2) / count);
+            }
+        }
+        return scaled;
+    }
+
+    static int powerOfTwoAtMost(int value) {
+        return Integer.highestOneBit(Math.max(1, value));
+    }
+
+    private static void writeInt(DataOutputStream out, int value) throws IOException {
+        out.writeInt(Integer.reverseBytes(value));
+    }
+}